@@ -1,12 +1,15 @@
 package com.alogic.ac;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -42,6 +45,10 @@ import com.logicbus.models.servant.ServiceDescription;
  * 
  * @version 1.6.10.12 [20171211 duanyy] <br>
  * - 兼容混合模式 <br>
+ * 
+ * @version 1.6.11.64 [20181009 duanyy] <br>
+ * - 去掉全局锁，采用无锁的AccessStat进行统计 <br>
+ * - 访问统计的条目数可通过acm.stat.maxEntries限制，超出时淘汰最久未访问的条目，直到低水位(90%) <br>
  */
 public abstract class AbstractACMAccessController implements AccessController {
 	/**
@@ -52,12 +59,27 @@ public abstract class AbstractACMAccessController implements AccessController {
 	/**
 	 * 访问统计
 	 */
-	protected Map<String,AccessStat> stats = new ConcurrentHashMap<String,AccessStat>();
+	protected ConcurrentMap<String,AccessStat> stats = new ConcurrentHashMap<String,AccessStat>();
 
 	/**
-	 * 锁
+	 * 访问统计的最大条目数
+	 */
+	protected int maxEntries = 10000;
+	
+	/**
+	 * 淘汰时的低水位(相对于maxEntries的比例)，淘汰到低水位之后，后续新增的条目在达到maxEntries之前不再触发淘汰
 	 */
-	protected ReentrantLock lock = new ReentrantLock();
+	protected double lowWatermark = 0.9;
+	
+	/**
+	 * 访问统计条目的空闲时间(ms)，超过该时间未访问的条目将会被淘汰
+	 */
+	protected long idleTime = 10 * 60 * 1000L;
+	
+	/**
+	 * 是否正在淘汰
+	 */
+	protected AtomicBoolean evicting = new AtomicBoolean(false);
 
 	/**
 	 * 指标ID
@@ -77,6 +99,8 @@ public abstract class AbstractACMAccessController implements AccessController {
 	@Override
 	public void configure(Properties props) {		
 		metricsId = PropertiesConstants.getString(props, "acm.metrics.id", metricsId);
+		maxEntries = PropertiesConstants.getInt(props, "acm.stat.maxEntries", maxEntries);
+		idleTime = PropertiesConstants.getLong(props, "acm.stat.idleTime", idleTime);
 	}		
 	
 	@Override
@@ -130,56 +154,94 @@ public abstract class AbstractACMAccessController implements AccessController {
 			return -2;
 		}
 		
-		lock.lock();
-		try{
-			String acmObject = getACMObject(sessionId,serviceId,servant,ctx);
-			AccessStat current = stats.get(acmObject);	
-			if (current == null){
-				current = new AccessStat();
-				stats.put(acmObject, current);
-			}
-			
-			current.timesTotal ++;
-			current.thread ++;
-			current.waitCnt = lock.getQueueLength();
-			
-			int priority = acm.getPriority(getClientIp(ctx), serviceId.getPath(), current);
-			if (priority < 0){
-				current.deniedTotal ++;
-			}
-			
-			long timestamp = System.currentTimeMillis();
-			timestamp = (timestamp / 60000)*60000;
-			if (timestamp != current.timestamp){
-				//新的周期
-				current.timesOneMin = 1;
-				current.deniedOneMin = priority < 0 ? 1 : 0;				
-				current.timestamp = timestamp;
-			}else{
-				current.timesOneMin ++;
-				if (priority < 0){
-					current.deniedOneMin ++;
-				}
-			}
-			return priority;
-		}finally{
-			lock.unlock();
+		long now = System.currentTimeMillis();
+		AccessStat current = getAccessStat(getACMObject(sessionId,serviceId,servant,ctx));
+		current.start(now);
+		
+		int priority = acm.getPriority(getClientIp(ctx), serviceId.getPath(), current);
+		if (priority < 0){
+			current.denied(now);
 		}
+		return priority;
 	}
 
 	@Override
 	public int accessEnd(String sessionId,Path serviceId, ServiceDescription servant, Context ctx) {
-		lock.lock();
-		try{
-			String acmObject = getACMObject(sessionId,serviceId,servant,ctx);
-			AccessStat current = stats.get(acmObject);
-			if (current != null){
-				current.thread --;
+		AccessStat current = stats.get(getACMObject(sessionId,serviceId,servant,ctx));
+		if (current != null){
+			current.end();
+		}
+		return 0;
+	}
+	
+	/**
+	 * 获取指定对象的访问统计，如果不存在则创建
+	 * @param acmObject 对象id
+	 * @return 访问统计
+	 */
+	protected AccessStat getAccessStat(String acmObject){
+		AccessStat current = stats.get(acmObject);
+		if (current == null){
+			AccessStat newStat = new AccessStat();
+			current = stats.putIfAbsent(acmObject, newStat);
+			if (current == null){
+				current = newStat;
+				if (stats.size() > maxEntries){
+					evict();
+				}
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * 淘汰访问统计条目
+	 * 
+	 * <p>
+	 * 先淘汰超过空闲时间的条目，如果仍然超出低水位，则按照最近访问时间淘汰最久未访问的条目，直到低水位。
+	 * 正在访问的条目不会被淘汰。同一时间只有一个线程进行淘汰。
+	 */
+	protected void evict(){
+		if (!evicting.compareAndSet(false, true)){
+			return;
+		}
+		try {
+			long now = System.currentTimeMillis();
+			List<Map.Entry<String,AccessStat>> candidates = new ArrayList<Map.Entry<String,AccessStat>>();
+			Iterator<Map.Entry<String,AccessStat>> iter = stats.entrySet().iterator();
+			while (iter.hasNext()){
+				Map.Entry<String,AccessStat> entry = iter.next();
+				AccessStat value = entry.getValue();
+				if (value.getThread() > 0){
+					continue;
+				}
+				if (now - value.getTimestamp() > idleTime){
+					stats.remove(entry.getKey(), value);
+				}else{
+					candidates.add(entry);
+				}
+			}
+			
+			int toRemove = stats.size() - (int)(maxEntries * lowWatermark);
+			if (toRemove > 0){
+				Collections.sort(candidates, new Comparator<Map.Entry<String,AccessStat>>(){
+					@Override
+					public int compare(Map.Entry<String,AccessStat> o1, Map.Entry<String,AccessStat> o2) {
+						long t1 = o1.getValue().getTimestamp();
+						long t2 = o2.getValue().getTimestamp();
+						return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+					}
+				});
+				for (int i = 0 ; i < candidates.size() && toRemove > 0 ; i ++){
+					Map.Entry<String,AccessStat> entry = candidates.get(i);
+					if (stats.remove(entry.getKey(), entry.getValue())){
+						toRemove --;
+					}
+				}
 			}
 		}finally{
-			lock.unlock();
+			evicting.set(false);
 		}
-		return 0;
 	}
 	
 	@Override
@@ -189,26 +251,27 @@ public abstract class AbstractACMAccessController implements AccessController {
 			int limit = XmlTools.getInt(root,"limit",30);
 			String keyword = XmlTools.getString(root, "keyword", "");
 			Document doc = root.getOwnerDocument();
-			Iterator<String> iter = stats.keySet().iterator();
+			Iterator<Map.Entry<String,AccessStat>> iter = stats.entrySet().iterator();
 			int current = 0;
 			
 			while (iter.hasNext()){
-				String key = iter.next();
+				Map.Entry<String,AccessStat> entry = iter.next();
+				String key = entry.getKey();
 				
 				boolean match = StringUtils.isEmpty(keyword) || key.contains(keyword);
 				
 				if (match){
 					if (current >= offset && current < offset + limit){
-						AccessStat value = stats.get(key);
+						AccessStat value = entry.getValue();
 						Element eAcl = doc.createElement("acl");
 						
 						eAcl.setAttribute("session", key);
-						eAcl.setAttribute("currentThread", String.valueOf(value.thread));
-						eAcl.setAttribute("timesTotal", String.valueOf(value.timesTotal));
-						eAcl.setAttribute("timesOneMin",String.valueOf(value.timesOneMin));
-						eAcl.setAttribute("waitCnt", String.valueOf(value.waitCnt));
-						eAcl.setAttribute("deniedTotal", String.valueOf(value.deniedTotal));
-						eAcl.setAttribute("deniedOneMin", String.valueOf(value.deniedOneMin));
+						eAcl.setAttribute("currentThread", String.valueOf(value.getThread()));
+						eAcl.setAttribute("timesTotal", String.valueOf(value.getTimesTotal()));
+						eAcl.setAttribute("timesOneMin",String.valueOf(value.getTimesOneMin()));
+						eAcl.setAttribute("deniedTotal", String.valueOf(value.getDeniedTotal()));
+						eAcl.setAttribute("deniedOneMin", String.valueOf(value.getDeniedOneMin()));
+						eAcl.setAttribute("waitCnt", String.valueOf(value.getWaitCnt()));
 						
 						root.appendChild(eAcl);						
 					}
@@ -229,26 +292,27 @@ public abstract class AbstractACMAccessController implements AccessController {
 			int limit = JsonTools.getInt(json, "limit", 30);
 			String keyword = JsonTools.getString(json,"keyword","");
 			List<Object> acls = new ArrayList<Object>();
-			Iterator<String> iter = stats.keySet().iterator();
+			Iterator<Map.Entry<String,AccessStat>> iter = stats.entrySet().iterator();
 			int current = 0;
 			
 			while (iter.hasNext()){
-				String key = iter.next();
+				Map.Entry<String,AccessStat> entry = iter.next();
+				String key = entry.getKey();
 				
 				boolean match = StringUtils.isEmpty(keyword) || key.contains(keyword);
 				if (match){
 						if (current >= offset && current < offset + limit){
-							AccessStat value = stats.get(key);
+							AccessStat value = entry.getValue();
 							
 							Map<String,Object> mAcl = new HashMap<String,Object>();
 
 							mAcl.put("session", key);
-							mAcl.put("currentThread", String.valueOf(value.thread));
-							mAcl.put("timesTotal", String.valueOf(value.timesTotal));
-							mAcl.put("timesOneMin",String.valueOf(value.timesOneMin));
-							mAcl.put("waitCnt", String.valueOf(value.waitCnt));
-							mAcl.put("deniedTotal", String.valueOf(value.deniedTotal));
-							mAcl.put("deniedOneMin", String.valueOf(value.deniedOneMin));
+							mAcl.put("currentThread", String.valueOf(value.getThread()));
+							mAcl.put("timesTotal", String.valueOf(value.getTimesTotal()));
+							mAcl.put("timesOneMin",String.valueOf(value.getTimesOneMin()));
+							mAcl.put("deniedTotal", String.valueOf(value.getDeniedTotal()));
+							mAcl.put("deniedOneMin", String.valueOf(value.getDeniedOneMin()));
+							mAcl.put("waitCnt", String.valueOf(value.getWaitCnt()));
 							
 							acls.add(mAcl);							
 						}
@@ -266,10 +330,11 @@ public abstract class AbstractACMAccessController implements AccessController {
 	@Override
 	public void report(MetricsCollector collector) {
 		if (collector != null){
-			Iterator<String> iter = stats.keySet().iterator();
+			Iterator<Map.Entry<String,AccessStat>> iter = stats.entrySet().iterator();
 			while (iter.hasNext()){
-				String key = iter.next();
-				AccessStat value = stats.get(key);
+				Map.Entry<String,AccessStat> entry = iter.next();
+				String key = entry.getKey();
+				AccessStat value = entry.getValue();
 				
 				Fragment f = new DefaultFragment(metricsId);
 				
@@ -279,12 +344,12 @@ public abstract class AbstractACMAccessController implements AccessController {
 				}
 				Measures meas = f.getMeasures();
 				if (meas != null){
-					meas.set("thread", value.thread, Method.lst);
-					meas.set("timesTotal", value.timesTotal,Method.lst);
-					meas.set("timesOneMin", value.timesOneMin,Method.lst);
-					meas.set("waitCnt", value.waitCnt,Method.lst);
-					meas.set("deniedTotal", value.deniedTotal,Method.lst);
-					meas.set("deniedOneMin", value.deniedOneMin,Method.lst);
+					meas.set("thread", value.getThread(), Method.lst);
+					meas.set("timesTotal", value.getTimesTotal(),Method.lst);
+					meas.set("timesOneMin", value.getTimesOneMin(),Method.lst);
+					meas.set("deniedTotal", value.getDeniedTotal(),Method.lst);
+					meas.set("deniedOneMin", value.getDeniedOneMin(),Method.lst);
+					meas.set("waitCnt", value.getWaitCnt(),Method.lst);
 				}
 				
 				collector.metricsIncr(f);
@@ -334,7 +334,7 @@ public interface AccessControlModel extends Loadable,XmlSerializer,JsonSerialize
 				_priority = aci.priority;
 			}
 			
-			if (stat.thread > _maxThread || stat.timesOneMin > _maxTimesPerMin){
+			if (stat.getThread() > _maxThread || stat.getTimesOneMin() > _maxTimesPerMin){
 				//如果超过并发数，或者超多一分钟调用次数
 				return -1;
 			}
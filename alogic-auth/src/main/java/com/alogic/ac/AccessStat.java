@@ -1,49 +1,121 @@
 package com.alogic.ac;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.anysoft.util.SlidingWindowCounter;
+
 /**
  * 访问统计
- * 
- * 
+ *
+ *
  * @author yyduan
  * @since 1.6.10.6
- * 
+ *
  * @version 1.6.10.7 [20171115 duanyy] <br>
  * - AccessStat中增加被Denied的统计信息 <br>
+ *
+ * @version 1.6.11.64 [20181009 duanyy] <br>
+ * - 改为无锁的计数器，最近一分钟的统计采用滑动窗口计算 <br>
+ * - waitCnt统计保留，由于不再有共享锁，其值恒为0 <br>
  */
 public class AccessStat {
-	
+
 	/**
 	 * 总调用次数
 	 */
-	public long timesTotal = 0;
-	
+	protected AtomicLong timesTotal = new AtomicLong(0);
+
+	/**
+	 * 被拒绝的总次数
+	 */
+	protected AtomicLong deniedTotal = new AtomicLong(0);
+
+	/**
+	 * 当前接入进程个数
+	 */
+	protected AtomicInteger thread = new AtomicInteger(0);
+
 	/**
 	 * 最近一分钟调用次数
 	 */
-	public int timesOneMin = 0;
-	
+	protected SlidingWindowCounter timesOneMin = new SlidingWindowCounter();
+
 	/**
-	 * 被拒绝的总次数
+	 * 最近一分钟被拒绝的次数
 	 */
-	public long deniedTotal = 0;
-	
+	protected SlidingWindowCounter deniedOneMin = new SlidingWindowCounter();
+
 	/**
-	 * 最近一分钟被拒绝的总次数
+	 * 共享锁的等待线程数
+	 *
+	 * <p>
+	 * 为了兼容原有的报表输出而保留，由于统计不再加锁，其值恒为0.
 	 */
-	public long deniedOneMin = 0;	
-	
+	protected volatile long waitCnt = 0;
+
 	/**
-	 * 当前接入进程个数
+	 * 最近访问时间
+	 */
+	protected volatile long timestamp = System.currentTimeMillis();
+
+	/**
+	 * 访问开始
+	 * @param now 当前时间
 	 */
-	public int thread = 0;
-	
+	public void start(long now){
+		timestamp = now;
+		timesTotal.incrementAndGet();
+		thread.incrementAndGet();
+		timesOneMin.incr(now, 1);
+	}
+
 	/**
-	 * 时间戳(用于定义最近一分钟)
+	 * 访问被拒绝
+	 * @param now 当前时间
 	 */
-	public long timestamp = 0;
-	
+	public void denied(long now){
+		deniedTotal.incrementAndGet();
+		deniedOneMin.incr(now, 1);
+	}
+
 	/**
-	 * 共享锁的等待线程数
+	 * 访问结束
 	 */
-	public long waitCnt = 0;
+	public void end(){
+		while (true){
+			int current = thread.get();
+			if (current <= 0 || thread.compareAndSet(current, current - 1)){
+				return;
+			}
+		}
+	}
+
+	public long getTimesTotal(){
+		return timesTotal.get();
+	}
+
+	public long getTimesOneMin(){
+		return timesOneMin.sum();
+	}
+
+	public long getDeniedTotal(){
+		return deniedTotal.get();
+	}
+
+	public long getDeniedOneMin(){
+		return deniedOneMin.sum();
+	}
+
+	public int getThread(){
+		return thread.get();
+	}
+
+	public long getWaitCnt(){
+		return waitCnt;
+	}
+
+	public long getTimestamp(){
+		return timestamp;
+	}
 }
@@ -0,0 +1,83 @@
+package com.alogic.ac.demo;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.alogic.ac.AbstractACMAccessController;
+import com.alogic.ac.AccessControlModel;
+import com.logicbus.backend.Context;
+import com.logicbus.models.catalog.Path;
+import com.logicbus.models.servant.ServiceDescription;
+
+/**
+ * 测试AbstractACMAccessController在不同线程数下的吞吐量
+ * 
+ * @author duanyy
+ *
+ */
+public class AcmBench {
+	
+	public static class BenchController extends AbstractACMAccessController{
+		protected AccessControlModel acm = new AccessControlModel.Default("bench");
+		
+		@Override
+		protected AccessControlModel getACM(String sessionId, Path serviceId, ServiceDescription servant,
+				Context ctx) {
+			return acm;
+		}
+
+		@Override
+		protected String getClientIp(Context ctx){
+			return "127.0.0.1";
+		}
+		
+		@Override
+		public String createSessionId(Path serviceId, ServiceDescription servant, Context ctx) {
+			return "bench";
+		}
+
+		@Override
+		public void reload(String id) {
+			// nothing to do
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int keys = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int cores = Runtime.getRuntime().availableProcessors();
+		
+		final BenchController ac = new BenchController();
+		final Path path = new Path("/demo/Helloworld");
+		final String [] sessions = new String[keys];
+		for (int i = 0 ; i < keys ; i ++){
+			sessions[i] = "192.168.0." + i;
+		}
+		
+		for (int threads = 1 ; threads <= cores * 2 ; threads *= 2){
+			final int perThread = calls / threads;
+			final CountDownLatch latch = new CountDownLatch(threads);
+			long start = System.nanoTime();
+			for (int t = 0 ; t < threads ; t ++){
+				final int seed = t;
+				Thread thread = new Thread(){
+					public void run(){
+						try {
+							for (int i = 0 ; i < perThread ; i ++){
+								String session = sessions[(seed + i) % sessions.length];
+								ac.accessStart(session, path, null, null);
+								ac.accessEnd(session, path, null, null);
+							}
+						}finally{
+							latch.countDown();
+						}
+					}
+				};
+				thread.start();
+			}
+			latch.await();
+			long duration = System.nanoTime() - start;
+			System.out.println(String.format("threads=%d keys=%d ops/s=%.0f",threads,keys,
+					perThread * threads * 1000000000.0 / duration));
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.alogic.cache;
+
+import java.util.HashMap;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.w3c.dom.Element;
+
+import com.alogic.load.Store;
+import com.alogic.xscript.Logiclet;
+import com.alogic.xscript.LogicletContext;
+import com.alogic.xscript.Script;
+import com.alogic.xscript.doc.XsObject;
+import com.alogic.xscript.doc.json.JsonObject;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Settings;
+import com.anysoft.util.XmlElementProperties;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 有容量限制的本地CacheStore
+ * 
+ * <p>
+ * 基于{@link Store.BoundedStore}实现，适用于对象较多，需要限制内存占用的场景。配置方法和{@link LocalCacheStore}
+ * 相同，另外支持maxSize,segments,protectedRatio,refreshRatio等参数。
+ * 
+ * @author duanyy
+ * @since 1.6.11.65
+ */
+public class BoundedCacheStore extends Store.BoundedStore<CacheObject>{
+	/**
+	 * 加载事件脚本
+	 */
+	protected Logiclet onLoad = null;
+	protected String cacheObjectId = "$cache-object";
+	
+	@Override
+	public CacheObject newObject(String id) {
+		return new CacheObject.Simple(id);
+	}
+
+	@Override
+	public void configure(Properties p){
+		super.configure(p);
+		
+		cacheObjectId = PropertiesConstants.getString(p,"cacheObjectId",cacheObjectId,true);
+	}
+	
+	@Override
+	public void configure(Element e, Properties p) {
+		super.configure(e, p);
+		
+		Element onLoadElem = XmlTools.getFirstElementByPath(e, "on-load");
+		if (onLoadElem != null){
+			onLoad = Script.create(onLoadElem, new XmlElementProperties(e,p));
+		}
+	}	
+	
+	@Override
+	protected void onLoad(String id, CacheObject cache) {
+		if (onLoad != null){
+			LogicletContext logicletContext = new LogicletContext(Settings.get());
+	
+			try {
+				logicletContext.setObject(cacheObjectId, cache);
+				XsObject doc = new JsonObject("root",new HashMap<String,Object>());
+				onLoad.execute(doc,doc, logicletContext, null);
+			}catch (Exception ex){
+				LOG.info("Failed to execute onload script" + ExceptionUtils.getStackTrace(ex));
+			}finally{
+				logicletContext.removeObject(cacheObjectId);
+			}
+		}
+	}	
+}
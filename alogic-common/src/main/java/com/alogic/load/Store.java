@@ -1,13 +1,36 @@
 package com.alogic.load;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
+import com.anysoft.util.BaseException;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Pager;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
 
 /**
  * Store
@@ -30,6 +53,9 @@ import com.anysoft.util.Pager;
  * 
  * @version 1.6.11.45 [duanyy 20180722] <br>
  * - Sinkable实现增加nocache模式;
+ * 
+ * @version 1.6.11.65 [20181010 duanyy] <br>
+ * - 增加有容量限制的BoundedStore实现 <br>
  */
 public interface Store<O extends Loadable> extends Loader<O> {
 	
@@ -147,4 +173,521 @@ public interface Store<O extends Loadable> extends Loader<O> {
 			pager.setAll(data.size()).setTotal(current);
 		}
 	}
+
+	/**
+	 * 有容量限制的Store
+	 * 
+	 * <p>
+	 * 和{@link HashStore}相比，BoundedStore具有下列特性:<br>
+	 * - 容量限制:通过maxSize限定缓存对象的个数，超出时按照分段LRU(SLRU)算法淘汰; <br>
+	 * - 分段锁:对象按照id的hash分布在多个分段中，每个分段有独立的锁和淘汰队列; <br>
+	 * - 合并装载:并发的未命中只会触发一次sink装载，其他调用者等待并共享其结果; <br>
+	 * - 提前刷新:在配置了ttl的前提下，当对象的存活时间超过ttl*refreshRatio时，在后台异步刷新，调用者仍然取得当前对象; <br>
+	 * - 统计:命中，未命中，淘汰，装载次数和装载耗时，通过report输出. <br>
+	 * 
+	 * <p>
+	 * 配置参数：<br>
+	 * - maxSize : 最大对象个数，缺省为10000; <br>
+	 * - segments : 分段个数，缺省为16; <br>
+	 * - protectedRatio : 保护区所占的比例，缺省为0.8; <br>
+	 * - refreshRatio : 提前刷新的比例，缺省为0.8，为0时不提前刷新; <br>
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.65
+	 */
+	public abstract static class BoundedStore<O extends Loadable> extends Loader.Sinkable<O> implements Store<O>{
+		/**
+		 * 提前刷新所用的线程池，所有BoundedStore共享
+		 */
+		protected static final ThreadPoolExecutor refresher = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1024),
+				new ThreadFactory(){
+					private AtomicInteger seq = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,"store-refresher-" + seq.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				},
+				new ThreadPoolExecutor.DiscardPolicy());
+		
+		/**
+		 * 最大对象个数
+		 */
+		protected int maxSize = 10000;
+		
+		/**
+		 * 保护区比例
+		 */
+		protected double protectedRatio = 0.8;
+		
+		/**
+		 * 提前刷新比例
+		 */
+		protected double refreshRatio = 0.8;
+		
+		/**
+		 * 分段
+		 */
+		protected Segment<O>[] segments = null;
+		
+		/**
+		 * 正在装载的对象
+		 */
+		protected ConcurrentMap<String,FutureTask<O>> loading = new ConcurrentHashMap<String,FutureTask<O>>();
+		
+		protected AtomicLong hits = new AtomicLong(0);
+		protected AtomicLong misses = new AtomicLong(0);
+		protected AtomicLong evictions = new AtomicLong(0);
+		protected AtomicLong loads = new AtomicLong(0);
+		protected AtomicLong loadFailures = new AtomicLong(0);
+		protected AtomicLong loadTime = new AtomicLong(0);
+		protected AtomicLong refreshes = new AtomicLong(0);
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public void configure(Properties p){
+			super.configure(p);
+			
+			maxSize = PropertiesConstants.getInt(p,"maxSize",maxSize);
+			protectedRatio = PropertiesConstants.getDouble(p,"protectedRatio",protectedRatio);
+			refreshRatio = PropertiesConstants.getDouble(p,"refreshRatio",refreshRatio);
+			
+			int count = PropertiesConstants.getInt(p,"segments",16);
+			count = count <= 0 ? 1 : count;
+			int capacity = Math.max(1,(maxSize + count - 1) / count);
+			
+			segments = (Segment<O>[]) new Segment<?>[count];
+			for (int i = 0 ; i < count ; i ++){
+				segments[i] = new Segment<O>(capacity,(int)(capacity * protectedRatio));
+			}
+		}
+		
+		/**
+		 * 根据id定位分段
+		 * @param id 对象id
+		 * @return 分段
+		 */
+		protected Segment<O> segmentFor(String id){
+			int h = id.hashCode();
+			h ^= (h >>> 16);
+			return segments[(h & Integer.MAX_VALUE) % segments.length];
+		}
+		
+		@Override
+		public void save(String id, O o, boolean overwrite) {
+			Segment<O> segment = segmentFor(id);
+			if (segment.put(id, o, overwrite)){
+				evictions.incrementAndGet();
+			}
+		}
+		
+		@Override
+		public void del(String id){
+			segmentFor(id).remove(id);
+		}
+		
+		@Override
+		public O load(String id, boolean cacheAllowed) {
+			if (noCache()){
+				return loadFromSink(id,cacheAllowed);
+			}
+			
+			O found = loadFromSelf(id,cacheAllowed);
+			if (found == null){
+				misses.incrementAndGet();
+				found = loadCoalesced(id,cacheAllowed);
+			}else{
+				hits.incrementAndGet();
+			}
+			return found;
+		}
+		
+		@Override
+		protected O loadFromSelf(String id, boolean cacheAllowed) {
+			O found = null;
+			if (cacheAllowed){
+				Segment<O> segment = segmentFor(id);
+				found = segment.get(id);
+				if (found != null){
+					if (isExpired(found)){
+						segment.remove(id, found);
+						found = null;
+					}else{
+						if (needRefresh(found)){
+							refreshAsync(id,found);
+						}
+					}
+				}
+			}
+			return found;
+		}
+		
+		/**
+		 * 合并并发的装载请求
+		 * @param id 对象id
+		 * @param cacheAllowed 是否允许缓存
+		 * @return 对象实例
+		 */
+		protected O loadCoalesced(final String id,final boolean cacheAllowed){
+			FutureTask<O> task = new FutureTask<O>(new Callable<O>(){
+				@Override
+				public O call() throws Exception {
+					return loadAndSave(id,cacheAllowed);
+				}
+			});
+			
+			FutureTask<O> existed = loading.putIfAbsent(id, task);
+			if (existed == null){
+				try {
+					task.run();
+				}finally{
+					loading.remove(id, task);
+				}
+			}else{
+				task = existed;
+			}
+			
+			try {
+				return task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BaseException("core.e1006","Interrupted when loading object:" + id);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException){
+					throw (RuntimeException)cause;
+				}
+				if (cause instanceof Error){
+					throw (Error)cause;
+				}
+				throw new BaseException("core.e1004",cause.getMessage(),(Exception)cause);
+			}
+		}
+		
+		/**
+		 * 从sink中装入对象，并存储
+		 * @param id 对象id
+		 * @param cacheAllowed 是否允许缓存
+		 * @return 对象实例
+		 */
+		protected O loadAndSave(String id,boolean cacheAllowed){
+			long start = System.nanoTime();
+			O found = null;
+			try {
+				found = loadFromSink(id,cacheAllowed);
+			}finally{
+				loads.incrementAndGet();
+				loadTime.addAndGet(System.nanoTime() - start);
+				if (found == null){
+					loadFailures.incrementAndGet();
+				}
+			}
+			if (found != null){
+				onLoad(id,found);
+				save(id,found,true);
+			}
+			return found;
+		}
+		
+		/**
+		 * 是否需要提前刷新
+		 * @param o 对象
+		 * @return 是否需要提前刷新
+		 */
+		protected boolean needRefresh(O o){
+			return ttl > 0 && refreshRatio > 0 && System.currentTimeMillis() - o.getTimestamp() > ttl * refreshRatio;
+		}
+		
+		/**
+		 * 在后台刷新对象
+		 * @param id 对象id
+		 * @param o 当前对象
+		 */
+		protected void refreshAsync(final String id,final O o){
+			final Segment<O> segment = segmentFor(id);
+			if (!segment.startRefresh(id)){
+				return;
+			}
+			try {
+				refresher.execute(new Runnable(){
+					@Override
+					public void run() {
+						try {
+							refreshes.incrementAndGet();
+							loadAndSave(id,false);
+						}catch (Exception ex){
+							LOG.error("Failed to refresh object:" + id,ex);
+						}finally{
+							segment.endRefresh(id);
+						}
+					}
+				});
+			}catch (RejectedExecutionException ex){
+				segment.endRefresh(id);
+			}
+		}
+		
+		/**
+		 * 触发装载事件
+		 * @param id 对象id
+		 * @param o 对象
+		 */
+		protected void onLoad(String id, O o) {
+			// nothing to do
+		}
+		
+		/**
+		 * 当前缓存的对象个数
+		 * @return 对象个数
+		 */
+		public int size(){
+			int total = 0;
+			for (Segment<O> segment:segments){
+				total += segment.size();
+			}
+			return total;
+		}
+		
+		@Override
+		public void scan(List<String> result,Pager pager) {
+			String keyword = pager.getKeyword();
+			int offset = pager.getOffset();
+			int limit = pager.getLimit();
+			
+			int current = 0;
+			int all = 0;
+			for (Segment<O> segment:segments){
+				List<O> list = segment.values();
+				all += list.size();
+				for (O o:list){
+					String id = o.getId();
+					boolean match = StringUtils.isEmpty(keyword) || id.contains(keyword);
+					if (match){
+						if (current >= offset && current < offset + limit){
+							result.add(id);
+						}
+						current ++;
+					}
+				}
+			}
+			
+			pager.setAll(all).setTotal(current);
+		}
+		
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				super.report(xml);
+				
+				Document doc = xml.getOwnerDocument();
+				Element stat = doc.createElement("stat");
+				XmlTools.setInt(stat,"size",size());
+				XmlTools.setInt(stat,"maxSize",maxSize);
+				XmlTools.setLong(stat,"hits",hits.get());
+				XmlTools.setLong(stat,"misses",misses.get());
+				XmlTools.setLong(stat,"evictions",evictions.get());
+				XmlTools.setLong(stat,"loads",loads.get());
+				XmlTools.setLong(stat,"loadFailures",loadFailures.get());
+				XmlTools.setLong(stat,"refreshes",refreshes.get());
+				XmlTools.setLong(stat,"avgLoadTime",getAvgLoadTime());
+				xml.appendChild(stat);
+			}
+		}
+		
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				super.report(json);
+				
+				Map<String,Object> stat = new HashMap<String,Object>();
+				JsonTools.setInt(stat,"size",size());
+				JsonTools.setInt(stat,"maxSize",maxSize);
+				JsonTools.setLong(stat,"hits",hits.get());
+				JsonTools.setLong(stat,"misses",misses.get());
+				JsonTools.setLong(stat,"evictions",evictions.get());
+				JsonTools.setLong(stat,"loads",loads.get());
+				JsonTools.setLong(stat,"loadFailures",loadFailures.get());
+				JsonTools.setLong(stat,"refreshes",refreshes.get());
+				JsonTools.setLong(stat,"avgLoadTime",getAvgLoadTime());
+				json.put("stat", stat);
+			}
+		}
+		
+		/**
+		 * 获取平均装载时间(ns)
+		 * @return 平均装载时间
+		 */
+		protected long getAvgLoadTime(){
+			long count = loads.get();
+			return count > 0 ? loadTime.get() / count : 0;
+		}
+	}
+	
+	/**
+	 * 分段
+	 * 
+	 * <p>
+	 * 每个分段包含试用区(probation)和保护区(protected)两个LRU队列，新对象进入试用区，再次命中后晋升到保护区，
+	 * 保护区满时，最久未访问的对象降级到试用区，淘汰时优先淘汰试用区中最久未访问的对象。
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.65
+	 */
+	public static class Segment<O>{
+		protected final ReentrantLock lock = new ReentrantLock();
+		protected final LinkedHashMap<String,O> probation = new LinkedHashMap<String,O>(16,0.75f,true);
+		protected final LinkedHashMap<String,O> protect = new LinkedHashMap<String,O>(16,0.75f,true);
+		protected final ConcurrentMap<String,Boolean> refreshing = new ConcurrentHashMap<String,Boolean>();
+		protected final int capacity;
+		protected final int protectedCapacity;
+		
+		public Segment(int capacity,int protectedCapacity){
+			this.capacity = capacity;
+			this.protectedCapacity = Math.min(Math.max(protectedCapacity, 0),capacity - 1);
+		}
+		
+		/**
+		 * 获取对象，命中的试用区对象将晋升到保护区
+		 * @param id 对象id
+		 * @return 对象
+		 */
+		public O get(String id){
+			lock.lock();
+			try {
+				O found = protect.get(id);
+				if (found == null){
+					found = probation.remove(id);
+					if (found != null){
+						if (protectedCapacity > 0){
+							protect.put(id, found);
+							demote();
+						}else{
+							probation.put(id, found);
+						}
+					}
+				}
+				return found;
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * 存储对象
+		 * @param id 对象id
+		 * @param o 对象
+		 * @param overwrite 是否覆盖
+		 * @return 是否淘汰了对象
+		 */
+		public boolean put(String id,O o,boolean overwrite){
+			lock.lock();
+			try {
+				if (protect.containsKey(id)){
+					if (overwrite){
+						protect.put(id, o);
+					}
+					return false;
+				}
+				if (probation.containsKey(id) && !overwrite){
+					return false;
+				}
+				probation.put(id, o);
+				if (probation.size() + protect.size() > capacity){
+					Map<String,O> victims = probation.isEmpty() ? protect : probation;
+					Iterator<String> iter = victims.keySet().iterator();
+					if (iter.hasNext()){
+						iter.next();
+						iter.remove();
+						return true;
+					}
+				}
+				return false;
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * 保护区超出容量时，将最久未访问的对象降级到试用区
+		 */
+		protected void demote(){
+			while (protect.size() > protectedCapacity){
+				Iterator<Map.Entry<String,O>> iter = protect.entrySet().iterator();
+				Map.Entry<String,O> eldest = iter.next();
+				iter.remove();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+		
+		public void remove(String id){
+			lock.lock();
+			try {
+				if (protect.remove(id) == null){
+					probation.remove(id);
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * 当对象仍然为指定对象时删除
+		 * @param id 对象id
+		 * @param o 对象
+		 */
+		public void remove(String id,O o){
+			lock.lock();
+			try {
+				if (protect.get(id) == o){
+					protect.remove(id);
+				}else{
+					if (probation.get(id) == o){
+						probation.remove(id);
+					}
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		public int size(){
+			lock.lock();
+			try {
+				return probation.size() + protect.size();
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		public List<O> values(){
+			lock.lock();
+			try {
+				List<O> result = new ArrayList<O>(probation.size() + protect.size());
+				result.addAll(protect.values());
+				result.addAll(probation.values());
+				return result;
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * 标记开始刷新
+		 * @param id 对象id
+		 * @return 如果已经在刷新，返回false
+		 */
+		public boolean startRefresh(String id){
+			return refreshing.putIfAbsent(id, Boolean.TRUE) == null;
+		}
+		
+		/**
+		 * 标记刷新结束
+		 * @param id 对象id
+		 */
+		public void endRefresh(String id){
+			refreshing.remove(id);
+		}
+	}
 }
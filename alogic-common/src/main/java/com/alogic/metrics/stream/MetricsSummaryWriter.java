@@ -2,48 +2,111 @@ package com.alogic.metrics.stream;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.w3c.dom.Element;
 
 import com.alogic.metrics.Fragment;
 import com.anysoft.stream.AbstractHandler;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlElementProperties;
 
 /**
  * 累加之后写出
+ * 
+ * <p>
+ * 指标按维度累加到当前的缓冲区中.写出时，先将当前缓冲区替换为新的缓冲区，等待仍在旧缓冲区上累加的线程完成之后，
+ * 再写出旧缓冲区，写出期间到达的指标累加到新的缓冲区中，不会丢失.
+ * 
+ * <p>
+ * 累加时按维度的hash值选择分段锁，同一维度的累加在同一个锁内串行执行，不同维度的累加可以并行.
+ * 
  * @author yyduan
- *
+ * 
  * @since 1.6.6.13
- *
+ * 
+ * @version 1.6.11.76 [20181021 duanyy] <br>
+ * - 写出时交换缓冲区，修正写出和清除之间累加的指标丢失的问题 <br>
+ * - 累加时采用分段锁，不再对整个缓冲区加锁 <br>
  */
 public abstract class MetricsSummaryWriter extends AbstractHandler<Fragment>{
-	protected Map<String,Fragment> metrics = new ConcurrentHashMap<String,Fragment>();
-	
+
+	/**
+	 * 当前的缓冲区
+	 */
+	protected volatile Map<String,Fragment> metrics = new ConcurrentHashMap<String,Fragment>();
+
+	/**
+	 * 分段锁
+	 */
+	protected ReentrantLock[] stripes = newStripes(16);
+
+	@Override
+	public void configure(Element e, Properties p) {
+		XmlElementProperties props = new XmlElementProperties(e,p);
+		stripes = newStripes(PropertiesConstants.getInt(props, "stripes", stripes.length, true));
+		super.configure(e, p);
+	}
+
 	protected void incr(Fragment f){
 		String id = f.getStatsDimesion();
-		Fragment found = metrics.get(id);
-		
-		if (found == null){
-			synchronized(metrics){
-				found = metrics.get(id);
-				if (found == null){
-					metrics.put(id, f);
-				}else{
-					found.incr(f);
-				}
+		ReentrantLock lock = stripes[(id.hashCode() & Integer.MAX_VALUE) % stripes.length];
+		lock.lock();
+		try {
+			//必须在锁内读取当前缓冲区，以保证写出时能够等到本次累加完成
+			Map<String,Fragment> current = metrics;
+			Fragment found = current.get(id);
+			if (found == null){
+				current.put(id, f);
+			}else{
+				found.incr(f);
 			}
-		}else{
-			found.incr(f);
+		}finally{
+			lock.unlock();
 		}
 	}
-	
+
 	@Override
 	protected void onHandle(Fragment _data,long t) {
 		incr(_data);
 	}
-	
+
 	@Override
 	protected void onFlush(long t) {
-		write(metrics,t);
-		metrics.clear();
-	}			
-	
+		Map<String,Fragment> data = swap();
+		if (!data.isEmpty()){
+			write(data,t);
+		}
+	}
+
+	/**
+	 * 替换当前缓冲区
+	 * 
+	 * <p>
+	 * 替换之后依次获取所有的分段锁，以等待仍在旧缓冲区上累加的线程.
+	 * 
+	 * @return 旧的缓冲区
+	 * 
+	 * @since 1.6.11.76
+	 */
+	protected synchronized Map<String,Fragment> swap(){
+		Map<String,Fragment> old = metrics;
+		metrics = new ConcurrentHashMap<String,Fragment>();
+		for (ReentrantLock lock:stripes){
+			lock.lock();
+			lock.unlock();
+		}
+		return old;
+	}
+
+	protected static ReentrantLock[] newStripes(int size){
+		ReentrantLock[] locks = new ReentrantLock[size <= 0 ? 1 : size];
+		for (int i = 0 ; i < locks.length ; i ++){
+			locks[i] = new ReentrantLock();
+		}
+		return locks;
+	}
+
 	protected abstract void write(Map<String,Fragment> data,long t);
-}
\ No newline at end of file
+}
@@ -2,7 +2,12 @@ package com.alogic.pool.impl;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -27,6 +32,9 @@ import com.alogic.pool.CloseAware;
  * 
  * @version 1.6.9.9 [20170829 duanyy] <br>
  * - Pool的returnObject接口增加是否出错的参数 <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 增加后台维护线程，定期检查空闲对象，淘汰失效对象，并预热空闲队列 <br>
  */
 public abstract class Queued implements Pool,CloseAware {
 	/**
@@ -80,6 +88,39 @@ public abstract class Queued implements Pool,CloseAware {
 	 */
 	protected Condition notEmpty = lock.newCondition();	
 	
+	/**
+	 * 后台维护线程，所有Queued共享
+	 */
+	protected static final ScheduledExecutorService keeper = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r,"pool-keeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	/**
+	 * 后台维护的间隔时间(ms)，小于等于0时不维护
+	 */
+	private long keeperInterval = 0;
+	
+	/**
+	 * 后台维护时是否预热空闲队列
+	 */
+	private boolean keeperWarmup = true;
+	
+	/**
+	 * 后台维护任务
+	 */
+	private ScheduledFuture<?> keeperTask = null;
+	
+	/**
+	 * 后台维护所淘汰的对象个数
+	 */
+	private AtomicLong evictedCnt = new AtomicLong(0);
+	
 	public int getWorkingCnt(){return workingCnt;}
 	public int getIdleCnt(){return idleCnt;}
 	public int getWaitCnt(){return waitCnt;}
@@ -87,6 +128,8 @@ public abstract class Queued implements Pool,CloseAware {
 	
 	public int getMaxActive(){return maxQueueLength;}
 	public int getMaxIdle(){return idleQueueLength;}
+	public long getKeeperInterval(){return keeperInterval;}
+	public long getEvictedCnt(){return evictedCnt.get();}
 	
 	/**
 	 * 获取maxQueueLength的参数ID
@@ -104,6 +147,26 @@ public abstract class Queued implements Pool,CloseAware {
 		return "idleQueueLength";
 	}	
 	
+	/**
+	 * 获取keeperInterval的参数ID
+	 * @return 参数ID
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected String getIdOfKeeperInterval(){
+		return "keeperInterval";
+	}
+	
+	/**
+	 * 获取keeperWarmup的参数ID
+	 * @return 参数ID
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected String getIdOfKeeperWarmup(){
+		return "keeperWarmup";
+	}
+	
 	@Override
 	public void configure(Element e, Properties p) {
 		XmlElementProperties props = new XmlElementProperties(e,p);
@@ -121,11 +184,35 @@ public abstract class Queued implements Pool,CloseAware {
 		idleQueueLength = PropertiesConstants.getInt(props, id, idleQueueLength,false);
 		idleQueueLength = idleQueueLength <= 0? maxQueueLength : idleQueueLength;
 				
-		idleQueue = new ConcurrentLinkedQueue<Object>();		
+		idleQueue = new ConcurrentLinkedQueue<Object>();
+		
+		keeperInterval = PropertiesConstants.getLong(props, getIdOfKeeperInterval(), keeperInterval,false);
+		keeperWarmup = PropertiesConstants.getBoolean(props, getIdOfKeeperWarmup(), keeperWarmup,false);
+		
+		if (keeperTask != null){
+			keeperTask.cancel(false);
+			keeperTask = null;
+		}
+		if (keeperInterval > 0){
+			keeperTask = keeper.scheduleWithFixedDelay(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						keep();
+					}catch (Throwable t){
+						logger.error("Error when keeping pool",t);
+					}
+				}
+			}, keeperInterval, keeperInterval, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	
 	public void close() {
+		if (keeperTask != null){
+			keeperTask.cancel(false);
+			keeperTask = null;
+		}
 		Object found = null;
 		while (( found = idleQueue.poll())!= null){
 			close(found);
@@ -256,6 +343,73 @@ public abstract class Queued implements Pool,CloseAware {
 	 */
 	protected abstract <pooled> pooled createObject();
 	
+	/**
+	 * 后台维护，由维护线程定期调用
+	 * 
+	 * <p>
+	 * 逐个检查当前的空闲对象，通过{@link #keepObject(Object, long)}判断是否保留，不保留的对象被关闭;
+	 * 如果需要预热，则创建对象将空闲队列补足到idleQueueLength，但总数不超过maxQueueLength.
+	 * 
+	 * <p>
+	 * 检查期间，对象被计入工作对象，不会被其他线程借出.
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected void keep(){
+		long now = System.currentTimeMillis();
+		int count = idleCnt;
+		for (int i = 0 ; i < count ; i ++){
+			Object found = idleQueue.poll();
+			if (found == null){
+				break;
+			}
+			workingIncr(1);
+			idleIncr(-1);
+			
+			boolean keep = false;
+			try {
+				keep = keepObject(found,now);
+			}catch (Exception ex){
+				logger.error("Error when checking pooled object",ex);
+			}
+			if (!keep){
+				evictedCnt.incrementAndGet();
+			}
+			returnObject(found,!keep);
+		}
+		
+		if (keeperWarmup){
+			for (int i = 0 ; i < idleQueueLength ; i ++){
+				if (idleCnt >= idleQueueLength || workingCnt + idleCnt + creatingCnt >= maxQueueLength){
+					break;
+				}
+				Object created = null;
+				try {
+					created = borrowObject();
+				}catch (Exception ex){
+					logger.error("Error when warming up pool",ex);
+				}
+				if (created == null){
+					break;
+				}
+				returnObject(created,false);
+			}
+		}
+	}
+	
+	/**
+	 * 在后台维护时检查空闲对象是否可以继续保留
+	 * 
+	 * @param pooled 空闲对象
+	 * @param now 当前时间
+	 * @return 是否保留，为false时对象将被关闭
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected boolean keepObject(Object pooled,long now){
+		return true;
+	}
+	
 	public void report(Element xml){
 		if (xml != null){
 			xml.setAttribute("idle", String.valueOf(idleCnt));
@@ -266,6 +420,11 @@ public abstract class Queued implements Pool,CloseAware {
 			xml.setAttribute("maxIdle", String.valueOf(idleQueueLength));
 			xml.setAttribute("maxActive", String.valueOf(maxQueueLength));
 			xml.setAttribute("module", getClass().getName());
+			
+			if (keeperInterval > 0){
+				xml.setAttribute("keeperInterval", String.valueOf(keeperInterval));
+				xml.setAttribute("evicted", String.valueOf(evictedCnt.get()));
+			}
 		}
 	}
 	
@@ -280,6 +439,11 @@ public abstract class Queued implements Pool,CloseAware {
 			json.put("maxIdle", idleQueueLength);
 			json.put("maxActive", maxQueueLength);
 			json.put("module", getClass().getName());
+			
+			if (keeperInterval > 0){
+				json.put("keeperInterval", keeperInterval);
+				json.put("evicted", evictedCnt.get());
+			}
 		}
 	}
 }
\ No newline at end of file
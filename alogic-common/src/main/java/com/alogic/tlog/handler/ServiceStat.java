@@ -8,7 +8,9 @@ import com.anysoft.rrm.RRModelManager;
 import com.anysoft.rrm.ServiceMetrics;
 import com.anysoft.stream.AbstractHandler;
 import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.Settings;
+import com.anysoft.util.XmlElementProperties;
 
 
 /**
@@ -17,12 +19,19 @@ import com.anysoft.util.Settings;
  * 
  * @since 1.6.11.4
  *
+ * @version 1.6.11.75 [20181020 duanyy] <br>
+ * - 增加参数percentiles，可统计服务调用时间的分布 <br>
  */
 public class ServiceStat extends AbstractHandler<TLog>{
 
 	protected RRModel<ServiceMetrics> rrm = null;
 	protected RRModelManager rrmm = null;
 	
+	/**
+	 * 是否统计调用时间的分布
+	 */
+	protected boolean percentiles = false;
+	
 	protected String getMetricsId(String svcId){
 		return "svc.thpt:" + svcId;
 	}	
@@ -33,7 +42,7 @@ public class ServiceStat extends AbstractHandler<TLog>{
 
 		// 统计服务调用次数
 		ServiceMetrics sm = new ServiceMetrics(id);
-		sm.count(tlog.duration, !tlog.code().equals("core.ok"));
+		sm.count(tlog.duration, !tlog.code().equals("core.ok"),percentiles);
 		rrm.update(t, sm);
 
 		String metricsId = getMetricsId(id);
@@ -54,6 +63,7 @@ public class ServiceStat extends AbstractHandler<TLog>{
 
 	@SuppressWarnings("unchecked")
 	protected void onConfigure(Element e, Properties p) {
+		percentiles = PropertiesConstants.getBoolean(new XmlElementProperties(e,p), "percentiles", percentiles);
 		rrmm = RRModelManager.get();
 		rrm = (RRModel<ServiceMetrics>) rrmm.getModel("metrics.service");
 		if (rrm == null){
@@ -1,11 +1,21 @@
 package com.alogic.uid;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
+import com.anysoft.util.BaseException;
 import com.anysoft.util.Configurable;
 import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
@@ -21,6 +31,10 @@ import com.anysoft.util.XmlTools;
  * @author yyduan
  *
  * @since 1.6.11.5
+ * 
+ * @version 1.6.11.73 [20181018 duanyy] <br>
+ * - 增加批量获取id的接口{@link #nextLongs(int)} <br>
+ * - Prepare改为无锁的双缓冲模型，支持异步预取和自适应的id段容量 <br>
  */
 public interface IdGenerator extends XMLConfigurable,Configurable,Reportable{
 	
@@ -36,6 +50,15 @@ public interface IdGenerator extends XMLConfigurable,Configurable,Reportable{
 	 */
 	public long nextLong();
 	
+	/**
+	 * 批量生成id
+	 * @param count 个数
+	 * @return id列表
+	 * 
+	 * @since 1.6.11.73
+	 */
+	public long[] nextLongs(int count);
+	
 	/**
 	 * 虚基类
 	 * @author yyduan
@@ -53,6 +76,15 @@ public interface IdGenerator extends XMLConfigurable,Configurable,Reportable{
 			return String.format("%d", nextLong());
 		}
 		
+		@Override
+		public long[] nextLongs(int count){
+			long[] result = new long[count < 0 ? 0 : count];
+			for (int i = 0 ; i < result.length ; i ++){
+				result[i] = nextLong();
+			}
+			return result;
+		}
+		
 		@Override
 		public void configure(Element e, Properties p) {
 			Properties props = new XmlElementProperties(e,p);
@@ -76,44 +108,253 @@ public interface IdGenerator extends XMLConfigurable,Configurable,Reportable{
 	
 	/**
 	 * 基于预分配模型的IDGen
+	 * 
+	 * <p>
+	 * 从外部(例如数据库)预申请一段id，在本地分配.id段的分配是无锁的，仅在切换id段时加锁.
+	 * 
+	 * <p>
+	 * 当配置了prefetchRatio时采用双缓冲模型：当前id段的消耗达到该比例时，在后台异步预取下一段，
+	 * 当前id段用完时直接切换，调用者无需等待预分配.
+	 * 
+	 * <p>
+	 * 当maxCapacity大于capacity时，id段容量根据消耗速度自适应调整：一个id段的使用时间小于segmentDuration时，
+	 * 下一段的容量加倍(不超过maxCapacity)；超过segmentDuration的2倍时，容量减半(不小于capacity).
+	 * 
+	 * <p>
+	 * 配置参数：<br>
+	 * - capacity : id段的容量，缺省为10;<br>
+	 * - maxCapacity : id段的最大容量，缺省和capacity相同，即不调整;<br>
+	 * - segmentDuration : 期望的id段使用时间(ms)，缺省为15分钟;<br>
+	 * - prefetchRatio : 触发预取的消耗比例，缺省为0，即不预取;<br>
+	 * 
 	 * @author yyduan
 	 *
+	 * @version 1.6.11.73 [20181018 duanyy] <br>
+	 * - 改为无锁的双缓冲模型 <br>
+	 * - 预分配失败时抛出异常，不再重复分配旧的id段 <br>
 	 */
 	public abstract static class Prepare extends Abstract{
 		/**
-		 * 当前预分配id段的起始值
+		 * 预取所用的线程池，所有Prepare共享
+		 */
+		protected static final ThreadPoolExecutor prefetcher = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory(){
+					private AtomicInteger seq = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,"idgen-prefetcher-" + seq.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		
+		static {
+			prefetcher.allowCoreThreadTimeOut(true);
+		}
+		
+		/**
+		 * 当前id段
+		 */
+		private volatile Segment current = new Segment(0,0,0);
+		
+		/**
+		 * 正在预取的下一个id段
 		 */
-		private volatile long start = 0;
+		private FutureTask<Segment> nextTask = null;
 		
 		/**
-		 * 当前预分配id端的结束值
+		 * 预分配的结果，由{@link #doPrepare(long, long)}设置
 		 */
-		private volatile long end = 0;
+		private Segment prepared = null;
 		
 		/**
-		 * id的当前值
+		 * 预分配锁，保证同一时刻只有一个预分配
 		 */
-		private volatile long current = 0;
+		private final Object prepareLock = new Object();
 		
 		/**
-		 * 当前id段容量
+		 * id段的初始容量(最小容量)
 		 */
 		private long capacity = 10;
 		
+		/**
+		 * id段的最大容量
+		 */
+		private long maxCapacity = 0;
+		
+		/**
+		 * 期望的id段使用时间(ms)
+		 */
+		private long segmentDuration = 15 * 60 * 1000L;
+		
+		/**
+		 * 触发预取的消耗比例
+		 */
+		private double prefetchRatio = 0;
+		
+		/**
+		 * 下一个id段的容量
+		 */
+		private volatile long nextCapacity = 10;
+		
+		/**
+		 * 调用者等待预分配的次数
+		 */
+		private final AtomicLong exhausted = new AtomicLong(0);
+		
+		/**
+		 * 预分配次数
+		 */
+		private final AtomicLong prepareCnt = new AtomicLong(0);
+		
+		/**
+		 * 预分配的总耗时(ns)
+		 */
+		private final AtomicLong prepareTime = new AtomicLong(0);
+		
+		/**
+		 * 预分配的最大耗时(ns)
+		 */
+		private volatile long prepareMaxTime = 0;
+		
 		@Override
 		public void configure(Properties p){	
-			capacity = PropertiesConstants.getLong(p,"capacity",capacity);		
-			onPrepare(current,capacity);
+			capacity = PropertiesConstants.getLong(p,"capacity",capacity);
+			capacity = capacity <= 0 ? 10 : capacity;
+			maxCapacity = PropertiesConstants.getLong(p,"maxCapacity",capacity);
+			maxCapacity = maxCapacity < capacity ? capacity : maxCapacity;
+			segmentDuration = PropertiesConstants.getLong(p,"segmentDuration",segmentDuration);
+			prefetchRatio = PropertiesConstants.getDouble(p,"prefetchRatio",prefetchRatio);
+			nextCapacity = capacity;
+			
+			current = prepare(current);
 		}
 		
 		@Override
-		public synchronized long nextLong() {
-			if (current<end){
-				return current ++;
-			}else{
-				onPrepare(current,capacity);
-				current = start;
-				return current ++;
+		public long nextLong() {
+			while (true){
+				Segment seg = current;
+				long id = seg.cursor.getAndIncrement();
+				if (id < seg.end){
+					if (id == seg.prefetchAt){
+						prefetch(seg);
+					}
+					return id;
+				}
+				switchSegment(seg);
+			}
+		}
+		
+		@Override
+		public long[] nextLongs(int count){
+			long[] result = new long[count < 0 ? 0 : count];
+			int offset = 0;
+			while (offset < result.length){
+				Segment seg = current;
+				int wanted = result.length - offset;
+				long id = seg.cursor.getAndAdd(wanted);
+				if (id < seg.end){
+					long got = Math.min(wanted, seg.end - id);
+					if (seg.prefetchAt >= id && seg.prefetchAt < id + got){
+						prefetch(seg);
+					}
+					for (long i = 0 ; i < got ; i ++){
+						result[offset ++] = id + i;
+					}
+				}else{
+					switchSegment(seg);
+				}
+			}
+			return result;
+		}
+		
+		/**
+		 * 触发后台预取
+		 * @param seg 当前id段
+		 */
+		protected void prefetch(final Segment seg){
+			FutureTask<Segment> task = new FutureTask<Segment>(new Callable<Segment>(){
+				@Override
+				public Segment call() throws Exception {
+					return prepare(seg);
+				}
+			});
+			synchronized (this){
+				if (current != seg || nextTask != null){
+					return;
+				}
+				nextTask = task;
+			}
+			prefetcher.execute(task);
+		}
+		
+		/**
+		 * 当前id段用完，切换到下一个id段
+		 * @param seg 用完的id段
+		 */
+		protected synchronized void switchSegment(Segment seg){
+			if (current != seg){
+				//其他线程已经切换
+				return;
+			}
+			Segment next = null;
+			FutureTask<Segment> task = nextTask;
+			nextTask = null;
+			if (task == null || !task.isDone()){
+				//下一个id段尚未就绪，调用者需要等待
+				exhausted.incrementAndGet();
+			}
+			if (task != null){
+				try {
+					next = task.get();
+				}catch (InterruptedException ex){
+					Thread.currentThread().interrupt();
+				}catch (ExecutionException ex){
+					LOG.error("Failed to prefetch id segment,try again.",ex.getCause());
+				}
+			}
+			if (next == null){
+				next = prepare(seg);
+			}
+			current = next;
+		}
+		
+		/**
+		 * 预分配下一个id段
+		 * @param last 上一个id段
+		 * @return 新的id段
+		 */
+		protected Segment prepare(Segment last){
+			synchronized (prepareLock){
+				long now = System.currentTimeMillis();
+				if (maxCapacity > capacity && last.end > last.start){
+					long duration = now - last.createTime;
+					if (duration < segmentDuration){
+						nextCapacity = Math.min(nextCapacity * 2, maxCapacity);
+					}else if (duration > segmentDuration * 2){
+						nextCapacity = Math.max(nextCapacity / 2, capacity);
+					}
+				}
+				
+				prepared = null;
+				long start = System.nanoTime();
+				try {
+					onPrepare(last.end,nextCapacity);
+				}finally{
+					long duration = System.nanoTime() - start;
+					prepareCnt.incrementAndGet();
+					prepareTime.addAndGet(duration);
+					if (duration > prepareMaxTime){
+						prepareMaxTime = duration;
+					}
+				}
+				Segment found = prepared;
+				prepared = null;
+				if (found == null || found.end <= found.start){
+					throw new BaseException("core.e1003","Failed to prepare id segment:" + getClass().getName());
+				}
+				return found;
 			}
 		}
 		
@@ -126,13 +367,91 @@ public interface IdGenerator extends XMLConfigurable,Configurable,Reportable{
 		
 		/**
 		 * 进行预分配
+		 * 
+		 * <p>
+		 * 在{@link #onPrepare(long, long)}中调用，提交预分配的结果.
+		 * 
 		 * @param start 预分配id段的起始值
 		 * @param end 预分配id端的结束值
 		 */
 		protected void doPrepare(long start,long end){
-			this.start = start;
-			this.current = start;
-			this.end = end;
+			long ratio = (long)((end - start) * prefetchRatio);
+			this.prepared = new Segment(start,end,prefetchRatio > 0 ? start + ratio : -1);
+		}
+		
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				super.report(xml);
+				Segment seg = current;
+				XmlTools.setLong(xml, "capacity", nextCapacity);
+				XmlTools.setDouble(xml, "prefetchRatio", prefetchRatio);
+				XmlTools.setLong(xml, "start", seg.start);
+				XmlTools.setLong(xml, "end", seg.end);
+				XmlTools.setLong(xml, "current", Math.min(seg.cursor.get(), seg.end));
+				XmlTools.setLong(xml, "exhausted", exhausted.get());
+				
+				long cnt = prepareCnt.get();
+				XmlTools.setLong(xml, "prepared", cnt);
+				XmlTools.setDouble(xml, "prepareAvg", cnt > 0 ? prepareTime.get() / cnt / 1000000.0 : 0);
+				XmlTools.setDouble(xml, "prepareMax", prepareMaxTime / 1000000.0);
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				super.report(json);
+				Segment seg = current;
+				JsonTools.setLong(json, "capacity", nextCapacity);
+				JsonTools.setDouble(json, "prefetchRatio", prefetchRatio);
+				JsonTools.setLong(json, "start", seg.start);
+				JsonTools.setLong(json, "end", seg.end);
+				JsonTools.setLong(json, "current", Math.min(seg.cursor.get(), seg.end));
+				JsonTools.setLong(json, "exhausted", exhausted.get());
+				
+				long cnt = prepareCnt.get();
+				JsonTools.setLong(json, "prepared", cnt);
+				JsonTools.setDouble(json, "prepareAvg", cnt > 0 ? prepareTime.get() / cnt / 1000000.0 : 0);
+				JsonTools.setDouble(json, "prepareMax", prepareMaxTime / 1000000.0);
+			}
+		}
+		
+		/**
+		 * 预分配的id段
+		 */
+		protected static class Segment {
+			/**
+			 * 起始值
+			 */
+			protected final long start;
+			
+			/**
+			 * 结束值(不包含)
+			 */
+			protected final long end;
+			
+			/**
+			 * 触发预取的id值，为-1时不预取
+			 */
+			protected final long prefetchAt;
+			
+			/**
+			 * 下一个待分配的id
+			 */
+			protected final AtomicLong cursor;
+			
+			/**
+			 * 创建时间
+			 */
+			protected final long createTime = System.currentTimeMillis();
+			
+			protected Segment(long start,long end,long prefetchAt){
+				this.start = start;
+				this.end = end;
+				this.prefetchAt = prefetchAt;
+				this.cursor = new AtomicLong(start);
+			}
 		}
 	}
 }
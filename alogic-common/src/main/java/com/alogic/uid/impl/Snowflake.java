@@ -1,14 +1,37 @@
 package com.alogic.uid.impl;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.w3c.dom.Element;
+
 import com.alogic.uid.IdGenerator;
+import com.anysoft.util.BaseException;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
 
 /**
  * 推特的Snowflake算法
  * 
+ * <p>
+ * 时间戳和毫秒内序列打包在一个AtomicLong中，通过CAS更新，生成id时无锁.
+ * 
+ * <p>
+ * 毫秒内序列溢出或者系统时钟回拨时，不再忙等系统时钟，而是沿用逻辑时钟并向后借用时间，
+ * 借用的时间在系统时钟追上之后自然消除.逻辑时钟最多领先系统时钟maxDrift毫秒，超出时调用者休眠等待，
+ * 以免重启之后生成重复的id.
+ * 
  * @author yyduan
  * @since 1.6.11.5
+ * 
+ * @version 1.6.11.74 [20181019 duanyy] <br>
+ * - 改为基于CAS的无锁实现 <br>
+ * - 增加{@link #reserve(int)}，一次CAS申请一段连续的id <br>
+ * - 时钟回拨时沿用逻辑时钟，不再阻塞调用者 <br>
  */
 public class Snowflake extends IdGenerator.Abstract {
 
@@ -48,14 +71,24 @@ public class Snowflake extends IdGenerator.Abstract {
 	protected long pId = 0;
 
 	/**
-	 * 毫秒内序列
+	 * 当前状态，高位为上次生成id的时间(相对twepoch)，低sequenceBits位为已分配的最后一个序列
 	 */
-	private long sequence = 0L;
+	private final AtomicLong state = new AtomicLong(0);
 
 	/**
-	 * 上次生成id的时间
+	 * 在借用的时间上生成id的次数(时钟回拨或者毫秒内序列溢出)
+	 */
+	private final AtomicLong borrowed = new AtomicLong(0);
+	
+	/**
+	 * 因逻辑时钟领先过多而等待的次数
+	 */
+	private final AtomicLong waits = new AtomicLong(0);
+	
+	/**
+	 * 逻辑时钟最多领先于系统时钟的时间(ms)
 	 */
-	private long lastTimestamp = -1L;
+	private long maxDrift = 1000L;
 
 	@Override
 	public String nextId() {
@@ -66,19 +99,36 @@ public class Snowflake extends IdGenerator.Abstract {
 	public long nextLong(){
 		return next();
 	}
-	
+
+	@Override
+	public long[] nextLongs(int count){
+		long[] result = new long[count < 0 ? 0 : count];
+		int max = (int)(sequenceMask + 1);
+		int offset = 0;
+		while (offset < result.length){
+			int size = Math.min(max, result.length - offset);
+			long first = reserve(size);
+			for (int i = 0 ; i < size ; i ++){
+				result[offset ++] = first + i;
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public void configure(Properties p) {
 		pId = PropertiesConstants.getLong(p, "pid", pId);
-		
+
 		sequenceBits = PropertiesConstants.getLong(p, "bits.seq", sequenceBits);
 		pIdBits = PropertiesConstants.getLong(p, "bits.pid", pIdBits);
-		
+
 		sequenceMask = -1L ^ (-1L << sequenceBits);
 		pIdShift = sequenceBits;
 		ttShift = sequenceBits + pIdBits;
+		maxDrift = PropertiesConstants.getLong(p, "maxDrift", maxDrift);
+		state.set(0);
 	}
-	
+
 	/**
 	 * 获取当前的进程id
 	 * @return 进程id
@@ -86,44 +136,66 @@ public class Snowflake extends IdGenerator.Abstract {
 	protected long getPId(){
 		return pId;
 	}
-	
-	public synchronized long next() {
-		long timestamp = timeGen();
-
-		// 如果是同一时间生成的，则进行毫秒内序列
-		if (lastTimestamp == timestamp) {
-			sequence = (sequence + 1) & sequenceMask;
-			// 毫秒内序列溢出
-			if (sequence == 0) {
-				// 阻塞到下一个毫秒,获得新的时间戳
-				timestamp = tilNextMillis(lastTimestamp);
-			}
-		}
-		// 时间戳改变，毫秒内序列重置
-		else {
-			sequence = 0L;
-		}
 
-		// 上次生成ID的时间截
-		lastTimestamp = timestamp;
-
-		// 移位并通过或运算拼到一起组成64位的ID
-		return ((timestamp - twepoch) << ttShift) | (getPId() << pIdShift) | sequence;
+	public long next() {
+		return reserve(1);
 	}
 
 	/**
-	 * 阻塞到下一个毫秒，直到获得新的时间戳
+	 * 申请一段连续的id
+	 * 
+	 * <p>
+	 * 所申请的id位于同一毫秒内，取值为[first,first+count)，其中first为返回值.
+	 * 
+	 * @param count id个数，不能超过毫秒内序列的容量(2^sequenceBits)
+	 * @return 第一个id
 	 * 
-	 * @param lastTimestamp
-	 *            上次生成ID的时间截
-	 * @return 当前时间戳
+	 * @since 1.6.11.74
 	 */
-	protected long tilNextMillis(long lastTimestamp) {
-		long timestamp = timeGen();
-		while (timestamp <= lastTimestamp) {
-			timestamp = timeGen();
+	public long reserve(int count){
+		if (count <= 0 || count > sequenceMask + 1){
+			throw new BaseException("core.e1003",
+					String.format("The count of ids must be in [1,%d]:%d", sequenceMask + 1, count));
+		}
+		while (true){
+			long current = state.get();
+			long lastTimestamp = current >>> sequenceBits;
+			long now = timeGen() - twepoch;
+
+			long timestamp = 0;
+			long sequence = 0;
+			if (now > lastTimestamp){
+				// 时间戳改变，毫秒内序列重置
+				timestamp = now;
+				sequence = 0;
+			}else{
+				// 系统时钟未超过逻辑时钟(同一毫秒、时钟回拨或者之前借用了时间)
+				timestamp = lastTimestamp;
+				sequence = (current & sequenceMask) + 1;
+				if (sequence + count - 1 > sequenceMask){
+					long drift = lastTimestamp + 1 - now;
+					if (drift > maxDrift){
+						// 逻辑时钟领先过多，休眠等待系统时钟
+						waits.incrementAndGet();
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(drift - maxDrift));
+						continue;
+					}
+					// 毫秒内序列溢出，借用下一个毫秒
+					timestamp = lastTimestamp + 1;
+					sequence = 0;
+				}
+			}
+
+			long next = (timestamp << sequenceBits) | (sequence + count - 1);
+			if (state.compareAndSet(current, next)){
+				if (timestamp > now){
+					// 所分配的id使用了领先于系统时钟的时间戳
+					borrowed.incrementAndGet();
+				}
+				// 移位并通过或运算拼到一起组成64位的ID
+				return (timestamp << ttShift) | (getPId() << pIdShift) | sequence;
+			}
 		}
-		return timestamp;
 	}
 
 	/**
@@ -134,4 +206,37 @@ public class Snowflake extends IdGenerator.Abstract {
 	protected long timeGen() {
 		return System.currentTimeMillis();
 	}
+
+	/**
+	 * 获取逻辑时钟领先于系统时钟的时间
+	 * @return 领先的时间(ms)，为0表示没有领先
+	 * 
+	 * @since 1.6.11.74
+	 */
+	public long getDrift(){
+		long drift = (state.get() >>> sequenceBits) - (timeGen() - twepoch);
+		return drift > 0 ? drift : 0;
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			super.report(xml);
+			XmlTools.setLong(xml, "pid", getPId());
+			XmlTools.setLong(xml, "borrowed", borrowed.get());
+			XmlTools.setLong(xml, "drift", getDrift());
+			XmlTools.setLong(xml, "waits", waits.get());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			super.report(json);
+			JsonTools.setLong(json, "pid", getPId());
+			JsonTools.setLong(json, "borrowed", borrowed.get());
+			JsonTools.setLong(json, "drift", getDrift());
+			JsonTools.setLong(json, "waits", waits.get());
+		}
+	}
 }
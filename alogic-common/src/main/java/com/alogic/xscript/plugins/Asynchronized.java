@@ -1,11 +1,19 @@
 package com.alogic.xscript.plugins;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import com.alogic.tracer.Tool;
 import com.alogic.tracer.TraceContext;
@@ -14,6 +22,8 @@ import com.alogic.xscript.ExecuteWatcher;
 import com.alogic.xscript.Logiclet;
 import com.alogic.xscript.LogicletContext;
 import com.alogic.xscript.doc.XsObject;
+import com.alogic.xscript.util.AsyncExecutor;
+import com.anysoft.util.BaseException;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 
@@ -27,11 +37,29 @@ import com.anysoft.util.PropertiesConstants;
  * @version 1.6.10.2 [20170925 duanyy] <br>
  * - 采用私有线程池，可指定线程池大小，并且可关闭线程池 <br>
  * 
+ * @version 1.6.11.68 [20181013 duanyy] <br>
+ * - 改为借用进程内共享的线程池(通过async.pool指定)，不再每次执行时创建线程池 <br>
+ * - 超时时，如果async.shutdownGracefully为false，取消尚未完成的任务 <br>
+ * - 通过report输出线程池的统计信息 <br>
+ * - 缺省使用执行块私有的线程池，只有指定async.pool时才共享 <br>
+ * - 在本线程池的线程中嵌套执行时，在当前线程中顺序执行，避免死锁 <br>
+ * - 每次执行最多同时占用async.threadPoolSize个线程，线程池不排队，并发的执行超过常驻线程时扩充到async.maxThreads，
+ * 超过之后明确地失败 <br>
+ * - 超时时如果async.failOnTimeout为true(缺省)，抛出异常，不再静默地返回部分结果 <br>
  */
 public class Asynchronized extends Block {
 	protected long timeout = 1000L;	
 	protected int threadPoolSize = 5;
 	protected boolean shutdownGracefully = true;
+	protected String poolId = "";
+	protected long keepAlive = 60000L;
+	protected int maxThreads = 256;
+	protected boolean failOnTimeout = true;
+	
+	/**
+	 * 私有线程池，在没有指定async.pool时使用
+	 */
+	protected volatile AsyncExecutor executor = null;
 	
 	public Asynchronized(String tag, Logiclet p) {
 		super(tag, p);
@@ -43,67 +71,157 @@ public class Asynchronized extends Block {
 		timeout = PropertiesConstants.getLong(p, "async.timeout", timeout);
 		threadPoolSize = PropertiesConstants.getInt(p, "async.threadPoolSize", threadPoolSize);
 		shutdownGracefully = PropertiesConstants.getBoolean(p, "async.shutdownGracefully", shutdownGracefully);
+		poolId = PropertiesConstants.getString(p, "async.pool", poolId);
+		keepAlive = PropertiesConstants.getLong(p, "async.keepAlive", keepAlive);
+		maxThreads = PropertiesConstants.getInt(p, "async.maxThreads", maxThreads);
+		failOnTimeout = PropertiesConstants.getBoolean(p, "async.failOnTimeout", failOnTimeout);
+	}
+	
+	protected AsyncExecutor getExecutor(){
+		if (StringUtils.isNotEmpty(poolId)){
+			return AsyncExecutor.get(poolId, threadPoolSize, maxThreads, keepAlive);
+		}
+		if (executor == null){
+			synchronized (this){
+				if (executor == null){
+					executor = new AsyncExecutor(getXmlTag() + "-" + Integer.toHexString(System.identityHashCode(this)), threadPoolSize, maxThreads, keepAlive);
+				}
+			}
+		}
+		return executor;
+	}
+	
+	/**
+	 * 获取已经创建的线程池，不创建新的线程池
+	 * @return 线程池，尚未创建时返回null
+	 */
+	protected AsyncExecutor findExecutor(){
+		return StringUtils.isNotEmpty(poolId) ? AsyncExecutor.find(poolId) : executor;
+	}
+	
+	@Override
+	public void report(Element xml) {
+		super.report(xml);
+		AsyncExecutor exec = findExecutor();
+		if (xml != null && exec != null){
+			Document doc = xml.getOwnerDocument();
+			Element pool = doc.createElement("pool");
+			exec.report(pool);
+			xml.appendChild(pool);
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		super.report(json);
+		AsyncExecutor exec = findExecutor();
+		if (json != null && exec != null){
+			Map<String,Object> pool = new HashMap<String,Object>();
+			exec.report(pool);
+			json.put("pool", pool);
+		}
 	}
 
 	@Override
 	protected void onExecute(final XsObject root,final XsObject current, final LogicletContext ctx, final ExecuteWatcher watcher) {
 		final List<Logiclet> list = children;
-		final ScheduledThreadPoolExecutor exec = new  ScheduledThreadPoolExecutor(threadPoolSize);
+		final AsyncExecutor exec = getExecutor();
+		if (exec.inWorkerThread()){
+			//在本线程池的线程中嵌套执行，子任务可能排在自己之后而无法执行，在当前线程中顺序执行
+			for (Logiclet logiclet:list){
+				if (logiclet != null){
+					logiclet.execute(root,current,ctx,watcher);
+				}
+			}
+			return;
+		}
+		//每次执行最多启动threadPoolSize个线程，由这些线程依次领取子语句执行
+		final int runners = Math.min(list.size(), threadPoolSize <= 0 ? 1 : threadPoolSize);
+		final Future<?>[] futures = new Future<?>[runners];
 		final CountDownLatch latch = new CountDownLatch(list.size());
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicBoolean stopped = new AtomicBoolean(false);
 		
 		boolean error = false;
 		String msg = "OK";
 		final TraceContext tc = traceEnable()?Tool.start():null;
 		
 		try {
-			for (int i = 0 ; i < list.size(); i ++){
-				final Logiclet logiclet = list.get(i);
-				exec.schedule(new Runnable(){
-	
-					@Override
-					public void run() {
-						TraceContext child = (traceEnable()&&tc != null)?tc.newChild():null;
-						String msg  = "OK";
-						boolean error = false;
-						try {
-							if (logiclet != null){
-								logiclet.execute(root,current,ctx,watcher);
-							}
-						}catch (Exception ex){
-							msg = ExceptionUtils.getStackTrace(ex);
-							log(msg,"error");
-							error = true;
-						}finally{
-							if (latch != null){
-								latch.countDown();
-							}
-							if (traceEnable()&&tc != null){
-								Tool.end(child, "ASYNC-CHILD",getXmlTag(), error?"FAILED":"OK", msg);
+			for (int i = 0 ; i < runners; i ++){
+				try {
+					futures[i] = exec.submit(new Runnable(){
+		
+						@Override
+						public void run() {
+							int index = next.getAndIncrement();
+							while (index < list.size() && !stopped.get()){
+								runChild(list.get(index),root,current,ctx,watcher,tc,latch);
+								index = next.getAndIncrement();
 							}
 						}
+						
+					});
+				}catch (RejectedExecutionException ex){
+					if (i == 0){
+						throw new BaseException("core.e1004",
+								String.format("The async pool %s is exhausted,maxThreads=%d.",exec.getId(),maxThreads));
 					}
-					
-				}, 0, TimeUnit.MICROSECONDS);
+					//已经启动的线程会领取剩余的子语句
+					logger.warn(String.format("The async pool %s is exhausted,%d of %d threads are started.",exec.getId(),i,runners));
+					break;
+				}
 			}
 			
 			if (!latch.await(timeout, TimeUnit.MILLISECONDS)){
-				logger.warn("The async executing is timtout.");
+				stopped.set(true);
+				exec.timeout();
+				String reason = String.format("The async executing is timeout,%d of %d children are not finished",latch.getCount(),list.size());
+				if (!shutdownGracefully){
+					int count = exec.cancel(futures, true);
+					reason = String.format("%s,%d threads are cancelled",reason,count);
+				}
+				if (failOnTimeout){
+					throw new BaseException("core.e1004",reason);
+				}
+				logger.warn(reason);
 			}
 			
+		}catch (BaseException ex){
+			msg = ex.getMessage();
+			error = true;
+			throw ex;
 		}catch (Exception ex){
 			msg = ExceptionUtils.getStackTrace(ex);
 			log(msg,"error");
 			error = true;
 		}finally{
-			if (shutdownGracefully){
-				exec.shutdown();
-			}else{
-				exec.shutdownNow();
-			}
 			if (traceEnable()){
 				Tool.end(tc, "ASYNC", getXmlTag(), error?"FAILED":"OK", msg);
 			}				
 		}
 	}
+	
+	/**
+	 * 在工作线程中执行一个子语句
+	 */
+	protected void runChild(Logiclet logiclet,XsObject root,XsObject current,LogicletContext ctx,ExecuteWatcher watcher,TraceContext tc,CountDownLatch latch){
+		TraceContext child = (traceEnable()&&tc != null)?tc.newChild():null;
+		String msg  = "OK";
+		boolean error = false;
+		try {
+			if (logiclet != null){
+				logiclet.execute(root,current,ctx,watcher);
+			}
+		}catch (Exception ex){
+			msg = ExceptionUtils.getStackTrace(ex);
+			log(msg,"error");
+			error = true;
+		}finally{
+			latch.countDown();
+			if (traceEnable()&&tc != null){
+				Tool.end(child, "ASYNC-CHILD",getXmlTag(), error?"FAILED":"OK", msg);
+			}
+		}
+	}
 
 }
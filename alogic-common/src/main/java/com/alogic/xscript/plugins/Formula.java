@@ -9,6 +9,7 @@ import com.alogic.xscript.ExecuteWatcher;
 import com.alogic.xscript.Logiclet;
 import com.alogic.xscript.LogicletContext;
 import com.anysoft.formula.DefaultFunctionHelper;
+import com.anysoft.formula.ExprCompiler;
 import com.anysoft.formula.Expression;
 import com.anysoft.formula.Parser;
 import com.anysoft.util.Properties;
@@ -20,6 +21,9 @@ import com.anysoft.util.PropertiesConstants;
  * @author duanyy
  * @version 1.6.8.14 [20170509 duanyy] <br>
  * - 增加xscript的中间文档模型,以便支持多种报文协议 <br>
+ * 
+ * @version 1.6.11.67 [20181012 duanyy] <br>
+ * - 缺省采用编译后的公式进行计算，可通过compiled属性关闭 <br>
  */
 public class Formula extends AbstractLogiclet {
 	protected String id;
@@ -37,8 +41,12 @@ public class Formula extends AbstractLogiclet {
 		
 		String formula = PropertiesConstants.getString(p,"expr","",true);
 		if (StringUtils.isNotEmpty(formula)){
-			Parser parser = new Parser(new DefaultFunctionHelper(null));			
-			expr = parser.parse(formula);
+			if (PropertiesConstants.getBoolean(p, "compiled", true)){
+				expr = ExprCompiler.compile(formula);
+			}else{
+				Parser parser = new Parser(new DefaultFunctionHelper(null));			
+				expr = parser.parse(formula);
+			}
 		}
 	}
 
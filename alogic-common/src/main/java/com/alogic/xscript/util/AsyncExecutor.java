@@ -0,0 +1,260 @@
+package com.alogic.xscript.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * xscript异步执行的线程池
+ *
+ * <p>
+ * 线程池可以由异步执行块私有，也可以按id在进程内共享，不再每次执行时创建和关闭线程池。线程池的线程为守护线程，空闲时会被回收.
+ *
+ * <p>
+ * 线程池不排队：常驻threadPoolSize个线程，并发的执行超过常驻线程时临时扩充，最多maxThreads个线程，
+ * 超过之后拒绝提交({@link RejectedExecutionException})，由调用者明确地失败，而不是在队列中等到超时.
+ *
+ * <p>
+ * 当共享同一线程池的执行块要求的线程池大小不同时，线程池按照最大的要求进行扩容.
+ *
+ * <p>
+ * 线程池的线程可以通过{@link #inWorkerThread()}识别，执行块在本线程池的线程中再次提交任务时，应该在当前线程中执行，
+ * 以免等待排在自己之后的任务而死锁.
+ *
+ * @author duanyy
+ * @since 1.6.11.68
+ */
+public class AsyncExecutor implements Reportable{
+
+	/**
+	 * 进程内的线程池注册表
+	 */
+	protected static final Map<String,AsyncExecutor> executors = new ConcurrentHashMap<String,AsyncExecutor>();
+
+	/**
+	 * 注册表的锁
+	 */
+	protected static final Lock lock = new ReentrantLock();
+
+	/**
+	 * 线程池id
+	 */
+	protected final String id;
+
+	/**
+	 * 线程池
+	 */
+	protected final ThreadPoolExecutor executor;
+
+	/**
+	 * 提交的任务数
+	 */
+	protected final AtomicLong submitted = new AtomicLong(0);
+
+	/**
+	 * 超时次数
+	 */
+	protected final AtomicLong timeout = new AtomicLong(0);
+
+	/**
+	 * 被取消的任务数
+	 */
+	protected final AtomicLong cancelled = new AtomicLong(0);
+
+	/**
+	 * 被拒绝的任务数
+	 */
+	protected final AtomicLong rejected = new AtomicLong(0);
+
+	public AsyncExecutor(final String id,int threadPoolSize,int maxThreads,long keepAlive){
+		this.id = id;
+		int size = threadPoolSize <= 0 ? 1 : threadPoolSize;
+		executor = new ThreadPoolExecutor(size,maxThreads < size ? size : maxThreads,
+				keepAlive <= 0 ? 60000L : keepAlive,TimeUnit.MILLISECONDS,
+				new SynchronousQueue<Runnable>(),
+				new ThreadFactory(){
+					private final AtomicInteger index = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Worker(AsyncExecutor.this,r,"xscript-async-" + id + "-" + index.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 获取线程池id
+	 * @return id
+	 */
+	public String getId(){
+		return id;
+	}
+
+	/**
+	 * 当前线程是否是本线程池的线程
+	 * @return true|false
+	 */
+	public boolean inWorkerThread(){
+		Thread thread = Thread.currentThread();
+		return thread instanceof Worker && ((Worker)thread).owner == this;
+	}
+
+	/**
+	 * 确保线程池大小不小于指定值
+	 * @param threadPoolSize 常驻线程数
+	 * @param maxThreads 最大线程数
+	 */
+	public void ensureSize(int threadPoolSize,int maxThreads){
+		int max = maxThreads < threadPoolSize ? threadPoolSize : maxThreads;
+		if (threadPoolSize > executor.getCorePoolSize() || max > executor.getMaximumPoolSize()){
+			synchronized (executor){
+				if (max > executor.getMaximumPoolSize()){
+					executor.setMaximumPoolSize(max);
+				}
+				if (threadPoolSize > executor.getCorePoolSize()){
+					executor.setCorePoolSize(threadPoolSize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 提交任务
+	 * @param task 任务
+	 * @return 任务的Future
+	 * @throws RejectedExecutionException 线程数已经达到maxThreads
+	 */
+	public Future<?> submit(Runnable task){
+		try {
+			Future<?> future = executor.submit(task);
+			submitted.incrementAndGet();
+			return future;
+		}catch (RejectedExecutionException ex){
+			rejected.incrementAndGet();
+			throw ex;
+		}
+	}
+
+	/**
+	 * 记录一次等待超时
+	 */
+	public void timeout(){
+		timeout.incrementAndGet();
+	}
+
+	/**
+	 * 取消尚未完成的任务
+	 * @param futures 任务的Future列表
+	 * @param interrupt 是否中断正在执行的任务
+	 * @return 被取消的任务数
+	 */
+	public int cancel(Future<?>[] futures,boolean interrupt){
+		int count = 0;
+		for (Future<?> future:futures){
+			if (future != null && !future.isDone() && future.cancel(interrupt)){
+				count ++;
+			}
+		}
+		if (count > 0){
+			cancelled.addAndGet(count);
+			executor.purge();
+		}
+		return count;
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setString(xml, "id", id);
+			XmlTools.setInt(xml, "threadPoolSize", executor.getCorePoolSize());
+			XmlTools.setInt(xml, "maxThreads", executor.getMaximumPoolSize());
+			XmlTools.setInt(xml, "threads", executor.getPoolSize());
+			XmlTools.setInt(xml, "active", executor.getActiveCount());
+			XmlTools.setLong(xml, "submitted", submitted.get());
+			XmlTools.setLong(xml, "completed", executor.getCompletedTaskCount());
+			XmlTools.setLong(xml, "timeout", timeout.get());
+			XmlTools.setLong(xml, "cancelled", cancelled.get());
+			XmlTools.setLong(xml, "rejected", rejected.get());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setString(json, "id", id);
+			JsonTools.setInt(json, "threadPoolSize", executor.getCorePoolSize());
+			JsonTools.setInt(json, "maxThreads", executor.getMaximumPoolSize());
+			JsonTools.setInt(json, "threads", executor.getPoolSize());
+			JsonTools.setInt(json, "active", executor.getActiveCount());
+			JsonTools.setLong(json, "submitted", submitted.get());
+			JsonTools.setLong(json, "completed", executor.getCompletedTaskCount());
+			JsonTools.setLong(json, "timeout", timeout.get());
+			JsonTools.setLong(json, "cancelled", cancelled.get());
+			JsonTools.setLong(json, "rejected", rejected.get());
+		}
+	}
+
+	/**
+	 * 查找指定id的共享线程池
+	 * @param id 线程池id
+	 * @return 线程池，如果不存在返回null
+	 */
+	public static AsyncExecutor find(String id){
+		return executors.get(id);
+	}
+
+	/**
+	 * 获取指定id的线程池，如果不存在则创建
+	 * @param id 线程池id
+	 * @param threadPoolSize 常驻线程数
+	 * @param maxThreads 最大线程数
+	 * @param keepAlive 空闲线程的存活时间(ms)
+	 * @return 线程池
+	 */
+	public static AsyncExecutor get(String id,int threadPoolSize,int maxThreads,long keepAlive){
+		AsyncExecutor found = executors.get(id);
+		if (found == null){
+			lock.lock();
+			try {
+				found = executors.get(id);
+				if (found == null){
+					found = new AsyncExecutor(id,threadPoolSize,maxThreads,keepAlive);
+					executors.put(id, found);
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+		found.ensureSize(threadPoolSize,maxThreads);
+		return found;
+	}
+
+	/**
+	 * 线程池的工作线程
+	 */
+	protected static class Worker extends Thread{
+		protected final AsyncExecutor owner;
+
+		protected Worker(AsyncExecutor owner,Runnable r,String name){
+			super(r,name);
+			this.owner = owner;
+		}
+	}
+}
@@ -0,0 +1,738 @@
+package com.anysoft.formula;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.anysoft.formula.ExprValue.DataType;
+
+/**
+ * 公式编译器
+ *
+ * <p>
+ * 将{@link Parser}解析出来的Expression模型编译为按数据类型特化的计算树：<br>
+ * - 静态推导各节点的数据类型，long和double的算术运算及比较运算直接在基本类型上进行，只在根节点生成ExprValue; <br>
+ * - 子节点均为常量的运算在编译期完成计算(常量折叠); <br>
+ * - 变量的上下文按DataProvider缓存，避免共享的计算树在不同的DataProvider之间误用上下文; <br>
+ * - 无法推导类型的节点，按照原有的ExprValue方式计算，计算结果和异常与原有方式保持一致. <br>
+ *
+ * <p>
+ * 通过{@link #compile(String)}编译的公式按公式文本进行缓存，编译后的计算树是无状态的，可以在多线程间共享.
+ *
+ * @author duanyy
+ * @since 1.6.11.67
+ */
+public class ExprCompiler {
+
+	/**
+	 * 缓存的最大个数，超过时清空缓存
+	 */
+	protected static final int MAX_CACHED = 1024;
+
+	/**
+	 * 编译结果的缓存
+	 */
+	protected static final Map<String,Expression> cached = new ConcurrentHashMap<String,Expression>();
+
+	private ExprCompiler(){
+
+	}
+
+	/**
+	 * 解析并编译公式
+	 *
+	 * <p>
+	 * 采用缺省的函数辅助器进行解析，编译结果按公式文本进行缓存.
+	 *
+	 * @param formula 公式文本
+	 * @return 编译后的Expression
+	 */
+	public static Expression compile(String formula){
+		Expression found = cached.get(formula);
+		if (found == null){
+			Parser parser = new Parser(new DefaultFunctionHelper(null));
+			found = compile(parser.parse(formula));
+			if (cached.size() >= MAX_CACHED){
+				cached.clear();
+			}
+			cached.put(formula, found);
+		}
+		return found;
+	}
+
+	/**
+	 * 编译Expression
+	 *
+	 * <p>
+	 * 编译过程中，函数的参数会被替换为编译后的节点，因此原Expression不应该再使用.
+	 *
+	 * @param expr 解析出来的Expression
+	 * @return 编译后的Expression
+	 */
+	public static Expression compile(Expression expr){
+		return toNode(expr);
+	}
+
+	protected static Node toNode(Expression expr){
+		if (expr instanceof Node){
+			return (Node)expr;
+		}
+		if (expr instanceof Expression.LongConstant){
+			return new Constant(expr,new ExprValue(((Expression.LongConstant)expr).value));
+		}
+		if (expr instanceof Expression.DoubleConstant){
+			return new Constant(expr,new ExprValue(((Expression.DoubleConstant)expr).value));
+		}
+		if (expr instanceof Expression.BooleanConstant){
+			return new Constant(expr,new ExprValue(((Expression.BooleanConstant)expr).value));
+		}
+		if (expr instanceof Expression.StringConstant){
+			return new Constant(expr,new ExprValue(((Expression.StringConstant)expr).value));
+		}
+		if (expr.getClass() == Expression.Variant.class){
+			return new Variant(expr,((Expression.Variant)expr).varName);
+		}
+		if (expr instanceof Function){
+			return toFunction((Function)expr);
+		}
+		if (expr instanceof Expression.ArithmeticExpression){
+			Expression.BinaryExpression binary = (Expression.BinaryExpression)expr;
+			return fold(toArithmetic(expr,toNode(binary.getLeft()),toNode(binary.getRight())));
+		}
+		if (expr instanceof Expression.LogicalExpression){
+			Expression.BinaryExpression binary = (Expression.BinaryExpression)expr;
+			return fold(toLogical(expr,toNode(binary.getLeft()),toNode(binary.getRight())));
+		}
+		if (expr instanceof Expression.UnaryExpression){
+			return fold(toUnary(expr,toNode(((Expression.UnaryExpression)expr).expr)));
+		}
+		return new Opaque(expr);
+	}
+
+	protected static Node toFunction(Function func){
+		for (int i = 0 ; i < func.args.size() ; i ++){
+			func.args.set(i, toNode(func.args.get(i)));
+		}
+
+		if (func.getArgumentCount() == 1){
+			if (func instanceof Function.ToLong){
+				return new ToLong(func);
+			}
+			if (func instanceof Function.ToDouble){
+				return new ToDouble(func);
+			}
+		}
+
+		DataType type = DataType.Void;
+		if (func instanceof Function.StrLen || func instanceof Function.InStr){
+			type = DataType.Long;
+		}else{
+			if (func instanceof Function.Match){
+				type = DataType.Boolean;
+			}
+		}
+		return new Call(func,type);
+	}
+
+	protected static Node toArithmetic(Expression expr,Node left,Node right){
+		Expression.Operator op = expr.getOperator();
+		if (isNumeric(left.type) && isNumeric(right.type)){
+			if (left.type == DataType.Long && right.type == DataType.Long){
+				return new LongArithmetic(expr,left,right);
+			}
+			if (op != Expression.Operator.OP_Mod){
+				return new DoubleArithmetic(expr,left,right);
+			}
+		}
+		return new Arithmetic(expr,left,right);
+	}
+
+	protected static Node toLogical(Expression expr,Node left,Node right){
+		switch (expr.getOperator()){
+		case OP_And:
+			return new And(expr,left,right);
+		case OP_Or:
+			return new Or(expr,left,right);
+		default:
+		}
+		return new Compare(expr,left,right);
+	}
+
+	protected static Node toUnary(Expression expr,Node child){
+		switch (expr.getOperator()){
+		case OP_Positive:
+			return child;
+		case OP_Negative:
+			return new Negative(expr,child);
+		case OP_Not:
+			return new Not(expr,child);
+		default:
+		}
+		return new Opaque(expr);
+	}
+
+	/**
+	 * 常量折叠
+	 * @param node 节点
+	 * @return 如果所有子节点均为常量，返回计算后的常量节点，否则返回节点本身
+	 */
+	protected static Node fold(Node node){
+		Node[] children = node.children();
+		if (children == null){
+			return node;
+		}
+		for (Node child:children){
+			if (!(child instanceof Constant)){
+				return node;
+			}
+		}
+		try {
+			ExprValue value = node.getValue(null);
+			return value == null ? node : new Constant(node.source,value);
+		}catch (RuntimeException ex){
+			//例如除零等错误，留待运行期抛出
+			return node;
+		}
+	}
+
+	protected static boolean isNumeric(DataType type){
+		return type == DataType.Long || type == DataType.Double;
+	}
+
+	/**
+	 * 编译后的节点
+	 *
+	 * <p>
+	 * 节点在编译期确定其数据类型，并提供基本类型的计算接口，缺省情况下基本类型的计算基于{@link #getValue(DataProvider)}.
+	 *
+	 * @author duanyy
+	 */
+	public abstract static class Node extends Expression{
+		/**
+		 * 原始的Expression
+		 */
+		protected final Expression source;
+
+		/**
+		 * 编译期推导出的数据类型，Void表示无法推导
+		 */
+		protected final DataType type;
+
+		protected Node(Expression source,DataType type) {
+			super(source.getOperator());
+			this.source = source;
+			this.type = type;
+		}
+
+		/**
+		 * 获取编译期推导出的数据类型
+		 * @return 数据类型
+		 */
+		public DataType getDataType(){
+			return type;
+		}
+
+		public long getLong(DataProvider provider){
+			return getValue(provider).getLong();
+		}
+
+		public double getDouble(DataProvider provider){
+			return getValue(provider).getDouble();
+		}
+
+		public boolean getBoolean(DataProvider provider){
+			return getValue(provider).getBoolean();
+		}
+
+		/**
+		 * 获取子节点，用于常量折叠
+		 * @return 子节点列表，叶子节点或不可折叠的节点返回null
+		 */
+		protected Node[] children(){
+			return null;
+		}
+
+		@Override
+		public String getOperatorPrototype() {
+			return source.getOperatorPrototype();
+		}
+
+		@Override
+		public String toString(){
+			return source.toString();
+		}
+	}
+
+	/**
+	 * 常量
+	 */
+	protected static class Constant extends Node{
+		protected final Object value;
+		protected final long longValue;
+		protected final double doubleValue;
+		protected final boolean booleanValue;
+
+		protected Constant(Expression source,ExprValue v) {
+			super(source, v.getDataType());
+			value = v.getValue();
+			longValue = type == DataType.Long || type == DataType.Double ? v.getLong() : 0;
+			doubleValue = type == DataType.Long || type == DataType.Double ? v.getDouble() : 0;
+			booleanValue = type == DataType.Long || type == DataType.Boolean ? v.getBoolean() : false;
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			//ExprValue在算术运算中会被修改，每次需返回新的实例
+			switch (type){
+			case Long:
+				return new ExprValue(longValue);
+			case Double:
+				return new ExprValue(doubleValue);
+			case Boolean:
+				return new ExprValue(booleanValue);
+			case String:
+				return new ExprValue((String)value);
+			default:
+			}
+			return new ExprValue().setDate((Date)value);
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			return type == DataType.Long || type == DataType.Double ? longValue : super.getLong(provider);
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			return type == DataType.Long || type == DataType.Double ? doubleValue : super.getDouble(provider);
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			return type == DataType.Long || type == DataType.Boolean ? booleanValue : super.getBoolean(provider);
+		}
+	}
+
+	/**
+	 * 变量
+	 */
+	protected static class Variant extends Node{
+		protected final String varName;
+
+		/**
+		 * 最近使用的DataProvider及其上下文
+		 */
+		protected volatile Object[] lastContext = null;
+
+		protected Variant(Expression source,String varName) {
+			super(source, DataType.Void);
+			this.varName = varName;
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			if (provider == null){
+				throw new FormulaException("Data provider is null,can not get value of " + varName);
+			}
+			Object[] last = lastContext;
+			Object context;
+			if (last != null && last[0] == provider){
+				context = last[1];
+			}else{
+				context = provider.getContext(varName);
+				lastContext = new Object[]{provider,context};
+			}
+			String value = provider.getValue(varName, context, null);
+			return value != null ? new ExprValue(value): null;
+		}
+	}
+
+	/**
+	 * 无法编译的Expression,直接委托计算
+	 */
+	protected static class Opaque extends Node{
+		protected Opaque(Expression source) {
+			super(source, DataType.Void);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return source.getValue(provider);
+		}
+	}
+
+	/**
+	 * 函数调用
+	 */
+	protected static class Call extends Node{
+		protected Call(Function source,DataType type) {
+			super(source, type);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return source.getValue(provider);
+		}
+	}
+
+	/**
+	 * to_long函数
+	 */
+	protected static class ToLong extends Node{
+		protected final Expression arg;
+
+		protected ToLong(Function source) {
+			super(source, DataType.Long);
+			arg = source.getArgument(0);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getLong(provider));
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			return Long.parseLong(arg.getValue(provider).getString());
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			return getLong(provider);
+		}
+	}
+
+	/**
+	 * to_double函数
+	 */
+	protected static class ToDouble extends Node{
+		protected final Expression arg;
+
+		protected ToDouble(Function source) {
+			super(source, DataType.Double);
+			arg = source.getArgument(0);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getDouble(provider));
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			return (long)getDouble(provider);
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			return Double.parseDouble(arg.getValue(provider).getString());
+		}
+	}
+
+	/**
+	 * 二元运算
+	 */
+	protected abstract static class Binary extends Node{
+		protected final Node left;
+		protected final Node right;
+
+		protected Binary(Expression source,DataType type,Node left,Node right) {
+			super(source, type);
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		protected Node[] children(){
+			return new Node[]{left,right};
+		}
+	}
+
+	/**
+	 * long型的算术运算
+	 */
+	protected static class LongArithmetic extends Binary{
+		protected LongArithmetic(Expression source,Node left,Node right) {
+			super(source, DataType.Long, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getLong(provider));
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			long l = left.getLong(provider);
+			long r = right.getLong(provider);
+			switch (operator){
+			case OP_Add:
+				return l + r;
+			case OP_Sub:
+				return l - r;
+			case OP_Mul:
+				return l * r;
+			case OP_Div:
+				if (r == 0){
+					throw new FormulaException("divided by zero");
+				}
+				return l / r;
+			case OP_Mod:
+				return l % r;
+			default:
+			}
+			throw new FormulaException("Unsupport operator:" + operator);
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			return getLong(provider);
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			return getLong(provider) != 0;
+		}
+	}
+
+	/**
+	 * double型的算术运算
+	 */
+	protected static class DoubleArithmetic extends Binary{
+		protected DoubleArithmetic(Expression source,Node left,Node right) {
+			super(source, DataType.Double, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getDouble(provider));
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			return (long)getDouble(provider);
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			double l = left.getDouble(provider);
+			double r = right.getDouble(provider);
+			switch (operator){
+			case OP_Add:
+				return l + r;
+			case OP_Sub:
+				return l - r;
+			case OP_Mul:
+				return l * r;
+			case OP_Div:
+				if (r == 0){ // NOSONAR
+					throw new FormulaException("divided by zero");
+				}
+				return l / r;
+			default:
+			}
+			throw new FormulaException("Unsupport operator:" + operator);
+		}
+	}
+
+	/**
+	 * 无法推导类型的算术运算
+	 */
+	protected static class Arithmetic extends Binary{
+		protected Arithmetic(Expression source,Node left,Node right) {
+			super(source, left.type == DataType.String ? DataType.String : DataType.Void, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			switch (operator) {
+			case OP_Add:
+				return left.getValue(provider).add(right.getValue(provider));
+			case OP_Sub:
+				return left.getValue(provider).sub(right.getValue(provider));
+			case OP_Mul:
+				return left.getValue(provider).mul(right.getValue(provider));
+			case OP_Div:
+				return left.getValue(provider).div(right.getValue(provider));
+			case OP_Mod:
+				return left.getValue(provider).mod(right.getValue(provider));
+			default:
+			}
+			throw new FormulaException("Unsupport operator:" + operator);
+		}
+	}
+
+	/**
+	 * 比较运算
+	 */
+	protected static class Compare extends Binary{
+		protected Compare(Expression source,Node left,Node right) {
+			super(source, DataType.Boolean, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getBoolean(provider));
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			int result = compare(provider);
+			switch (operator){
+			case OP_Greater:
+				return result > 0;
+			case OP_Greater_Equal:
+				return result >= 0;
+			case OP_Equal:
+				return result == 0;
+			case OP_Not_Equal:
+				return result != 0;
+			case OP_Less:
+				return result < 0;
+			case OP_Less_Equal:
+				return result <= 0;
+			default:
+			}
+			throw new FormulaException("Unsupport operator:" + operator);
+		}
+
+		protected int compare(DataProvider provider){
+			if (left.type == DataType.Long && right.type == DataType.Long){
+				long l = left.getLong(provider);
+				long r = right.getLong(provider);
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+			if (left.type == DataType.Double && right.type == DataType.Double){
+				return Double.compare(left.getDouble(provider), right.getDouble(provider));
+			}
+			if (isNumeric(left.type) && isNumeric(right.type)){
+				double l = left.getDouble(provider);
+				double r = right.getDouble(provider);
+				if (l > r){
+					return 1;
+				}
+				return r > l ? -1 : 0;
+			}
+			return left.getValue(provider).compareTo(right.getValue(provider));
+		}
+	}
+
+	/**
+	 * 逻辑与
+	 */
+	protected static class And extends Binary{
+		protected And(Expression source,Node left,Node right) {
+			super(source, DataType.Boolean, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getBoolean(provider));
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			return left.getBoolean(provider) && right.getBoolean(provider);
+		}
+	}
+
+	/**
+	 * 逻辑或
+	 */
+	protected static class Or extends Binary{
+		protected Or(Expression source,Node left,Node right) {
+			super(source, DataType.Boolean, left, right);
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getBoolean(provider));
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			return left.getBoolean(provider) || right.getBoolean(provider);
+		}
+	}
+
+	/**
+	 * 取负
+	 */
+	protected static class Negative extends Node{
+		protected final Node child;
+
+		protected Negative(Expression source,Node child) {
+			super(source, isNumeric(child.type) ? child.type : DataType.Void);
+			this.child = child;
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			switch (type){
+			case Long:
+				return new ExprValue(-child.getLong(provider));
+			case Double:
+				return new ExprValue(-child.getDouble(provider));
+			default:
+			}
+			ExprValue value = child.getValue(provider);
+			switch (value.getDataType()){
+				case Long:
+					return new ExprValue(-value.getLong());
+				case Double:
+					return new ExprValue(-value.getDouble());
+				default:
+			}
+			throw new FormulaException("Can not get a negative value of " + value.getDataType());
+		}
+
+		@Override
+		public long getLong(DataProvider provider){
+			return isNumeric(type) ? -child.getLong(provider) : super.getLong(provider);
+		}
+
+		@Override
+		public double getDouble(DataProvider provider){
+			return isNumeric(type) ? -child.getDouble(provider) : super.getDouble(provider);
+		}
+
+		@Override
+		protected Node[] children(){
+			return new Node[]{child};
+		}
+	}
+
+	/**
+	 * 逻辑非
+	 */
+	protected static class Not extends Node{
+		protected final Node child;
+
+		protected Not(Expression source,Node child) {
+			super(source, DataType.Boolean);
+			this.child = child;
+		}
+
+		@Override
+		public ExprValue getValue(DataProvider provider) {
+			return new ExprValue(getBoolean(provider));
+		}
+
+		@Override
+		public boolean getBoolean(DataProvider provider){
+			if (child.type == DataType.Boolean){
+				return !child.getBoolean(provider);
+			}
+			ExprValue value = child.getValue(provider);
+			if (value.getDataType() == DataType.Boolean){
+				return !value.getBoolean();
+			}
+			throw new FormulaException("Can not get a negative value of " + value.getDataType());
+		}
+
+		@Override
+		protected Node[] children(){
+			return new Node[]{child};
+		}
+	}
+}
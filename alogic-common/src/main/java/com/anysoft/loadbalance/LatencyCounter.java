@@ -0,0 +1,222 @@
+package com.anysoft.loadbalance;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 感知时延的LoadCounter
+ * 
+ * <p>
+ * 在{@link DefaultCounter}的基础上，无锁地统计：<br>
+ * - 在途调用数：被负载均衡选中时加1({@link #enter()})，计数时减1; <br>
+ * - 时延的EWMA：按时间衰减的指数加权平均，如果本次时延高于当前值，则直接取本次时延(peak)，
+ * 使得后端变慢时能够立即反应，变快时平滑下降; <br>
+ * - 错误分数：每次错误加1，按同样的时间常数衰减. <br>
+ * 
+ * <p>
+ * 在读取时延时同样按照距离上次更新的时间进行衰减，长时间没有被选中的节点的时延会逐渐回落，
+ * 从而重新获得被尝试的机会.
+ * 
+ * <p>
+ * 参数：<br>
+ * - loadbalance.decay:衰减的时间常数(ms)，缺省为10000 <br>
+ * - loadbalance.penalty:每个错误分数对应的开销倍数，缺省为4 <br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.86
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 增加exit，用于被选中之后没有发起调用时归还在途数 <br>
+ */
+public class LatencyCounter extends DefaultCounter {
+
+	/**
+	 * 缺省的衰减时间常数(ms)
+	 */
+	public static final double DFT_DECAY = 10000.0;
+
+	/**
+	 * 缺省的错误开销倍数
+	 */
+	public static final double DFT_PENALTY = 4.0;
+
+	/**
+	 * 衰减的时间常数(ms)
+	 * 
+	 * <p>
+	 * 不在声明时初始化，因为父类的构造函数中就会调用{@link #configure(Properties)}.
+	 */
+	protected double decay;
+
+	/**
+	 * 错误的开销倍数
+	 */
+	protected double penalty;
+
+	/**
+	 * 在途调用数
+	 */
+	protected AtomicInteger inflight = new AtomicInteger(0);
+
+	/**
+	 * 时延的EWMA(double的bits)
+	 */
+	protected AtomicLong ewma = new AtomicLong(Double.doubleToLongBits(0.0));
+
+	/**
+	 * 错误分数(double的bits)
+	 */
+	protected AtomicLong errors = new AtomicLong(Double.doubleToLongBits(0.0));
+
+	/**
+	 * 上次更新时间(ms)
+	 */
+	protected volatile long lastUpdateTime = System.currentTimeMillis();
+
+	public LatencyCounter(Properties p) {
+		super(p);
+	}
+
+	@Override
+	public void configure(Properties p) {
+		super.configure(p);
+		decay = PropertiesConstants.getDouble(p, "loadbalance.decay", DFT_DECAY);
+		penalty = PropertiesConstants.getDouble(p, "loadbalance.penalty", DFT_PENALTY);
+		if (decay <= 0){
+			decay = DFT_DECAY;
+		}
+	}
+
+	/**
+	 * 被选中，开始一次调用
+	 */
+	public void enter(){
+		inflight.incrementAndGet();
+	}
+
+	/**
+	 * 被选中之后没有发起调用，归还在途数
+	 * 
+	 * <p>
+	 * 只减少在途调用数，不更新时延和错误分数.
+	 * 
+	 * @since 1.6.11.87
+	 */
+	public void exit(){
+		int current;
+		do {
+			current = inflight.get();
+		}while (current > 0 && !inflight.compareAndSet(current, current - 1));
+	}
+
+	/**
+	 * 获取在途调用数
+	 * @return 在途调用数
+	 */
+	public int getInflight(){
+		return inflight.get();
+	}
+
+	/**
+	 * 获取当前时延的EWMA(已按时间衰减)
+	 * @return 时延
+	 */
+	public double getLatency(){
+		return Double.longBitsToDouble(ewma.get()) * weightOf(System.currentTimeMillis());
+	}
+
+	/**
+	 * 获取当前的错误分数(已按时间衰减)
+	 * @return 错误分数
+	 */
+	public double getErrorScore(){
+		return Double.longBitsToDouble(errors.get()) * weightOf(System.currentTimeMillis());
+	}
+
+	/**
+	 * 获取选择开销
+	 * 
+	 * <p>
+	 * 开销 = 时延 * (在途调用数 + 1) * (1 + 错误分数 * penalty)，越小越优先.
+	 * 尚无时延样本的节点，如果没有在途调用则开销为0(优先尝试)，否则为最大值(等待首个响应).
+	 * 
+	 * @return 开销
+	 */
+	public double getCost(){
+		long now = System.currentTimeMillis();
+		double w = weightOf(now);
+		double latency = Double.longBitsToDouble(ewma.get()) * w;
+		int pending = inflight.get();
+		if (latency <= 0){
+			return pending <= 0 ? 0 : Double.MAX_VALUE;
+		}
+		double errorScore = Double.longBitsToDouble(errors.get()) * w;
+		return latency * (pending + 1) * (1 + errorScore * penalty);
+	}
+
+	@Override
+	public void count(long dur, boolean error) {
+		super.count(dur, error);
+
+		int current;
+		do {
+			current = inflight.get();
+		}while (current > 0 && !inflight.compareAndSet(current, current - 1));
+
+		long now = System.currentTimeMillis();
+		double w = weightOf(now);
+		lastUpdateTime = now;
+
+		long old,value;
+		do {
+			old = ewma.get();
+			double latency = Double.longBitsToDouble(old);
+			double newLatency = dur > latency ? dur : latency * w + dur * (1 - w);
+			value = Double.doubleToLongBits(newLatency);
+		}while (!ewma.compareAndSet(old, value));
+
+		do {
+			old = errors.get();
+			double score = Double.longBitsToDouble(old) * w + (error ? 1 : 0);
+			value = Double.doubleToLongBits(score);
+		}while (!errors.compareAndSet(old, value));
+	}
+
+	/**
+	 * 计算距离上次更新的衰减系数
+	 * @param now 当前时间
+	 * @return 衰减系数
+	 */
+	protected double weightOf(long now){
+		long elapsed = now - lastUpdateTime;
+		return elapsed <= 0 ? 1.0 : Math.exp(-elapsed / decay);
+	}
+
+	@Override
+	public void report(Element xml) {
+		super.report(xml);
+		if (xml != null){
+			XmlTools.setInt(xml, "inflight", getInflight());
+			XmlTools.setDouble(xml, "latency", getLatency());
+			XmlTools.setDouble(xml, "errorScore", getErrorScore());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		super.report(json);
+		if (json != null){
+			JsonTools.setInt(json, "inflight", getInflight());
+			JsonTools.setDouble(json, "latency", getLatency());
+			JsonTools.setDouble(json, "errorScore", getErrorScore());
+		}
+	}
+}
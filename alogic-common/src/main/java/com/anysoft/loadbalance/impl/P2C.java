@@ -0,0 +1,88 @@
+package com.anysoft.loadbalance.impl;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.anysoft.loadbalance.AbstractLoadBalance;
+import com.anysoft.loadbalance.LatencyCounter;
+import com.anysoft.loadbalance.Load;
+import com.anysoft.loadbalance.LoadCounter;
+import com.anysoft.util.Properties;
+
+/**
+ * 基于Power of two choices的LoadBalance
+ * 
+ * <p>
+ * 每次随机选取两个负载，比较其开销，选择开销较小者.开销由{@link LatencyCounter}根据在途调用数、时延的EWMA
+ * 以及错误分数计算，并按权重折算.相比于在所有负载中选择最优者，随机两选一避免了所有调用同时涌向同一个负载，
+ * 同时又能避开慢的和出错的负载.
+ * 
+ * <p>
+ * 如果负载的Counter不是{@link LatencyCounter}，则以平均使用时长作为开销.
+ * 
+ * @author duanyy
+ * 
+ * @param <load>
+ * 
+ * @since 1.6.11.86
+ */
+public class P2C<load extends Load> extends AbstractLoadBalance<load> {
+
+	public P2C(Properties props){
+		super(props);
+	}
+
+	@Override
+	public load onSelect(String key, Properties props, List<load> loads) {
+		load found = null;
+		int size = loads.size();
+		if (size == 1){
+			found = loads.get(0);
+		}else if (size > 1){
+			ThreadLocalRandom r = ThreadLocalRandom.current();
+			int first = r.nextInt(size);
+			int second = r.nextInt(size - 1);
+			if (second >= first){
+				second ++;
+			}
+
+			load a = loads.get(first);
+			load b = loads.get(second);
+			double costA = getCost(a);
+			double costB = getCost(b);
+
+			if (costA < costB){
+				found = a;
+			}else if (costB < costA){
+				found = b;
+			}else{
+				found = r.nextBoolean() ? a : b;
+			}
+		}
+
+		if (found != null){
+			LoadCounter counter = found.getCounter(true);
+			if (counter instanceof LatencyCounter){
+				((LatencyCounter)counter).enter();
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * 计算负载的开销
+	 * @param l 负载
+	 * @return 开销
+	 */
+	protected double getCost(load l){
+		LoadCounter counter = l.getCounter(true);
+		double cost = 0;
+		if (counter instanceof LatencyCounter){
+			cost = ((LatencyCounter)counter).getCost();
+		}else if (counter != null){
+			cost = counter.getDuration();
+		}
+		int weight = l.getWeight();
+		return weight > 1 && cost < Double.MAX_VALUE ? cost / weight : cost;
+	}
+}
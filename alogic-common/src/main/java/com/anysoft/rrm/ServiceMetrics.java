@@ -11,11 +11,15 @@ import com.alogic.metrics.Fragment.Method;
 import com.alogic.metrics.impl.DefaultFragment;
 import com.alogic.metrics.stream.MetricsCollector;
 import com.anysoft.rrm.RRData.Abstract;
+import com.anysoft.util.Histogram;
 
 /**
  * 服务指标
  * @author yyduan
  * @since 1.6.11.4 
+ * 
+ * @version 1.6.11.75 [20181020 duanyy] <br>
+ * - 可选地统计调用时间的分布，输出p50/p90/p99/p999 <br>
  */
 public class ServiceMetrics extends Abstract{
 
@@ -43,14 +47,60 @@ public class ServiceMetrics extends Abstract{
 	 * 最少调用时间
 	 */
 	protected long durationMin = -1;
+	
+	/**
+	 * 是否统计调用时间的分布
+	 */
+	protected boolean percentiles = false;
+	
+	/**
+	 * 调用时间的分布，在合并时才创建，单次调用的片段不创建
+	 */
+	protected Histogram histogram = null;
 
 	public ServiceMetrics(String metricsId) {
 		super(metricsId);
 	}	
 	
+	/**
+	 * 创建直方图
+	 * @return 直方图
+	 */
+	protected Histogram newHistogram(){
+		//精度为12.5%，最大值约为1小时(ms)，以减少RRM中每个数据槽位的内存
+		return new Histogram(4,22);
+	}
+	
+	/**
+	 * 获取调用时间的分布
+	 * @return 直方图，如果未开启或者没有数据，返回null
+	 */
+	public Histogram getHistogram(){
+		if (histogram == null && percentiles && totalTimes > 0){
+			histogram = newHistogram();
+			histogram.record(durationAvg, totalTimes);
+		}
+		return histogram;
+	}
+	
 	public void incr(RRData fragment) {
 		if (fragment instanceof ServiceMetrics) {
 			ServiceMetrics sm = (ServiceMetrics) fragment;
+			
+			if (sm.percentiles){
+				percentiles = true;
+			}
+			if (percentiles){
+				Histogram mine = getHistogram();
+				if (mine == null){
+					histogram = mine = newHistogram();
+				}
+				if (sm.histogram != null){
+					mine.merge(sm.histogram);
+				}else{
+					mine.record(sm.durationAvg, sm.totalTimes);
+				}
+			}
 
 			if (durationAvg < 0) {
 				durationAvg = sm.durationAvg;
@@ -87,6 +137,13 @@ public class ServiceMetrics extends Abstract{
 			xml.setAttribute("avg", String.valueOf(durationAvg));
 			xml.setAttribute("max", String.valueOf(durationMax));
 			xml.setAttribute("min", String.valueOf(durationMin));
+			
+			Histogram h = getHistogram();
+			if (h != null){
+				for (int i = 0 ; i < Histogram.PERCENTILES.length ; i ++){
+					xml.setAttribute(Histogram.PERCENTILE_NAMES[i], String.valueOf(h.getPercentile(Histogram.PERCENTILES[i])));
+				}
+			}
 		}
 	}
 
@@ -97,6 +154,13 @@ public class ServiceMetrics extends Abstract{
 			json.put("avg", durationAvg);
 			json.put("max", durationMax);
 			json.put("min", durationMin);
+			
+			Histogram h = getHistogram();
+			if (h != null){
+				for (int i = 0 ; i < Histogram.PERCENTILES.length ; i ++){
+					json.put(Histogram.PERCENTILE_NAMES[i], h.getPercentile(Histogram.PERCENTILES[i]));
+				}
+			}
 		}
 	}
 
@@ -109,6 +173,19 @@ public class ServiceMetrics extends Abstract{
 		durationMax = duration;
 		durationMin = duration;
 	}
+	
+	/**
+	 * 计数
+	 * @param duration 调用时间
+	 * @param error 是否错误
+	 * @param withPercentiles 是否统计调用时间的分布
+	 * 
+	 * @since 1.6.11.75
+	 */
+	public void count(long duration, boolean error,boolean withPercentiles) {
+		count(duration,error);
+		percentiles = withPercentiles;
+	}
 
 	public RRData copy() {
 		ServiceMetrics other = new ServiceMetrics(id());
@@ -118,6 +195,10 @@ public class ServiceMetrics extends Abstract{
 		other.durationMin = durationMin;
 		other.totalTimes = totalTimes;
 		other.errorTimes = errorTimes;
+		other.percentiles = percentiles;
+		if (histogram != null){
+			other.histogram = histogram.copy();
+		}
 		return other;
 	}
 	
@@ -136,6 +217,14 @@ public class ServiceMetrics extends Abstract{
 				meas.set("avg", durationAvg,Method.avg);
 				meas.set("tms", totalTimes,Method.sum);
 				meas.set("err", errorTimes,Method.sum);
+				
+				Histogram h = getHistogram();
+				if (h != null){
+					//分位数无法准确合并，取最大值
+					for (int i = 0 ; i < Histogram.PERCENTILES.length ; i ++){
+						meas.set(Histogram.PERCENTILE_NAMES[i], h.getPercentile(Histogram.PERCENTILES[i]),Method.max);
+					}
+				}
 			}
 			collector.metricsIncr(f);			
 		}
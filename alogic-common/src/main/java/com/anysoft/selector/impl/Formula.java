@@ -2,6 +2,7 @@ package com.anysoft.selector.impl;
 
 import com.anysoft.formula.DataProvider;
 import com.anysoft.formula.DefaultFunctionHelper;
+import com.anysoft.formula.ExprCompiler;
 import com.anysoft.formula.Expression;
 import com.anysoft.formula.Parser;
 import com.anysoft.util.Properties;
@@ -15,6 +16,9 @@ import com.anysoft.selector.Selector;
  * @since 1.5.2
  * @version 1.6.11.1 [20171215 duanyy] <br>
  * - 增加final属性 <br>
+ * 
+ * @version 1.6.11.67 [20181012 duanyy] <br>
+ * - 缺省采用编译后的公式进行计算，可通过compiled属性关闭 <br>
  */
 public class Formula extends Selector {
 
@@ -25,8 +29,12 @@ public class Formula extends Selector {
 	public void configure(Properties p){
 		super.configure(p);
 		formula = PropertiesConstants.getString(p, "formula", formula,true);
-		Parser parser = new Parser(new DefaultFunctionHelper(null));
-		expr = parser.parse(formula);
+		if (PropertiesConstants.getBoolean(p, "compiled", true)){
+			expr = ExprCompiler.compile(formula);
+		}else{
+			Parser parser = new Parser(new DefaultFunctionHelper(null));
+			expr = parser.parse(formula);
+		}
 	}
 
 	@Override
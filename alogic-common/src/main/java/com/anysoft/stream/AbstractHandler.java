@@ -8,6 +8,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -18,6 +23,7 @@ import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.Reportable;
+import com.anysoft.util.RingBuffer;
 import com.anysoft.util.XmlElementProperties;
 import com.anysoft.util.XmlTools;
 
@@ -51,6 +57,10 @@ import com.anysoft.util.XmlTools;
  * 
  * @version 1.6.11.3 [20171219 duanyy] <br>
  * - 修改异步处理的条件，只有数据和handler同时允许异步处理的时候才异步处理 <br>
+ * 
+ * @version 1.6.11.77 [20181022 duanyy] <br>
+ * - 增加基于环形缓冲区的异步工作者{@link RingWorker}，通过async.mode=ring选用，缺省仍为原有的队列模式(queue) <br>
+ * - RingWorker的flush保持同步语义，close在async.closeTimeout之内等待缓冲区处理完毕 <br>
  */
 public abstract class AbstractHandler<data extends Flowable> implements Handler<data> {
 	
@@ -110,7 +120,12 @@ public abstract class AbstractHandler<data extends Flowable> implements Handler<
 		
 		async = PropertiesConstants.getBoolean(p,"async",async);
 		if (async){
-			asyncWorker = new Worker<data>(this,p);
+			String mode = PropertiesConstants.getString(p,"async.mode","queue",true);
+			if ("ring".equals(mode)){
+				asyncWorker = new RingWorker<data>(this,p);
+			}else{
+				asyncWorker = new Worker<data>(this,p);
+			}
 		}
 		
 		onConfigure(_e, p);
@@ -353,10 +368,20 @@ public abstract class AbstractHandler<data extends Flowable> implements Handler<
 		
 		private boolean stopped = false;
 		
-		private boolean abandonWhenFull = true;
+		protected boolean abandonWhenFull = true;
 		
 		private Thread thread = null;
 		
+		/**
+		 * 供子类使用的构造函数，不创建队列和线程
+		 * @param _handler 处理器
+		 * 
+		 * @since 1.6.11.77
+		 */
+		protected Worker(AbstractHandler<data> _handler){
+			handler = _handler;
+		}
+		
 		public Worker(AbstractHandler<data> _handler, Properties p){
 			handler = _handler;
 			interval = PropertiesConstants.getLong(p,"async.interval", interval,true);
@@ -435,6 +460,442 @@ public abstract class AbstractHandler<data extends Flowable> implements Handler<
 				thread.interrupt();
 			}
 		}
-	}	
-	
+	}
+
+	/**
+	 * 基于环形缓冲区的异步工作者
+	 * 
+	 * <p>
+	 * 数据放入预先分配的环形缓冲区，由消费线程批量取出处理，无需等待下一个周期；
+	 * onFlush仍然按照async.interval的周期调用(期间有数据处理过才调用).
+	 * 
+	 * <p>
+	 * 和队列模式一样，外部调用flush时是同步的：唤醒消费者处理完缓冲区中已有的数据并调用onFlush之后才返回；
+	 * close时等待消费者处理完缓冲区中剩余的数据.
+	 * 
+	 * <p>
+	 * 支持下列参数:<br>
+	 * - async.maxQueueLength:缓冲区容量，向上取整为2的幂次，缺省为1000 <br>
+	 * - async.abandonWhenFull:缓冲区满时是否抛弃数据，否则在调用者线程中处理最早的数据，缺省为true <br>
+	 * - async.batch:每次最多连续处理的数据个数，缺省为256 <br>
+	 * - async.consumers:消费线程个数，缺省为1，多于1个时onHandle必须是线程安全的 <br>
+	 * - async.wait:空闲时的等待策略，可选park,spin,timed，缺省为park <br>
+	 * - async.spins:spin策略下进入park之前的自旋次数，缺省为100 <br>
+	 * - async.waitTime:timed策略下每次休眠的时间(ms)，缺省为10 <br>
+	 * - async.closeTimeout:close时等待消费者处理完剩余数据的最长时间(ms)，缺省为10000 <br>
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.77
+	 */
+	public static class RingWorker<data extends Flowable> extends Worker<data>{
+		
+		/**
+		 * 环形缓冲区
+		 */
+		protected RingBuffer<data> ring = null;
+		
+		/**
+		 * 每次最多连续处理的数据个数
+		 */
+		protected int batch = 256;
+		
+		/**
+		 * 等待策略
+		 */
+		protected String wait = "park";
+		
+		/**
+		 * 自旋次数
+		 */
+		protected int spins = 100;
+		
+		/**
+		 * timed策略下的休眠时间(ms)
+		 */
+		protected long waitTime = 10;
+		
+		/**
+		 * close时等待消费者的最长时间(ms)
+		 */
+		protected long closeTimeout = 10000L;
+		
+		/**
+		 * 消费者
+		 */
+		protected List<Consumer> consumers = null;
+		
+		/**
+		 * 正在park的消费者个数
+		 */
+		protected final AtomicInteger sleepers = new AtomicInteger(0);
+		
+		/**
+		 * 写出锁，同一时间只有一个消费者调用onFlush
+		 */
+		protected final ReentrantLock flushLock = new ReentrantLock();
+		
+		/**
+		 * 上次写出之后是否处理过数据
+		 */
+		protected volatile boolean dirty = false;
+		
+		/**
+		 * 是否有外部的写出请求
+		 */
+		protected volatile boolean flushRequested = false;
+		
+		/**
+		 * 外部写出请求的序号
+		 */
+		protected final AtomicLong flushRequests = new AtomicLong(0);
+		
+		/**
+		 * 已经完成的写出请求的序号
+		 */
+		protected long flushCompleted = 0;
+		
+		/**
+		 * 等待写出完成的监视器
+		 */
+		protected final Object flushMonitor = new Object();
+		
+		/**
+		 * 上次写出的时间
+		 */
+		protected volatile long lastFlushTime = System.currentTimeMillis();
+		
+		protected volatile boolean stopped = false;
+		
+		protected final AtomicLong offered = new AtomicLong(0);
+		protected final AtomicLong dropped = new AtomicLong(0);
+		protected final AtomicLong callerRuns = new AtomicLong(0);
+		protected final AtomicLong handled = new AtomicLong(0);
+		protected final AtomicLong flushes = new AtomicLong(0);
+		
+		public RingWorker(AbstractHandler<data> _handler, Properties p){
+			super(_handler);
+			interval = PropertiesConstants.getLong(p,"async.interval", interval,true);
+			interval = interval <= 0 ? 1000 : interval;
+			maxQueueLength = PropertiesConstants.getInt(p,"async.maxQueueLength", maxQueueLength,true);
+			abandonWhenFull = PropertiesConstants.getBoolean(p,"async.abandonWhenFull", abandonWhenFull,true);
+			batch = PropertiesConstants.getInt(p,"async.batch", batch,true);
+			batch = batch <= 0 ? 1 : batch;
+			wait = PropertiesConstants.getString(p,"async.wait", wait,true);
+			spins = PropertiesConstants.getInt(p,"async.spins", spins,true);
+			waitTime = PropertiesConstants.getLong(p,"async.waitTime", waitTime,true);
+			waitTime = waitTime <= 0 ? 1 : waitTime;
+			closeTimeout = PropertiesConstants.getLong(p,"async.closeTimeout", closeTimeout,true);
+			
+			ring = new RingBuffer<data>(maxQueueLength);
+			int consumerCnt = PropertiesConstants.getInt(p,"async.consumers", 1,true);
+			consumers = new ArrayList<Consumer>();
+			String name = "stream-" + (StringUtils.isEmpty(_handler.getId()) ? _handler.getClass().getSimpleName() : _handler.getId());
+			for (int i = 0 ; i < Math.max(1, consumerCnt) ; i ++){
+				Consumer c = new Consumer();
+				c.thread = new Thread(c, name + "-" + i);
+				c.thread.setDaemon(true);
+				consumers.add(c);
+			}
+			for (Consumer c:consumers){
+				c.thread.start();
+			}
+		}
+		
+		@Override
+		public void run() {
+			// 由各个消费者执行
+		}
+		
+		@Override
+		public void handle(data _data,long timestamp){
+			offered.incrementAndGet();
+			while (!ring.offer(_data)){
+				if (abandonWhenFull){
+					//缓冲区满的时候，抛弃掉
+					dropped.incrementAndGet();
+					return;
+				}
+				//缓冲区满的时候，在调用者线程中处理最早的数据
+				data item = ring.poll();
+				if (item != null){
+					callerRuns.incrementAndGet();
+					handler.onHandle(item, timestamp);
+					handled.incrementAndGet();
+					dirty = true;
+				}
+			}
+			if (sleepers.get() > 0){
+				signal(false);
+			}
+		}
+		
+		@Override
+		public void flush(long timestamp){
+			if (isConsumer(Thread.currentThread())){
+				//在消费者线程中(例如onHandle中)调用，直接写出，避免等待自己
+				drain(Integer.MAX_VALUE);
+				doFlush(System.currentTimeMillis());
+				return;
+			}
+			long request = flushRequests.incrementAndGet();
+			flushRequested = true;
+			signal(true);
+			synchronized (flushMonitor){
+				while (flushCompleted < request && isAlive()){
+					try {
+						flushMonitor.wait(interval);
+					}catch (InterruptedException ex){
+						Thread.currentThread().interrupt();
+						return;
+					}
+					signal(true);
+				}
+			}
+		}
+		
+		@Override
+		public void close(){
+			stopped = true;
+			signal(true);
+			long deadline = System.currentTimeMillis() + closeTimeout;
+			for (Consumer c:consumers){
+				if (c.thread == Thread.currentThread()){
+					continue;
+				}
+				try {
+					//等待消费者处理完缓冲区中剩余的数据，最多等待closeTimeout
+					long remain = deadline - System.currentTimeMillis();
+					if (remain > 0){
+						c.thread.join(remain);
+					}
+					if (c.thread.isAlive()){
+						LOG.warn(String.format("Consumer %s is not stopped in %d ms,%d items are left in the ring.",
+								c.thread.getName(),closeTimeout,ring.size()));
+					}
+				}catch (InterruptedException ex){
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * 是否还有存活的消费者
+		 * @return true|false
+		 */
+		protected boolean isAlive(){
+			for (Consumer c:consumers){
+				if (c.thread.isAlive()){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * 指定线程是否是消费者线程
+		 * @param thread 线程
+		 * @return true|false
+		 */
+		protected boolean isConsumer(Thread thread){
+			for (Consumer c:consumers){
+				if (c.thread == thread){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * 唤醒正在park的消费者
+		 * @param all 是否唤醒全部消费者
+		 */
+		protected void signal(boolean all){
+			for (Consumer c:consumers){
+				if (c.waiting){
+					LockSupport.unpark(c.thread);
+					if (!all){
+						return;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * 连续处理缓冲区中的数据
+		 * @param max 最多处理的个数
+		 * @return 实际处理的个数
+		 */
+		protected int drain(int max){
+			int cnt = 0;
+			data item = null;
+			while (cnt < max && (item = ring.poll()) != null){
+				try {
+					handler.onHandle(item, System.currentTimeMillis());
+				}catch (Exception ex){
+					LOG.error("Failed to handle data",ex);
+				}
+				cnt ++;
+			}
+			if (cnt > 0){
+				handled.addAndGet(cnt);
+				dirty = true;
+			}
+			return cnt;
+		}
+		
+		/**
+		 * 调用onFlush
+		 * @param now 当前时间
+		 * @param force 是否忽略时间间隔
+		 */
+		protected void flushIfNeeded(long now,boolean force){
+			if (!force && now - lastFlushTime < interval){
+				return;
+			}
+			if (flushLock.tryLock()){
+				try {
+					lastFlushTime = now;
+					if (dirty){
+						dirty = false;
+						flushes.incrementAndGet();
+						handler.onFlush(now);
+					}
+				}catch (Exception ex){
+					LOG.error("Failed to flush data",ex);
+				}finally{
+					flushLock.unlock();
+				}
+			}
+		}
+		
+		/**
+		 * 调用onFlush，如果其他消费者正在写出，等待其完成之后再写出
+		 * @param now 当前时间
+		 */
+		protected void doFlush(long now){
+			flushLock.lock();
+			try {
+				lastFlushTime = now;
+				if (dirty){
+					dirty = false;
+					flushes.incrementAndGet();
+					handler.onFlush(now);
+				}
+			}catch (Exception ex){
+				LOG.error("Failed to flush data",ex);
+			}finally{
+				flushLock.unlock();
+			}
+		}
+		
+		/**
+		 * 处理外部的写出请求，并通知等待者
+		 * @param now 当前时间
+		 */
+		protected void completeFlush(long now){
+			flushRequested = false;
+			long request = flushRequests.get();
+			doFlush(now);
+			synchronized (flushMonitor){
+				if (request > flushCompleted){
+					flushCompleted = request;
+				}
+				flushMonitor.notifyAll();
+			}
+		}
+		
+		/**
+		 * 空闲时等待
+		 * @param c 当前消费者
+		 * @param idle 连续空闲的次数
+		 */
+		protected void await(Consumer c,int idle){
+			long timeout = Math.max(1, lastFlushTime + interval - System.currentTimeMillis());
+			if ("timed".equals(wait)){
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(timeout, waitTime)));
+				return;
+			}
+			if ("spin".equals(wait) && idle < spins){
+				Thread.yield();
+				return;
+			}
+			c.waiting = true;
+			sleepers.incrementAndGet();
+			try {
+				if (ring.isEmpty() && !stopped && !flushRequested){
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(timeout));
+				}
+			}finally{
+				sleepers.decrementAndGet();
+				c.waiting = false;
+			}
+		}
+		
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				xml.setAttribute("mode", "ring");
+				xml.setAttribute("interval", String.valueOf(interval));
+				xml.setAttribute("maxQueueLength", String.valueOf(ring.capacity()));
+				xml.setAttribute("currentQueueLength", String.valueOf(ring.size()));
+				xml.setAttribute("consumers", String.valueOf(consumers.size()));
+				xml.setAttribute("wait", wait);
+				XmlTools.setLong(xml, "offered", offered.get());
+				XmlTools.setLong(xml, "dropped", dropped.get());
+				XmlTools.setLong(xml, "callerRuns", callerRuns.get());
+				XmlTools.setLong(xml, "handled", handled.get());
+				XmlTools.setLong(xml, "flushes", flushes.get());
+			}
+		}
+		
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				json.put("mode", "ring");
+				json.put("interval", interval);
+				json.put("maxQueueLength", String.valueOf(ring.capacity()));
+				json.put("currentQueueLength", String.valueOf(ring.size()));
+				json.put("consumers", consumers.size());
+				json.put("wait", wait);
+				JsonTools.setLong(json, "offered", offered.get());
+				JsonTools.setLong(json, "dropped", dropped.get());
+				JsonTools.setLong(json, "callerRuns", callerRuns.get());
+				JsonTools.setLong(json, "handled", handled.get());
+				JsonTools.setLong(json, "flushes", flushes.get());
+			}
+		}
+		
+		/**
+		 * 消费者
+		 */
+		protected class Consumer implements Runnable{
+			protected Thread thread = null;
+			protected volatile boolean waiting = false;
+			
+			@Override
+			public void run() {
+				int idle = 0;
+				while (true){
+					int cnt = drain(batch);
+					long now = System.currentTimeMillis();
+					if (flushRequested && ring.isEmpty()){
+						completeFlush(now);
+					}else{
+						flushIfNeeded(now,false);
+					}
+					if (cnt > 0){
+						idle = 0;
+						continue;
+					}
+					if (stopped){
+						drain(Integer.MAX_VALUE);
+						completeFlush(System.currentTimeMillis());
+						break;
+					}
+					await(this,idle ++);
+				}
+			}
+		}
+	}
 }
@@ -1,14 +1,19 @@
 package com.anysoft.stream;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import com.anysoft.util.DefaultProperties;
 import com.anysoft.util.Factory;
 import com.anysoft.util.IOTools;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.XmlTools;
@@ -16,8 +21,22 @@ import com.anysoft.util.XmlTools;
 /**
  * 分发器
  * 
+ * <p>
+ * 按照分发键(key参数)选择子处理器，分发键可以是:<br>
+ * - $id:数据的id，缺省值 <br>
+ * - $dim:数据的统计维度 <br>
+ * - $hash:数据对象的hash值，不保证相同业务键的顺序 <br>
+ * - 其他:数据的变量值 <br>
+ * 
+ * <p>
+ * 分发键通过一致性hash映射到分片(每个分片有vnodes个虚节点)，增减分片时只有少量的分发键改变分片.
+ * 
+ * <p>
+ * 当shard.async为true(缺省)时，每个分片有一个独立的单消费者异步工作者，同一分片内的数据按照到达的顺序处理，
+ * 各分片在不同的线程中并行.分片的异步参数通过shard.前缀配置，例如shard.maxQueueLength,shard.wait等.
+ * 
  * @author duanyy
- *
+ * 
  * @param <data>
  * @since 1.4.0
  * 
@@ -26,19 +45,58 @@ import com.anysoft.util.XmlTools;
  * 
  * @version 1.6.7.9 [20170201 duanyy] <br>
  * - 采用SLF4j日志框架输出日志 <br>
+ * 
+ * @version 1.6.11.78 [20181023 duanyy] <br>
+ * - 修正选择子处理器时运算符优先级的问题 <br>
+ * - 按照可配置的分发键进行一致性hash分片，相同分发键的数据总是分发到同一个子处理器 <br>
+ * - 每个分片可以有独立的异步工作者，保证相同分发键的数据按顺序处理 <br>
+ * - 输出每个分片的分发个数，队列长度以及倾斜度 <br>
  */
 public class DispatchHandler<data extends Flowable> extends AbstractHandler<data> {
 	protected Handler<data>[] children = null;
 	
 	protected int threadCnt = 10;
 	
+	/**
+	 * 分发键
+	 */
+	protected String key = "$id";
+	
+	/**
+	 * 每个分片的虚节点个数
+	 */
+	protected int vnodes = 64;
+	
+	/**
+	 * 虚节点的hash值(升序)
+	 */
+	protected long[] ring = null;
+	
+	/**
+	 * 虚节点所对应的分片
+	 */
+	protected int[] owners = null;
+	
+	/**
+	 * 分片的异步工作者
+	 */
+	protected Shard<data>[] shards = null;
+	
+	/**
+	 * 每个分片的分发个数
+	 */
+	protected AtomicLongArray dispatched = null;
 	
 	protected void onHandle(data _data,long timestamp) {
 		if (children != null){
-			int idx = _data.hashCode() & Integer.MAX_VALUE % threadCnt;
-			
-			if (children[idx] != null){
-				children[idx].handle(_data,timestamp);
+			int idx = shardOf(_data);
+			dispatched.incrementAndGet(idx);
+			if (shards != null && shards[idx] != null){
+				shards[idx].handle(_data, timestamp);
+			}else{
+				if (children[idx] != null){
+					children[idx].handle(_data,timestamp);
+				}
 			}
 		}
 	}
@@ -46,14 +104,104 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 	
 	protected void onFlush(long timestamp) {
 		if (children != null){
-			for (Handler<data> _handler:children){
-				if (_handler != null){
-					_handler.flush(timestamp);
+			for (int i = 0 ; i < children.length ; i ++){
+				if (shards != null && shards[i] != null){
+					shards[i].flush(timestamp);
+				}else{
+					if (children[i] != null){
+						children[i].flush(timestamp);
+					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * 计算数据所在的分片
+	 * @param _data 数据
+	 * @return 分片序号
+	 * 
+	 * @since 1.6.11.78
+	 */
+	protected int shardOf(data _data){
+		if (threadCnt <= 1){
+			return 0;
+		}
+		if ("$hash".equals(key)){
+			return (_data.hashCode() & Integer.MAX_VALUE) % threadCnt;
+		}
+		long h = hash(getKey(_data));
+		int low = 0,high = ring.length - 1;
+		if (h > ring[high]){
+			return owners[0];
+		}
+		while (low < high){
+			int mid = (low + high) >>> 1;
+			if (ring[mid] < h){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return owners[low];
+	}
+	
+	/**
+	 * 获取数据的分发键
+	 * @param _data 数据
+	 * @return 分发键
+	 * 
+	 * @since 1.6.11.78
+	 */
+	protected String getKey(data _data){
+		String value = null;
+		if ("$id".equals(key)){
+			value = _data.id();
+		}else{
+			if ("$dim".equals(key)){
+				value = _data.getStatsDimesion();
+			}else{
+				value = _data.getValue(key, _data, "");
+			}
+		}
+		return value == null ? "" : value;
+	}
+	
+	/**
+	 * 计算字符串的64位hash值(FNV-1a)
+	 * @param value 字符串
+	 * @return hash值
+	 */
+	protected static long hash(String value){
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0 ; i < value.length() ; i ++){
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	/**
+	 * 计算分片的倾斜度，即最大分发个数和平均分发个数之比
+	 * @return 倾斜度
+	 * 
+	 * @since 1.6.11.78
+	 */
+	public double getSkew(){
+		if (dispatched == null || dispatched.length() <= 0){
+			return 0.0;
+		}
+		long total = 0,max = 0;
+		for (int i = 0 ; i < dispatched.length() ; i ++){
+			long value = dispatched.get(i);
+			total += value;
+			max = Math.max(max, value);
+		}
+		return total <= 0 ? 0.0 : (double)max * dispatched.length() / total;
+	}
 	
 	public void report(Element root){
 		super.report(root);
@@ -61,10 +209,22 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 		if (children != null){
 			Document doc = root.getOwnerDocument();
 			
-			for (Handler<data> _handler:children){
+			XmlTools.setString(root, "key", key);
+			XmlTools.setString(root, "skew", String.format("%.4f", getSkew()));
+			for (int i = 0 ; i < children.length ; i ++){
+				Handler<data> _handler = children[i];
 				if (_handler != null){
 					Element newHandler = doc.createElement(getHandlerType());
 					_handler.report(newHandler);
+					
+					Element shard = doc.createElement("shard");
+					XmlTools.setInt(shard, "index", i);
+					XmlTools.setLong(shard, "dispatched", dispatched.get(i));
+					if (shards != null && shards[i] != null){
+						shards[i].report(shard);
+					}
+					newHandler.appendChild(shard);
+					
 					root.appendChild(newHandler);
 				}
 			}
@@ -78,10 +238,22 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 		if (children != null){
 			List<Object> array = new ArrayList<Object>(children.length);
 			
-			for (Handler<data> _handler:children){
+			JsonTools.setString(json, "key", key);
+			JsonTools.setDouble(json, "skew", getSkew());
+			for (int i = 0 ; i < children.length ; i ++){
+				Handler<data> _handler = children[i];
 				if (_handler != null){
 					Map<String,Object> map = new HashMap<String,Object>();
 					_handler.report(map);
+					
+					Map<String,Object> shard = new HashMap<String,Object>();
+					JsonTools.setInt(shard, "index", i);
+					JsonTools.setLong(shard, "dispatched", dispatched.get(i));
+					if (shards != null && shards[i] != null){
+						shards[i].report(shard);
+					}
+					map.put("shard", shard);
+					
 					array.add(map);
 				}
 			}
@@ -93,6 +265,14 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 	public void close() {
 		super.close();
 		
+		if (shards != null){
+			for (Shard<data> shard:shards){
+				if (shard != null){
+					shard.close();
+				}
+			}
+		}
+		
 		if (children != null){
 			for (Handler<data> _handler:children){
 				if (_handler != null){
@@ -103,15 +283,18 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 	}	
 
 	@SuppressWarnings("unchecked")
-	
 	protected void onConfigure(Element e, Properties p) {
 		threadCnt = PropertiesConstants.getInt(p, "threadCnt", threadCnt,true);
 		threadCnt = threadCnt <= 0 ? 10 : threadCnt;
+		key = PropertiesConstants.getString(p, "key", key,true);
+		vnodes = PropertiesConstants.getInt(p, "vnodes", vnodes,true);
+		vnodes = vnodes <= 0 ? 64 : vnodes;
 		
 		Element template = XmlTools.getFirstElementByPath(e, getHandlerType());
 		
 		if (template != null){
-			children = new Handler[threadCnt];
+			children = (Handler<data>[]) new Handler<?>[threadCnt];
+			dispatched = new AtomicLongArray(threadCnt);
 			
 			Properties child = new DefaultProperties("Default",p);
 			
@@ -126,7 +309,103 @@ public class DispatchHandler<data extends Flowable> extends AbstractHandler<data
 					LOG.error("Can not create handler instance.",ex);
 				}
 			}
+			
+			buildRing();
+			
+			if (PropertiesConstants.getBoolean(p, "shard.async", true, true)){
+				Properties shardProps = new DefaultProperties("Default",p);
+				for (String name:SHARD_PARAMETERS){
+					String value = PropertiesConstants.getString(p, "shard." + name, "", true);
+					if (StringUtils.isNotEmpty(value)){
+						shardProps.SetValue("async." + name, value);
+					}
+				}
+				//每个分片只有一个消费者，以保证顺序
+				shardProps.SetValue("async.consumers", "1");
+				
+				shards = (Shard<data>[]) new Shard<?>[threadCnt];
+				for (int i = 0 ; i < threadCnt ; i ++){
+					if (children[i] != null){
+						shards[i] = new Shard<data>(getId() + "-" + i, children[i], shardProps);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 可以通过shard.前缀配置的异步参数
+	 */
+	protected static final String[] SHARD_PARAMETERS = {
+		"interval","maxQueueLength","abandonWhenFull","batch","wait","spins","waitTime"
+	};
+	
+	/**
+	 * 构建一致性hash环
+	 */
+	protected void buildRing(){
+		int size = threadCnt * vnodes;
+		long[] hashes = new long[size];
+		for (int i = 0 ; i < threadCnt ; i ++){
+			for (int j = 0 ; j < vnodes ; j ++){
+				hashes[i * vnodes + j] = hash("shard-" + i + "-vnode-" + j);
+			}
 		}
+		long[] sorted = hashes.clone();
+		Arrays.sort(sorted);
+		int[] found = new int[size];
+		for (int i = 0 ; i < size ; i ++){
+			found[Arrays.binarySearch(sorted, hashes[i])] = i / vnodes;
+		}
+		ring = sorted;
+		owners = found;
 	}
 	
+	/**
+	 * 分片
+	 * 
+	 * <p>
+	 * 将子处理器包装为带有异步工作者的处理器.
+	 * 
+	 * @since 1.6.11.78
+	 */
+	public static class Shard<data extends Flowable> extends AbstractHandler<data>{
+		protected Handler<data> child = null;
+		
+		public Shard(String id,Handler<data> child,Properties p){
+			this.id = id;
+			this.child = child;
+			this.async = true;
+			this.asyncWorker = new RingWorker<data>(this, p);
+		}
+		
+		@Override
+		protected void onHandle(data _data, long timestamp) {
+			child.handle(_data, timestamp);
+		}
+
+		@Override
+		protected void onFlush(long timestamp) {
+			child.flush(timestamp);
+		}
+
+		@Override
+		protected void onConfigure(Element e, Properties p) {
+			// nothing to do
+		}
+		
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				asyncWorker.report(xml);
+			}
+		}
+		
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				asyncWorker.report(json);
+			}
+		}
+	}
 }
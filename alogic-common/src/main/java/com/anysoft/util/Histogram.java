@@ -0,0 +1,274 @@
+package com.anysoft.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.w3c.dom.Element;
+
+/**
+ * 直方图
+ * 
+ * <p>
+ * 采用对数-线性分桶(类似HdrHistogram)：小于2^subBits的数值每个值一个桶；
+ * 其余的数值按2的幂次分段，每段再线性划分为2^(subBits-1)个桶，相对误差不超过2^(1-subBits).
+ * 超过2^maxBits-1的数值计入最后一个桶.
+ * 
+ * <p>
+ * 桶在构造时分配，记录时只做原子加法，不分配内存，可以在多个线程中并发记录.
+ * 
+ * @author duanyy
+ * @since 1.6.11.75
+ */
+public class Histogram implements Reportable{
+
+	/**
+	 * 常用的分位点
+	 */
+	public static final double[] PERCENTILES = {0.5,0.9,0.99,0.999};
+
+	/**
+	 * 常用分位点的名称
+	 */
+	public static final String[] PERCENTILE_NAMES = {"p50","p90","p99","p999"};
+
+	/**
+	 * 线性区的位数
+	 */
+	protected final int subBits;
+
+	/**
+	 * 每一段的桶数
+	 */
+	protected final int half;
+
+	/**
+	 * 可区分的最大值
+	 */
+	protected final long maxValue;
+
+	/**
+	 * 桶
+	 */
+	protected final AtomicLongArray buckets;
+
+	/**
+	 * 记录次数
+	 */
+	protected final AtomicLong count = new AtomicLong(0);
+
+	/**
+	 * 数值之和
+	 */
+	protected final AtomicLong sum = new AtomicLong(0);
+
+	/**
+	 * 最小值
+	 */
+	protected final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+	/**
+	 * 最大值
+	 */
+	protected final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * 构造函数，相对误差不超过6.25%，可区分的最大值为2^40-1(以纳秒计约为18分钟)
+	 */
+	public Histogram(){
+		this(5,40);
+	}
+
+	/**
+	 * 构造函数
+	 * @param subBits 线性区的位数，决定精度，取值[2,16]
+	 * @param maxBits 可区分的最大值的位数，取值[subBits,62]
+	 */
+	public Histogram(int subBits,int maxBits){
+		this.subBits = Math.max(2, Math.min(16, subBits));
+		this.half = 1 << (this.subBits - 1);
+		this.maxValue = (1L << Math.max(this.subBits, Math.min(62, maxBits))) - 1;
+		this.buckets = new AtomicLongArray(indexOf(maxValue) + 1);
+	}
+
+	/**
+	 * 记录一个数值
+	 * @param value 数值
+	 */
+	public void record(long value){
+		record(value,1);
+	}
+
+	/**
+	 * 记录多次相同的数值
+	 * @param value 数值
+	 * @param times 次数
+	 */
+	public void record(long value,long times){
+		if (times <= 0){
+			return;
+		}
+		long v = value < 0 ? 0 : value;
+		buckets.addAndGet(indexOf(v), times);
+		count.addAndGet(times);
+		sum.addAndGet(v * times);
+		updateMin(v);
+		updateMax(v);
+	}
+
+	/**
+	 * 合并另一个直方图
+	 * @param other 另一个直方图
+	 */
+	public void merge(Histogram other){
+		if (other == null || other.getCount() <= 0){
+			return;
+		}
+		if (other.subBits == subBits && other.buckets.length() == buckets.length()){
+			for (int i = 0 ; i < buckets.length() ; i ++){
+				long value = other.buckets.get(i);
+				if (value > 0){
+					buckets.addAndGet(i, value);
+				}
+			}
+		}else{
+			//分桶方式不同，按照对方桶的上界重新记录
+			for (int i = 0 ; i < other.buckets.length() ; i ++){
+				long value = other.buckets.get(i);
+				if (value > 0){
+					buckets.addAndGet(indexOf(Math.min(other.upperOf(i),maxValue)), value);
+				}
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		updateMin(other.min.get());
+		updateMax(other.max.get());
+	}
+
+	/**
+	 * 复制一个直方图
+	 * @return 新的直方图
+	 */
+	public Histogram copy(){
+		Histogram other = new Histogram(subBits,64 - Long.numberOfLeadingZeros(maxValue));
+		other.merge(this);
+		return other;
+	}
+
+	public long getCount(){
+		return count.get();
+	}
+
+	public long getSum(){
+		return sum.get();
+	}
+
+	public long getMin(){
+		return count.get() > 0 ? min.get() : 0;
+	}
+
+	public long getMax(){
+		return max.get();
+	}
+
+	public double getMean(){
+		long c = count.get();
+		return c > 0 ? (double)sum.get() / c : 0;
+	}
+
+	/**
+	 * 获取分位数
+	 * 
+	 * <p>
+	 * 返回分位点所在桶的上界(不超过最大值)，即至少有比例为percentile的数值不大于返回值.
+	 * 
+	 * @param percentile 分位点，取值(0,1]
+	 * @return 分位数
+	 */
+	public long getPercentile(double percentile){
+		long total = count.get();
+		if (total <= 0){
+			return 0;
+		}
+		long target = (long)Math.ceil(total * Math.min(1.0, Math.max(0.0, percentile)));
+		target = target <= 0 ? 1 : target;
+		long current = 0;
+		for (int i = 0 ; i < buckets.length() ; i ++){
+			current += buckets.get(i);
+			if (current >= target){
+				//最后一个桶包含了所有超出范围的数值，以最大值为准
+				return i == buckets.length() - 1 ? max.get() : Math.min(upperOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * 计算数值所在的桶
+	 * @param value 数值
+	 * @return 桶的序号
+	 */
+	protected int indexOf(long value){
+		long v = value > maxValue ? maxValue : value;
+		if (v < (half << 1)){
+			return (int)v;
+		}
+		int exp = 64 - Long.numberOfLeadingZeros(v) - subBits;
+		return exp * half + (int)(v >>> exp);
+	}
+
+	/**
+	 * 计算桶的上界
+	 * @param index 桶的序号
+	 * @return 上界
+	 */
+	protected long upperOf(int index){
+		if (index < (half << 1)){
+			return index;
+		}
+		int exp = index / half - 1;
+		long sub = index - (long)exp * half;
+		return ((sub + 1) << exp) - 1;
+	}
+
+	private void updateMin(long value){
+		long current = min.get();
+		while (value < current && !min.compareAndSet(current, value)){
+			current = min.get();
+		}
+	}
+
+	private void updateMax(long value){
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)){
+			current = max.get();
+		}
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setLong(xml, "count", getCount());
+			XmlTools.setLong(xml, "min", getMin());
+			XmlTools.setLong(xml, "max", getMax());
+			XmlTools.setString(xml, "mean", String.format("%.2f", getMean()));
+			for (int i = 0 ; i < PERCENTILES.length ; i ++){
+				XmlTools.setLong(xml, PERCENTILE_NAMES[i], getPercentile(PERCENTILES[i]));
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setLong(json, "count", getCount());
+			JsonTools.setLong(json, "min", getMin());
+			JsonTools.setLong(json, "max", getMax());
+			JsonTools.setDouble(json, "mean", getMean());
+			for (int i = 0 ; i < PERCENTILES.length ; i ++){
+				JsonTools.setLong(json, PERCENTILE_NAMES[i], getPercentile(PERCENTILES[i]));
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.anysoft.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * 基于直方图的统计模型
+ * 
+ * <p>
+ * 在{@link SimpleCounter}的基础上，通过{@link Histogram}记录时长的分布，在total和current中输出p50/p90/p99/p999，
+ * 同时输出上一个完整周期(last)的分布.直方图跟随{@link SimpleCounter}的当前周期轮换，记录时不加锁，不分配内存.
+ * 
+ * <p>
+ * 配置参数：<br>
+ * - counter.histogram.subBits : 直方图线性区的位数，决定精度，缺省为5(相对误差6.25%);<br>
+ * - counter.histogram.maxBits : 直方图可区分的最大值的位数，缺省为40;<br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.75
+ */
+public class HistogramCounter extends SimpleCounter {
+	
+	/*
+	 * 注意：父类的构造函数会调用configure，以下字段不能有初始值，否则会覆盖configure的结果
+	 */
+	
+	/**
+	 * 直方图线性区的位数
+	 */
+	protected int subBits;
+	
+	/**
+	 * 直方图可区分的最大值的位数
+	 */
+	protected int maxBits;
+	
+	/**
+	 * 全部数据的直方图
+	 */
+	private Histogram total;
+	
+	/**
+	 * 当前周期的直方图
+	 */
+	private volatile Histogram current;
+	
+	/**
+	 * 上一个周期的直方图
+	 */
+	private volatile Histogram last;
+	
+	/**
+	 * 当前周期的开始时间
+	 */
+	private volatile long currentCycleStart = 0;
+	
+	public HistogramCounter(){
+		subBits = 5;
+		maxBits = 40;
+		total = newHistogram();
+		current = newHistogram();
+	}
+	
+	public HistogramCounter(Properties p){
+		super(p);
+	}
+	
+	@Override
+	public void configure(Properties p) {
+		super.configure(p);
+		subBits = PropertiesConstants.getInt(p, "counter.histogram.subBits", 5);
+		maxBits = PropertiesConstants.getInt(p, "counter.histogram.maxBits", 40);
+		total = newHistogram();
+		current = newHistogram();
+		last = null;
+		currentCycleStart = 0;
+	}
+	
+	protected Histogram newHistogram(){
+		return new Histogram(subBits,maxBits);
+	}
+	
+	public Histogram getTotalHistogram(){return total;}
+	public Histogram getCurrentHistogram(){return current;}
+	public Histogram getLastHistogram(){return last;}
+	
+	@Override
+	public void count(long duration, boolean error) {
+		super.count(duration, error);
+		total.record(duration);
+		current.record(duration);
+	}
+	
+	@Override
+	protected void onCycleStart(long cycleStart,long lastCycleStart){
+		rotate(cycleStart);
+	}
+	
+	/**
+	 * 进入新的周期
+	 * 
+	 * <p>
+	 * 由父类在切换current时调用，保证直方图和current统计的是同一个窗口.
+	 * 
+	 * @param cycleStart 新周期的开始时间
+	 */
+	protected synchronized void rotate(long cycleStart){
+		if (cycleStart > currentCycleStart){
+			//如果中间有空闲的周期，上一周期没有数据
+			last = cycleStart - currentCycleStart == getCycle() ? current : null;
+			current = newHistogram();
+			currentCycleStart = cycleStart;
+		}
+	}
+	
+	@Override
+	public void report(Element root) {
+		if (root != null){
+			super.report(root);
+			
+			for (Node node = root.getFirstChild() ; node != null ; node = node.getNextSibling()){
+				if (node.getNodeType() != Node.ELEMENT_NODE){
+					continue;
+				}
+				Element e = (Element)node;
+				if ("total".equals(e.getNodeName())){
+					reportPercentiles(e,total);
+				}else if ("current".equals(e.getNodeName())){
+					reportPercentiles(e,current);
+				}
+			}
+			
+			Histogram lastCycle = last;
+			if (lastCycle != null){
+				Document doc = root.getOwnerDocument();
+				Element e = doc.createElement("last");
+				lastCycle.report(e);
+				root.appendChild(e);
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			super.report(json);
+			
+			reportPercentiles(json.get("total"),total);
+			reportPercentiles(json.get("current"),current);
+			
+			Histogram lastCycle = last;
+			if (lastCycle != null){
+				Map<String,Object> map = new HashMap<String,Object>(); // NOSONAR
+				lastCycle.report(map);
+				json.put("last", map);
+			}
+		}
+	}
+	
+	protected void reportPercentiles(Element e,Histogram histogram){
+		for (int i = 0 ; i < Histogram.PERCENTILES.length ; i ++){
+			XmlTools.setLong(e, Histogram.PERCENTILE_NAMES[i], histogram.getPercentile(Histogram.PERCENTILES[i]));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected void reportPercentiles(Object json,Histogram histogram){
+		if (json instanceof Map){
+			Map<String,Object> map = (Map<String,Object>)json;
+			for (int i = 0 ; i < Histogram.PERCENTILES.length ; i ++){
+				JsonTools.setLong(map, Histogram.PERCENTILE_NAMES[i], histogram.getPercentile(Histogram.PERCENTILES[i]));
+			}
+		}
+	}
+}
@@ -36,6 +36,8 @@ import com.anysoft.formula.DataProvider;
  * @version 1.6.8.10 [20170418 duanyy] <br>
  * - 在装入xml配置文件时，可从env中获取变量 <br>
  * 
+ * @version 1.6.11.66 [20181011 duanyy] <br>
+ * - 变量填充采用预编译的模板进行计算 <br>
  */
 abstract public class Properties implements DataProvider{
 	/**
@@ -314,11 +316,31 @@ abstract public class Properties implements DataProvider{
 	
 	/**
 	 * 进行变量填充式计算
+	 * 
+	 * <p>
+	 * 模板会被预编译并缓存，见{@link PropertiesTemplate}.
+	 * 
 	 * @param _name 最初的变量名
 	 * @param _value 计算的原始值
 	 * @return　计算后的取值
 	 */
 	public String FillValue(String _name,String _value){
+		if (_value.indexOf(VariableStart) < 0){
+			//没有找到变量
+			return _value;
+		}
+		return PropertiesTemplate.compile(_value).render(this, _name);
+	}
+	
+	/**
+	 * 以逐次扫描的方式进行变量填充式计算
+	 * @param _name 最初的变量名
+	 * @param _value 计算的原始值
+	 * @return　计算后的取值
+	 * 
+	 * @since 1.6.11.66
+	 */
+	protected String FillValueByScan(String _name,String _value){
 		int __startIndex = _value.indexOf(VariableStart);
 		if (__startIndex < 0){
 			//没有找到变量
@@ -349,7 +371,7 @@ abstract public class Properties implements DataProvider{
 				__tmpValue += __varValue;
 			}
 			__tmpValue += __afterValue;
-			return FillValue(_name,__tmpValue);
+			return FillValueByScan(_name,__tmpValue);
 		}
 		return __tmpValue;
 	}
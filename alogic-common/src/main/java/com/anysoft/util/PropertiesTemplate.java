@@ -0,0 +1,211 @@
+package com.anysoft.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编译的变量模板
+ *
+ * <p>
+ * 将形如"abc${var}def"的模板预先解析为文本段和变量段，并按照模板字符串进行缓存，避免每次计算时都重新扫描字符串。
+ *
+ * <p>
+ * 计算结果和{@link Properties#FillValue(String, String)}原有的逐次扫描算法保持一致：<br>
+ * - 变量缺少结束符时，结果截止到变量之前; <br>
+ * - 变量引用自身时，结果截止到变量之前; <br>
+ * - 当变量的取值中还包含变量时，递归计算该取值; <br>
+ * - 当变量的取值中的变量缺少结束符时，退回到逐次扫描算法重新计算. <br>
+ *
+ * @author duanyy
+ * @since 1.6.11.66
+ */
+public class PropertiesTemplate {
+
+	/**
+	 * 模板缓存的最大个数，超过时清空缓存
+	 */
+	protected static final int MAX_CACHED = 4096;
+
+	/**
+	 * 模板缓存
+	 */
+	protected static final Map<String,PropertiesTemplate> cached = new ConcurrentHashMap<String,PropertiesTemplate>();
+
+	/**
+	 * 原始模板
+	 */
+	protected final String pattern;
+
+	/**
+	 * 段落内容(文本或变量名)
+	 */
+	protected final String[] segments;
+
+	/**
+	 * 段落是否为变量
+	 */
+	protected final boolean[] variables;
+
+	/**
+	 * 文本段的总长度
+	 */
+	protected final int literalLength;
+
+	/**
+	 * 是否存在缺少结束符的变量
+	 */
+	protected final boolean unterminated;
+
+	protected PropertiesTemplate(String pattern){
+		this.pattern = pattern;
+
+		List<String> segs = new ArrayList<String>();
+		List<Boolean> vars = new ArrayList<Boolean>();
+		int length = 0;
+		boolean broken = false;
+
+		int from = 0;
+		while (from < pattern.length()){
+			int start = pattern.indexOf(Properties.VariableStart,from);
+			if (start < 0){
+				segs.add(pattern.substring(from));
+				vars.add(Boolean.FALSE);
+				length += pattern.length() - from;
+				break;
+			}
+			if (start > from){
+				segs.add(pattern.substring(from,start));
+				vars.add(Boolean.FALSE);
+				length += start - from;
+			}
+			int end = pattern.indexOf(Properties.VariableEnd,start + Properties.VariableStart.length());
+			if (end < 0){
+				//没有发现变量结束符,后续内容被忽略
+				broken = true;
+				break;
+			}
+			segs.add(pattern.substring(start + Properties.VariableStart.length(),end));
+			vars.add(Boolean.TRUE);
+			from = end + Properties.VariableEnd.length();
+		}
+
+		segments = segs.toArray(new String[segs.size()]);
+		variables = new boolean[segments.length];
+		for (int i = 0 ; i < segments.length ; i ++){
+			variables[i] = vars.get(i);
+		}
+		literalLength = length;
+		unterminated = broken;
+	}
+
+	/**
+	 * 获取原始模板
+	 * @return 原始模板
+	 */
+	public String getPattern(){
+		return pattern;
+	}
+
+	/**
+	 * 获取模板的预估长度，可用于初始化StringBuilder
+	 * @return 预估长度
+	 */
+	public int estimateLength(){
+		return literalLength + 16 * (segments.length - 1) + 16;
+	}
+
+	/**
+	 * 计算完成
+	 */
+	protected static final int DONE = 0;
+	
+	/**
+	 * 因为自身引用或缺少结束符而截止
+	 */
+	protected static final int TRUNCATED = 1;
+	
+	/**
+	 * 需要退回到逐次扫描算法
+	 */
+	protected static final int FALLBACK = 2;
+	
+	/**
+	 * 按照变量集计算模板，结果追加到buf中
+	 *
+	 * @param p 变量集
+	 * @param name 最初的变量名，用于检测自身引用
+	 * @param buf 输出缓冲区
+	 */
+	public void render(Properties p,String name,StringBuilder buf){
+		int start = buf.length();
+		if (doRender(p,name,buf) == FALLBACK){
+			//变量值中的变量缺少结束符，其结束符可能在后续内容中，采用逐次扫描算法重新计算
+			buf.setLength(start);
+			buf.append(p.FillValueByScan(name, pattern));
+		}
+	}
+	
+	protected int doRender(Properties p,String name,StringBuilder buf){
+		for (int i = 0 ; i < segments.length ; i ++){
+			String segment = segments[i];
+			if (!variables[i]){
+				buf.append(segment);
+				continue;
+			}
+			if (segment.equals(name)){
+				//引用自身，结果截止到此
+				return TRUNCATED;
+			}
+			String value = p.GetValue(segment,"",false,false);
+			if (value.indexOf(Properties.VariableStart) < 0){
+				buf.append(value);
+				continue;
+			}
+			
+			PropertiesTemplate nested = compile(value);
+			if (nested.unterminated){
+				return FALLBACK;
+			}
+			int state = nested.doRender(p, name, buf);
+			if (state != DONE){
+				return state;
+			}
+		}
+		return unterminated ? TRUNCATED : DONE;
+	}
+
+	/**
+	 * 按照变量集计算模板
+	 * @param p 变量集
+	 * @param name 最初的变量名，用于检测自身引用
+	 * @return 计算结果
+	 */
+	public String render(Properties p,String name){
+		StringBuilder buf = new StringBuilder(estimateLength());
+		render(p,name,buf);
+		return buf.toString();
+	}
+
+	/**
+	 * 编译模板
+	 *
+	 * <p>
+	 * 编译的结果会被缓存，当缓存个数超过{@link #MAX_CACHED}时，缓存会被清空.
+	 *
+	 * @param pattern 模板
+	 * @return 编译后的模板
+	 */
+	public static PropertiesTemplate compile(String pattern){
+		PropertiesTemplate found = cached.get(pattern);
+		if (found == null){
+			found = new PropertiesTemplate(pattern);
+			if (cached.size() >= MAX_CACHED){
+				cached.clear();
+			}
+			cached.put(pattern, found);
+		}
+		return found;
+	}
+}
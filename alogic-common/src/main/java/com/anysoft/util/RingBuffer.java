@@ -0,0 +1,132 @@
+package com.anysoft.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界的环形缓冲区
+ * 
+ * <p>
+ * 槽位在构造时分配，每个槽位带有一个序号，生产者和消费者分别通过CAS推进写指针和读指针，
+ * 槽位的序号用于判断槽位是否可写或可读(参见Dmitry Vyukov的有界MPMC队列)，
+ * 支持多个生产者和多个消费者并发访问，入队和出队都不分配内存.
+ * 
+ * @author duanyy
+ * @since 1.6.11.77
+ */
+public class RingBuffer<E> {
+
+	/**
+	 * 容量
+	 */
+	protected final int capacity;
+
+	/**
+	 * 掩码
+	 */
+	protected final int mask;
+
+	/**
+	 * 槽位
+	 */
+	protected final AtomicReferenceArray<E> items;
+
+	/**
+	 * 槽位的序号
+	 */
+	protected final AtomicLongArray sequences;
+
+	/**
+	 * 写指针
+	 */
+	protected final AtomicLong tail = new AtomicLong(0);
+
+	/**
+	 * 读指针
+	 */
+	protected final AtomicLong head = new AtomicLong(0);
+
+	/**
+	 * 构造函数
+	 * @param size 期望的容量，向上取整为2的幂次
+	 */
+	public RingBuffer(int size){
+		int c = 2;
+		while (c < size && c < (1 << 30)){
+			c <<= 1;
+		}
+		capacity = c;
+		mask = c - 1;
+		items = new AtomicReferenceArray<E>(c);
+		sequences = new AtomicLongArray(c);
+		for (int i = 0 ; i < c ; i ++){
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * 入队
+	 * @param e 元素
+	 * @return 缓冲区已满时返回false
+	 */
+	public boolean offer(E e){
+		while (true){
+			long pos = tail.get();
+			int index = (int)(pos & mask);
+			long diff = sequences.get(index) - pos;
+			if (diff == 0){
+				if (tail.compareAndSet(pos, pos + 1)){
+					items.lazySet(index, e);
+					sequences.set(index, pos + 1);
+					return true;
+				}
+			}else{
+				if (diff < 0){
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 出队
+	 * @return 元素，缓冲区为空时返回null
+	 */
+	public E poll(){
+		while (true){
+			long pos = head.get();
+			int index = (int)(pos & mask);
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0){
+				if (head.compareAndSet(pos, pos + 1)){
+					E e = items.get(index);
+					items.lazySet(index, null);
+					sequences.set(index, pos + capacity);
+					return e;
+				}
+			}else{
+				if (diff < 0){
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 获取当前的元素个数(近似值)
+	 * @return 元素个数
+	 */
+	public int size(){
+		long size = tail.get() - head.get();
+		return size < 0 ? 0 : (int)Math.min(size, capacity);
+	}
+
+	public boolean isEmpty(){
+		return size() <= 0;
+	}
+
+	public int capacity(){
+		return capacity;
+	}
+}
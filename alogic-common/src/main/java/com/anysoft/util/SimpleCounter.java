@@ -21,6 +21,9 @@ import org.w3c.dom.Element;
  * @version 1.6.4.31 [20160128 duanyy] <br>
  * - 增加活跃度和健康度接口 <br>
  * - 增加可配置性 <br>
+ * 
+ * @version 1.6.11.75 [20181020 duanyy] <br>
+ * - 增加{@link #getCycle()} <br>
  */
 public class SimpleCounter implements Counter {
 	/**
@@ -75,6 +78,16 @@ public class SimpleCounter implements Counter {
 		cycle = getStatCycle(p);
 	}
 
+	/**
+	 * 获取统计周期
+	 * @return 统计周期(ms)
+	 * 
+	 * @since 1.6.11.75
+	 */
+	public long getCycle(){
+		return cycle;
+	}
+
 	protected long getStatCycle(Properties p){
 		return PropertiesConstants.getLong(p, "counter.cycle", 5 * 60 * 1000L);
 	}	
@@ -109,11 +122,28 @@ public class SimpleCounter implements Counter {
 			current.visited(duration, error);
 		}else{
 			current.first(duration, error);
+			long lastCycleStart = currentCycleStart;
 			currentCycleStart = (now / cycle) * cycle;
+			onCycleStart(currentCycleStart, lastCycleStart);
 		}
 		lastVisitedTime = now;
 	}
 	
+	/**
+	 * 当前周期切换时回调
+	 * 
+	 * <p>
+	 * 子类可以在此切换自己的当前周期数据，以保证和current处于同一个统计窗口.
+	 * 
+	 * @param cycleStart 新周期的开始时间
+	 * @param lastCycleStart 上一周期的开始时间
+	 * 
+	 * @since 1.6.11.75
+	 */
+	protected void onCycleStart(long cycleStart,long lastCycleStart){
+		// nothing to do
+	}
+	
 	@Override
 	public void report(Element root) {
 		if (root != null){
@@ -0,0 +1,125 @@
+package com.anysoft.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滑动窗口计数器
+ *
+ * <p>
+ * 将时间窗口划分为若干个桶，每个桶记录一个时间片内的计数，通过桶所属的时间片编号来判断桶是否已经过期，
+ * 从而不需要周期性的清零操作。计数和求和都是无锁的。
+ *
+ * <p>
+ * 在桶被新的时间片复用的瞬间，仍然属于旧时间片的少量并发计数可能被计入新的时间片，因此结果是近似值，适用于限流等场景。
+ *
+ * @author duanyy
+ * @since 1.6.11.64
+ */
+public class SlidingWindowCounter {
+	/**
+	 * 每个桶的时长(ms)
+	 */
+	protected final long bucketSize;
+
+	/**
+	 * 桶的个数
+	 */
+	protected final int buckets;
+
+	/**
+	 * 各桶的计数
+	 */
+	protected final AtomicLongArray counts;
+
+	/**
+	 * 各桶所属的时间片编号
+	 */
+	protected final AtomicLongArray epochs;
+
+	/**
+	 * 构造
+	 * @param window 窗口时长(ms)
+	 * @param buckets 桶的个数
+	 */
+	public SlidingWindowCounter(long window,int buckets){
+		this.buckets = buckets <= 0 ? 1 : buckets;
+		this.bucketSize = Math.max(1, window / this.buckets);
+		counts = new AtomicLongArray(this.buckets);
+		epochs = new AtomicLongArray(this.buckets);
+	}
+
+	/**
+	 * 构造一分钟，6个桶的计数器
+	 */
+	public SlidingWindowCounter(){
+		this(60000L,6);
+	}
+
+	/**
+	 * 获取窗口时长(ms)
+	 * @return 窗口时长
+	 */
+	public long getWindow(){
+		return bucketSize * buckets;
+	}
+
+	/**
+	 * 在当前时间计数
+	 * @param delta 增量
+	 */
+	public void incr(long delta){
+		incr(System.currentTimeMillis(),delta);
+	}
+
+	/**
+	 * 在指定时间计数
+	 * @param now 时间戳(ms)
+	 * @param delta 增量
+	 */
+	public void incr(long now,long delta){
+		long epoch = now / bucketSize;
+		int idx = (int)(epoch % buckets);
+
+		while (true){
+			long current = epochs.get(idx);
+			if (current == epoch){
+				counts.addAndGet(idx, delta);
+				return;
+			}
+			if (current > epoch){
+				//时间已经过了本窗口，丢弃
+				return;
+			}
+			long stale = counts.get(idx);
+			if (epochs.compareAndSet(idx, current, epoch)){
+				counts.addAndGet(idx, delta - stale);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 获取当前窗口内的计数之和
+	 * @return 计数之和
+	 */
+	public long sum(){
+		return sum(System.currentTimeMillis());
+	}
+
+	/**
+	 * 获取指定时间所在窗口内的计数之和
+	 * @param now 时间戳(ms)
+	 * @return 计数之和
+	 */
+	public long sum(long now){
+		long epoch = now / bucketSize;
+		long total = 0;
+		for (int i = 0 ; i < buckets ; i ++){
+			long e = epochs.get(i);
+			if (e <= epoch && e > epoch - buckets){
+				total += counts.get(i);
+			}
+		}
+		return total;
+	}
+}
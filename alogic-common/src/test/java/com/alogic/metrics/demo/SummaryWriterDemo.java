@@ -0,0 +1,135 @@
+package com.alogic.metrics.demo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.alogic.metrics.Fragment;
+import com.alogic.metrics.Fragment.Method;
+import com.alogic.metrics.impl.DefaultFragment;
+import com.alogic.metrics.stream.MetricsSummaryWriter;
+import com.anysoft.util.Properties;
+
+/**
+ * MetricsSummaryWriter的并发测试
+ * 
+ * <p>
+ * 多个线程并发累加指标，同时另一个线程不停地写出，检查写出的指标总数是否等于发送的指标总数，
+ * 并与原有的实现(先写出再清除)进行比较.
+ * 
+ * <p>
+ * 参数：线程数 每线程发送的指标个数 维度个数
+ * 
+ * @author duanyy
+ * 
+ */
+public class SummaryWriterDemo {
+
+	public static void main(String[] args) {
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int loops = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+		int dims = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+		run("legacy",new Legacy(),threadCnt,loops,dims);
+		run("swap",new Counting(),threadCnt,loops,dims);
+		run("legacy",new Legacy(),threadCnt,loops,dims);
+		run("swap",new Counting(),threadCnt,loops,dims);
+	}
+
+	protected static void run(String name,final Counting writer,int threadCnt,final int loops,final int dims){
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < loops ; j ++){
+							Fragment f = new DefaultFragment("m" + (j % dims));
+							f.getMeasures().set("cnt", 1L, Method.sum);
+							writer.onHandle(f, 0);
+						}
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+
+		long flushes = 0;
+		while (latch.getCount() > 0){
+			writer.onFlush(System.currentTimeMillis());
+			flushes ++;
+		}
+		long duration = System.currentTimeMillis() - start;
+		writer.onFlush(System.currentTimeMillis());
+
+		long expected = (long)threadCnt * loops;
+		System.out.println(String.format("%s:%d threads x %d fragments,%d flushes,%d ms,%.2f fragments/ms,written %d,lost %d",
+				name,threadCnt,loops,flushes,duration,expected / (duration <= 0 ? 1.0 : duration),
+				writer.total.get(),expected - writer.total.get()));
+	}
+
+	/**
+	 * 统计写出的指标个数
+	 */
+	public static class Counting extends MetricsSummaryWriter{
+		protected AtomicLong total = new AtomicLong(0);
+
+		@Override
+		protected void write(Map<String, Fragment> data, long t) {
+			for (Fragment f:data.values()){
+				total.addAndGet(f.getMeasures().getAsLong("cnt", 0));
+			}
+		}
+
+		@Override
+		protected void onConfigure(Element e, Properties p) {
+			// nothing to do
+		}
+
+		@Override
+		public void onHandle(Fragment _data,long t) {
+			super.onHandle(_data, t);
+		}
+
+		@Override
+		public void onFlush(long t) {
+			super.onFlush(t);
+		}
+	}
+
+	/**
+	 * 原有的实现，作为比较的基准
+	 */
+	public static class Legacy extends Counting{
+		protected Map<String,Fragment> legacy = new ConcurrentHashMap<String,Fragment>();
+
+		@Override
+		public void onHandle(Fragment f,long t) {
+			String id = f.getStatsDimesion();
+			Fragment found = legacy.get(id);
+			if (found == null){
+				synchronized(legacy){
+					found = legacy.get(id);
+					if (found == null){
+						legacy.put(id, f);
+					}else{
+						found.incr(f);
+					}
+				}
+			}else{
+				found.incr(f);
+			}
+		}
+
+		@Override
+		public void onFlush(long t) {
+			write(legacy,t);
+			legacy.clear();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.alogic.uid.demo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import com.alogic.uid.impl.Snowflake;
+import com.anysoft.util.DefaultProperties;
+
+/**
+ * 比较加锁的Snowflake实现和基于CAS的Snowflake实现的吞吐量
+ * 
+ * <p>
+ * 参数：线程数 每线程生成的id个数 reserve的批量大小 序列的位数
+ * 
+ * <p>
+ * 缺省的10位序列每毫秒只能生成1024个id，两种实现都会受限于此，因此缺省采用20位序列，以比较锁的开销.
+ * 
+ * @author duanyy
+ * 
+ */
+public class SnowflakeDemo {
+
+	public static void main(String[] args) {
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		final int loops = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		final int batch = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		final int bits = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+		final Legacy legacy = new Legacy(bits);
+		final Snowflake snowflake = new Snowflake();
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("bits.seq", String.valueOf(bits));
+		p.SetValue("bits.pid", "2");
+		snowflake.configure(p);
+
+		//预热
+		for (int i = 0 ; i < 3 ; i ++){
+			run(threadCnt,loops / 10,new Generator(){
+				@Override
+				public long generate() {
+					return legacy.next();
+				}
+			});
+			run(threadCnt,loops / 10,new Generator(){
+				@Override
+				public long generate() {
+					return snowflake.next();
+				}
+			});
+		}
+
+		long duration = run(threadCnt,loops,new Generator(){
+			@Override
+			public long generate() {
+				return legacy.next();
+			}
+		});
+		print("synchronized",threadCnt,loops,duration);
+
+		duration = run(threadCnt,loops,new Generator(){
+			@Override
+			public long generate() {
+				return snowflake.next();
+			}
+		});
+		print("cas",threadCnt,loops,duration);
+
+		duration = run(threadCnt,loops / batch,new Generator(){
+			@Override
+			public long generate() {
+				return snowflake.reserve(batch);
+			}
+		});
+		print("cas-reserve(" + batch + ")",threadCnt,loops / batch * batch,duration);
+
+		//检查唯一性
+		Set<Long> ids = new HashSet<Long>();
+		for (int i = 0 ; i < 100000 ; i ++){
+			if (!ids.add(snowflake.next())){
+				System.out.println("Duplicated id found.");
+			}
+			long first = snowflake.reserve(10);
+			for (int j = 0 ; j < 10 ; j ++){
+				if (!ids.add(first + j)){
+					System.out.println("Duplicated id found.");
+				}
+			}
+		}
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		snowflake.report(report);
+		System.out.println(report);
+	}
+
+	protected static void print(String name,int threadCnt,long loops,long duration){
+		System.out.println(String.format("%s:%d threads x %d ids,%d ms,%.2f ids/ms",
+				name,threadCnt,loops,duration,threadCnt * loops / (duration <= 0 ? 1.0 : duration)));
+	}
+
+	protected static long run(int threadCnt,final int loops,final Generator generator){
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						long sum = 0;
+						for (int j = 0 ; j < loops ; j ++){
+							sum += generator.generate();
+						}
+						if (sum == 0){
+							System.out.println("Impossible");
+						}
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		try {
+			latch.await();
+		}catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	public static interface Generator {
+		public long generate();
+	}
+
+	/**
+	 * 原有的加锁实现，作为比较的基准
+	 */
+	public static class Legacy {
+		private long twepoch = 1514160000000L;
+		private long sequenceBits = 10L;
+		private long sequenceMask = -1L ^ (-1L << sequenceBits);
+		private long pIdShift = sequenceBits;
+		private long ttShift = sequenceBits + 2L;
+		private long sequence = 0L;
+		private long lastTimestamp = -1L;
+		
+		public Legacy(int bits){
+			sequenceBits = bits;
+			sequenceMask = -1L ^ (-1L << sequenceBits);
+			pIdShift = sequenceBits;
+			ttShift = sequenceBits + 2L;
+		}
+
+		public synchronized long next() {
+			long timestamp = System.currentTimeMillis();
+			if (lastTimestamp == timestamp) {
+				sequence = (sequence + 1) & sequenceMask;
+				if (sequence == 0) {
+					while (timestamp <= lastTimestamp){
+						timestamp = System.currentTimeMillis();
+					}
+				}
+			}else {
+				sequence = 0L;
+			}
+			lastTimestamp = timestamp;
+			return ((timestamp - twepoch) << ttShift) | (0L << pIdShift) | sequence;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.anysoft.formula;
+
+import com.anysoft.util.DefaultProperties;
+
+/**
+ * 比较解析后的公式和编译后的公式的计算结果和性能
+ *
+ * @author duanyy
+ *
+ */
+public class testCompiler {
+
+	public static void main(String[] args) {
+		int loops = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		DefaultProperties provider = new DefaultProperties();
+		provider.SetValue("$id", "200");
+		provider.SetValue("price", "12.5");
+		provider.SetValue("count", "3");
+		provider.SetValue("name", "alogic-common");
+
+		String [] formulas = new String[]{
+				"23 % 10 + (200 / 20 - 2*20) + 0.1 * 100",
+				"23 % 10 + (to_long($id) / 20 - 2*20) + 0.1 * 100",
+				"to_double(price) * to_long(count) > 30",
+				"to_long(count) >= 3 && to_long($id) < 1000 || false",
+				"-to_long($id) * 2 + strlen(name)",
+				"choice(instr(name,'common') > 0,'yes','no')",
+				"nvl(notfound,'default') + '-' + name",
+				"substr(name,0,6) == 'alogic'",
+				"match(name,'alogic-.*') && to_long(count) % 2 == 1"
+		};
+
+		for (String formula:formulas){
+			Expression parsed = new Parser().parse(formula);
+			Expression compiled = ExprCompiler.compile(formula);
+
+			String expected = parsed.getValue(provider).toString();
+			String actual = compiled.getValue(provider).toString();
+			if (!expected.equals(actual)){
+				System.out.println(String.format("Mismatch:%s,expected=%s,actual=%s",formula,expected,actual));
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0 ; i < loops ; i ++){
+				parsed.getValue(provider);
+			}
+			long parsedTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0 ; i < loops ; i ++){
+				compiled.getValue(provider);
+			}
+			long compiledTime = System.nanoTime() - start;
+
+			System.out.println(String.format("%-55s = %-10s parsed=%5dns compiled=%5dns",
+					formula,actual,parsedTime / loops,compiledTime / loops));
+		}
+
+		String [] errors = new String[]{
+				"1 / 0",
+				"to_long(name) + 1",
+				"-name",
+				"'a' - 1"
+		};
+		for (String formula:errors){
+			String expected = error(new Parser().parse(formula),provider);
+			String actual = error(ExprCompiler.compile(formula),provider);
+			if (!expected.equals(actual)){
+				System.out.println(String.format("Mismatch:%s,expected=%s,actual=%s",formula,expected,actual));
+			}
+			System.out.println(String.format("%-55s = %s",formula,actual));
+		}
+	}
+
+	protected static String error(Expression expr,DataProvider provider){
+		try {
+			return expr.getValue(provider).toString();
+		}catch (Exception ex){
+			return ex.getClass().getSimpleName() + ":" + ex.getMessage();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.anysoft.loadbalance.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.loadbalance.LatencyCounter;
+import com.anysoft.loadbalance.Load;
+import com.anysoft.loadbalance.LoadBalance;
+import com.anysoft.loadbalance.LoadCounter;
+import com.anysoft.loadbalance.impl.LeastBusy;
+import com.anysoft.loadbalance.impl.P2C;
+import com.anysoft.loadbalance.impl.Rand;
+import com.anysoft.loadbalance.impl.RoundRobin;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.Properties;
+
+/**
+ * 负载均衡的模拟测试
+ * 
+ * <p>
+ * 模拟若干个后端节点，每个节点的时延随在途调用数增长(超过容量之后排队)，其中一个节点时延是其他节点的10倍，
+ * 另一个节点有一定比例的快速失败.多个线程并发调用，分别使用Rand,RoundRobin,LeastBusy和P2C选择节点，
+ * 比较时延的分位数和错误率.
+ * 
+ * <p>
+ * 参数：线程数 每个线程的调用次数 节点数 基础时延(ms)
+ * 
+ * @author duanyy
+ * 
+ */
+public class LoadBalanceDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int nodeCnt = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		long latency = args.length > 3 ? Long.parseLong(args[3]) : 2;
+
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("loadbalance.decay", "1000");
+
+		List<LoadBalance<SimLoad>> balances = new ArrayList<LoadBalance<SimLoad>>();
+		balances.add(new Rand<SimLoad>(p));
+		balances.add(new RoundRobin<SimLoad>(p));
+		balances.add(new LeastBusy<SimLoad>(p));
+		balances.add(new P2C<SimLoad>(p));
+
+		for (LoadBalance<SimLoad> lb:balances){
+			List<SimLoad> loads = new ArrayList<SimLoad>();
+			for (int i = 0 ; i < nodeCnt ; i ++){
+				long base = i == 0 ? latency * 10 : latency;
+				double errorRate = i == 1 ? 0.3 : 0;
+				loads.add(new SimLoad("node" + i,base,errorRate,threadCnt / nodeCnt + 1,p));
+			}
+			run(lb,loads,threadCnt,requests);
+		}
+		System.exit(0);
+	}
+
+	protected static void run(final LoadBalance<SimLoad> lb,final List<SimLoad> loads,int threadCnt,final int requests) throws Exception{
+		final long[] durations = new long[threadCnt * requests];
+		final AtomicInteger index = new AtomicInteger(0);
+		final AtomicLong errors = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < requests ; j ++){
+							long begin = System.nanoTime();
+							SimLoad load = lb.select(null, null, loads);
+							boolean error = false;
+							try {
+								error = !load.call();
+							}finally{
+								long duration = System.nanoTime() - begin;
+								load.count(duration, error);
+								durations[index.getAndIncrement()] = duration;
+								if (error){
+									errors.incrementAndGet();
+								}
+							}
+						}
+					}catch (Exception ex){
+						ex.printStackTrace();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+		long total = System.currentTimeMillis() - start;
+
+		Arrays.sort(durations);
+		StringBuilder dist = new StringBuilder();
+		for (SimLoad load:loads){
+			dist.append(load.getId()).append('=').append(load.calls.get()).append(' ');
+		}
+		System.out.println(String.format("%-10s:%d ms,p50 %.2f ms,p99 %.2f ms,p999 %.2f ms,error %.2f%%,[%s]",
+				lb.getClass().getSimpleName(),total,
+				percentile(durations,0.5),percentile(durations,0.99),percentile(durations,0.999),
+				errors.get() * 100.0 / durations.length,dist.toString().trim()));
+	}
+
+	protected static double percentile(long[] sorted,double p){
+		int idx = (int)Math.min(sorted.length - 1, Math.round(sorted.length * p));
+		return sorted[idx] / 1000000.0;
+	}
+
+	/**
+	 * 模拟的后端节点
+	 */
+	public static class SimLoad implements Load{
+		protected String id;
+		protected long latency;
+		protected double errorRate;
+		protected int capacity;
+		protected LatencyCounter counter;
+		protected AtomicInteger inflight = new AtomicInteger(0);
+		protected AtomicLong calls = new AtomicLong(0);
+
+		public SimLoad(String id,long latency,double errorRate,int capacity,Properties p){
+			this.id = id;
+			this.latency = latency;
+			this.errorRate = errorRate;
+			this.capacity = capacity;
+			this.counter = new LatencyCounter(p);
+		}
+
+		/**
+		 * 模拟一次调用
+		 * @return 是否成功
+		 */
+		public boolean call() throws InterruptedException{
+			calls.incrementAndGet();
+			int current = inflight.incrementAndGet();
+			try {
+				if (ThreadLocalRandom.current().nextDouble() < errorRate){
+					return false;
+				}
+				//超过容量之后开始排队
+				long cost = latency * Math.max(1, (current + capacity - 1) / capacity);
+				Thread.sleep(cost);
+				return true;
+			}finally{
+				inflight.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void report(Element xml) {
+			counter.report(xml);
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			counter.report(json);
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public int getWeight() {
+			return 1;
+		}
+
+		@Override
+		public int getPriority() {
+			return 1;
+		}
+
+		@Override
+		public LoadCounter getCounter(boolean create) {
+			return counter;
+		}
+
+		@Override
+		public void count(long duration, boolean error) {
+			counter.count(duration, error);
+		}
+
+		@Override
+		public boolean isValid() {
+			return counter.isValid();
+		}
+	}
+}
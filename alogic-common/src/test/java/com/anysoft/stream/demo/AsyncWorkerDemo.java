@@ -0,0 +1,158 @@
+package com.anysoft.stream.demo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.stream.AbstractHandler;
+import com.anysoft.stream.Flowable;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.Properties;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 比较queue模式和ring模式的异步工作者
+ * 
+ * <p>
+ * 多个线程并发地成批发送数据(每批之后休眠1ms)，统计从发送到处理的平均延迟以及处理和抛弃的个数.
+ * 
+ * <p>
+ * 参数：线程数 每线程发送的数据个数 缓冲区容量 每批的数据个数
+ * 
+ * @author duanyy
+ * 
+ */
+public class AsyncWorkerDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int loops = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		String capacity = args.length > 2 ? args[2] : "4096";
+		final int burst = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+		String[][] modes = {
+				{"queue","park"},
+				{"ring","park"},
+				{"ring","spin"},
+				{"ring","timed"}
+		};
+		for (int round = 0 ; round < 2 ; round ++){
+			for (String[] mode:modes){
+				Element e = XmlTools.newDocument("handler").getDocumentElement();
+				e.setAttribute("async", "true");
+				e.setAttribute("async.mode", mode[0]);
+				e.setAttribute("async.wait", mode[1]);
+				e.setAttribute("async.maxQueueLength", capacity);
+				run(mode[0] + "/" + mode[1],e,threadCnt,loops,burst);
+			}
+		}
+	}
+
+	protected static void run(String name,Element conf,int threadCnt,final int loops,final int burst){
+		final Counting handler = new Counting();
+		handler.configure(conf, new DefaultProperties());
+
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < loops ; j ++){
+							handler.handle(new Item(), System.currentTimeMillis());
+							if (j % burst == burst - 1){
+								Thread.sleep(1);
+							}
+						}
+					}catch (InterruptedException ex){
+						Thread.currentThread().interrupt();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		try {
+			latch.await();
+		}catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		long produced = System.currentTimeMillis() - start;
+		long expected = (long)threadCnt * loops;
+		while (handler.handled.get() < expected && System.currentTimeMillis() - start < produced + 3000){
+			try {
+				Thread.sleep(1);
+			}catch (InterruptedException e) {
+				break;
+			}
+		}
+		long duration = System.currentTimeMillis() - start;
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		handler.report(report);
+		handler.close();
+		System.out.println(String.format("%s:%d x %d,produce %d ms,done %d ms,handled %d,avg latency %.3f ms",
+				name,threadCnt,loops,produced,duration,handler.handled.get(),
+				handler.latency.get() / 1000000.0 / Math.max(1, handler.handled.get())));
+		System.out.println(report);
+	}
+
+	public static class Item implements Flowable{
+		protected long created = System.nanoTime();
+
+		@Override
+		public String getValue(String varName, Object context, String defaultValue) {
+			return defaultValue;
+		}
+
+		@Override
+		public String getRawValue(String varName, Object context, String dftValue) {
+			return dftValue;
+		}
+
+		@Override
+		public Object getContext(String varName) {
+			return this;
+		}
+
+		@Override
+		public String getStatsDimesion() {
+			return "item";
+		}
+
+		@Override
+		public String id() {
+			return "item";
+		}
+
+		@Override
+		public boolean isAsync() {
+			return true;
+		}
+	}
+
+	public static class Counting extends AbstractHandler<Item>{
+		protected AtomicLong handled = new AtomicLong(0);
+		protected AtomicLong latency = new AtomicLong(0);
+
+		@Override
+		protected void onHandle(Item _data, long timestamp) {
+			latency.addAndGet(System.nanoTime() - _data.created);
+			handled.incrementAndGet();
+		}
+
+		@Override
+		protected void onFlush(long timestamp) {
+			// nothing to do
+		}
+
+		@Override
+		protected void onConfigure(Element e, Properties p) {
+			// nothing to do
+		}
+	}
+}
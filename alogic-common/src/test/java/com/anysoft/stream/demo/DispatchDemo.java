@@ -0,0 +1,143 @@
+package com.anysoft.stream.demo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.anysoft.stream.AbstractHandler;
+import com.anysoft.stream.DispatchHandler;
+import com.anysoft.stream.Flowable;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.Properties;
+import com.anysoft.util.XmlTools;
+
+/**
+ * DispatchHandler的分片测试
+ * 
+ * <p>
+ * 按照分发键将数据分发到多个分片，检查同一分发键的数据是否按顺序处理，并输出各分片的分发个数和倾斜度.
+ * 
+ * <p>
+ * 参数：分片个数 分发键个数 数据个数
+ * 
+ * @author duanyy
+ * 
+ */
+public class DispatchDemo {
+
+	/**
+	 * 各分发键最后处理的序号
+	 */
+	protected static final Map<String,Long> last = new ConcurrentHashMap<String,Long>();
+
+	/**
+	 * 乱序的次数
+	 */
+	protected static final AtomicLong disorders = new AtomicLong(0);
+
+	/**
+	 * 处理的个数
+	 */
+	protected static final AtomicLong handled = new AtomicLong(0);
+
+	public static void main(String[] args) throws Exception{
+		int shards = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int keys = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int loops = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+		Document doc = XmlTools.newDocument("handler");
+		Element root = doc.getDocumentElement();
+		root.setAttribute("threadCnt", String.valueOf(shards));
+		root.setAttribute("shard.maxQueueLength", "65536");
+		root.setAttribute("shard.abandonWhenFull", "false");
+		Element child = doc.createElement("handler");
+		child.setAttribute("module", Checker.class.getName());
+		root.appendChild(child);
+
+		DispatchHandler<Item> dispatcher = new DispatchHandler<Item>();
+		dispatcher.configure(root, new DefaultProperties());
+
+		long start = System.currentTimeMillis();
+		for (long i = 0 ; i < loops ; i ++){
+			dispatcher.handle(new Item("key" + (i % keys),i), System.currentTimeMillis());
+		}
+		while (handled.get() < loops && System.currentTimeMillis() - start < 10000){
+			Thread.sleep(1);
+		}
+		long duration = System.currentTimeMillis() - start;
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		dispatcher.report(report);
+		dispatcher.close();
+
+		System.out.println(String.format("%d shards,%d keys,%d items,%d ms,handled %d,disorders %d,skew %.4f",
+				shards,keys,loops,duration,handled.get(),disorders.get(),dispatcher.getSkew()));
+		System.out.println(report.get("handler"));
+	}
+
+	public static class Item implements Flowable{
+		protected String key;
+		protected long seq;
+
+		public Item(String key,long seq){
+			this.key = key;
+			this.seq = seq;
+		}
+
+		@Override
+		public String getValue(String varName, Object context, String defaultValue) {
+			return defaultValue;
+		}
+
+		@Override
+		public String getRawValue(String varName, Object context, String dftValue) {
+			return dftValue;
+		}
+
+		@Override
+		public Object getContext(String varName) {
+			return this;
+		}
+
+		@Override
+		public String getStatsDimesion() {
+			return key;
+		}
+
+		@Override
+		public String id() {
+			return key;
+		}
+
+		@Override
+		public boolean isAsync() {
+			return true;
+		}
+	}
+
+	public static class Checker extends AbstractHandler<Item>{
+
+		@Override
+		protected void onHandle(Item _data, long timestamp) {
+			Long found = last.put(_data.key, _data.seq);
+			if (found != null && found > _data.seq){
+				disorders.incrementAndGet();
+			}
+			handled.incrementAndGet();
+		}
+
+		@Override
+		protected void onFlush(long timestamp) {
+			// nothing to do
+		}
+
+		@Override
+		protected void onConfigure(Element e, Properties p) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.anysoft.util;
+
+/**
+ * 比较逐次扫描和预编译模板两种变量填充方式
+ * 
+ * @author duanyy
+ *
+ */
+public class TemplateBench {
+
+	public static void main(String[] args) {
+		int loops = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		
+		DefaultProperties p = new DefaultProperties("Default",Settings.get());
+		p.SetValue("host", "localhost");
+		p.SetValue("port", "8080");
+		p.SetValue("app", "alogic");
+		p.SetValue("url", "http://${host}:${port}/${app}");
+		p.SetValue("self", "a${self}b");
+		p.SetValue("nested", "[${url}|${port}]");
+		p.SetValue("broken", "${port");
+		
+		String [] patterns = new String[]{
+				"plain text without variables",
+				"${host}",
+				"http://${host}:${port}/${app}/services/${app}.xml",
+				"${url}/index.html",
+				"prefix ${nested} suffix",
+				"unterminated ${host",
+				"${notfound}-${port}",
+				"${self} is self referenced",
+				"${broken}} is broken"
+		};
+		
+		for (String pattern:patterns){
+			String expected = p.FillValueByScan("self", pattern);
+			String actual = p.FillValue("self", pattern);
+			if (!expected.equals(actual)){
+				System.out.println(String.format("Mismatch:%s,expected=%s,actual=%s",pattern,expected,actual));
+			}
+			
+			long start = System.nanoTime();
+			for (int i = 0 ; i < loops ; i ++){
+				p.FillValueByScan("self", pattern);
+			}
+			long scan = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0 ; i < loops ; i ++){
+				p.FillValue("self", pattern);
+			}
+			long compiled = System.nanoTime() - start;
+			
+			System.out.println(String.format("%-52s scan=%6dns compiled=%6dns",pattern,scan / loops,compiled / loops));
+		}
+	}
+}
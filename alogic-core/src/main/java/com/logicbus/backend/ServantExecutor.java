@@ -0,0 +1,493 @@
+package com.logicbus.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.alogic.tracer.TraceContext;
+import com.anysoft.util.Configurable;
+import com.anysoft.util.Factory;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.Settings;
+import com.anysoft.util.XmlTools;
+import com.logicbus.models.servant.ServiceDescription;
+
+/**
+ * 服务执行器
+ *
+ * <p>
+ * 决定{@link com.logicbus.backend.server.MessageRouter MessageRouter}以何种方式来执行服务员，目前提供了下列实现：<br>
+ * - {@link Direct} : 在当前线程中直接执行，不支持超时(即servant.threadMode=false); <br>
+ * - {@link Spawned} : 每次调用创建一个新的线程(早期版本的线程模式); <br>
+ * - {@link Pooled} : 在命名的线程池中执行，通过Future控制超时(线程模式下的缺省实现); <br>
+ *
+ * @author duanyy
+ * @since 1.6.11.63
+ */
+public interface ServantExecutor extends Configurable,Reportable,AutoCloseable{
+
+	/**
+	 * 执行服务
+	 *
+	 * @param servant 服务员
+	 * @param ctx 上下文
+	 * @param tc 跟踪上下文，可以为空
+	 * @return 在超时时间内完成返回true,否则返回false
+	 */
+	public boolean execute(Servant servant,Context ctx,TraceContext tc);
+
+	/**
+	 * 虚基类
+	 * @author duanyy
+	 *
+	 */
+	public static abstract class Abstract implements ServantExecutor{
+		/**
+		 * a slf4j logger
+		 */
+		protected static final Logger LOG = LoggerFactory.getLogger(ServantExecutor.class);
+
+		@Override
+		public void configure(Properties p){
+			// nothing to do
+		}
+
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				XmlTools.setString(xml,"module",getClass().getName());
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				JsonTools.setString(json,"module",getClass().getName());
+			}
+		}
+
+		@Override
+		public void close(){
+			// nothing to do
+		}
+	}
+
+	/**
+	 * 在当前线程中直接执行
+	 *
+	 * <p>
+	 * 在此模式下，不支持服务超时
+	 *
+	 * @author duanyy
+	 *
+	 */
+	public static class Direct extends Abstract{
+		@Override
+		public boolean execute(Servant servant, Context ctx, TraceContext tc) {
+			servant.actionBefore(ctx);
+			servant.actionProcess(ctx);
+			servant.actionAfter(ctx);
+			return true;
+		}
+	}
+
+	/**
+	 * 每次调用创建一个新的线程
+	 *
+	 * @author duanyy
+	 *
+	 */
+	public static class Spawned extends Abstract{
+
+		@Override
+		public boolean execute(Servant servant, Context ctx, TraceContext tc) {
+			CountDownLatch latch = new CountDownLatch(1);
+			ServantWorkerThread thread = new ServantWorkerThread(servant,ctx,latch,tc != null ? tc.newChild() : null);
+			thread.start();
+			try {
+				return latch.await(servant.getTimeOutValue(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * 基于线程池的执行器
+	 *
+	 * <p>
+	 * 支持多个命名的线程池，服务可以通过servant.executor.pool参数来指定所使用的线程池，缺省为default，
+	 * 以便将重要的服务和其他服务隔离开来。线程池的参数可以通过下列变量配置(其中的${id}为线程池的名称):<br>
+	 * - servant.executor.${id}.coreThreads : 核心线程数,缺省为servant.executor.coreThreads(16),仅在不排队(queueSize为0)时有效; <br>
+	 * - servant.executor.${id}.maxThreads : 最大线程数,缺省为servant.executor.maxThreads(256); <br>
+	 * - servant.executor.${id}.queueSize : 等待队列长度,缺省为servant.executor.queueSize(1024),
+	 * 为0时表示不排队,小于0时表示不限长度; <br>
+	 * - servant.executor.${id}.keepAlive : 空闲线程的存活时间(ms),缺省为servant.executor.keepAlive(60000); <br>
+	 *
+	 * <p>
+	 * ThreadPoolExecutor只有在队列已满时才会创建超过核心线程数的线程，因此在排队模式下，核心线程数取最大线程数，
+	 * 保证在排队之前可以有maxThreads个服务并发执行，空闲线程在keepAlive之后回收。
+	 *
+	 * <p>
+	 * 当线程池已满时，本次调用将被拒绝(core.e1013)；当服务超时时，将会中断正在执行的线程。
+	 *
+	 * @author duanyy
+	 *
+	 */
+	public static class Pooled extends Abstract{
+		/**
+		 * 缺省的线程池名称
+		 */
+		protected String dftPool = "default";
+
+		/**
+		 * 线程池配置参数
+		 */
+		protected Properties props = null;
+
+		/**
+		 * 线程池列表
+		 */
+		protected Map<String,WorkerPool> pools = new ConcurrentHashMap<String,WorkerPool>();
+
+		/**
+		 * pools的对象锁
+		 */
+		protected ReentrantLock lockPools = new ReentrantLock();
+
+		@Override
+		public void configure(Properties p){
+			props = p;
+			dftPool = PropertiesConstants.getString(p,"servant.executor.pool",dftPool,true);
+		}
+
+		@Override
+		public boolean execute(Servant servant, Context ctx, TraceContext tc) {
+			WorkerPool pool = getPool(getPoolId(servant));
+			return pool.execute(new ServantWorker(servant,ctx,tc != null ? tc.newChild() : null),
+					servant.getTimeOutValue());
+		}
+
+		/**
+		 * 获取服务所使用的线程池名称
+		 * @param servant 服务员
+		 * @return 线程池名称
+		 */
+		protected String getPoolId(Servant servant){
+			ServiceDescription sd = servant.getDescription();
+			return sd == null ? dftPool :
+				PropertiesConstants.getString(sd.getProperties(),"servant.executor.pool",dftPool,true);
+		}
+
+		/**
+		 * 获取指定名称的线程池，如果不存在则创建
+		 * @param id 线程池名称
+		 * @return 线程池
+		 */
+		protected WorkerPool getPool(String id){
+			WorkerPool found = pools.get(id);
+			if (found == null){
+				lockPools.lock();
+				try {
+					found = pools.get(id);
+					if (found == null){
+						found = new WorkerPool(id,props == null ? Settings.get() : props);
+						pools.put(id, found);
+					}
+				}finally{
+					lockPools.unlock();
+				}
+			}
+			return found;
+		}
+
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				super.report(xml);
+
+				Document doc = xml.getOwnerDocument();
+				Iterator<WorkerPool> iter = pools.values().iterator();
+				while (iter.hasNext()){
+					Element pool = doc.createElement("pool");
+					iter.next().report(pool);
+					xml.appendChild(pool);
+				}
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				super.report(json);
+
+				List<Object> list = new ArrayList<Object>();
+				Iterator<WorkerPool> iter = pools.values().iterator();
+				while (iter.hasNext()){
+					Map<String,Object> pool = new HashMap<String,Object>();
+					iter.next().report(pool);
+					list.add(pool);
+				}
+				json.put("pool", list);
+			}
+		}
+
+		@Override
+		public void close(){
+			lockPools.lock();
+			try {
+				Iterator<WorkerPool> iter = pools.values().iterator();
+				while (iter.hasNext()){
+					iter.next().close();
+				}
+				pools.clear();
+			}finally{
+				lockPools.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 命名的工作线程池
+	 *
+	 * @author duanyy
+	 *
+	 */
+	public static class WorkerPool implements Reportable,AutoCloseable{
+		/**
+		 * 线程池名称
+		 */
+		protected String id;
+
+		/**
+		 * 线程池
+		 */
+		protected ThreadPoolExecutor executor = null;
+
+		/**
+		 * 队列容量
+		 */
+		protected int queueSize = 1024;
+
+		/**
+		 * 被拒绝的次数
+		 */
+		protected AtomicLong rejected = new AtomicLong(0);
+
+		/**
+		 * 超时的次数
+		 */
+		protected AtomicLong timeout = new AtomicLong(0);
+
+		public WorkerPool(final String id,Properties p){
+			this.id = id;
+
+			int coreThreads = getInt(p,"coreThreads",16);
+			int maxThreads = getInt(p,"maxThreads",256);
+			long keepAlive = getInt(p,"keepAlive",60000);
+			queueSize = getInt(p,"queueSize",1024);
+
+			maxThreads = maxThreads <= 0 ? 1 : maxThreads;
+			coreThreads = coreThreads > maxThreads ? maxThreads : coreThreads;
+
+			BlockingQueue<Runnable> queue = null;
+			if (queueSize == 0){
+				queue = new SynchronousQueue<Runnable>();
+			}else{
+				//排队模式下，只有队列已满才会创建超过核心线程数的线程，因此核心线程数取最大线程数
+				coreThreads = maxThreads;
+				if (queueSize < 0){
+					queue = new LinkedBlockingQueue<Runnable>();
+				}else{
+					queue = new ArrayBlockingQueue<Runnable>(queueSize);
+				}
+			}
+
+			executor = new ThreadPoolExecutor(coreThreads,maxThreads,keepAlive,TimeUnit.MILLISECONDS,queue,
+				new ThreadFactory(){
+					private AtomicInteger seq = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,"servant-" + id + "-" + seq.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			executor.allowCoreThreadTimeOut(true);
+
+			Abstract.LOG.info(String.format("Servant worker pool is created:%s,core=%d,max=%d,queue=%d",
+					id,coreThreads,maxThreads,queueSize));
+		}
+
+		protected int getInt(Properties p,String name,int dft){
+			int value = PropertiesConstants.getInt(p,"servant.executor." + name,dft);
+			return PropertiesConstants.getInt(p,"servant.executor." + id + "." + name,value);
+		}
+
+		/**
+		 * 执行任务，并等待其完成
+		 * @param worker 任务
+		 * @param timeoutValue 超时时间(ms)
+		 * @return 在超时时间内完成返回true,否则返回false
+		 */
+		public boolean execute(ServantWorker worker,long timeoutValue){
+			Future<?> future = null;
+			try {
+				future = executor.submit(worker);
+			}catch (RejectedExecutionException ex){
+				rejected.incrementAndGet();
+				throw new ServantException("core.e1013","The servant worker pool is busy:" + id);
+			}
+
+			try {
+				future.get(timeoutValue, TimeUnit.MILLISECONDS);
+				return true;
+			}catch (TimeoutException ex){
+				timeout.incrementAndGet();
+				future.cancel(true);
+				return false;
+			}catch (InterruptedException ex){
+				future.cancel(true);
+				Thread.currentThread().interrupt();
+				return false;
+			}catch (ExecutionException ex){
+				//ServantWorker已经处理了异常,不应该到这里
+				throw new ServantException("core.e1012",ex.getMessage());
+			}
+		}
+
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				XmlTools.setString(xml, "id", id);
+				XmlTools.setInt(xml,"coreThreads",executor.getCorePoolSize());
+				XmlTools.setInt(xml,"maxThreads",executor.getMaximumPoolSize());
+				XmlTools.setInt(xml,"threads",executor.getPoolSize());
+				XmlTools.setInt(xml,"largest",executor.getLargestPoolSize());
+				XmlTools.setInt(xml,"active",executor.getActiveCount());
+				XmlTools.setInt(xml,"queueSize",queueSize);
+				XmlTools.setInt(xml,"queueDepth",executor.getQueue().size());
+				XmlTools.setLong(xml,"completed",executor.getCompletedTaskCount());
+				XmlTools.setLong(xml,"rejected",rejected.get());
+				XmlTools.setLong(xml,"timeout",timeout.get());
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				JsonTools.setString(json, "id", id);
+				JsonTools.setInt(json,"coreThreads",executor.getCorePoolSize());
+				JsonTools.setInt(json,"maxThreads",executor.getMaximumPoolSize());
+				JsonTools.setInt(json,"threads",executor.getPoolSize());
+				JsonTools.setInt(json,"largest",executor.getLargestPoolSize());
+				JsonTools.setInt(json,"active",executor.getActiveCount());
+				JsonTools.setInt(json,"queueSize",queueSize);
+				JsonTools.setInt(json,"queueDepth",executor.getQueue().size());
+				JsonTools.setLong(json,"completed",executor.getCompletedTaskCount());
+				JsonTools.setLong(json,"rejected",rejected.get());
+				JsonTools.setLong(json,"timeout",timeout.get());
+			}
+		}
+
+		@Override
+		public void close() {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 工厂类
+	 * @author duanyy
+	 *
+	 */
+	public static class TheFactory extends Factory<ServantExecutor>{
+		/**
+		 * a logger of slf4j
+		 */
+		protected static final Logger LOG = LoggerFactory.getLogger(ServantExecutor.class);
+
+		/**
+		 * 全局唯一实例
+		 */
+		private static volatile ServantExecutor instance = null;
+
+		/**
+		 * 根据module映射类名
+		 */
+		@Override
+		public String getClassName(String module){
+			if (module.indexOf(".") < 0){
+				return ServantExecutor.class.getName() + "$" + module;
+			}
+			return module;
+		}
+
+		/**
+		 * 获取全局唯一的实例
+		 * @return 服务执行器
+		 */
+		public static ServantExecutor get(){
+			if (instance == null){
+				synchronized (TheFactory.class){
+					if (instance == null){
+						instance = get(Settings.get());
+					}
+				}
+			}
+			return instance;
+		}
+
+		/**
+		 * 根据环境变量创建服务执行器
+		 *
+		 * <p>
+		 * 执行器的实现通过servant.executor.module来指定，缺省值取决于servant.threadMode,
+		 * 当threadMode为true时，缺省为{@link Pooled},否则为{@link Direct}.
+		 *
+		 * @param props 环境变量
+		 * @return 服务执行器
+		 */
+		public static ServantExecutor get(Properties props){
+			boolean threadMode = PropertiesConstants.getBoolean(props, "servant.threadMode", true);
+			String module = PropertiesConstants.getString(props,"servant.executor.module",
+					threadMode ? Pooled.class.getName():Direct.class.getName());
+			try {
+				TheFactory f = new TheFactory();
+				return f.newInstance(module, props);
+			}catch (Exception ex){
+				LOG.error("Can not create servant executor:" + module + ",using default.",ex);
+				ServantExecutor executor = threadMode ? new Pooled() : new Direct();
+				executor.configure(props);
+				return executor;
+			}
+		}
+	}
+}
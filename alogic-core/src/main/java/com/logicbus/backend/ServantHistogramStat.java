@@ -0,0 +1,26 @@
+package com.logicbus.backend;
+
+import com.anysoft.util.HistogramCounter;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+
+/**
+ * 带有时长分布的服务统计信息
+ * 
+ * <p>
+ * 在{@link ServantStat}的基础上输出p50/p90/p99/p999，可通过servant.stat.module选用.
+ * 
+ * @author duanyy
+ * @since 1.6.11.75
+ */
+public class ServantHistogramStat extends HistogramCounter {
+
+	public ServantHistogramStat(Properties p) {
+		super(p);
+	}
+
+	@Override
+	public long getStatCycle(Properties p){
+		return PropertiesConstants.getLong(p, "servant.stat.cycle", 5 * 60 * 1000L);
+	}	
+}
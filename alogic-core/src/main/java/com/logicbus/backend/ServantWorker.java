@@ -0,0 +1,91 @@
+package com.logicbus.backend;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alogic.tracer.Tool;
+import com.alogic.tracer.TraceContext;
+
+/**
+ * 服务员工作任务
+ * 
+ * <p>
+ * 从{@link ServantWorkerThread}中分离出来的执行逻辑，既可以由独立的线程执行，也可以提交到线程池中执行。
+ * 
+ * @author duanyy
+ * @since 1.6.11.63
+ */
+public class ServantWorker implements Runnable {
+	/**
+	 * a logger of slf4j
+	 */
+	protected final static Logger LOG = LoggerFactory.getLogger(ServantWorker.class);
+	
+	/**
+	 * 当前工作的服务员
+	 */
+	private Servant m_servant = null;
+	
+	/**
+	 * Count Down Latch,可以为空
+	 */
+	protected CountDownLatch latch = null;
+	
+	/**
+	 * 上下文
+	 */
+	private Context m_ctx = null;
+	
+	private TraceContext traceCtx = null;
+	
+	public ServantWorker(Servant _servant,Context _ctx,CountDownLatch _latch,TraceContext trace){
+		m_servant = _servant;
+		m_ctx = _ctx;
+		latch = _latch;
+		traceCtx = trace;
+	}
+	
+	public ServantWorker(Servant _servant,Context _ctx,TraceContext trace){
+		this(_servant,_ctx,null,trace);
+	}
+
+	@Override
+	public void run(){
+		TraceContext tc = null;
+		if (traceCtx != null){
+			tc = Tool.start(traceCtx.sn(), traceCtx.order());
+		}
+		boolean error = false;
+		try
+		{
+			m_servant.actionBefore(m_ctx);
+			m_servant.actionProcess(m_ctx);
+			m_servant.actionAfter(m_ctx);
+		}catch (ServantException ex){
+			error = true;
+			LOG.error(ExceptionUtils.getStackTrace(ex));
+			m_servant.actionException(m_ctx ,ex);
+		}catch (Exception ex){
+			error = true;
+			LOG.error(ExceptionUtils.getStackTrace(ex));
+			m_servant.actionException( m_ctx, 
+					new ServantException("core.e1012",ex.getMessage()));
+		}catch (Throwable t){
+			error = true;
+			LOG.error(ExceptionUtils.getStackTrace(t));
+			m_servant.actionException( m_ctx, 
+					new ServantException("core.e1012",t.getMessage()));
+		}finally{
+			if (latch != null){
+				//告知，事情已经做完
+				latch.countDown();
+			}
+			if (traceCtx != null){
+				Tool.end(tc, "ALOGIC", "SyncCall", error?"FAILED":"OK", "");
+			}
+		}
+	}
+}
@@ -1,8 +1,5 @@
 package com.logicbus.backend.server;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,9 +13,9 @@ import com.logicbus.backend.AccessController;
 import com.logicbus.backend.Context;
 import com.logicbus.backend.Servant;
 import com.logicbus.backend.ServantException;
+import com.logicbus.backend.ServantExecutor;
 import com.logicbus.backend.ServantFactory;
 import com.logicbus.backend.ServantPool;
-import com.logicbus.backend.ServantWorkerThread;
 import com.logicbus.backend.bizlog.BizLogItem;
 import com.logicbus.backend.bizlog.BizLogger;
 import com.logicbus.models.catalog.Path;
@@ -106,6 +103,9 @@ import com.logicbus.models.servant.ServiceDescription;
  * 
  * @version 1.6.11.29 [20180510 duanyy] <br>
  * - 优化错误处理 <br>
+ * 
+ * @version 1.6.11.63 [20181008 duanyy] <br>
+ * - 服务的执行方式插件化，见{@link ServantExecutor}，线程模式下缺省采用线程池执行 <br>
  */
 public class MessageRouter {
 	
@@ -160,17 +160,8 @@ public class MessageRouter {
 				logger.warn("Can not get a servant from pool in the limited time,check servant.queueTimeout variable.");
 				ctx.setReturn("core.e1011", "Can not get a servant from pool in the limited time,check servant.queueTimeout variable.");
 			}else{
-				if (!threadMode){
-					//在非线程模式下,不支持服务超时
-					execute(servant,ctx);
-				}else{
-					CountDownLatch latch = new CountDownLatch(1);
-					ServantWorkerThread thread = new ServantWorkerThread(servant,ctx,latch,tc != null ? tc.newChild() : null);
-					thread.start();
-					if (!latch.await(servant.getTimeOutValue(), TimeUnit.MILLISECONDS)){
-						ctx.setReturn("core.e1011","Time out or interrupted.");
-					}
-					thread = null;
+				if (!servantExecutor.execute(servant, ctx, tc)){
+					ctx.setReturn("core.e1011","Time out or interrupted.");
 				}
 			}
 		}catch (ServantException ex){
@@ -242,14 +233,7 @@ public class MessageRouter {
 		return 0;
 	}
 	
-	protected static int execute(Servant servant,Context ctx)  {
-		servant.actionBefore( ctx);
-		servant.actionProcess( ctx);
-		servant.actionAfter( ctx);
-		return 0;
-	}
-	
-	protected static boolean threadMode = true;
+	protected static ServantExecutor servantExecutor = null;
 	protected static boolean tracerEnable = false;
 	protected static BizLogger bizLogger = null;
 	protected static ServantFactory servantFactory = null;
@@ -258,8 +242,7 @@ public class MessageRouter {
 	static {
 		Settings settings = Settings.get();
 		
-		//初始化threadMode
-		threadMode = PropertiesConstants.getBoolean(settings, "servant.threadMode", true);
+		servantExecutor = ServantExecutor.TheFactory.get();
 		tracerEnable = PropertiesConstants.getBoolean(settings, "tracer.servant.enable", false);
 		bizlogEnable = PropertiesConstants.getBoolean(settings, "bizlog.enable", true);
 		acmEnable = PropertiesConstants.getBoolean(settings, "acm.enable", true);
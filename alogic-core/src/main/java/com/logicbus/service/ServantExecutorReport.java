@@ -0,0 +1,64 @@
+package com.logicbus.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.logicbus.backend.AbstractServant;
+import com.logicbus.backend.Context;
+import com.logicbus.backend.ServantException;
+import com.logicbus.backend.ServantExecutor;
+import com.logicbus.backend.message.JsonMessage;
+import com.logicbus.backend.message.XMLMessage;
+import com.logicbus.models.servant.ServiceDescription;
+
+/**
+ * 服务执行器报告
+ *
+ * <p>
+ * 输出当前服务执行器的运行状况，例如各线程池的线程数，队列深度，拒绝次数和超时次数等.
+ *
+ * @author duanyy
+ * @since 1.6.11.63
+ */
+public class ServantExecutorReport extends AbstractServant{
+
+	protected void onDestroy() {
+		// nothing to do
+	}
+
+	protected void onCreate(ServiceDescription sd) throws ServantException{
+		// nothing to do
+	}
+
+	protected int onXml(Context ctx) {
+		XMLMessage msg = (XMLMessage) ctx.asMessage(XMLMessage.class);
+
+		ServantExecutor executor = ServantExecutor.TheFactory.get();
+		if (executor != null){
+			Element root = msg.getRoot();
+			Document doc = root.getOwnerDocument();
+
+			Element e = doc.createElement("executor");
+			executor.report(e);
+			root.appendChild(e);
+		}
+		return 0;
+	}
+
+	protected int onJson(Context ctx) {
+		JsonMessage msg = (JsonMessage)ctx.asMessage(JsonMessage.class);
+
+		ServantExecutor executor = ServantExecutor.TheFactory.get();
+		if (executor != null){
+			Map<String,Object> root = msg.getRoot();
+
+			Map<String,Object> map = new HashMap<String,Object>();
+			executor.report(map);
+			root.put("executor", map);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,181 @@
+package com.logicbus.backend.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.anysoft.util.Settings;
+import com.logicbus.backend.Context;
+import com.logicbus.backend.Servant;
+import com.logicbus.backend.ServantExecutor;
+import com.logicbus.models.servant.DefaultServiceDescription;
+import com.logicbus.service.HelloJSON;
+import com.logicbus.service.Helloworld;
+
+/**
+ * 比较Direct,Spawned和Pooled三种服务执行器的吞吐量
+ * 
+ * @author duanyy
+ *
+ */
+public class ExecutorBench {
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int calls = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		
+		String [] modes = new String[]{"Direct","Spawned","Pooled"};
+		Class<?> [] servants = new Class<?>[]{Helloworld.class,HelloJSON.class};
+		
+		for (Class<?> clazz:servants){
+			for (String mode:modes){
+				Settings settings = Settings.get();
+				settings.SetValue("servant.executor.module", mode);
+				ServantExecutor executor = ServantExecutor.TheFactory.get(settings);
+				
+				//预热
+				run(executor,clazz,threads,calls / 10);
+				
+				long start = System.nanoTime();
+				long timeout = run(executor,clazz,threads,calls);
+				long duration = System.nanoTime() - start;
+				
+				System.out.println(String.format("%-12s%-10s threads=%d calls=%d tps=%.0f timeout=%d",
+						clazz.getSimpleName(),mode,threads,threads * calls,
+						threads * calls * 1000000000.0 / duration,timeout));
+				executor.close();
+			}
+		}
+	}
+	
+	protected static long run(final ServantExecutor executor,Class<?> clazz,int threads,final int calls) throws Exception{
+		DefaultServiceDescription sd = new DefaultServiceDescription("bench");
+		sd.setPath("/demo/" + clazz.getSimpleName());
+		sd.setModule(clazz.getName());
+		
+		final Servant servant = (Servant)clazz.newInstance();
+		servant.create(sd);
+		
+		final AtomicLong timeout = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		for (int i = 0 ; i < threads ; i ++){
+			Thread thread = new Thread(){
+				public void run(){
+					try {
+						for (int j = 0 ; j < calls ; j ++){
+							if (!executor.execute(servant, new BenchContext(), null)){
+								timeout.incrementAndGet();
+							}
+						}
+					}finally{
+						latch.countDown();
+					}
+				}
+			};
+			thread.start();
+		}
+		latch.await();
+		return timeout.get();
+	}
+	
+	/**
+	 * 基准测试用的上下文
+	 */
+	public static class BenchContext extends Context {
+		
+		protected ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		public BenchContext() {
+			super("utf-8");
+		}
+
+		@Override
+		public void finish() {
+			// nothing to do
+		}
+		@Override
+		public String getClientIp() {
+			return "127.0.0.1";
+		}
+		@Override
+		public String getClientRealIp() {
+			return "127.0.0.1";
+		}
+		@Override
+		public String getPathInfo() {
+			return "";
+		}
+		@Override
+		public String getHost() {
+			return "localhost";
+		}
+		@Override
+		public String getHostDomain() {
+			return "localhost";
+		}
+		@Override
+		public String getRequestURI() {
+			return "";
+		}
+		@Override
+		public String getRequestURL() {
+			return "";
+		}
+		@Override
+		public String getMethod() {
+			return "GET";
+		}
+		@Override
+		public long getContentLength() {
+			return 0;
+		}
+		@Override
+		public String getGlobalSerial() {
+			return "";
+		}
+		@Override
+		public String getGlobalSerialOrder() {
+			return "";
+		}
+		@Override
+		public String getRequestContentType() {
+			return "text/plain";
+		}
+		@Override
+		public String getRequestHeader(String id) {
+			return null;
+		}
+		@Override
+		public void setResponseHeader(String id, String value) {
+			// nothing to do
+		}
+		@Override
+		public void setResponseContentType(String contentType) {
+			// nothing to do
+		}
+		@Override
+		public void setResponseContentLength(int contentLength) {
+			// nothing to do
+		}
+		@Override
+		public String getQueryString() {
+			return "";
+		}
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return out;
+		}
+		@Override
+		public byte[] getRequestRaw() {
+			return null;
+		}
+	}
+}
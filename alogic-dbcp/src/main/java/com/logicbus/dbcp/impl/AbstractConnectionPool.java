@@ -61,6 +61,16 @@ import com.logicbus.dbcp.util.ConnectionPoolStat;
  * 
  * @version 1.6.9.9 [20170829 duanyy] <br>
  * - Pool的returnObject接口增加是否出错的参数 <br>
+ * 
+ * @version 1.6.11.71 [20181016 duanyy] <br>
+ * - 连接支持PreparedStatement缓存，并输出缓存的统计信息 <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 支持后台检查空闲连接，淘汰超过最大存活时间的连接 <br>
+ * - 连接在最近一个维护周期内被确认有效时，借出时不再检查 <br>
+ * 
+ * @version 1.6.11.86 [20181031 duanyy] <br>
+ * - 只读数据源的在途数和时延按连接的实际使用统计，借出时进入，归还时计数 <br>
  */
 abstract public class AbstractConnectionPool extends Queued implements ConnectionPool{
 	protected Counter stat = null;
@@ -69,6 +79,11 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 	protected boolean autoCommit = true;
 	protected boolean enableRWSForce = false;
 	
+	/**
+	 * PreparedStatement缓存的统计信息
+	 */
+	protected StatementCache.Stat statementStat = new StatementCache.Stat();
+	
 	@Override
 	public void configure(Properties props){
 		boolean enableStat = true;
@@ -123,6 +138,14 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 				stat.report(_stat);
 				xml.appendChild(_stat);
 			}
+			
+			// statement cache
+			if (getStatementCacheSize() > 0){
+				Element _stmt = doc.createElement("statement");
+				_stmt.setAttribute("cacheSize", String.valueOf(getStatementCacheSize()));
+				statementStat.report(_stmt);
+				xml.appendChild(_stmt);
+			}
 		}
 	}
 
@@ -141,6 +164,13 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 				stat.report(_stat);
 				json.put("stat", _stat);
 			}
+			
+			if (getStatementCacheSize() > 0){
+				Map<String,Object> _stmt = new HashMap<String,Object>();
+				_stmt.put("cacheSize", getStatementCacheSize());
+				statementStat.report(_stmt);
+				json.put("statement", _stmt);
+			}
 		}
 	}
 
@@ -161,7 +191,7 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 			try {
 				int _timeout = timeout > getMaxWait() ? getMaxWait() : timeout;
 				conn = borrowObject(0,_timeout);
-				if (testConn){
+				if (testConn && !isRecentlyValidated(conn)){
 					try {
 						if (conn.isClosed() || !conn.isValid(1)){
 							//如果该Connection无效，关闭，并直接创建一个
@@ -191,9 +221,35 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 		return conn;
 	}
 	
+	/**
+	 * 连接是否在最近一个维护周期内被后台确认有效
+	 * @param conn 连接
+	 * @return true|false
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected boolean isRecentlyValidated(Connection conn){
+		long interval = getKeeperInterval();
+		if (interval > 0 && conn instanceof ManagedConnection){
+			return System.currentTimeMillis() - ((ManagedConnection)conn).getLastValidated() <= interval;
+		}
+		return false;
+	}
+	
+	@Override
+	protected boolean keepObject(Object pooled,long now){
+		if (pooled instanceof ManagedConnection){
+			return ((ManagedConnection)pooled).keep(now, getMaxLifetime(), 1);
+		}
+		return true;
+	}
+	
 	/**
 	 * 尝试选择只读数据源
 	 * 
+	 * <p>
+	 * 借出{@link ManagedConnection}时，由连接记录所选的只读数据源，在归还时计数；否则在借出之后立即计数.
+	 * 
 	 * @return 只读数据源的数据库连接
 	 */
 	protected Connection selectReadSource(int timeout){
@@ -214,9 +270,12 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 			} catch (Exception e) {
 				error = true;
 			}finally{
-				long _duration = System.nanoTime() - start;
 				if (dest != null){
-					dest.count(_duration, error);
+					if (found instanceof ManagedConnection){
+						((ManagedConnection)found).lease(dest, start);
+					}else{
+						dest.count(System.nanoTime() - start, error);
+					}
 				}
 			}
 		}
@@ -246,7 +305,7 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 		Connection wrapper = null;
 		Connection real = newConnection();
 		if (real != null){
-			wrapper = new ManagedConnection(this,real,getTimeout());
+			wrapper = new ManagedConnection(this,real,getTimeout(),getStatementCacheSize(),statementStat);
 		}
 		return (pooled)wrapper;
 	}
@@ -262,6 +321,8 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 			if (conn instanceof ManagedConnection){
 				//ManagedConnection不能close，否则会死循环
 				ManagedConnection _conn = (ManagedConnection)conn;
+				//向借出该连接的只读数据源反馈
+				_conn.release(hasError);
 				ConnectionPool _pool = _conn.getPool();
 				if (_pool == this){
 					//是由本pool创建的
@@ -298,6 +359,26 @@ abstract public class AbstractConnectionPool extends Queued implements Connectio
 	 */
 	abstract protected long getTimeout();
 	
+	/**
+	 * 获取每个连接的PreparedStatement缓存大小，小于等于0时不缓存
+	 * @return 缓存大小
+	 * 
+	 * @since 1.6.11.71
+	 */
+	protected int getStatementCacheSize(){
+		return 0;
+	}
+	
+	/**
+	 * 获取连接的最大存活时间(ms)，小于等于0时不限制
+	 * @return 最大存活时间
+	 * 
+	 * @since 1.6.11.72
+	 */
+	protected long getMaxLifetime(){
+		return 0;
+	}
+	
 	/**
 	 * 创建新的链接
 	 * 
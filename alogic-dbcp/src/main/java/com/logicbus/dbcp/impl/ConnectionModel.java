@@ -56,6 +56,12 @@ import com.anysoft.util.code.CoderFactory;
  * 
  * @version 1.6.11.27 [20180417 duanyy] <br>
  * - 错误的情况下不再输出密码信息 <br>
+ * 
+ * @version 1.6.11.71 [20181016 duanyy] <br>
+ * - 增加控制属性statementCacheSize <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 增加控制属性keeperInterval,keeperWarmup,maxLifetime <br>
  */
 public class ConnectionModel{
 	/**
@@ -151,6 +157,50 @@ public class ConnectionModel{
 	
 	public long getTimeout(){return timeout;}
 	
+	/**
+	 * 每个连接的PreparedStatement缓存大小，缺省为0，即不缓存
+	 */
+	protected int statementCacheSize = 0;
+	
+	/**
+	 * 获取每个连接的PreparedStatement缓存大小
+	 * @return 缓存大小
+	 */
+	public int getStatementCacheSize(){return statementCacheSize;}
+	
+	/**
+	 * 后台检查空闲连接的间隔时间(ms)，缺省为0，即不检查
+	 */
+	protected long keeperInterval = 0;
+	
+	/**
+	 * 获取后台检查空闲连接的间隔时间
+	 * @return 间隔时间
+	 */
+	public long getKeeperInterval(){return keeperInterval;}
+	
+	/**
+	 * 后台检查时是否将空闲连接预热到maxIdle
+	 */
+	protected boolean keeperWarmup = true;
+	
+	/**
+	 * 后台检查时是否预热
+	 * @return true|false
+	 */
+	public boolean isKeeperWarmup(){return keeperWarmup;}
+	
+	/**
+	 * 连接的最大存活时间(ms)，缺省为0，即不限制
+	 */
+	protected long maxLifetime = 0;
+	
+	/**
+	 * 获取连接的最大存活时间
+	 * @return 最大存活时间
+	 */
+	public long getMaxLifetime(){return maxLifetime;}
+	
 	/**
 	 * 空闲连接数
 	 */
@@ -192,6 +242,10 @@ public class ConnectionModel{
 		e.setAttribute("maxIdle", String.valueOf(maxIdle));
 		e.setAttribute("maxWait", String.valueOf(maxWait));
 		e.setAttribute("timeout", String.valueOf(timeout));
+		e.setAttribute("statementCacheSize", String.valueOf(statementCacheSize));
+		e.setAttribute("keeperInterval", String.valueOf(keeperInterval));
+		e.setAttribute("keeperWarmup", String.valueOf(keeperWarmup));
+		e.setAttribute("maxLifetime", String.valueOf(maxLifetime));
 		e.setAttribute("sda", sdaId);
 		
 		//readonlys
@@ -220,6 +274,10 @@ public class ConnectionModel{
 		JsonTools.setInt(json, "maxIdle", maxIdle);
 		JsonTools.setInt(json, "maxWait", maxWait);
 		JsonTools.setLong(json, "timeout", timeout);
+		JsonTools.setInt(json, "statementCacheSize", statementCacheSize);
+		JsonTools.setLong(json, "keeperInterval", keeperInterval);
+		JsonTools.setBoolean(json, "keeperWarmup", keeperWarmup);
+		JsonTools.setLong(json, "maxLifetime", maxLifetime);
 		JsonTools.setString(json, "sda", sdaId);
 		
 		//readonlys
@@ -256,6 +314,10 @@ public class ConnectionModel{
 		maxIdle = PropertiesConstants.getInt(props, "maxIdle",1);
 		maxWait = PropertiesConstants.getInt(props, "maxWait",5000);
 		timeout = PropertiesConstants.getLong(props, "timeout",timeout);
+		statementCacheSize = PropertiesConstants.getInt(props, "statementCacheSize",statementCacheSize);
+		keeperInterval = PropertiesConstants.getLong(props, "keeperInterval",keeperInterval);
+		keeperWarmup = PropertiesConstants.getBoolean(props, "keeperWarmup",keeperWarmup);
+		maxLifetime = PropertiesConstants.getLong(props, "maxLifetime",maxLifetime);
 		sdaId = PropertiesConstants.getString(props, "sda", sdaId);
 		
 		NodeList _readonlys = XmlTools.getNodeListByPath(e, "ross/ros");
@@ -293,6 +355,10 @@ public class ConnectionModel{
 		maxIdle = JsonTools.getInt(json, "maxIdle",1);
 		maxWait = JsonTools.getInt(json, "maxWait",5000);
 		timeout = JsonTools.getLong(json, "timeout", timeout);
+		statementCacheSize = JsonTools.getInt(json, "statementCacheSize", statementCacheSize);
+		keeperInterval = JsonTools.getLong(json, "keeperInterval", keeperInterval);
+		keeperWarmup = JsonTools.getBoolean(json, "keeperWarmup", keeperWarmup);
+		maxLifetime = JsonTools.getLong(json, "maxLifetime", maxLifetime);
 		sdaId = JsonTools.getString(json, "sda", sdaId);
 		
 		Object _readonlys = json.get("ross");
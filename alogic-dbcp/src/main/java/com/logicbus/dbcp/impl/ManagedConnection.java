@@ -29,6 +29,15 @@ import com.logicbus.dbcp.core.ConnectionPool;
  * 
  * @version 1.6.3.13 [20150408 duanyy] <br>
  * - 重写{@link #isValid(int)}方法 <br>
+ * 
+ * @version 1.6.11.71 [20181016 duanyy] <br>
+ * - 增加PreparedStatement缓存 <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 增加后台检查的支持{@link #keep(long, long, int)} <br>
+ * 
+ * @version 1.6.11.86 [20181031 duanyy] <br>
+ * - 记录借出该连接的只读数据源，归还时反馈使用时长 <br>
  */
 public class ManagedConnection implements Connection {
 	/**
@@ -39,6 +48,31 @@ public class ManagedConnection implements Connection {
 	private long lastVisited = 0;
 	private long timeout = 60 * 60 * 1000L;
 	
+	/**
+	 * 创建时间
+	 */
+	private final long createTime = System.currentTimeMillis();
+	
+	/**
+	 * 最近一次确认连接有效的时间
+	 */
+	private volatile long lastValidated = createTime;
+	
+	/**
+	 * PreparedStatement缓存，为null时不缓存
+	 */
+	protected StatementCache statements = null;
+	
+	/**
+	 * 借出该连接的只读数据源，为null时不需要反馈
+	 */
+	private volatile ReadOnlySource source = null;
+	
+	/**
+	 * 通过只读数据源借出的时间(ns)
+	 */
+	private volatile long leaseTime = 0;
+	
 	public ManagedConnection(ConnectionPool thePool,Connection conn){
 		pool = thePool;
 		real = conn;
@@ -50,13 +84,110 @@ public class ManagedConnection implements Connection {
 		timeout = _timeout;
 	}
 	
+	/**
+	 * 构造函数
+	 * @param thePool 连接池
+	 * @param conn 实际的连接
+	 * @param _timeout 有效性检查的间隔时间
+	 * @param cacheSize PreparedStatement缓存的大小，小于等于0时不缓存
+	 * @param stat 缓存的统计信息
+	 * 
+	 * @since 1.6.11.71
+	 */
+	public ManagedConnection(ConnectionPool thePool,Connection conn,long _timeout,int cacheSize,StatementCache.Stat stat){
+		this(thePool,conn,_timeout);
+		if (cacheSize > 0){
+			statements = new StatementCache(this,conn,cacheSize,stat);
+		}
+	}
+	
 	public ConnectionPool getPool(){
 		return pool;
 	}
+	
+	/**
+	 * 获取创建时间
+	 * @return 创建时间
+	 * 
+	 * @since 1.6.11.72
+	 */
+	public long getCreateTime(){
+		return createTime;
+	}
+	
+	/**
+	 * 获取最近一次确认连接有效的时间
+	 * @return 时间
+	 * 
+	 * @since 1.6.11.72
+	 */
+	public long getLastValidated(){
+		return lastValidated;
+	}
+	
+	/**
+	 * 后台检查连接，由连接池的维护线程在连接空闲时调用
+	 * 
+	 * @param now 当前时间
+	 * @param maxLifetime 连接的最大存活时间，小于等于0时不限制
+	 * @param validTimeout 有效性检查的超时时间(s)
+	 * @return 是否保留该连接
+	 * 
+	 * @since 1.6.11.72
+	 */
+	public boolean keep(long now,long maxLifetime,int validTimeout){
+		if (maxLifetime > 0 && now - createTime > maxLifetime){
+			//超过最大存活时间
+			return false;
+		}
+		try {
+			if (real.isClosed() || !real.isValid(validTimeout)){
+				return false;
+			}
+		}catch (SQLException ex){
+			return false;
+		}
+		lastValidated = now;
+		return true;
+	}
+	 
+	/**
+	 * 记录借出该连接的只读数据源
+	 * @param src 只读数据源
+	 * @param start 开始选择数据源的时间(ns)
+	 * 
+	 * @since 1.6.11.86
+	 */
+	public void lease(ReadOnlySource src,long start){
+		leaseTime = start;
+		source = src;
+	}
+	
+	/**
+	 * 归还连接时向只读数据源反馈本次使用的时长
+	 * 
+	 * <p>
+	 * 时长从选择数据源开始，到归还连接为止，使得只读数据源的在途数和时延反映连接的实际使用.
+	 * 
+	 * @param error 是否出错
+	 * 
+	 * @since 1.6.11.86
+	 */
+	public void release(boolean error){
+		ReadOnlySource src = source;
+		source = null;
+		if (src != null){
+			src.count(System.nanoTime() - leaseTime, error);
+		}
+	}
 	 
 	public void close(boolean force)throws SQLException{
 		if (force || pool == null){
+			release(false);
 			//如果强行关闭
+			if (statements != null){
+				statements.clear();
+			}
 			real.close();
 		}else{
 			pool.recycle(this, false);
@@ -75,7 +206,7 @@ public class ManagedConnection implements Connection {
 	}
 
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return real.prepareStatement(sql);
+		return statements == null ? real.prepareStatement(sql) : statements.prepare(sql);
 	}
 
 	public CallableStatement prepareCall(String sql) throws SQLException {
@@ -248,7 +379,11 @@ public class ManagedConnection implements Connection {
 		if (now - lastVisited > timeout){
 			//已超过时间，进行检查
 			lastVisited = now;
-			return real.isValid(_timeout);
+			boolean valid = real.isValid(_timeout);
+			if (valid){
+				lastValidated = now;
+			}
+			return valid;
 		}
 		lastVisited = now;
 		return true;
@@ -26,6 +26,12 @@ import com.anysoft.util.Properties;
  * 
  * @version 1.6.6.9 [20161209 duanyy] <br>
  * - 从新的框架下继承 <br>
+ * 
+ * @version 1.6.11.71 [20181016 duanyy] <br>
+ * - 支持PreparedStatement缓存 <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 支持后台检查空闲连接和最大存活时间 <br>
  */
 public class ModelledImpl extends AbstractConnectionPool{
 
@@ -35,6 +41,8 @@ public class ModelledImpl extends AbstractConnectionPool{
 		Properties props = new DefaultProperties();		
 		props.SetValue(getIdOfMaxQueueLength(),	String.valueOf(model.getMaxActive()));
 		props.SetValue(getIdOfIdleQueueLength(),String.valueOf(model.getMaxIdle()));
+		props.SetValue(getIdOfKeeperInterval(),String.valueOf(model.getKeeperInterval()));
+		props.SetValue(getIdOfKeeperWarmup(),String.valueOf(model.isKeeperWarmup()));
 
 		configure(props);
 	}
@@ -97,5 +105,15 @@ public class ModelledImpl extends AbstractConnectionPool{
 	protected long getTimeout() {
 		return model.getTimeout();
 	}
+	
+	@Override
+	protected int getStatementCacheSize() {
+		return model.getStatementCacheSize();
+	}
+	
+	@Override
+	protected long getMaxLifetime() {
+		return model.getMaxLifetime();
+	}
 
 }
\ No newline at end of file
@@ -4,7 +4,7 @@ import java.util.Map;
 
 import org.w3c.dom.Element;
 
-import com.anysoft.loadbalance.DefaultCounter;
+import com.anysoft.loadbalance.LatencyCounter;
 import com.anysoft.loadbalance.Load;
 import com.anysoft.loadbalance.LoadCounter;
 import com.anysoft.util.JsonSerializer;
@@ -19,8 +19,10 @@ import com.anysoft.util.XmlSerializer;
  * 
  * @author duanyy
  *
+ * @version 1.6.11.86 [20181031 duanyy] <br>
+ * - 改为从LatencyCounter继承，以支持感知时延的负载均衡 <br>
  */
-public class ReadOnlySource extends DefaultCounter implements Load,JsonSerializer,XmlSerializer{
+public class ReadOnlySource extends LatencyCounter implements Load,JsonSerializer,XmlSerializer{
 	protected String id;
 	protected int weight = 1;
 	protected int priority = 1;
@@ -73,6 +75,8 @@ public class ReadOnlySource extends DefaultCounter implements Load,JsonSerialize
 			json.put("loadbalance.cycle", cycle);
 			json.put("loadbalance.maxtimes", maxErrorTimes);
 			json.put("loadbalance.retryinterval", retryInterval);
+			json.put("loadbalance.decay", decay);
+			json.put("loadbalance.penalty", penalty);
 		}
 	}
 
@@ -86,6 +90,11 @@ public class ReadOnlySource extends DefaultCounter implements Load,JsonSerialize
 			cycle = JsonTools.getLong(json,"loadbalance.cycle",cycle);
 			maxErrorTimes = JsonTools.getInt(json,"loadbalance.maxtimes",maxErrorTimes);
 			retryInterval = JsonTools.getInt(json,"loadbalance.retryinterval",retryInterval);
+			decay = JsonTools.getDouble(json,"loadbalance.decay",decay);
+			penalty = JsonTools.getDouble(json,"loadbalance.penalty",penalty);
+			if (decay <= 0){
+				decay = DFT_DECAY;
+			}
 		}
 	}
 
@@ -99,6 +108,8 @@ public class ReadOnlySource extends DefaultCounter implements Load,JsonSerialize
 			xml.setAttribute("loadbalance.cycle", String.valueOf(cycle));
 			xml.setAttribute("loadbalance.maxtimes", String.valueOf(maxErrorTimes));
 			xml.setAttribute("loadbalance.retryinterval", String.valueOf(retryInterval));
+			xml.setAttribute("loadbalance.decay", String.valueOf(decay));
+			xml.setAttribute("loadbalance.penalty", String.valueOf(penalty));
 		}
 	}
 
@@ -113,7 +124,12 @@ public class ReadOnlySource extends DefaultCounter implements Load,JsonSerialize
 			
 			cycle = PropertiesConstants.getLong(p,"loadbalance.cycle",cycle);
 			maxErrorTimes = PropertiesConstants.getInt(p,"loadbalance.maxtimes",maxErrorTimes);
-			retryInterval = PropertiesConstants.getInt(p,"loadbalance.retryinterval",retryInterval);			
+			retryInterval = PropertiesConstants.getInt(p,"loadbalance.retryinterval",retryInterval);
+			decay = PropertiesConstants.getDouble(p,"loadbalance.decay",decay);
+			penalty = PropertiesConstants.getDouble(p,"loadbalance.penalty",penalty);
+			if (decay <= 0){
+				decay = DFT_DECAY;
+			}
 		}
 	}
 }
@@ -0,0 +1,294 @@
+package com.logicbus.dbcp.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 连接级的PreparedStatement缓存
+ *
+ * <p>
+ * 按SQL语句缓存PreparedStatement，缓存满时按LRU淘汰.从缓存中取出的Statement被包装为代理，
+ * 调用者关闭代理时，Statement并不真正关闭，而是清除参数、批处理和警告之后归还到缓存中.如果调用者修改过
+ * maxRows,queryTimeout,fetchSize等设置，Statement将被关闭，而不是归还到缓存中，以免影响下一个使用者.
+ *
+ * <p>
+ * 正在使用的Statement不在缓存中，当同一连接上同时执行相同的SQL时，会创建新的Statement，互不影响.
+ *
+ * @author duanyy
+ * @since 1.6.11.71
+ */
+public class StatementCache {
+
+	/**
+	 * 改变Statement设置的方法，调用过这些方法的Statement不再归还到缓存中
+	 */
+	protected static final Set<String> SETTERS = new HashSet<String>(Arrays.asList(
+			"setMaxRows","setLargeMaxRows","setQueryTimeout","setFetchSize","setFetchDirection",
+			"setMaxFieldSize","setEscapeProcessing","setCursorName","setPoolable","closeOnCompletion"
+			));
+
+	/**
+	 * 对外的连接，作为Statement.getConnection的返回值
+	 */
+	protected final Connection owner;
+
+	/**
+	 * 实际的连接
+	 */
+	protected final Connection real;
+
+	/**
+	 * 缓存的最大个数
+	 */
+	protected final int maxSize;
+
+	/**
+	 * 统计信息(由连接池内所有的连接共享)
+	 */
+	protected final Stat stat;
+
+	/**
+	 * 是否已经关闭
+	 */
+	protected boolean closed = false;
+
+	/**
+	 * 空闲的Statement
+	 */
+	protected final LinkedHashMap<String,PreparedStatement> idle;
+
+	public StatementCache(Connection owner,Connection real,int maxSize,Stat stat){
+		this.owner = owner;
+		this.real = real;
+		this.maxSize = maxSize;
+		this.stat = stat == null ? new Stat() : stat;
+		this.idle = new LinkedHashMap<String,PreparedStatement>(16,0.75f,true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+				if (size() > StatementCache.this.maxSize){
+					close(eldest.getValue());
+					StatementCache.this.stat.evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * 获取指定SQL的PreparedStatement
+	 * @param sql SQL语句
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException{
+		PreparedStatement found = null;
+		synchronized (this){
+			found = idle.remove(sql);
+		}
+		if (found != null){
+			stat.hits.incrementAndGet();
+		}else{
+			stat.misses.incrementAndGet();
+			found = real.prepareStatement(sql);
+		}
+		return (PreparedStatement)Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(),
+				new Class<?>[]{PreparedStatement.class},
+				new Handler(sql,found));
+	}
+
+	/**
+	 * 归还Statement
+	 * @param sql SQL语句
+	 * @param stmt Statement
+	 * @param modified 是否修改过Statement的设置
+	 */
+	protected void release(String sql,PreparedStatement stmt,boolean modified){
+		if (modified){
+			close(stmt);
+			return;
+		}
+		try {
+			ResultSet rs = stmt.getResultSet();
+			if (rs != null){
+				rs.close();
+			}
+			stmt.clearParameters();
+			stmt.clearBatch();
+			stmt.clearWarnings();
+		}catch (SQLException ex){
+			close(stmt);
+			return;
+		}
+		synchronized (this){
+			if (closed){
+				close(stmt);
+				return;
+			}
+			PreparedStatement old = idle.put(sql, stmt);
+			if (old != null && old != stmt){
+				close(old);
+			}
+		}
+	}
+
+	/**
+	 * 关闭缓存中所有的Statement，在连接关闭之前调用
+	 */
+	public synchronized void clear(){
+		closed = true;
+		for (PreparedStatement stmt:idle.values()){
+			close(stmt);
+		}
+		idle.clear();
+	}
+
+	/**
+	 * 获取缓存中空闲的Statement个数
+	 * @return 个数
+	 */
+	public synchronized int size(){
+		return idle.size();
+	}
+
+	protected static void close(PreparedStatement stmt){
+		try {
+			stmt.close();
+		}catch (SQLException ex){
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Statement的代理
+	 */
+	protected class Handler implements InvocationHandler{
+		protected final String sql;
+		protected final PreparedStatement stmt;
+		protected boolean released = false;
+		protected boolean modified = false;
+
+		protected Handler(String sql,PreparedStatement stmt){
+			this.sql = sql;
+			this.stmt = stmt;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name) && method.getParameterTypes().length == 0){
+				if (!released){
+					released = true;
+					release(sql,stmt,modified);
+				}
+				return null;
+			}
+			if ("isClosed".equals(name) && method.getParameterTypes().length == 0){
+				return released || stmt.isClosed();
+			}
+			if ("getConnection".equals(name) && method.getParameterTypes().length == 0){
+				return owner;
+			}
+			if ("hashCode".equals(name) && method.getParameterTypes().length == 0){
+				return System.identityHashCode(proxy);
+			}
+			if ("equals".equals(name) && method.getParameterTypes().length == 1){
+				return proxy == args[0];
+			}
+			if (released && !"toString".equals(name)){
+				throw new SQLException("The statement has been closed.");
+			}
+			if (SETTERS.contains(name)){
+				modified = true;
+			}
+			try {
+				return method.invoke(stmt, args);
+			}catch (InvocationTargetException ex){
+				throw ex.getCause();
+			}
+		}
+	}
+
+	/**
+	 * 缓存的统计信息
+	 */
+	public static class Stat implements Reportable{
+		/**
+		 * 命中次数
+		 */
+		protected final AtomicLong hits = new AtomicLong(0);
+
+		/**
+		 * 未命中次数
+		 */
+		protected final AtomicLong misses = new AtomicLong(0);
+
+		/**
+		 * 淘汰次数
+		 */
+		protected final AtomicLong evictions = new AtomicLong(0);
+
+		public long getHits(){
+			return hits.get();
+		}
+
+		public long getMisses(){
+			return misses.get();
+		}
+
+		public long getEvictions(){
+			return evictions.get();
+		}
+
+		/**
+		 * 获取命中率
+		 * @return 命中率
+		 */
+		public double getHitRate(){
+			long h = hits.get();
+			long total = h + misses.get();
+			return total <= 0 ? 0.0 : (double)h / total;
+		}
+
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				XmlTools.setLong(xml, "hits", getHits());
+				XmlTools.setLong(xml, "misses", getMisses());
+				XmlTools.setLong(xml, "evictions", getEvictions());
+				XmlTools.setString(xml, "hitRate", String.format("%.4f", getHitRate()));
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				JsonTools.setLong(json, "hits", getHits());
+				JsonTools.setLong(json, "misses", getMisses());
+				JsonTools.setLong(json, "evictions", getEvictions());
+				JsonTools.setDouble(json, "hitRate", getHitRate());
+			}
+		}
+	}
+}
@@ -28,6 +28,12 @@ import com.anysoft.util.XmlElementProperties;
  * 
  * @version 1.6.6.9 [20161209 duanyy] <br>
  * - 从新的框架下继承 <br>
+ * 
+ * @version 1.6.11.71 [20181016 duanyy] <br>
+ * - 支持PreparedStatement缓存 <br>
+ * 
+ * @version 1.6.11.72 [20181017 duanyy] <br>
+ * - 支持后台检查空闲连接和最大存活时间 <br>
  */
 public class XMLConfigurableImpl extends AbstractConnectionPool implements XMLConfigurable{
 
@@ -98,6 +104,16 @@ public class XMLConfigurableImpl extends AbstractConnectionPool implements XMLCo
 	protected long getTimeout() {
 		return model.getTimeout();
 	}
+	
+	@Override
+	protected int getStatementCacheSize() {
+		return model.getStatementCacheSize();
+	}
+	
+	@Override
+	protected long getMaxLifetime() {
+		return model.getMaxLifetime();
+	}
 
 	
 
@@ -14,6 +14,9 @@ import com.logicbus.dbcp.sql.DBTools;
  * 基于mysql表模型的序列生成器
  * @author yyduan
  * @since 1.6.11.5
+ * 
+ * @version 1.6.11.73 [20181018 duanyy] <br>
+ * - 预分配失败时输出错误日志，并以出错状态归还连接 <br>
  */
 public class MysqlSequeuce extends IdGenerator.Prepare {
 	
@@ -76,6 +79,9 @@ public class MysqlSequeuce extends IdGenerator.Prepare {
 					
 					doPrepare(currentValue, currentValue + capacity);
 				}catch (Exception ex){
+					//没有调用doPrepare，由IdGenerator.Prepare抛出异常
+					error = true;
+					LOG.error("Failed to prepare sequence:" + id,ex);
 					DBTools.rollback(conn);
 				}				
 			}else{
@@ -19,6 +19,9 @@ import com.logicbus.dbcp.sql.DBTools;
  * 
  * @author yyduan
  * @since 1.6.11.5
+ * 
+ * @version 1.6.11.74 [20181019 duanyy] <br>
+ * - 修正已登记的机器无法取得其机器id的问题 <br>
  */
 public class SnowflakeExt extends Snowflake{
 	
@@ -59,6 +62,7 @@ public class SnowflakeExt extends Snowflake{
 						DBTools.commit(conn);
 					}
 				}
+				return pid;
 			}else{
 				LOG.error("Can not get a db connection from pool + " + dbcpId);
 			}
@@ -0,0 +1,26 @@
+package com.logicbus.dbcp.util;
+
+import com.anysoft.util.HistogramCounter;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+
+/**
+ * 带有时长分布的连接池统计工具
+ * 
+ * <p>
+ * 在{@link ConnectionPoolStat}的基础上输出获取连接耗时的p50/p90/p99/p999，可通过dbcp.stat.module选用.
+ * 
+ * @author duanyy
+ * @since 1.6.11.75
+ */
+public class ConnectionPoolHistogramStat extends HistogramCounter{
+
+	public ConnectionPoolHistogramStat(Properties p) {
+		super(p);
+	}
+	
+	@Override
+	public long getStatCycle(Properties p){
+		return PropertiesConstants.getLong(p, "dbcp.stat.cycle", 5 * 60 * 1000L);
+	}		
+}
@@ -0,0 +1,118 @@
+package com.alogic.doer.local;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.alogic.timer.core.Doer;
+import com.alogic.timer.core.DoerContext;
+import com.alogic.timer.core.Task;
+import com.alogic.timer.core.Task.State;
+import com.anysoft.util.Properties;
+
+/**
+ * 带有持久化日志的本地任务中心
+ * 
+ * <p>
+ * 在{@link LocalTaskCenter}的基础上，将任务的进入队列、开始执行和执行结束以及全局上下文写入{@link TaskJournal}，
+ * 启动时从日志中恢复未完成的任务(包括已开始但未结束的任务)并重新进入队列，保证任务至少被执行一次.
+ * 
+ * <p>
+ * 日志的参数参见{@link TaskJournal}，例如：
+ * <pre>
+ * {@code
+ * <TaskCenter module="com.alogic.doer.local.JournaledTaskCenter" journal.home="${local.home}/doer/journal" journal.sync="interval">
+ *     <event event="hello" module="com.alogic.timer.core.ScriptDoer" threadCnt="2">
+ *     ...
+ *     </event>
+ * </TaskCenter>
+ * }
+ * </pre>
+ * 
+ * @author duanyy
+ * @since 1.6.11.80
+ */
+public class JournaledTaskCenter extends LocalTaskCenter{
+
+	/**
+	 * 任务日志
+	 */
+	protected TaskJournal journal = null;
+
+	@Override
+	public void configure(Properties p) {
+		super.configure(p);
+
+		journal = new TaskJournal();
+		journal.configure(p);
+		List<Task> tasks = journal.open();
+
+		DoerContext saved = journal.getContext();
+		if (saved != null){
+			ctx = saved;
+		}
+
+		for (Task task:tasks){
+			//已经在日志中，直接进入队列
+			super.dispatch(task.getEventId(), task);
+		}
+		if (!tasks.isEmpty()){
+			LOG.info(String.format("%d tasks are resumed from journal.",tasks.size()));
+		}
+	}
+
+	@Override
+	public void dispatch(String queue, Task task) {
+		journal.append(task);
+		super.dispatch(queue, task);
+	}
+
+	@Override
+	public void onStart(String id, State state, int percent,String note) {
+		super.onStart(id, state, percent, note);
+		journal.start(id);
+	}
+
+	@Override
+	public void onFinish(String id, State state, int percent,String note) {
+		super.onFinish(id, state, percent, note);
+		journal.finish(id);
+	}
+
+	@Override
+	public void saveContext(DoerContext ctx, Doer task) {
+		journal.saveContext(ctx);
+	}
+
+	@Override
+	public void report(Element xml) {
+		super.report(xml);
+		if (xml != null && journal != null){
+			Document doc = xml.getOwnerDocument();
+			Element _journal = doc.createElement("journal");
+			journal.report(_journal);
+			xml.appendChild(_journal);
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		super.report(json);
+		if (json != null && journal != null){
+			Map<String,Object> _journal = new HashMap<String,Object>();
+			journal.report(_journal);
+			json.put("journal", _journal);
+		}
+	}
+
+	@Override
+	public void stop() {
+		super.stop();
+		if (journal != null){
+			journal.close();
+		}
+	}
+}
@@ -0,0 +1,813 @@
+package com.alogic.doer.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.alogic.timer.core.DoerContext;
+import com.alogic.timer.core.Task;
+import com.anysoft.util.BaseException;
+import com.anysoft.util.Configurable;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+import com.jayway.jsonpath.spi.JsonProvider;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+
+/**
+ * 任务日志
+ * 
+ * <p>
+ * 将任务以及任务的状态变迁顺序追加到分段的内存映射文件中，用于在重启之后恢复未完成的任务.
+ * 
+ * <p>
+ * 日志由若干个固定大小的段文件(journal-序号.log)组成，段文件在创建时映射到内存，记录的格式为：
+ * 长度(4字节)+类型(1字节)+校验码(4字节)+内容，长度为0或者校验码不符表示段的结束. 记录的类型包括：<br>
+ * - TASK:任务进入队列，内容为任务的json串 <br>
+ * - START:任务开始执行，内容为任务id <br>
+ * - FINISH:任务执行结束，内容为任务id <br>
+ * - CONTEXT:全局上下文，内容为上下文的json串 <br>
+ * 
+ * <p>
+ * 记录写入映射内存之后即进入操作系统的页缓存，进程崩溃不会丢失；刷盘由后台线程批量进行(group commit)，
+ * 通过sync参数指定：<br>
+ * - interval:每隔syncInterval毫秒刷盘一次，掉电时最多丢失一个周期内的记录，缺省值 <br>
+ * - group:追加者等待包含其记录的那一批刷盘完成之后才返回 <br>
+ * - none:不主动刷盘 <br>
+ * 
+ * <p>
+ * 每个段记录其中未完成的任务个数，最早的段中的任务全部完成之后该段即被删除；在切换新段时，如果最早的段中只剩下
+ * 少量(不超过compactThreshold)未完成的任务，将这些任务重新追加到新段中，使得最早的段可以被删除.
+ * 
+ * @author duanyy
+ * @since 1.6.11.80
+ */
+public class TaskJournal implements Configurable,Reportable{
+	/**
+	 * a logger of slf4j
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(TaskJournal.class);
+
+	/**
+	 * 记录类型:任务进入队列
+	 */
+	public static final byte TASK = 1;
+
+	/**
+	 * 记录类型:任务开始执行
+	 */
+	public static final byte START = 2;
+
+	/**
+	 * 记录类型:任务执行结束
+	 */
+	public static final byte FINISH = 3;
+
+	/**
+	 * 记录类型:全局上下文
+	 */
+	public static final byte CONTEXT = 4;
+
+	/**
+	 * 记录头的长度
+	 */
+	public static final int HEADER = 9;
+
+	/**
+	 * 段文件的前缀
+	 */
+	public static final String PREFIX = "journal-";
+
+	/**
+	 * 段文件的后缀
+	 */
+	public static final String SUFFIX = ".log";
+
+	/**
+	 * 字符集
+	 */
+	protected static final Charset UTF8 = Charset.forName("utf-8");
+
+	/**
+	 * Json provider
+	 */
+	protected static JsonProvider provider = JsonProviderFactory.createProvider();
+
+	/**
+	 * 日志目录
+	 */
+	protected String home = "${local.home}/doer/journal";
+
+	/**
+	 * 段的大小
+	 */
+	protected int segmentSize = 64 * 1024 * 1024;
+
+	/**
+	 * 刷盘模式:interval|group|none
+	 */
+	protected String sync = "interval";
+
+	/**
+	 * 刷盘的时间间隔(ms)
+	 */
+	protected long syncInterval = 10;
+
+	/**
+	 * 切换新段时，最早的段中未完成任务个数不超过该值时进行压缩
+	 */
+	protected int compactThreshold = 64;
+
+	/**
+	 * 锁，追加记录以及维护未完成的任务都在锁内进行
+	 */
+	protected final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 有新的记录需要刷盘
+	 */
+	protected final Condition dirty = lock.newCondition();
+
+	/**
+	 * 刷盘完成
+	 */
+	protected final Condition synced = lock.newCondition();
+
+	/**
+	 * 段列表，按照从旧到新排序，最后一个为当前写入的段
+	 */
+	protected LinkedList<Segment> segments = new LinkedList<Segment>();
+
+	/**
+	 * 当前写入的段
+	 */
+	protected Segment current = null;
+
+	/**
+	 * 下一个段的序号
+	 */
+	protected long nextSeq = 0;
+
+	/**
+	 * 未完成的任务
+	 */
+	protected Map<String,Entry> live = new HashMap<String,Entry>();
+
+	/**
+	 * 最近保存的上下文
+	 */
+	protected byte[] context = null;
+
+	/**
+	 * 已经追加的字节数
+	 */
+	protected long appended = 0;
+
+	/**
+	 * 已经刷盘的字节数
+	 */
+	protected long flushed = 0;
+
+	/**
+	 * 追加的记录数
+	 */
+	protected long records = 0;
+
+	/**
+	 * 刷盘次数
+	 */
+	protected long syncs = 0;
+
+	/**
+	 * 删除的段数
+	 */
+	protected long deleted = 0;
+
+	/**
+	 * 压缩时重新追加的任务数
+	 */
+	protected long moved = 0;
+
+	/**
+	 * 刷盘线程
+	 */
+	protected Thread flusher = null;
+
+	/**
+	 * 是否已经关闭
+	 */
+	protected volatile boolean closed = true;
+
+	@Override
+	public void configure(Properties p) {
+		home = PropertiesConstants.getString(p,"journal.home",home);
+		segmentSize = PropertiesConstants.getInt(p,"journal.segmentSize",segmentSize);
+		sync = PropertiesConstants.getString(p,"journal.sync",sync);
+		syncInterval = PropertiesConstants.getLong(p,"journal.syncInterval",syncInterval);
+		compactThreshold = PropertiesConstants.getInt(p,"journal.compactThreshold",compactThreshold);
+
+		segmentSize = Math.max(segmentSize, 64 * 1024);
+		syncInterval = Math.max(syncInterval, 1);
+	}
+
+	/**
+	 * 打开日志
+	 * 
+	 * <p>
+	 * 按顺序重放已有的段，找出未完成的任务，删除任务已全部完成的段，然后创建新段用于写入.
+	 * 
+	 * @return 未完成的任务列表，按照进入队列的顺序排列
+	 */
+	public List<Task> open(){
+		lock.lock();
+		try {
+			File dir = new File(home);
+			if (!dir.exists() && !dir.mkdirs()){
+				throw new BaseException("core.e1003","Can not create journal home:" + home);
+			}
+
+			Map<String,Entry> found = new LinkedHashMap<String,Entry>();
+			for (Segment segment:list(dir)){
+				replay(segment,found);
+				segments.add(segment);
+				nextSeq = segment.seq + 1;
+			}
+
+			List<Task> tasks = new ArrayList<Task>(found.size());
+			for (Entry entry:found.values()){
+				entry.segment.live ++;
+				live.put(entry.task.id(), entry);
+				tasks.add(entry.task);
+			}
+
+			roll();
+			compact();
+			closed = false;
+
+			if (!"none".equals(sync)){
+				flusher = new Thread(new Runnable(){
+					@Override
+					public void run() {
+						flushLoop();
+					}
+				},"journal-flusher");
+				flusher.setDaemon(true);
+				flusher.start();
+			}
+
+			LOG.info(String.format("Journal %s is opened,%d segments,%d tasks to resume.",home,segments.size(),tasks.size()));
+			return tasks;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 获取最近保存的上下文
+	 * @return 上下文，没有保存过时返回null
+	 */
+	public DoerContext getContext(){
+		lock.lock();
+		try {
+			if (context == null){
+				return null;
+			}
+			Object json = provider.parse(new String(context,UTF8));
+			if (json instanceof Map){
+				@SuppressWarnings("unchecked")
+				Map<String,Object> map = (Map<String,Object>)json;
+				DoerContext ctx = new DoerContext();
+				ctx.fromJson(map);
+				return ctx;
+			}
+			return null;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 追加任务
+	 * @param task 任务
+	 */
+	public void append(Task task){
+		byte[] payload = task.toJsonString().getBytes(UTF8);
+		long pos;
+		lock.lock();
+		try {
+			if (closed){
+				LOG.warn("Journal is closed,task is not journaled:" + task.id());
+				return;
+			}
+			write(TASK,payload);
+			Entry entry = new Entry(current,task);
+			current.live ++;
+			Entry old = live.put(task.id(), entry);
+			if (old != null){
+				old.segment.live --;
+			}
+			pos = appended;
+		}finally{
+			lock.unlock();
+		}
+		await(pos);
+	}
+
+	/**
+	 * 记录任务开始执行
+	 * @param id 任务id
+	 */
+	public void start(String id){
+		lock.lock();
+		try {
+			if (closed || !live.containsKey(id)){
+				return;
+			}
+			write(START,id.getBytes(UTF8));
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 记录任务执行结束
+	 * @param id 任务id
+	 */
+	public void finish(String id){
+		long pos;
+		lock.lock();
+		try {
+			if (closed){
+				return;
+			}
+			Entry entry = live.remove(id);
+			if (entry == null){
+				return;
+			}
+			write(FINISH,id.getBytes(UTF8));
+			entry.segment.live --;
+			compact();
+			pos = appended;
+		}finally{
+			lock.unlock();
+		}
+		await(pos);
+	}
+
+	/**
+	 * 保存上下文
+	 * @param ctx 上下文
+	 */
+	public void saveContext(DoerContext ctx){
+		Map<String,Object> json = new HashMap<String,Object>();
+		ctx.toJson(json);
+		byte[] payload = provider.toJson(json).getBytes(UTF8);
+		long pos;
+		lock.lock();
+		try {
+			if (closed){
+				return;
+			}
+			write(CONTEXT,payload);
+			context = payload;
+			pos = appended;
+		}finally{
+			lock.unlock();
+		}
+		await(pos);
+	}
+
+	/**
+	 * 关闭日志
+	 */
+	public void close(){
+		lock.lock();
+		try {
+			if (closed){
+				return;
+			}
+			closed = true;
+			dirty.signalAll();
+			synced.signalAll();
+		}finally{
+			lock.unlock();
+		}
+
+		if (flusher != null){
+			try {
+				flusher.join(syncInterval * 10 + 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flusher = null;
+		}
+
+		lock.lock();
+		try {
+			if (current != null && current.buffer != null){
+				current.buffer.force();
+				current.buffer = null;
+			}
+			flushed = appended;
+		}finally{
+			lock.unlock();
+		}
+		LOG.info(String.format("Journal %s is closed.",home));
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			lock.lock();
+			try {
+				XmlTools.setString(xml,"home",home);
+				XmlTools.setString(xml,"sync",sync);
+				XmlTools.setInt(xml,"segments",segments.size());
+				XmlTools.setInt(xml,"live",live.size());
+				XmlTools.setLong(xml,"records",records);
+				XmlTools.setLong(xml,"appended",appended);
+				XmlTools.setLong(xml,"flushed",flushed);
+				XmlTools.setLong(xml,"syncs",syncs);
+				XmlTools.setLong(xml,"deleted",deleted);
+				XmlTools.setLong(xml,"moved",moved);
+			}finally{
+				lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			lock.lock();
+			try {
+				JsonTools.setString(json,"home",home);
+				JsonTools.setString(json,"sync",sync);
+				JsonTools.setInt(json,"segments",segments.size());
+				JsonTools.setInt(json,"live",live.size());
+				JsonTools.setLong(json,"records",records);
+				JsonTools.setLong(json,"appended",appended);
+				JsonTools.setLong(json,"flushed",flushed);
+				JsonTools.setLong(json,"syncs",syncs);
+				JsonTools.setLong(json,"deleted",deleted);
+				JsonTools.setLong(json,"moved",moved);
+			}finally{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 写入一条记录(需在锁内调用)
+	 * @param type 类型
+	 * @param payload 内容
+	 */
+	protected void write(byte type,byte[] payload){
+		int size = HEADER + payload.length;
+		if (size > segmentSize){
+			throw new BaseException("core.e1003",String.format("The record is too large:%d bytes",size));
+		}
+		if (current.buffer.remaining() < size){
+			roll();
+		}
+		put(current.buffer,type,payload);
+		appended += size;
+		records ++;
+		if ("group".equals(sync)){
+			dirty.signal();
+		}
+	}
+
+	/**
+	 * 写入一条记录到指定的缓冲区
+	 * @param buffer 缓冲区
+	 * @param type 类型
+	 * @param payload 内容
+	 */
+	protected static void put(MappedByteBuffer buffer,byte type,byte[] payload){
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+
+		int pos = buffer.position();
+		//先写入内容，最后写入长度，读取时长度为0的记录被视为段的结束
+		buffer.position(pos + 4);
+		buffer.put(type);
+		buffer.putInt((int)crc.getValue());
+		buffer.put(payload);
+		buffer.putInt(pos, payload.length);
+	}
+
+	/**
+	 * 切换到新段(需在锁内调用)
+	 * 
+	 * <p>
+	 * 当前段刷盘之后封存；新段的开头写入最近保存的上下文，如果最早的段中只剩少量未完成的任务，将其重新追加到新段中.
+	 */
+	protected void roll(){
+		Segment oldest = segments.isEmpty() ? null : segments.getFirst();
+		if (current != null){
+			current.buffer.force();
+			current.buffer = null;
+		}
+
+		Segment segment = new Segment(nextSeq ++,new File(home,String.format("%s%016d%s",PREFIX,nextSeq - 1,SUFFIX)));
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(segment.file,"rw");
+			segment.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}catch (IOException ex){
+			throw new BaseException("core.e1003","Can not create journal segment:" + segment.file.getPath());
+		}finally{
+			close(raf);
+		}
+		segments.add(segment);
+		current = segment;
+
+		if (context != null){
+			put(segment.buffer,CONTEXT,context);
+			appended += HEADER + context.length;
+			records ++;
+		}
+
+		if (oldest != null && oldest != segment && oldest.live > 0 && oldest.live <= compactThreshold){
+			Iterator<Entry> iter = live.values().iterator();
+			while (iter.hasNext() && oldest.live > 0){
+				Entry entry = iter.next();
+				if (entry.segment != oldest){
+					continue;
+				}
+				byte[] payload = entry.task.toJsonString().getBytes(UTF8);
+				if (segment.buffer.remaining() < HEADER + payload.length){
+					break;
+				}
+				put(segment.buffer,TASK,payload);
+				appended += HEADER + payload.length;
+				records ++;
+				oldest.live --;
+				entry.segment = segment;
+				segment.live ++;
+				moved ++;
+			}
+		}
+		compact();
+	}
+
+	/**
+	 * 删除最早的任务已全部完成的段(需在锁内调用)
+	 */
+	protected void compact(){
+		while (segments.size() > 1){
+			Segment oldest = segments.getFirst();
+			if (oldest == current || oldest.live > 0){
+				break;
+			}
+			segments.removeFirst();
+			if (!oldest.file.delete()){
+				LOG.warn("Can not delete journal segment:" + oldest.file.getPath());
+			}
+			deleted ++;
+		}
+	}
+
+	/**
+	 * 在group模式下，等待指定位置之前的记录刷盘
+	 * @param pos 位置
+	 */
+	protected void await(long pos){
+		if (!"group".equals(sync)){
+			return;
+		}
+		lock.lock();
+		try {
+			while (flushed < pos && !closed){
+				synced.await();
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 刷盘线程的处理过程
+	 */
+	protected void flushLoop(){
+		boolean group = "group".equals(sync);
+		while (!closed){
+			MappedByteBuffer buffer = null;
+			long target = 0;
+			lock.lock();
+			try {
+				if (group){
+					while (appended == flushed && !closed){
+						dirty.await(syncInterval, TimeUnit.MILLISECONDS);
+					}
+				}
+				if (closed){
+					break;
+				}
+				target = appended;
+				buffer = current.buffer;
+			}catch (InterruptedException e){
+				break;
+			}finally{
+				lock.unlock();
+			}
+
+			if (target > flushed && buffer != null){
+				//在锁外刷盘，期间追加者可以继续写入，下一批次再刷盘
+				buffer.force();
+				lock.lock();
+				try {
+					flushed = Math.max(flushed, target);
+					syncs ++;
+					synced.signalAll();
+				}finally{
+					lock.unlock();
+				}
+			}
+
+			if (!group){
+				try {
+					Thread.sleep(syncInterval);
+				}catch (InterruptedException e){
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 重放一个段
+	 * @param segment 段
+	 * @param found 未完成的任务
+	 */
+	protected void replay(Segment segment,Map<String,Entry> found){
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(segment.file,"r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CRC32 crc = new CRC32();
+			while (buffer.remaining() >= HEADER){
+				int length = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining() - HEADER + 4){
+					break;
+				}
+				byte type = buffer.get();
+				int checksum = buffer.getInt();
+				byte[] payload = new byte[length];
+				buffer.get(payload);
+
+				crc.reset();
+				crc.update(type);
+				crc.update(payload);
+				if ((int)crc.getValue() != checksum){
+					LOG.warn(String.format("Journal segment %s is broken at %d",segment.file.getName(),buffer.position() - length - HEADER));
+					break;
+				}
+
+				switch (type){
+				case TASK:
+					Task task = new Task.Default("","");
+					task.fromJsonString(new String(payload,UTF8));
+					found.remove(task.id());
+					found.put(task.id(), new Entry(segment,task));
+					break;
+				case FINISH:
+					found.remove(new String(payload,UTF8));
+					break;
+				case CONTEXT:
+					context = payload;
+					break;
+				default:
+					//START记录仅用于追踪，重放时忽略
+				}
+			}
+		}catch (IOException ex){
+			LOG.error("Can not replay journal segment:" + segment.file.getPath(),ex);
+		}finally{
+			close(raf);
+		}
+	}
+
+	/**
+	 * 列出目录下的段，按照序号排序
+	 * @param dir 目录
+	 * @return 段列表
+	 */
+	protected static List<Segment> list(File dir){
+		List<Segment> result = new ArrayList<Segment>();
+		File[] files = dir.listFiles();
+		if (files != null){
+			for (File file:files){
+				String name = file.getName();
+				if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)){
+					continue;
+				}
+				try {
+					long seq = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+					result.add(new Segment(seq,file));
+				}catch (NumberFormatException ex){
+					LOG.warn("Unknown file in journal home:" + name);
+				}
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	protected static void close(RandomAccessFile raf){
+		if (raf != null){
+			try {
+				raf.close();
+			}catch (IOException ex){
+				// nothing to do
+			}
+		}
+	}
+
+	/**
+	 * 段
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.80
+	 */
+	public static class Segment implements Comparable<Segment>{
+		/**
+		 * 序号
+		 */
+		protected long seq;
+
+		/**
+		 * 文件
+		 */
+		protected File file;
+
+		/**
+		 * 映射的内存，封存之后为null
+		 */
+		protected MappedByteBuffer buffer = null;
+
+		/**
+		 * 未完成的任务个数
+		 */
+		protected int live = 0;
+
+		public Segment(long seq,File file){
+			this.seq = seq;
+			this.file = file;
+		}
+
+		@Override
+		public int compareTo(Segment o) {
+			return seq < o.seq ? -1 : (seq == o.seq ? 0 : 1);
+		}
+	}
+
+	/**
+	 * 未完成的任务
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.80
+	 */
+	public static class Entry{
+		/**
+		 * 任务所在的段
+		 */
+		protected Segment segment;
+
+		/**
+		 * 任务
+		 */
+		protected Task task;
+
+		public Entry(Segment segment,Task task){
+			this.segment = segment;
+			this.task = task;
+		}
+	}
+}
@@ -15,6 +15,9 @@ import com.anysoft.util.XmlElementProperties;
  * 
  * @author duanyy
  * @since 1.6.3.37
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 增加{@link Predictable}接口，匹配器可以预测下一次调度时间 <br>
  */
 public interface Matcher extends Configurable,XMLConfigurable,Reportable {
 	
@@ -36,6 +39,25 @@ public interface Matcher extends Configurable,XMLConfigurable,Reportable {
 	 */
 	public boolean isTimeToClear();	
 	
+	/**
+	 * 可以预测下一次调度时间的匹配器
+	 * 
+	 * <p>
+	 * 调度者在预测的时间调用{@link Matcher#match(Date, Date, ContextHolder)}，
+	 * 在预测的时间上match应当返回true.没有实现该接口的匹配器按照调度者的间隔轮询.
+	 * 
+	 * @since 1.6.11.79
+	 */
+	public static interface Predictable {
+		/**
+		 * 预测下一次调度时间
+		 * @param _last 上次调度时间(ms)，从未调度时为-1
+		 * @param _now 当前时间(ms)
+		 * @return 下一次调度时间(ms)，小于等于当前时间表示立即调度，为-1表示不再调度
+		 */
+		public long nextFireTime(long _last,long _now);
+	}
+	
 	/**
 	 * Abstract实现
 	 * 
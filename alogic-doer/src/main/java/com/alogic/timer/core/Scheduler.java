@@ -8,10 +8,18 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,7 +31,9 @@ import com.alogic.ha.FailoverController;
 import com.alogic.ha.FailoverListener;
 import com.anysoft.util.BaseException;
 import com.anysoft.util.Factory;
+import com.anysoft.util.Histogram;
 import com.anysoft.util.IOTools;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.Settings;
@@ -55,6 +65,9 @@ import com.anysoft.util.resource.ResourceFactory;
  * 
  * @version 1.6.8.3 [20170328 duanyy] <br>
  * - 采用新的ha框架来进行分布式全局锁控制 <br>
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - Simple增加predict模式，按照定时器预测的下一次调度时间进行调度，不再轮询所有定时器 <br>
  */
 public interface Scheduler extends Timer,Runnable {
 	/**
@@ -121,7 +134,7 @@ public interface Scheduler extends Timer,Runnable {
 	/**
 	 * Abstract
 	 * @author duanyy
-	 *
+	 * 
 	 */
 	abstract public static class Abstract implements Scheduler,FailoverListener{
 		protected static final Logger logger = LoggerFactory.getLogger(Timer.class);
@@ -368,17 +381,65 @@ public interface Scheduler extends Timer,Runnable {
 	
 	/**
 	 * 简单实现
+	 * 
+	 * <p>
+	 * 支持两种调度模式(通过参数mode配置):<br>
+	 * - predict:缺省模式，每个定时器按照所预测的下一次调度时间放入延迟队列，到期时调度，空闲时不消耗资源，
+	 * 不能预测的定时器按照interval轮询; <br>
+	 * - scan:原有的模式，每隔interval毫秒轮询所有的定时器; <br>
+	 * 
 	 * @author duanyy
-	 *
+	 * 
+	 * @version 1.6.11.79 [20181024 duanyy] <br>
+	 * - 增加predict模式 <br>
 	 */
 	public static class Simple extends Abstract{
 		protected Hashtable<String,Timer> timers = new Hashtable<String,Timer>();
 		protected boolean async = true;
 		
+		/**
+		 * 调度模式，predict或scan
+		 */
+		protected String mode = "predict";
+		
+		/**
+		 * predict模式下的调度线程数
+		 */
+		protected int threads = 1;
+		
+		/**
+		 * 启动之后首次调度的延迟时间(ms)
+		 */
+		protected long delay = 5000;
+		
+		/**
+		 * predict模式下的延迟队列
+		 */
+		protected ScheduledThreadPoolExecutor executor = null;
+		
+		/**
+		 * predict模式下已经进入延迟队列的定时器
+		 */
+		protected ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+		
+		/**
+		 * predict模式下实际提交任务的次数
+		 */
+		protected AtomicLong fired = new AtomicLong(0);
+		
+		/**
+		 * predict模式下实际提交任务的时间和预测时间之差(ms)
+		 */
+		protected Histogram jitter = new Histogram(4,36);
+		
 		@Override
 		public void configure(Properties p) {
 			super.configure(p);
 			async = PropertiesConstants.getBoolean(p,"async",async,true);
+			mode = PropertiesConstants.getString(p,"mode",mode,true);
+			threads = PropertiesConstants.getInt(p,"threads",threads,true);
+			threads = threads <= 0 ? 1 : threads;
+			delay = PropertiesConstants.getLong(p,"delay",delay,true);
 		}		
 		
 		@Override
@@ -394,13 +455,137 @@ public interface Scheduler extends Timer,Runnable {
 		@Override
 		public void schedule(Timer timer) {
 			timers.put(timer.getId(), timer);
+			if (executor != null){
+				arm(new Entry(timer),System.currentTimeMillis());
+			}
 		}
 
 		@Override
 		public void remove(String id) {
 			timers.remove(id);
+			Entry found = entries.remove(id);
+			if (found != null){
+				found.cancel();
+			}
 		}	
 		
+		@Override
+		public void start() {
+			if (!isPredictMode()){
+				super.start();
+				return;
+			}
+			logger.info(String.format("Start scheduler[%s] in predict mode....",getId()));
+			final String name = "scheduler-" + getId();
+			executor = new ScheduledThreadPoolExecutor(threads,new ThreadFactory(){
+				protected AtomicInteger index = new AtomicInteger(0);
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, name + "-" + index.getAndIncrement());
+				}
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			state = State.Running;
+			
+			long now = System.currentTimeMillis() + delay;
+			for (Timer timer:getTimers()){
+				arm(new Entry(timer),now);
+			}
+		}
+		
+		@Override
+		public void stop() {
+			if (executor == null){
+				super.stop();
+				return;
+			}
+			state = State.Stopping;
+			if (fc != null){
+				fc.stop();
+			}
+			logger.info(String.format("Try to stop the scheduler[%s]....[%s]",getId(),state.toString()));
+			for (Entry entry:entries.values()){
+				entry.cancel();
+			}
+			entries.clear();
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(2 * interval, TimeUnit.MILLISECONDS)){
+					executor.shutdownNow();
+				}
+			}catch (InterruptedException e) {
+				executor.shutdownNow();
+			}
+			Timer [] all = getTimers();
+			for (Timer timer:all){
+				timer.stop();
+			}
+		}
+		
+		@Override
+		public void join(long timeout){
+			if (executor == null){
+				super.join(timeout);
+				return;
+			}
+			try {
+				executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+			}catch (InterruptedException e) {
+				// nothing to do
+			}
+		}
+		
+		@Override
+		public void reload(){
+			super.reload();
+			if (executor != null){
+				//配置改变之后重新预测
+				long now = System.currentTimeMillis();
+				for (Timer timer:getTimers()){
+					arm(new Entry(timer),now);
+				}
+			}
+		}
+		
+		/**
+		 * 是否为predict模式
+		 * @return true|false
+		 */
+		protected boolean isPredictMode(){
+			return !"scan".equals(mode);
+		}
+		
+		/**
+		 * 按照预测的调度时间放入延迟队列
+		 * @param entry 定时器
+		 * @param now 当前时间
+		 */
+		protected void arm(Entry entry,long now){
+			Entry old = entries.put(entry.timer.getId(), entry);
+			if (old != null && old != entry){
+				old.cancel();
+			}
+			entry.arm(predict(entry.timer,now),now);
+		}
+		
+		/**
+		 * 预测定时器的下一次调度时间
+		 * @param timer 定时器
+		 * @param now 当前时间
+		 * @return 下一次调度时间
+		 */
+		protected long predict(Timer timer,long now){
+			if (timer instanceof Timer.Predictable){
+				try {
+					return ((Timer.Predictable)timer).nextFireTime(now);
+				}catch (Exception ex){
+					logger.error("Failed to predict the next fire time:" + timer.getId(),ex);
+					return now + interval;
+				}
+			}
+			return now;
+		}
+		
 		@Override
 		protected void scheduleOnce() {
 			if (state != State.Running){
@@ -447,13 +632,136 @@ public interface Scheduler extends Timer,Runnable {
 			//never used
 			return null;
 		}
+		
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				super.report(xml);
+				XmlTools.setString(xml, "mode", isPredictMode() ? "predict" : "scan");
+				if (executor != null){
+					XmlTools.setInt(xml, "armed", entries.size());
+					XmlTools.setLong(xml, "fired", fired.get());
+					Element _jitter = xml.getOwnerDocument().createElement("jitter");
+					jitter.report(_jitter);
+					xml.appendChild(_jitter);
+				}
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				super.report(json);
+				JsonTools.setString(json, "mode", isPredictMode() ? "predict" : "scan");
+				if (executor != null){
+					JsonTools.setInt(json, "armed", entries.size());
+					JsonTools.setLong(json, "fired", fired.get());
+					Map<String,Object> _jitter = new HashMap<String,Object>();
+					jitter.report(_jitter);
+					json.put("jitter", _jitter);
+				}
+			}
+		}
+		
+		/**
+		 * 延迟队列中的定时器
+		 */
+		protected class Entry implements Runnable{
+			protected final Timer timer;
+			protected volatile boolean cancelled = false;
+			protected volatile long deadline = -1;
+			protected ScheduledFuture<?> future = null;
+			
+			/**
+			 * 提交任务时记录调度次数和抖动，轮询时定时器不匹配的情况不计入
+			 */
+			protected final DoerCommitter firing = new DoerCommitter(){
+				@Override
+				public void commit(Doer doer, Task task) {
+					fired.incrementAndGet();
+					jitter.record(System.currentTimeMillis() - deadline);
+					comitter.commit(doer, task);
+				}
+				
+				@Override
+				public void report(Element xml) {
+					comitter.report(xml);
+				}
+				
+				@Override
+				public void report(Map<String, Object> json) {
+					comitter.report(json);
+				}
+				
+				@Override
+				public void configure(Properties p) {
+					// nothing to do
+				}
+				
+				@Override
+				public void configure(Element e, Properties p) {
+					// nothing to do
+				}
+			};
+			
+			protected Entry(Timer timer){
+				this.timer = timer;
+			}
+			
+			protected synchronized void arm(long next,long now){
+				deadline = next;
+				if (cancelled || next < 0){
+					//不再调度，保留在定时器列表中
+					return;
+				}
+				try {
+					future = executor.schedule(this, Math.max(0, next - now), TimeUnit.MILLISECONDS);
+				}catch (RejectedExecutionException ex){
+					//调度者已经停止
+				}
+			}
+			
+			protected synchronized void cancel(){
+				cancelled = true;
+				if (future != null){
+					future.cancel(false);
+				}
+			}
+			
+			@Override
+			public void run() {
+				if (cancelled){
+					return;
+				}
+				long now = System.currentTimeMillis();
+				try {
+					if (state == State.Running && (fc == null || fc.isActive()) && comitter != null){
+						timer.schedule(firing);
+					}
+					if (timer.isTimeToClear()){
+						if (entries.remove(timer.getId(), this)){
+							timers.remove(timer.getId());
+						}
+						return;
+					}
+				}catch (Exception ex){
+					logger.error("Error when scheduling timer:" + timer.getId(),ex);
+				}
+				long next = predict(timer,now);
+				if (next >= 0 && next <= now){
+					//没有调度或者不能预测，按照间隔轮询
+					next = now + interval;
+				}
+				arm(next,now);
+			}
+		}
 	}
 	
 	/**
 	 * 基于XML配置的实现
 	 * 
 	 * @author duanyy
-	 *
+	 * 
 	 */
 	public static class XMLed extends Simple{
 		/**
@@ -556,7 +864,7 @@ public interface Scheduler extends Timer,Runnable {
 	 * 外部连接配置文件
 	 * 
 	 * @author duanyy
-	 *
+	 * 
 	 */
 	public static class Linked extends XMLed{	
 
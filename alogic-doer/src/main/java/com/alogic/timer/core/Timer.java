@@ -51,6 +51,9 @@ import com.anysoft.util.XmlTools;
  * 
  * @version 1.6.9.8 [20170821] <br>
  * - 任务id修改为18位数字(当前时间戳+随机数字) <br>
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 增加{@link Predictable}接口，定时器可以预测下一次调度时间 <br>
  */
 public interface Timer extends Configurable,XMLConfigurable,Reportable {
 	/**
@@ -121,13 +124,27 @@ public interface Timer extends Configurable,XMLConfigurable,Reportable {
 	 * @return 任务
 	 */
 	public Task newTask();
+	
+	/**
+	 * 可以预测下一次调度时间的定时器
+	 * 
+	 * @since 1.6.11.79
+	 */
+	public static interface Predictable {
+		/**
+		 * 预测下一次调度时间
+		 * @param now 当前时间(ms)
+		 * @return 下一次调度时间(ms)，小于等于当前时间表示立即调度，为-1表示不再调度
+		 */
+		public long nextFireTime(long now);
+	}
 		
 	/**
 	 * Abstract
 	 * @author duanyy
 	 * @since 1.6.3.37
 	 */
-	abstract public static class Abstract implements Timer{		
+	abstract public static class Abstract implements Timer,Predictable{		
 		/**
 		 * logger of log4j
 		 */
@@ -332,6 +349,28 @@ public interface Timer extends Configurable,XMLConfigurable,Reportable {
 			return null;
 		}
 		
+		/**
+		 * 预测下一次调度时间
+		 * 
+		 * <p>
+		 * 匹配器实现了{@link Matcher.Predictable}时，由匹配器预测，并限定在有效期之内；否则返回当前时间，由调度者轮询.
+		 */
+		public long nextFireTime(long now){
+			Matcher m = matcher;
+			if (m == null || !(m instanceof Matcher.Predictable)){
+				return now;
+			}
+			Date fromDate = fromDate();
+			Date toDate = toDate();
+			long from = fromDate == null ? now : Math.max(now, fromDate.getTime());
+			Date last = lastDate;
+			long next = ((Matcher.Predictable)m).nextFireTime(last == null ? -1 : last.getTime(), from);
+			if (next >= 0 && toDate != null && next > toDate.getTime()){
+				return -1;
+			}
+			return next;
+		}
+		
 		/**
 		 * 生成一个任务id
 		 * @return 任务id
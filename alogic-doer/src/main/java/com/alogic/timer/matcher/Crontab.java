@@ -5,6 +5,8 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
+import com.alogic.timer.matcher.util.Forecaster;
 import com.alogic.timer.matcher.util.SetValueMatcher;
 import com.alogic.timer.matcher.util.parser.DayOfMonth;
 import com.alogic.timer.matcher.util.parser.DayOfWeek;
@@ -29,9 +31,11 @@ import com.anysoft.util.PropertiesConstants;
  * <p>对于month-of-year，支持缩写，大小写不敏感，例如：Jan,Feb,Mar,Apr,May,June,July,Aug,Sept,Oct,Nov,Dec等</p>
  * 
  * @author duanyy
- *
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Crontab extends Abstract {
+public class Crontab extends Abstract implements Predictable{
 	public Crontab(){
 		this("00 * * * *");
 	}
@@ -92,4 +96,9 @@ public class Crontab extends Abstract {
 		return minutes.match(minute) && hours.match(hour) && daysOfMonth.match(dayOfMonth)
 				&& monthsOfYear.match(monthOfYear)&& daysOfWeek.match(dayOfWeek);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		return Forecaster.next(_last, _now, minutes, hours, daysOfMonth, monthsOfYear, daysOfWeek);
+	}
+}
@@ -5,6 +5,8 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
+import com.alogic.timer.matcher.util.Forecaster;
 import com.alogic.timer.matcher.util.SetValueMatcher;
 import com.alogic.timer.matcher.util.parser.HourOfDay;
 import com.alogic.timer.matcher.util.parser.Minute;
@@ -25,8 +27,11 @@ import com.anysoft.util.PropertiesConstants;
  * 
  * @author zhangzundong
  * @since 1.6.3.40
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Daily extends Abstract {
+public class Daily extends Abstract implements Predictable{
 	public Daily(){
 		this("00 *");
 	}
@@ -78,4 +83,9 @@ public class Daily extends Abstract {
 		int hour = calendar.get(Calendar.HOUR_OF_DAY);
 		return minutes.match(minute) && hours.match(hour);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		return Forecaster.next(_last, _now, minutes, hours, null, null, null);
+	}
+}
@@ -5,6 +5,8 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
+import com.alogic.timer.matcher.util.Forecaster;
 import com.alogic.timer.matcher.util.SetValueMatcher;
 import com.alogic.timer.matcher.util.parser.Minute;
 import com.anysoft.util.Properties;
@@ -23,8 +25,11 @@ import com.anysoft.util.PropertiesConstants;
  * 
  * @author zhangzundong
  * @since 1.6.3.40
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Hourly extends Abstract {
+public class Hourly extends Abstract implements Predictable{
 	public Hourly(){
 		this("00");
 	}
@@ -61,4 +66,9 @@ public class Hourly extends Abstract {
 		lastMinute = minute;
 		return minutes.match(minute);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		return Forecaster.next(_last, _now, minutes, null, null, null, null);
+	}
+}
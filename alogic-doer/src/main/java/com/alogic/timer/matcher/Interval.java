@@ -4,6 +4,7 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 
@@ -12,8 +13,11 @@ import com.anysoft.util.PropertiesConstants;
  * 
  * @author duanyy
  * @since 1.6.3.37
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Interval extends Abstract {
+public class Interval extends Abstract implements Predictable{
 	/**
 	 * 间隔时间，可通过参数interval配置
 	 */
@@ -39,4 +43,8 @@ public class Interval extends Abstract {
 		return false;
 	}
 
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		return _last < 0 ? _now : _last + interval;
+	}
 }
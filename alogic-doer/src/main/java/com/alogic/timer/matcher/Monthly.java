@@ -5,6 +5,8 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
+import com.alogic.timer.matcher.util.Forecaster;
 import com.alogic.timer.matcher.util.SetValueMatcher;
 import com.alogic.timer.matcher.util.parser.DayOfMonth;
 import com.alogic.timer.matcher.util.parser.HourOfDay;
@@ -29,8 +31,11 @@ import com.anysoft.util.PropertiesConstants;
  * 
  * @author zhangzundong
  * @since 1.6.3.40
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Monthly extends Abstract {
+public class Monthly extends Abstract implements Predictable{
 	public Monthly(){
 		this("00 * * *");
 	}
@@ -88,4 +93,9 @@ public class Monthly extends Abstract {
 		int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
 		return minutes.match(minute) && hours.match(hour) && daysOfMonth.match(dayOfMonth);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		return Forecaster.next(_last, _now, minutes, hours, daysOfMonth, null, null);
+	}
+}
@@ -4,6 +4,7 @@ import java.util.Date;
 
 import com.alogic.timer.core.ContextHolder;
 import com.alogic.timer.core.Matcher.Abstract;
+import com.alogic.timer.core.Matcher.Predictable;
 import com.anysoft.util.Properties;
 
 /**
@@ -11,8 +12,11 @@ import com.anysoft.util.Properties;
  * 
  * @author duanyy
  * @since 1.6.3.37
+ * 
+ * @version 1.6.11.79 [20181024 duanyy] <br>
+ * - 实现Predictable接口，可以预测下一次调度时间 <br>
  */
-public class Once extends Abstract {
+public class Once extends Abstract implements Predictable{
 	/**
 	 * 已调度次数
 	 */
@@ -30,4 +34,10 @@ public class Once extends Abstract {
 	public boolean isTimeToClear() {
 		return count > 1;
 	}
+
+	@Override
+	public long nextFireTime(long _last, long _now) {
+		//调度之后仍需再匹配一次，以便清除
+		return _now;
+	}
 }
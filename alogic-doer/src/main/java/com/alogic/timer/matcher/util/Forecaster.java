@@ -0,0 +1,97 @@
+package com.alogic.timer.matcher.util;
+
+import java.util.Calendar;
+
+/**
+ * 按分钟匹配的调度时间预测
+ * 
+ * <p>
+ * 用于Crontab,Daily,Hourly等按分钟匹配的匹配器，从当前分钟开始(如果当前分钟已经调度过，从下一分钟开始)，
+ * 逐级查找第一个匹配的分钟:月份不匹配时跳到下个月，日期不匹配时跳到下一天，小时不匹配时跳到下一个小时.
+ * 
+ * @author duanyy
+ * @since 1.6.11.79
+ */
+public class Forecaster {
+
+	/**
+	 * 最多预测的时间范围(ms)，缺省为5年
+	 */
+	public static final long HORIZON = 5L * 366 * 24 * 60 * 60 * 1000;
+
+	/**
+	 * 预测下一次调度时间
+	 * @param last 上次调度时间(ms)，从未调度时为-1
+	 * @param now 当前时间(ms)
+	 * @param minutes 分钟，不能为空
+	 * @param hours 小时，为空表示不限
+	 * @param daysOfMonth 日期，为空表示不限
+	 * @param monthsOfYear 月份，为空表示不限
+	 * @param daysOfWeek 星期，为空表示不限
+	 * @return 下一次调度时间(ms)，在预测范围内没有匹配时返回-1
+	 */
+	public static long next(long last,long now,ValueMatcher minutes,ValueMatcher hours,
+			ValueMatcher daysOfMonth,ValueMatcher monthsOfYear,ValueMatcher daysOfWeek){
+		if (!any(minutes,0,59) || !any(hours,0,23)){
+			//分钟或者小时的集合为空，永远不会匹配
+			return -1;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(now);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+
+		//在一分钟之内只允许一次
+		if (last >= calendar.getTimeInMillis()){
+			calendar.add(Calendar.MINUTE, 1);
+		}
+
+		long limit = now + HORIZON;
+		while (calendar.getTimeInMillis() <= limit){
+			if (monthsOfYear != null && !monthsOfYear.match(calendar.get(Calendar.MONTH) + 1)){
+				calendar.set(Calendar.DAY_OF_MONTH, 1);
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.MONTH, 1);
+				continue;
+			}
+			if ((daysOfMonth != null && !daysOfMonth.match(calendar.get(Calendar.DAY_OF_MONTH)))
+					|| (daysOfWeek != null && !daysOfWeek.match(calendar.get(Calendar.DAY_OF_WEEK) - 1))){
+				calendar.set(Calendar.HOUR_OF_DAY, 0);
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+				continue;
+			}
+			if (hours != null && !hours.match(calendar.get(Calendar.HOUR_OF_DAY))){
+				calendar.set(Calendar.MINUTE, 0);
+				calendar.add(Calendar.HOUR_OF_DAY, 1);
+				continue;
+			}
+			if (!minutes.match(calendar.get(Calendar.MINUTE))){
+				calendar.add(Calendar.MINUTE, 1);
+				continue;
+			}
+			return Math.max(calendar.getTimeInMillis(), now);
+		}
+		return -1;
+	}
+
+	/**
+	 * 指定范围内是否存在匹配的值
+	 * @param matcher 匹配器，为空表示不限
+	 * @param from 起始值
+	 * @param to 结束值
+	 * @return true|false
+	 */
+	protected static boolean any(ValueMatcher matcher,int from,int to){
+		if (matcher == null){
+			return true;
+		}
+		for (int i = from ; i <= to ; i ++){
+			if (matcher.match(i)){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,116 @@
+package com.alogic.doer.demo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.alogic.doer.local.JournaledTaskCenter;
+import com.alogic.timer.core.Task;
+import com.anysoft.util.DefaultProperties;
+
+/**
+ * JournaledTaskCenter的测试
+ * 
+ * <p>
+ * 在不同的刷盘模式下，多个线程并发提交任务，统计提交的吞吐量；然后完成其中一半的任务，
+ * 模拟重启之后检查恢复的任务个数，再完成剩余的任务，检查旧段是否被删除.
+ * 
+ * <p>
+ * 参数：日志目录 线程数 每线程提交的任务数
+ * 
+ * @author duanyy
+ * 
+ */
+public class JournalDemo {
+
+	public static void main(String[] args) throws Exception{
+		String home = args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/doer-journal";
+		int threadCnt = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int loops = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+		String[] modes = {"none","interval","group"};
+		for (int round = 0 ; round < 2 ; round ++){
+			for (String mode:modes){
+				clear(new File(home));
+				run(home,mode,threadCnt,loops);
+			}
+		}
+	}
+
+	protected static void run(String home,String mode,int threadCnt,final int loops) throws Exception{
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("journal.home", home);
+		p.SetValue("journal.sync", mode);
+		p.SetValue("journal.segmentSize", String.valueOf(4 * 1024 * 1024));
+
+		final JournaledTaskCenter tc = new JournaledTaskCenter();
+		tc.configure(p);
+
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.nanoTime();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			final int thread = i;
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < loops ; j ++){
+							Map<String,String> params = new HashMap<String,String>();
+							params.put("seq", String.valueOf(j));
+							tc.dispatch("demo", new Task.Default(thread + "-" + j,"demo",params));
+						}
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+		long duration = (System.nanoTime() - start) / 1000000;
+		long total = (long)threadCnt * loops;
+
+		//完成偶数序号的任务
+		for (int i = 0 ; i < threadCnt ; i ++){
+			for (int j = 0 ; j < loops ; j += 2){
+				String id = i + "-" + j;
+				tc.onStart(id, Task.State.Running, 0, "");
+				tc.onFinish(id, Task.State.Done, 10000, "");
+			}
+		}
+		Map<String,Object> report = new HashMap<String,Object>();
+		tc.report(report);
+		tc.stop();
+
+		//模拟重启
+		JournaledTaskCenter restarted = new JournaledTaskCenter();
+		restarted.configure(p);
+		Map<String,Object> resumed = new HashMap<String,Object>();
+		restarted.report(resumed);
+
+		//完成剩余的任务，所有的旧段应被删除
+		for (int i = 0 ; i < threadCnt ; i ++){
+			for (int j = 1 ; j < loops ; j += 2){
+				restarted.onFinish(i + "-" + j, Task.State.Done, 10000, "");
+			}
+		}
+		Map<String,Object> finished = new HashMap<String,Object>();
+		restarted.report(finished);
+		restarted.stop();
+
+		System.out.println(String.format("%s:%d tasks,%d ms,%d tasks/s",
+				mode,total,duration,total * 1000 / Math.max(1, duration)));
+		System.out.println(report.get("journal"));
+		System.out.println(resumed.get("journal"));
+		System.out.println(finished.get("journal"));
+	}
+
+	protected static void clear(File dir){
+		File[] files = dir.listFiles();
+		if (files != null){
+			for (File file:files){
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.alogic.timer.demo;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alogic.timer.core.Doer;
+import com.alogic.timer.core.DoerCommitter;
+import com.alogic.timer.core.Scheduler;
+import com.alogic.timer.core.Task;
+import com.alogic.timer.matcher.Crontab;
+import com.alogic.timer.matcher.Interval;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.Histogram;
+
+/**
+ * 比较scan模式和predict模式的调度者
+ * 
+ * <p>
+ * 分别调度1k,10k,100k个间隔为1秒的定时器，统计调度的次数，实际调度时间相对于期望时间的延迟(jitter)以及进程的CPU时间；
+ * 另外调度若干个当天不会触发的Crontab定时器，统计空闲时的CPU时间.
+ * 
+ * <p>
+ * 参数：每轮的测量时间(ms)
+ * 
+ * @author duanyy
+ * 
+ */
+public class SchedulerBench {
+
+	public static void main(String[] args) throws Exception{
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+
+		int[] sizes = {1000,10000,100000};
+		for (int size:sizes){
+			run("scan",size,duration,false);
+			run("predict",size,duration,false);
+		}
+		run("scan",10000,duration,true);
+		run("predict",10000,duration,true);
+	}
+
+	protected static void run(String mode,int size,long duration,boolean idle) throws Exception{
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("mode", mode);
+		p.SetValue("async", "false");
+		p.SetValue("delay", "5000");
+
+		Scheduler.Simple scheduler = new Scheduler.Simple();
+		scheduler.configure(p);
+		Committer committer = new Committer();
+		scheduler.setTaskCommitter(committer);
+
+		for (int i = 0 ; i < size ; i ++){
+			Runnable task = new Runnable(){
+				@Override
+				public void run() {
+					// nothing to do
+				}
+			};
+			if (idle){
+				//03:00之外的时间不会触发
+				scheduler.schedule("timer" + i, new Crontab("0 3 1 1 *"), task);
+			}else{
+				scheduler.schedule("timer" + i, new Interval(1000), task);
+			}
+		}
+		scheduler.start();
+
+		//两种模式都在启动5秒之后开始调度，再等待1秒进入稳定状态
+		Thread.sleep(6000);
+		committer.reset();
+		long cpu = getProcessCpuTime();
+		Thread.sleep(duration);
+		cpu = getProcessCpuTime() - cpu;
+
+		Histogram jitter = committer.jitter;
+		System.out.println(String.format("%s:%d %s timers,%d ms,fired %d,cpu %d ms,jitter(ms) p50=%d p99=%d max=%d",
+				mode,size,idle ? "idle" : "interval",duration,committer.fired.get(),cpu / 1000000,
+				jitter.getPercentile(0.5),jitter.getPercentile(0.99),jitter.getMax()));
+		scheduler.stop();
+	}
+
+	protected static long getProcessCpuTime(){
+		java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean){
+			return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+		}
+		return 0;
+	}
+
+	/**
+	 * 统计调度次数和延迟的任务提交者
+	 */
+	public static class Committer extends DoerCommitter.Abstract{
+		protected Map<Doer,Long> last = new ConcurrentHashMap<Doer,Long>();
+		protected AtomicLong fired = new AtomicLong(0);
+		protected volatile Histogram jitter = new Histogram(4,36);
+
+		public void reset(){
+			fired.set(0);
+			jitter = new Histogram(4,36);
+		}
+
+		@Override
+		protected void onCommit(Doer doer, Task task) {
+			long now = System.currentTimeMillis();
+			fired.incrementAndGet();
+			Long found = last.put(doer, now);
+			if (found != null){
+				//间隔为1秒，期望的调度时间为上次调度时间之后1秒
+				jitter.record(now - found - 1000);
+			}
+		}
+	}
+}
@@ -30,6 +30,10 @@ import com.logicbus.kvalue.core.SetRow;
  * 
  * @version 1.6.11.31 [20170522 duanyy] <br>
  * - 优化缓存中set的ttl机制; <br>
+ * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 多个成员的增加和删除合并为一个命令; <br>
+ * - 修正按组删除时未能删除数据的问题; <br>
  */
 public class KValueCacheObject implements CacheObject{
 	/**
@@ -215,11 +219,15 @@ public class KValueCacheObject implements CacheObject{
 	public void hDel(String group) {
 		visited();
 		List<String> all = hash.keys();
+		List<String> fields = new ArrayList<String>();
 		for (String key:all){
 			if (Tool.isField(key,group)){
-				hash.del(Tool.getField(key));
+				fields.add(key);
 			}				
 		}
+		if (!fields.isEmpty()){
+			hash.del(fields.toArray(new String[fields.size()]));
+		}
 	}
 
 	@Override
@@ -242,16 +250,16 @@ public class KValueCacheObject implements CacheObject{
 	@Override
 	public void sAdd(String group, String... members) {
 		visited();
-		for (String m:members){
-			set.add(Tool.getKey(group, m));
+		if (members.length > 0){
+			set.add(getKeys(group,members));
 		}
 	}
 
 	@Override
 	public void sDel(String group, String... members) {
 		visited();
-		for (String m:members){
-			set.remove(Tool.getKey(group, m));
+		if (members.length > 0){
+			set.remove(getKeys(group,members));
 		}
 	}
 
@@ -259,11 +267,29 @@ public class KValueCacheObject implements CacheObject{
 	public void sDel(String group) {
 		visited();
 		List<String> all = set.getAll();
+		List<String> members = new ArrayList<String>();
 		for (String m:all){
 			if (Tool.isField(m,group)){
-				set.remove(Tool.getField(m));
+				members.add(m);
 			}
 		}
+		if (!members.isEmpty()){
+			set.remove(members.toArray(new String[members.size()]));
+		}
+	}
+
+	/**
+	 * 获取一组成员在缓存中的真实key
+	 * @param group 组
+	 * @param members 成员列表
+	 * @return 真实key列表
+	 */
+	protected static String[] getKeys(String group,String...members){
+		String[] keys = new String[members.length];
+		for (int i = 0 ; i < members.length ; i ++){
+			keys[i] = Tool.getKey(group, members[i]);
+		}
+		return keys;
 	}
 
 	@Override
@@ -0,0 +1,54 @@
+package com.logicbus.kvalue.core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 支持多key批量操作的数据表
+ *
+ * <p>
+ * 批量操作将多个行的操作按照所在分区合并，在同一连接上一次发送，减少网络往返次数，适用于缓存的批量装入和扇出读取。
+ *
+ * @author duanyy
+ * @since 1.6.11.69
+ */
+public interface BatchTable extends Table {
+
+	/**
+	 * 批量获取多个Hash行的同一字段
+	 * @param field 字段
+	 * @param enableRWSplit 是否允许读写分离
+	 * @param keys 行的key列表
+	 * @return 按keys顺序排列的字段值,不存在的为null
+	 */
+	public List<String> mhget(String field,boolean enableRWSplit,String...keys);
+
+	/**
+	 * 批量获取多个Hash行的全部字段
+	 * @param enableRWSplit 是否允许读写分离
+	 * @param keys 行的key列表
+	 * @return 按keys顺序排列的行内容
+	 */
+	public List<Map<String,String>> mhgetall(boolean enableRWSplit,String...keys);
+
+	/**
+	 * 批量设置多个Hash行的同一字段
+	 * @param field 字段
+	 * @param keyValues 行的key及其字段值
+	 * @return 新增的字段个数
+	 */
+	public long mhset(String field,Map<String,String> keyValues);
+
+	/**
+	 * 批量设置多个Hash行的多个字段
+	 * @param rows 行的key及其字段值
+	 */
+	public void mhmset(Map<String,Map<String,String>> rows);
+
+	/**
+	 * 批量向多个SortedSet行增加成员
+	 * @param rows 行的key及其成员和分值
+	 * @return 新增的成员个数
+	 */
+	public long mzadd(Map<String,Map<String,Double>> rows);
+}
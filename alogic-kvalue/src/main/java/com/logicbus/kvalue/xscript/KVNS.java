@@ -11,6 +11,9 @@ import com.logicbus.kvalue.xscript.hash.KVHMGet;
 import com.logicbus.kvalue.xscript.hash.KVHMSet;
 import com.logicbus.kvalue.xscript.hash.KVHSet;
 import com.logicbus.kvalue.xscript.hash.KVHValues;
+import com.logicbus.kvalue.xscript.hash.KVMHGet;
+import com.logicbus.kvalue.xscript.hash.KVMHGetAll;
+import com.logicbus.kvalue.xscript.hash.KVMHSet;
 import com.logicbus.kvalue.xscript.list.KVLGet;
 import com.logicbus.kvalue.xscript.list.KVLInsert;
 import com.logicbus.kvalue.xscript.list.KVLItems;
@@ -60,6 +63,8 @@ import com.logicbus.kvalue.xscript.zset.KVZScore;
  * 
  * @author duanyy
  *
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加多key批量操作插件kv-mhget,kv-mhgetall,kv-mhset <br>
  */
 public class KVNS extends Segment {
 
@@ -93,6 +98,9 @@ public class KVNS extends Segment {
 		registerModule("kv-hmget",KVHMGet.class);
 		registerModule("kv-hmset",KVHMSet.class);
 		registerModule("kv-hexist",KVHExist.class);
+		registerModule("kv-mhget",KVMHGet.class);
+		registerModule("kv-mhgetall",KVMHGetAll.class);
+		registerModule("kv-mhset",KVMHSet.class);
 		
 		/**
 		 * list
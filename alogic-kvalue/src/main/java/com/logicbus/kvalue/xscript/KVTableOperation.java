@@ -0,0 +1,74 @@
+package com.logicbus.kvalue.xscript;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.alogic.xscript.AbstractLogiclet;
+import com.alogic.xscript.ExecuteWatcher;
+import com.alogic.xscript.Logiclet;
+import com.alogic.xscript.LogicletContext;
+import com.alogic.xscript.doc.XsObject;
+import com.alogic.xscript.doc.json.JsonObject;
+import com.anysoft.util.BaseException;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.logicbus.kvalue.core.Table;
+
+/**
+ * 对Table的操作
+ * 
+ * <p>
+ * 用于多key的批量操作，需要在kv-table的上下文中执行.
+ * 
+ * @author duanyy
+ * @since 1.6.11.69
+ */
+public abstract class KVTableOperation extends AbstractLogiclet{
+	/**
+	 * table的cid
+	 */
+	private String pid = "$kv-table";
+	
+	/**
+	 * 返回结果的id
+	 */
+	protected String id;
+	
+	public KVTableOperation(String tag, Logiclet p) {
+		super(tag, p);
+	}
+	
+	public void configure(Properties p){
+		super.configure(p);
+		pid = PropertiesConstants.getString(p,"pid", pid,true);
+		id = PropertiesConstants.getString(p,"id", "$" + getXmlTag());
+	}
+
+	@Override
+	protected void onExecute(XsObject root,XsObject current, LogicletContext ctx,
+			ExecuteWatcher watcher) {
+		Table t = ctx.getObject(pid);
+		if (t == null){
+			throw new BaseException("core.e1001","It must be in a kvTable context,check your script.");
+		}
+		
+		if (StringUtils.isNotEmpty(id)){
+			onExecute(t,root,current,ctx,watcher);
+		}
+	}
+
+	protected void onExecute(Table table, Map<String, Object> root, Map<String, Object> current,
+			LogicletContext ctx, ExecuteWatcher watcher) {
+		throw new BaseException("core.e1000",
+				String.format("Tag %s does not support protocol %s",this.getXmlTag(),root.getClass().getName()));		
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected void onExecute(Table table, XsObject root,XsObject current, LogicletContext ctx,
+			ExecuteWatcher watcher){
+		if (current instanceof JsonObject){
+			onExecute(table,(Map<String,Object>)root.getContent(),(Map<String,Object>)current.getContent(),ctx,watcher);
+		}		
+	}
+}
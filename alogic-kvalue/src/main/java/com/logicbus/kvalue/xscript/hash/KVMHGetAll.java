@@ -0,0 +1,68 @@
+package com.logicbus.kvalue.xscript.hash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.alogic.xscript.ExecuteWatcher;
+import com.alogic.xscript.Logiclet;
+import com.alogic.xscript.LogicletContext;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.logicbus.kvalue.core.BatchTable;
+import com.logicbus.kvalue.core.HashRow;
+import com.logicbus.kvalue.core.KeyValueRow;
+import com.logicbus.kvalue.core.Table;
+import com.logicbus.kvalue.xscript.KVTableOperation;
+
+/**
+ * 批量获取多个Hash行的全部字段
+ * 
+ * <p>
+ * 如果数据表支持{@link BatchTable}，则通过管道批量获取，否则逐个key获取.
+ * 
+ * @author duanyy
+ * @since 1.6.11.69
+ */
+public class KVMHGetAll extends KVTableOperation {
+	protected String keys = "";
+	protected String delimeter = ";";
+	protected String tag = "data";
+	protected boolean enableRWSplit = true;
+
+	public KVMHGetAll(String tag, Logiclet p) {
+		super(tag, p);
+	}
+
+	@Override
+	public void configure(Properties p) {
+		super.configure(p);
+		tag = PropertiesConstants.getRaw(p, "tag", tag);
+		keys = PropertiesConstants.getRaw(p, "keys", keys);
+		delimeter = PropertiesConstants.getString(p, "delimiter", delimeter, true);
+		enableRWSplit = PropertiesConstants.getBoolean(p,"enableRWSplit", enableRWSplit);
+	}
+
+	@Override
+	protected void onExecute(Table table, Map<String, Object> root, Map<String, Object> current,
+			LogicletContext ctx, ExecuteWatcher watcher) {
+		String tagValue = ctx.transform(tag);
+		String keyList = ctx.transform(keys);
+		if (StringUtils.isNotEmpty(tagValue) && StringUtils.isNotEmpty(keyList)){
+			String[] keyArray = keyList.split(delimeter);
+			List<Map<String,String>> result = null;
+			if (table instanceof BatchTable){
+				result = ((BatchTable)table).mhgetall(enableRWSplit, keyArray);
+			}else{
+				result = new ArrayList<Map<String,String>>(keyArray.length);
+				for (String key:keyArray){
+					KeyValueRow row = table.select(key, enableRWSplit);
+					result.add(row instanceof HashRow ? ((HashRow)row).getAll() : null);
+				}
+			}
+			current.put(tagValue, result);
+		}
+	}
+}
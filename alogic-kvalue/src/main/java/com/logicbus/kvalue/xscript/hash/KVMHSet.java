@@ -0,0 +1,66 @@
+package com.logicbus.kvalue.xscript.hash;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.alogic.xscript.ExecuteWatcher;
+import com.alogic.xscript.Logiclet;
+import com.alogic.xscript.LogicletContext;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.logicbus.kvalue.core.BatchTable;
+import com.logicbus.kvalue.core.HashRow;
+import com.logicbus.kvalue.core.KeyValueRow;
+import com.logicbus.kvalue.core.Table;
+import com.logicbus.kvalue.xscript.KVTableOperation;
+
+/**
+ * 批量设置多个Hash行的同一字段
+ * 
+ * <p>
+ * values为key和字段值交替的列表，例如"key1;value1;key2;value2".如果数据表支持{@link BatchTable}，
+ * 则通过管道批量设置，否则逐个key设置.
+ * 
+ * @author duanyy
+ * @since 1.6.11.69
+ */
+public class KVMHSet extends KVTableOperation {
+	protected String field = "";
+	protected String values = "";
+	protected String delimeter = ";";
+
+	public KVMHSet(String tag, Logiclet p) {
+		super(tag, p);
+	}
+
+	@Override
+	public void configure(Properties p) {
+		super.configure(p);
+		field = PropertiesConstants.getRaw(p, "field", field);
+		values = PropertiesConstants.getRaw(p, "values", values);
+		delimeter = PropertiesConstants.getString(p, "delimiter", delimeter, true);
+	}
+
+	@Override
+	protected void onExecute(Table table, Map<String, Object> root, Map<String, Object> current,
+			LogicletContext ctx, ExecuteWatcher watcher) {
+		String[] vals = ctx.transform(values).split(delimeter);
+		Map<String,String> keyValues = new LinkedHashMap<String,String>();
+		for (int i = 0 ; i + 1 < vals.length ; i += 2){
+			keyValues.put(vals[i], vals[i + 1]);
+		}
+		String fieldValue = ctx.transform(field);
+		long count = 0;
+		if (table instanceof BatchTable){
+			count = ((BatchTable)table).mhset(fieldValue, keyValues);
+		}else{
+			for (Map.Entry<String,String> entry:keyValues.entrySet()){
+				KeyValueRow row = table.select(entry.getKey(), false);
+				if (row instanceof HashRow && ((HashRow)row).set(fieldValue, entry.getValue())){
+					count ++;
+				}
+			}
+		}
+		ctx.SetValue(id, String.valueOf(count));
+	}
+}
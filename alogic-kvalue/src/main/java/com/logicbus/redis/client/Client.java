@@ -16,6 +16,9 @@ import com.logicbus.redis.util.RedisException;
  * 
  * @version 1.6.6.9 [20161209 duanyy] <br>
  * - 从新的框架下继承 <br>
+ * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 只在新建连接时进行密码验证和选择DB，不再每个指令都进行 <br>
  */
 public class Client extends Connection implements PooledCloseable{
 	
@@ -80,8 +83,8 @@ public class Client extends Connection implements PooledCloseable{
 	}
 	
 
-	public void connect() {
-		super.connect();
+	@Override
+	protected void onConnected() {
 		if (password != null && password.length() > 0) {
 			auth(password);
 		}
@@ -92,7 +95,7 @@ public class Client extends Connection implements PooledCloseable{
 	
 	
 	public void disconnect() {
-		db = 0;
+		//db是配置的数据库，重新连接时需要再次选择，不能清除
 		if (isConnected(false)){
 			// to ask the server to close
 			try {
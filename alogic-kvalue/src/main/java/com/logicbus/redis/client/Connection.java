@@ -20,6 +20,9 @@ import com.logicbus.redis.util.SafeEncoder;
  * @version 1.0.0.1 [20141106 duanyy] <br>
  * - 修正设置index或password之后死循环的bug. <br>
  * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加管道模式，可一次性发送多个指令，再按顺序读取应答 <br>
+ * - 只有在新建连接时才调用onConnected进行初始化 <br>
  */
 public class Connection implements AutoCloseable {
 	/**
@@ -64,6 +67,16 @@ public class Connection implements AutoCloseable {
 	private RedisInputStream inputStream;
 
 	private boolean broken = false;
+	
+	/**
+	 * 是否处于管道模式
+	 */
+	private boolean pipelined = false;
+	
+	/**
+	 * 管道模式下尚未读取的应答个数
+	 */
+	private int pending = 0;
 
 	public boolean isBroken() {
 		return broken;
@@ -138,6 +151,11 @@ public class Connection implements AutoCloseable {
 
 	protected Connection sendCommand(final byte[] cmd, final byte[]... args) {
 		try {
+			if (pipelined){
+				Protocol.sendCommand(outputStream, cmd, args);
+				pending ++;
+				return this;
+			}
 			connect();
 			Protocol.sendCommand(outputStream, cmd, args);
 			return this;
@@ -148,16 +166,97 @@ public class Connection implements AutoCloseable {
 	}
 
 	protected Connection sendCommand(final byte[] cmd) {
+		return sendCommand(cmd, new byte[0][]);
+	}
+	
+	/**
+	 * 进入管道模式
+	 * 
+	 * <p>
+	 * 在管道模式下，指令只写入发送缓冲区，并不等待应答，直到调用{@link #sync()}时一次性发送，并按顺序读取所有应答.
+	 * 管道模式下不再为每个指令检测连接，连接只在进入管道模式时检测一次.
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public void pipeline(){
+		if (pipelined){
+			throw new RedisConnectException("core.e1704","The connection is already in pipeline mode.");
+		}
 		try {
 			connect();
-			Protocol.sendCommand(outputStream, cmd, new byte[0][]);
-			return this;
 		} catch (RedisConnectException ex) {
 			broken = true;
 			throw ex;
 		}
+		pipelined = true;
+		pending = 0;
 	}
-
+	
+	/**
+	 * 是否处于管道模式
+	 * @return 是否处于管道模式
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public boolean isPipelined(){
+		return pipelined;
+	}
+	
+	/**
+	 * 发送管道中的指令，并按顺序读取应答，同时退出管道模式
+	 * 
+	 * <p>
+	 * 服务端返回的错误不会被抛出，而是以{@link RedisDataException}的形式出现在应答列表中.
+	 * 
+	 * @return 应答列表
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public List<Object> sync(){
+		if (!pipelined){
+			return new ArrayList<Object>(0);
+		}
+		int count = pending;
+		pipelined = false;
+		pending = 0;
+		return getMany(count);
+	}
+	
+	/**
+	 * 放弃管道中的指令，并退出管道模式
+	 * 
+	 * <p>
+	 * 由于发送缓冲区中可能残留部分指令，连接将被关闭，下次使用时重新连接.
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public void discard(){
+		if (pipelined){
+			pipelined = false;
+			pending = 0;
+			broken = true;
+			try {
+				if (isConnected(false)){
+					socket.close();
+				}
+			}catch (IOException ex){
+				// nothing to do
+			}
+		}
+	}
+	
+	/**
+	 * 新建连接之后的初始化
+	 * 
+	 * <p>
+	 * 如果初始化失败，连接会被关闭并标记为broken，下次使用时重新连接并初始化.
+	 * 
+	 * @since 1.6.11.69
+	 */
+	protected void onConnected(){
+		// nothing to do
+	}
+	
 	public void connect() {
 		if (!isConnected(true)){
 			try {
@@ -175,10 +274,33 @@ public class Connection implements AutoCloseable {
 				throw new RedisConnectException("core.e1004",
 						"IO Exception when connecting.", ex);
 			}
+			try {
+				onConnected();
+			}catch (RuntimeException ex){
+				//初始化失败(例如密码错误)，关闭连接，以免连接池中保留未初始化的连接
+				broken = true;
+				closeQuietly();
+				throw ex;
+			}
+		}
+	}
+	
+	/**
+	 * 关闭socket，忽略异常
+	 */
+	private void closeQuietly(){
+		try {
+			if (socket != null && !socket.isClosed()){
+				socket.close();
+			}
+		}catch (IOException ex){
+			// nothing to do
 		}
 	}
 
 	public void disconnect() {
+		pipelined = false;
+		pending = 0;
 		if (isConnected(false)) {
 			try {
 				inputStream.close();
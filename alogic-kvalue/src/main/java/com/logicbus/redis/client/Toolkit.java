@@ -1,16 +1,25 @@
 package com.logicbus.redis.client;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.logicbus.redis.util.RedisConnectException;
+import com.logicbus.redis.util.RedisException;
 
 /**
  * 工具集
  * 
  * @author duanyy
  *
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加管道模式下的批量操作支持 <br>
  */
 public class Toolkit {
+	/**
+	 * 管道模式下每批次的最大指令数
+	 */
+	public static final int MAX_PIPELINED = 1000;
+	
 	private Connection conn = null;
 	
 	public Toolkit(Connection _conn){
@@ -90,6 +99,66 @@ public class Toolkit {
 		return conn().getObjectMultiBulkReply();
 	}
 	
+	/**
+	 * 在管道模式下执行批量指令
+	 * 
+	 * <p>
+	 * 指令按{@link #MAX_PIPELINED}分批发送，每批只需要一次网络往返.
+	 * 
+	 * @param count 指令个数
+	 * @param batch 指令的发送者
+	 * @return 按顺序排列的应答列表，服务端返回的错误以RedisException的形式出现在列表中
+	 * 
+	 * @since 1.6.11.69
+	 */
+	protected List<Object> pipelined(final int count,final Batch batch){
+		Connection c = conn();
+		List<Object> replies = new ArrayList<Object>(count);
+		int from = 0;
+		while (from < count){
+			int to = Math.min(count, from + MAX_PIPELINED);
+			c.pipeline();
+			try {
+				for (int i = from ; i < to ; i ++){
+					batch.send(i);
+				}
+			}catch (RuntimeException ex){
+				c.discard();
+				throw ex;
+			}
+			replies.addAll(c.sync());
+			from = to;
+		}
+		return replies;
+	}
+	
+	/**
+	 * 检查应答，如果应答为服务端返回的错误，则抛出
+	 * @param reply 应答
+	 * @return 应答
+	 * 
+	 * @since 1.6.11.69
+	 */
+	protected static Object checkReply(Object reply){
+		if (reply instanceof RedisException){
+			throw (RedisException)reply;
+		}
+		return reply;
+	}
+	
+	/**
+	 * 管道模式下的批量指令
+	 * 
+	 * @since 1.6.11.69
+	 */
+	protected static interface Batch {
+		/**
+		 * 发送第index个指令
+		 * @param index 指令序号
+		 */
+		public void send(int index);
+	}
+	
 	private Connection conn(){
 		if (conn == null){
 			throw new RedisConnectException("core.e1702","the connection instance is null");
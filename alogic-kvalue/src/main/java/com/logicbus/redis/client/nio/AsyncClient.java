@@ -0,0 +1,162 @@
+package com.logicbus.redis.client.nio;
+
+import java.util.List;
+import java.util.Map;
+
+import com.logicbus.redis.toolkit.HashTool;
+import com.logicbus.redis.toolkit.KeyTool;
+import com.logicbus.redis.toolkit.SetTool;
+import com.logicbus.redis.toolkit.SortedSetTool;
+import com.logicbus.redis.toolkit.StringTool;
+import com.logicbus.redis.util.Builder;
+import com.logicbus.redis.util.BuilderFactory;
+import com.logicbus.redis.util.SafeEncoder;
+
+/**
+ * 异步客户端
+ *
+ * <p>
+ * 提供常用指令的异步版本，指令在多路复用的连接上发送，调用者不占用连接，
+ * 可以同时发出多个指令，再统一等待结果.
+ *
+ * <p>
+ * 客户端本身不持有资源，可以在多个线程间共享，不需要归还.
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class AsyncClient {
+
+	/**
+	 * 连接的提供者
+	 */
+	protected final Provider provider;
+
+	public AsyncClient(Provider provider){
+		this.provider = provider;
+	}
+
+	/**
+	 * 发送任意指令
+	 * @param builder 结果构造器，为null时直接返回原始应答
+	 * @param cmd 指令
+	 * @param args 参数
+	 * @return 异步结果
+	 */
+	public <T> RedisFuture<T> send(Builder<T> builder,String cmd,String...args){
+		return provider.getConnection().send(builder, SafeEncoder.encode(cmd), SafeEncoder.encode(args));
+	}
+
+	/**
+	 * 发送任意指令
+	 * @param builder 结果构造器，为null时直接返回原始应答
+	 * @param cmd 指令
+	 * @param args 参数
+	 * @return 异步结果
+	 */
+	public <T> RedisFuture<T> send(Builder<T> builder,byte[] cmd,byte[]...args){
+		return provider.getConnection().send(builder, cmd, args);
+	}
+
+	public RedisFuture<Long> del(String...keys){
+		return send(BuilderFactory.LONG,KeyTool.Command.DEL.raw,SafeEncoder.encode(keys));
+	}
+
+	public RedisFuture<Boolean> exists(String key){
+		return send(BuilderFactory.BOOLEAN,KeyTool.Command.EXISTS.raw,SafeEncoder.encode(key));
+	}
+
+	public RedisFuture<Boolean> expire(String key,long ttl){
+		return send(BuilderFactory.BOOLEAN,KeyTool.Command.PEXPIRE.raw,SafeEncoder.encode(key),SafeEncoder.encode(ttl));
+	}
+
+	public RedisFuture<String> get(String key){
+		return send(BuilderFactory.STRING,StringTool.Command.GET.raw,SafeEncoder.encode(key));
+	}
+
+	public RedisFuture<String> set(String key,String value){
+		return send(BuilderFactory.STRING,StringTool.Command.SET.raw,SafeEncoder.encode(key),SafeEncoder.encode(value));
+	}
+
+	public RedisFuture<List<String>> mget(String...keys){
+		return send(BuilderFactory.STRING_LIST,StringTool.Command.MGET.raw,SafeEncoder.encode(keys));
+	}
+
+	public RedisFuture<Long> incrBy(String key,long delta){
+		return send(BuilderFactory.LONG,StringTool.Command.INCRBY.raw,SafeEncoder.encode(key),SafeEncoder.encode(delta));
+	}
+
+	public RedisFuture<String> hget(String key,String field){
+		return send(BuilderFactory.STRING,HashTool.Command.HGET.raw,SafeEncoder.encode(key),SafeEncoder.encode(field));
+	}
+
+	public RedisFuture<Boolean> hset(String key,String field,String value){
+		return send(BuilderFactory.BOOLEAN,HashTool.Command.HSET.raw,
+				SafeEncoder.encode(key),SafeEncoder.encode(field),SafeEncoder.encode(value));
+	}
+
+	public RedisFuture<List<String>> hmget(String key,String...fields){
+		byte[][] args = new byte[fields.length + 1][];
+		args[0] = SafeEncoder.encode(key);
+		for (int i = 0 ; i < fields.length ; i ++){
+			args[i + 1] = SafeEncoder.encode(fields[i]);
+		}
+		return send(BuilderFactory.STRING_LIST,HashTool.Command.HMGET.raw,args);
+	}
+
+	public RedisFuture<Map<String,String>> hgetall(String key){
+		return send(BuilderFactory.STRING_MAP,HashTool.Command.HGETALL.raw,SafeEncoder.encode(key));
+	}
+
+	public RedisFuture<Long> hdel(String key,String...fields){
+		byte[][] args = new byte[fields.length + 1][];
+		args[0] = SafeEncoder.encode(key);
+		for (int i = 0 ; i < fields.length ; i ++){
+			args[i + 1] = SafeEncoder.encode(fields[i]);
+		}
+		return send(BuilderFactory.LONG,HashTool.Command.HDEL.raw,args);
+	}
+
+	public RedisFuture<Long> sadd(String key,String...members){
+		byte[][] args = new byte[members.length + 1][];
+		args[0] = SafeEncoder.encode(key);
+		for (int i = 0 ; i < members.length ; i ++){
+			args[i + 1] = SafeEncoder.encode(members[i]);
+		}
+		return send(BuilderFactory.LONG,SetTool.Command.SADD.raw,args);
+	}
+
+	public RedisFuture<List<String>> smembers(String key){
+		return send(BuilderFactory.STRING_LIST,SetTool.Command.SMEMBERS.raw,SafeEncoder.encode(key));
+	}
+
+	public RedisFuture<Boolean> sismember(String key,String member){
+		return send(BuilderFactory.BOOLEAN,SetTool.Command.SISMEMBER.raw,SafeEncoder.encode(key),SafeEncoder.encode(member));
+	}
+
+	public RedisFuture<Long> zadd(String key,Map<String,Double> scoreMembers){
+		byte[][] args = new byte[scoreMembers.size() * 2 + 1][];
+		args[0] = SafeEncoder.encode(key);
+		int i = 1;
+		for (Map.Entry<String,Double> entry:scoreMembers.entrySet()){
+			args[i++] = SafeEncoder.encode(entry.getValue());
+			args[i++] = SafeEncoder.encode(entry.getKey());
+		}
+		return send(BuilderFactory.LONG,SortedSetTool.Command.ZADD.raw,args);
+	}
+
+	public RedisFuture<Double> zscore(String key,String member){
+		return send(BuilderFactory.DOUBLE,SortedSetTool.Command.ZSCORE.raw,SafeEncoder.encode(key),SafeEncoder.encode(member));
+	}
+
+	/**
+	 * 连接的提供者
+	 */
+	public static interface Provider {
+		/**
+		 * 获取一个可用的连接
+		 * @return 连接
+		 */
+		public AsyncConnection getConnection();
+	}
+}
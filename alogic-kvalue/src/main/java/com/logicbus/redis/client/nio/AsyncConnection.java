@@ -0,0 +1,418 @@
+package com.logicbus.redis.client.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicbus.redis.client.Protocol;
+import com.logicbus.redis.client.RedisOutputStream;
+import com.logicbus.redis.util.Builder;
+import com.logicbus.redis.util.BuilderFactory;
+import com.logicbus.redis.util.RedisConnectException;
+import com.logicbus.redis.util.RedisException;
+import com.logicbus.redis.util.SafeEncoder;
+
+/**
+ * 多路复用的非阻塞连接
+ *
+ * <p>
+ * 多个线程可以同时在一个连接上发送指令，指令按发送顺序写出，Redis按相同的顺序返回应答，
+ * 连接据此将应答和等待中的{@link RedisFuture}对应起来.
+ *
+ * <p>
+ * 发送指令时只将指令放入发送队列，由IO线程合并写出，高并发时多个指令会合并为一次写操作.
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class AsyncConnection implements AutoCloseable{
+
+	/**
+	 * a logger of slf4j
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(AsyncConnection.class);
+
+	/**
+	 * 读写缓冲区大小
+	 */
+	protected static final int BUFFER_SIZE = 64 * 1024;
+
+	protected static final byte[] AUTH = SafeEncoder.encode("AUTH");
+	protected static final byte[] SELECT = SafeEncoder.encode("SELECT");
+
+	/**
+	 * IO线程
+	 */
+	protected final EventLoop loop;
+
+	protected final String host;
+
+	protected final int port;
+
+	/**
+	 * 最大的等待应答指令数
+	 */
+	protected final int maxPending;
+
+	protected SocketChannel channel = null;
+
+	protected SelectionKey key = null;
+
+	/**
+	 * 待写出的指令
+	 */
+	protected final ConcurrentLinkedQueue<byte[]> outbound = new ConcurrentLinkedQueue<byte[]>();
+
+	/**
+	 * 等待应答的指令
+	 */
+	protected final ConcurrentLinkedQueue<RedisFuture<?>> inflight = new ConcurrentLinkedQueue<RedisFuture<?>>();
+
+	/**
+	 * 等待应答的指令数
+	 */
+	protected final AtomicInteger pending = new AtomicInteger(0);
+
+	/**
+	 * 是否已经提交了写任务
+	 */
+	protected final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+	/**
+	 * 发送锁，保证发送队列和等待队列的顺序一致
+	 */
+	protected final Object sendLock = new Object();
+
+	protected volatile boolean closed = false;
+
+	protected final ReplyDecoder decoder = new ReplyDecoder();
+
+	protected final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	protected final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * 正在写出的指令
+	 */
+	protected byte[] writing = null;
+
+	/**
+	 * 正在写出的指令的偏移
+	 */
+	protected int writingOffset = 0;
+
+	/**
+	 * 发送的指令数
+	 */
+	protected final AtomicLong sent = new AtomicLong(0);
+
+	/**
+	 * 收到的应答数
+	 */
+	protected final AtomicLong replied = new AtomicLong(0);
+
+	/**
+	 * 收到的错误应答数
+	 */
+	protected final AtomicLong errors = new AtomicLong(0);
+
+	protected final Runnable flushTask = new Runnable(){
+		@Override
+		public void run() {
+			flushScheduled.set(false);
+			try {
+				flush();
+			}catch (Exception ex){
+				close(ex);
+			}
+		}
+	};
+
+	public AsyncConnection(EventLoop loop,String host,int port,int maxPending){
+		this.loop = loop;
+		this.host = host;
+		this.port = port;
+		this.maxPending = maxPending <= 0 ? Integer.MAX_VALUE : maxPending;
+	}
+
+	/**
+	 * 建立连接，并进行密码验证和选择DB
+	 * @param timeout 超时时间(ms)
+	 * @param password 密码
+	 * @param db DB序号
+	 */
+	public void connect(int timeout,String password,int db){
+		try {
+			channel = SocketChannel.open();
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			channel.socket().connect(new InetSocketAddress(host, port), timeout);
+			channel.configureBlocking(false);
+
+			final CountDownLatch registered = new CountDownLatch(1);
+			loop.execute(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						key = channel.register(loop.selector(), SelectionKey.OP_READ, AsyncConnection.this);
+					}catch (ClosedChannelException ex){
+						close(ex);
+					}finally{
+						registered.countDown();
+					}
+				}
+			});
+			if (!registered.await(timeout, TimeUnit.MILLISECONDS) || key == null){
+				throw new RedisConnectException("core.e1004","Can not register the channel to event loop.");
+			}
+		}catch (IOException ex){
+			close(ex);
+			throw new RedisConnectException("core.e1004",
+					"IO Exception when connecting.", ex);
+		}catch (InterruptedException ex){
+			close(ex);
+			Thread.currentThread().interrupt();
+			throw new RedisConnectException("core.e1004",
+					"Interrupted when connecting.", ex);
+		}catch (RedisException ex){
+			close(ex);
+			throw ex;
+		}
+
+		try {
+			if (password != null && password.length() > 0){
+				send(BuilderFactory.STRING,AUTH,SafeEncoder.encode(password)).getResult(timeout);
+			}
+			if (db > 0){
+				send(BuilderFactory.STRING,SELECT,SafeEncoder.encode(db)).getResult(timeout);
+			}
+		}catch (RedisException ex){
+			close(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * 发送指令
+	 * @param builder 结果构造器，为null时直接返回原始应答
+	 * @param cmd 指令
+	 * @param args 参数
+	 * @return 异步结果
+	 */
+	public <T> RedisFuture<T> send(Builder<T> builder,byte[] cmd,byte[]... args){
+		RedisFuture<T> future = new RedisFuture<T>(builder);
+		if (pending.get() >= maxPending){
+			future.fail(new RedisConnectException("core.e1707","Too many pending commands on connection:" + host + ":" + port));
+			return future;
+		}
+		byte[] encoded = encode(cmd,args);
+		synchronized (sendLock){
+			if (closed){
+				future.fail(new RedisConnectException("core.e1706","The connection is closed:" + host + ":" + port));
+				return future;
+			}
+			pending.incrementAndGet();
+			inflight.offer(future);
+			outbound.offer(encoded);
+		}
+		sent.incrementAndGet();
+		if (flushScheduled.compareAndSet(false, true)){
+			loop.execute(flushTask);
+		}
+		return future;
+	}
+
+	protected static byte[] encode(byte[] cmd,byte[]... args){
+		int size = 16 + cmd.length;
+		for (byte[] arg:args){
+			size += 16 + arg.length;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(size);
+		RedisOutputStream os = new RedisOutputStream(buffer,size);
+		Protocol.sendCommand(os, cmd, args);
+		try {
+			os.flush();
+		}catch (IOException ex){
+			throw new RedisConnectException("core.e1004","IO Exception when encoding command.",ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * 处理IO事件，在IO线程中调用
+	 * @param selectionKey key
+	 */
+	protected void process(SelectionKey selectionKey){
+		try {
+			if (selectionKey.isValid() && selectionKey.isReadable()){
+				read();
+			}
+			if (selectionKey.isValid() && selectionKey.isWritable()){
+				flush();
+			}
+		}catch (Exception ex){
+			close(ex);
+		}
+	}
+
+	protected void read() throws IOException{
+		while (true){
+			int count = channel.read(readBuffer);
+			if (count < 0){
+				throw new RedisConnectException("core.e1701",
+						"It seems like server has closed the connection.");
+			}
+			if (count == 0){
+				break;
+			}
+			readBuffer.flip();
+			decoder.feed(readBuffer);
+			readBuffer.clear();
+
+			Object reply = null;
+			while ((reply = decoder.next()) != ReplyDecoder.INCOMPLETE){
+				RedisFuture<?> future = inflight.poll();
+				if (future == null){
+					throw new RedisConnectException("core.e1700","Unexpected reply from server.");
+				}
+				pending.decrementAndGet();
+				replied.incrementAndGet();
+				if (reply instanceof RedisException){
+					errors.incrementAndGet();
+				}
+				future.complete(reply);
+			}
+
+			if (count < readBuffer.capacity()){
+				break;
+			}
+		}
+	}
+
+	protected void flush() throws IOException{
+		if (closed || key == null){
+			return;
+		}
+		while (true){
+			while (writeBuffer.hasRemaining()){
+				if (writing == null){
+					writing = outbound.poll();
+					writingOffset = 0;
+					if (writing == null){
+						break;
+					}
+				}
+				int length = Math.min(writeBuffer.remaining(), writing.length - writingOffset);
+				writeBuffer.put(writing, writingOffset, length);
+				writingOffset += length;
+				if (writingOffset >= writing.length){
+					writing = null;
+				}
+			}
+
+			writeBuffer.flip();
+			if (!writeBuffer.hasRemaining()){
+				writeBuffer.clear();
+				key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+			channel.write(writeBuffer);
+			boolean drained = !writeBuffer.hasRemaining();
+			writeBuffer.compact();
+			if (!drained){
+				//发送缓冲区已满，等待可写事件
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 是否已经关闭
+	 * @return true|false
+	 */
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * 获取等待应答的指令数
+	 * @return 指令数
+	 */
+	public int getPending(){
+		return pending.get();
+	}
+
+	public long getSent(){
+		return sent.get();
+	}
+
+	public long getReplied(){
+		return replied.get();
+	}
+
+	public long getErrors(){
+		return errors.get();
+	}
+
+	public String getHost(){
+		return host;
+	}
+
+	public int getPort(){
+		return port;
+	}
+
+	@Override
+	public void close() {
+		close(null);
+	}
+
+	/**
+	 * 关闭连接，所有等待应答的指令以异常结束
+	 * @param cause 原因
+	 */
+	protected void close(Exception cause){
+		synchronized (sendLock){
+			if (closed){
+				return;
+			}
+			closed = true;
+		}
+		if (cause != null){
+			LOG.error(String.format("Redis connection %s:%d is closed:%s",host,port,cause.getMessage()));
+		}
+		if (key != null){
+			key.cancel();
+		}
+		if (channel != null){
+			try {
+				channel.close();
+			}catch (IOException ex){
+				// nothing to do
+			}
+		}
+		outbound.clear();
+		RedisConnectException ex = cause == null ?
+				new RedisConnectException("core.e1706","The connection is closed:" + host + ":" + port):
+				new RedisConnectException("core.e1706","The connection is closed:" + host + ":" + port,cause);
+		RedisFuture<?> future = null;
+		while ((future = inflight.poll()) != null){
+			pending.decrementAndGet();
+			future.fail(ex);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.logicbus.redis.client.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicbus.redis.util.RedisConnectException;
+
+/**
+ * 基于Selector的IO线程
+ *
+ * <p>
+ * 一个IO线程可以服务多个{@link AsyncConnection}，连接的读写都在IO线程中进行，
+ * 其他线程通过{@link #execute(Runnable)}向IO线程提交任务.
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class EventLoop implements Runnable,AutoCloseable{
+
+	/**
+	 * a logger of slf4j
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(EventLoop.class);
+
+	/**
+	 * selector
+	 */
+	protected final Selector selector;
+
+	/**
+	 * IO线程
+	 */
+	protected final Thread thread;
+
+	/**
+	 * 待执行的任务
+	 */
+	protected final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * 是否运行中
+	 */
+	protected volatile boolean running = true;
+
+	public EventLoop(String name){
+		try {
+			selector = Selector.open();
+		}catch (IOException ex){
+			throw new RedisConnectException("core.e1004","Can not open selector.",ex);
+		}
+		thread = new Thread(this,name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 获取selector
+	 * @return selector
+	 */
+	public Selector selector(){
+		return selector;
+	}
+
+	/**
+	 * 当前线程是否IO线程
+	 * @return true|false
+	 */
+	public boolean inEventLoop(){
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * 提交任务到IO线程
+	 * @param task 任务
+	 */
+	public void execute(Runnable task){
+		tasks.offer(task);
+		if (!inEventLoop()){
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running){
+			try {
+				selector.select(1000);
+				runTasks();
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()){
+					SelectionKey key = iter.next();
+					iter.remove();
+					AsyncConnection conn = (AsyncConnection)key.attachment();
+					if (conn != null){
+						conn.process(key);
+					}
+				}
+			}catch (Exception ex){
+				LOG.error("Error occurs in redis event loop",ex);
+			}
+		}
+		runTasks();
+		for (SelectionKey key:selector.keys()){
+			AsyncConnection conn = (AsyncConnection)key.attachment();
+			if (conn != null){
+				conn.close();
+			}
+		}
+		try {
+			selector.close();
+		}catch (IOException ex){
+			// nothing to do
+		}
+	}
+
+	protected void runTasks(){
+		Runnable task = null;
+		while ((task = tasks.poll()) != null){
+			try {
+				task.run();
+			}catch (Exception ex){
+				LOG.error("Error occurs when running task in redis event loop",ex);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+}
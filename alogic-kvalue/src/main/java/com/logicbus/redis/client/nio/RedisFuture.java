@@ -0,0 +1,257 @@
+package com.logicbus.redis.client.nio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicbus.redis.util.Builder;
+import com.logicbus.redis.util.RedisConnectException;
+import com.logicbus.redis.util.RedisException;
+
+/**
+ * 异步指令的结果
+ *
+ * <p>
+ * 除了{@link Future}的阻塞式获取之外，还可以通过{@link #addCallback(Callback)}注册回调，
+ * 回调在IO线程中执行，不应进行阻塞操作.
+ *
+ * <p>
+ * 指令一旦发出就无法撤回，{@link #cancel(boolean)}只是放弃等待，后续到达的应答将被丢弃.
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class RedisFuture<T> implements Future<T> {
+
+	/**
+	 * a logger of slf4j
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(RedisFuture.class);
+
+	/**
+	 * 结果的构造器
+	 */
+	protected final Builder<T> builder;
+
+	/**
+	 * 完成信号
+	 */
+	protected final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * 结果
+	 */
+	protected volatile T result = null;
+
+	/**
+	 * 异常
+	 */
+	protected volatile RedisException error = null;
+
+	/**
+	 * 是否已取消
+	 */
+	protected volatile boolean cancelled = false;
+
+	/**
+	 * 回调列表
+	 */
+	protected List<Callback<T>> callbacks = null;
+
+	public RedisFuture(Builder<T> builder){
+		this.builder = builder;
+	}
+
+	/**
+	 * 以应答完成
+	 * @param reply 应答
+	 */
+	@SuppressWarnings("unchecked")
+	protected void complete(Object reply){
+		if (reply instanceof RedisException){
+			fail((RedisException)reply);
+			return;
+		}
+		T value;
+		try {
+			value = builder == null ? (T)reply : builder.build(reply, null);
+		}catch (RuntimeException ex){
+			fail(new RedisException("core.e1709","Failed to build the reply:" + ex.getMessage(),ex));
+			return;
+		}
+		List<Callback<T>> toCall;
+		synchronized (this){
+			if (isDone()){
+				return;
+			}
+			result = value;
+			toCall = callbacks;
+			callbacks = null;
+			done.countDown();
+		}
+		fire(toCall);
+	}
+
+	/**
+	 * 以异常完成
+	 * @param ex 异常
+	 */
+	protected void fail(RedisException ex){
+		List<Callback<T>> toCall;
+		synchronized (this){
+			if (isDone()){
+				return;
+			}
+			error = ex;
+			toCall = callbacks;
+			callbacks = null;
+			done.countDown();
+		}
+		fire(toCall);
+	}
+
+	protected void fire(List<Callback<T>> toCall){
+		if (toCall != null){
+			for (Callback<T> callback:toCall){
+				invoke(callback);
+			}
+		}
+	}
+
+	protected void invoke(Callback<T> callback){
+		try {
+			if (error != null){
+				callback.onFailure(error);
+			}else{
+				callback.onSuccess(result);
+			}
+		}catch (Exception ex){
+			LOG.error("Failed to invoke redis callback",ex);
+		}
+	}
+
+	/**
+	 * 注册回调
+	 *
+	 * <p>
+	 * 如果已经完成，回调立即在当前线程执行.被取消的结果不会触发回调.
+	 *
+	 * @param callback 回调
+	 * @return 自身
+	 */
+	public RedisFuture<T> addCallback(Callback<T> callback){
+		synchronized (this){
+			if (!isDone()){
+				if (callbacks == null){
+					callbacks = new ArrayList<Callback<T>>(2);
+				}
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		if (!cancelled){
+			invoke(callback);
+		}
+		return this;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this){
+			if (isDone()){
+				return false;
+			}
+			cancelled = true;
+			callbacks = null;
+			done.countDown();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return report();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)){
+			throw new TimeoutException("Timeout when waiting for redis reply.");
+		}
+		return report();
+	}
+
+	/**
+	 * 等待并获取结果
+	 *
+	 * <p>
+	 * 和{@link #get(long, TimeUnit)}不同的是，本方法直接抛出RedisException，便于同步调用者使用.
+	 *
+	 * @param timeout 超时时间(ms)
+	 * @return 结果
+	 */
+	public T getResult(long timeout){
+		try {
+			if (!done.await(timeout, TimeUnit.MILLISECONDS)){
+				throw new RedisConnectException("core.e1705","Timeout when waiting for redis reply.");
+			}
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new RedisConnectException("core.e1705","Interrupted when waiting for redis reply.",ex);
+		}
+		if (cancelled){
+			throw new RedisConnectException("core.e1705","The redis command has been cancelled.");
+		}
+		if (error != null){
+			throw error;
+		}
+		return result;
+	}
+
+	protected T report() throws ExecutionException{
+		if (cancelled){
+			throw new CancellationException();
+		}
+		if (error != null){
+			throw new ExecutionException(error);
+		}
+		return result;
+	}
+
+	/**
+	 * 回调
+	 */
+	public static interface Callback<T>{
+		/**
+		 * 成功
+		 * @param result 结果
+		 */
+		public void onSuccess(T result);
+
+		/**
+		 * 失败
+		 * @param ex 异常
+		 */
+		public void onFailure(RedisException ex);
+	}
+}
@@ -0,0 +1,204 @@
+package com.logicbus.redis.client.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.logicbus.redis.client.Protocol;
+import com.logicbus.redis.util.RedisConnectException;
+import com.logicbus.redis.util.RedisDataException;
+
+/**
+ * 增量式的应答解码器
+ *
+ * <p>
+ * 从非阻塞的通道中读取的数据可能只是应答的一部分，解码器会保存已解析的状态，
+ * 当数据不完整时返回{@link #INCOMPLETE}，在后续数据到达后继续解析，而不需要从头开始。
+ *
+ * <p>
+ * 解码结果和{@link Protocol#read(com.logicbus.redis.client.RedisInputStream)}保持一致：<br>
+ * - 状态和Bulk应答为byte[]; <br>
+ * - 整数应答为Long; <br>
+ * - Multi-Bulk应答为List&lt;Object&gt;; <br>
+ * - 错误应答为RedisDataException. <br>
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class ReplyDecoder {
+
+	/**
+	 * 数据不完整
+	 */
+	public static final Object INCOMPLETE = new Object();
+
+	/**
+	 * 缓冲区初始大小
+	 */
+	protected static final int INITIAL_SIZE = 64 * 1024;
+
+	/**
+	 * 缓冲区
+	 */
+	protected byte[] data = new byte[INITIAL_SIZE];
+
+	/**
+	 * 读位置
+	 */
+	protected int rpos = 0;
+
+	/**
+	 * 写位置
+	 */
+	protected int wpos = 0;
+
+	/**
+	 * 正在等待的Bulk数据长度，-1表示不在等待Bulk数据
+	 */
+	protected int bulkLength = -1;
+
+	/**
+	 * 正在解析的Multi-Bulk应答
+	 */
+	protected LinkedList<Frame> frames = new LinkedList<Frame>();
+
+	/**
+	 * 追加数据
+	 * @param buffer 数据(读模式)
+	 */
+	public void feed(ByteBuffer buffer){
+		int length = buffer.remaining();
+		if (wpos + length > data.length){
+			int used = wpos - rpos;
+			if (used + length > data.length){
+				byte[] newData = new byte[Math.max(data.length * 2, used + length)];
+				System.arraycopy(data, rpos, newData, 0, used);
+				data = newData;
+			}else{
+				System.arraycopy(data, rpos, data, 0, used);
+			}
+			rpos = 0;
+			wpos = used;
+		}
+		buffer.get(data, wpos, length);
+		wpos += length;
+	}
+
+	/**
+	 * 解析下一个应答
+	 * @return 应答，数据不完整时返回{@link #INCOMPLETE}
+	 */
+	public Object next(){
+		while (true){
+			Object value;
+			if (bulkLength >= 0){
+				if (wpos - rpos < bulkLength + 2){
+					return INCOMPLETE;
+				}
+				value = Arrays.copyOfRange(data, rpos, rpos + bulkLength);
+				rpos += bulkLength + 2;
+				bulkLength = -1;
+			}else{
+				int eol = indexOfCrLf(rpos);
+				if (eol < 0){
+					return INCOMPLETE;
+				}
+				byte type = data[rpos];
+				int start = rpos + 1;
+				rpos = eol + 2;
+				switch (type){
+				case Protocol.PLUS_BYTE:
+					value = Arrays.copyOfRange(data, start, eol);
+					break;
+				case Protocol.MINUS_BYTE:
+					value = new RedisDataException("core.e1703",getLine(start,eol));
+					break;
+				case Protocol.COLON_BYTE:
+					value = Long.valueOf(getLine(start,eol));
+					break;
+				case Protocol.DOLLAR_BYTE:{
+					int length = Integer.parseInt(getLine(start,eol));
+					if (length >= 0){
+						bulkLength = length;
+						continue;
+					}
+					value = null;
+					break;
+				}
+				case Protocol.ASTERISK_BYTE:{
+					int count = Integer.parseInt(getLine(start,eol));
+					if (count > 0){
+						frames.push(new Frame(count));
+						continue;
+					}
+					value = count < 0 ? null : new ArrayList<Object>(0);
+					break;
+				}
+				default:
+					throw new RedisConnectException("core.e1700", "Unknown reply: "+ (char) type);
+				}
+			}
+
+			boolean completed = true;
+			while (!frames.isEmpty()){
+				Frame frame = frames.peek();
+				frame.values.add(value);
+				if (frame.values.size() < frame.count){
+					completed = false;
+					break;
+				}
+				frames.pop();
+				value = frame.values;
+			}
+
+			if (completed){
+				reset();
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * 当缓冲区中的数据已经全部解析时，重置读写位置，并释放过大的缓冲区
+	 */
+	protected void reset(){
+		if (rpos == wpos){
+			rpos = wpos = 0;
+			if (data.length > INITIAL_SIZE * 16){
+				data = new byte[INITIAL_SIZE];
+			}
+		}
+	}
+
+	protected int indexOfCrLf(int from){
+		for (int i = from ; i < wpos - 1 ; i ++){
+			if (data[i] == '\r' && data[i + 1] == '\n'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected String getLine(int start,int end){
+		char[] chars = new char[end - start];
+		for (int i = start ; i < end ; i ++){
+			chars[i - start] = (char)(data[i] & 0xff);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * 正在解析的Multi-Bulk应答
+	 */
+	protected static class Frame {
+		protected final int count;
+		protected final List<Object> values;
+
+		protected Frame(int count){
+			this.count = count;
+			this.values = new ArrayList<Object>(count);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.logicbus.redis.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlElementProperties;
+import com.anysoft.util.XmlTools;
+import com.logicbus.redis.client.nio.AsyncClient;
+import com.logicbus.redis.client.nio.AsyncConnection;
+import com.logicbus.redis.client.nio.EventLoop;
+import com.logicbus.redis.util.RedisContextException;
+
+/**
+ * 支持多路复用连接的连接池
+ *
+ * <p>
+ * 在RedisPool的基础上，维护少量基于NIO的多路复用连接，通过{@link #getAsyncClient()}获取异步客户端.
+ * 异步客户端不占用连接，并发请求数不再受连接池大小的限制.原有的{@link #getClient()}仍然可用.
+ *
+ * <p>
+ * 通过rcp节点的module属性选用，例如：<br>
+ * {@code <rcp id="default" module="com.logicbus.redis.context.MultiplexedRedisPool" host="..." connections="2"/>}
+ *
+ * @author duanyy
+ * @since 1.6.11.70
+ */
+public class MultiplexedRedisPool extends RedisPool implements AsyncClient.Provider{
+
+	/**
+	 * 多路复用连接的个数
+	 */
+	protected int connections = 2;
+
+	/**
+	 * 每个连接最大的等待应答指令数
+	 */
+	protected int maxPending = 10000;
+
+	/**
+	 * 建立连接的超时时间(ms)
+	 */
+	protected int connectTimeout = 3000;
+
+	/**
+	 * IO线程
+	 */
+	protected EventLoop loop = null;
+
+	/**
+	 * 多路复用连接
+	 */
+	protected AtomicReferenceArray<AsyncConnection> slots = null;
+
+	/**
+	 * 异步客户端
+	 */
+	protected AsyncClient asyncClient = null;
+
+	@Override
+	public void configure(Element e, Properties p) {
+		XmlElementProperties props = new XmlElementProperties(e,p);
+		connections = PropertiesConstants.getInt(props, "connections", connections);
+		connections = connections <= 0 ? 1 : connections;
+		maxPending = PropertiesConstants.getInt(props, "maxPending", maxPending);
+		connectTimeout = PropertiesConstants.getInt(props, "connectTimeout", connectTimeout);
+		super.configure(e, p);
+
+		slots = new AtomicReferenceArray<AsyncConnection>(connections);
+		loop = new EventLoop("redis-nio-" + getId());
+		asyncClient = new AsyncClient(this);
+	}
+
+	/**
+	 * 获取异步客户端
+	 * @return 异步客户端
+	 */
+	public AsyncClient getAsyncClient(){
+		return asyncClient;
+	}
+
+	/**
+	 * 获取连接
+	 * 
+	 * <p>
+	 * 连接按照当前线程选择，同一线程发出的指令总是在同一连接上按顺序执行，保证先写后读的语义.
+	 * 
+	 * <p>
+	 * 连接失效时，在锁外建立新连接(包括AUTH和SELECT)，再通过compareAndSet安装到槽位，
+	 * 并发重建同一槽位时，落败者关闭自己的连接并使用胜出者的连接，不会阻塞其他槽位.
+	 */
+	@Override
+	public AsyncConnection getConnection() {
+		int index = (int)((Thread.currentThread().getId() & Integer.MAX_VALUE) % slots.length());
+		AsyncConnection found = slots.get(index);
+		while (found == null || found.isClosed()){
+			Endpoint endpoint = getEndpoint();
+			AsyncConnection conn = new AsyncConnection(loop,endpoint.host,endpoint.port,maxPending);
+			conn.connect(connectTimeout, endpoint.password, endpoint.db);
+			if (slots.compareAndSet(index, found, conn)){
+				return conn;
+			}
+			conn.close();
+			found = slots.get(index);
+		}
+		return found;
+	}
+
+	@Override
+	public void close() {
+		if (slots != null){
+			for (int i = 0 ; i < slots.length() ; i ++){
+				AsyncConnection conn = slots.getAndSet(i, null);
+				if (conn != null){
+					conn.close();
+				}
+			}
+		}
+		if (loop != null){
+			loop.close();
+		}
+		super.close();
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			super.report(xml);
+			XmlTools.setInt(xml, "connections", connections);
+			XmlTools.setInt(xml, "maxPending", maxPending);
+
+			int active = 0;
+			long pending = 0, sent = 0, replied = 0, errors = 0;
+			for (int i = 0 ; slots != null && i < slots.length() ; i ++){
+				AsyncConnection conn = slots.get(i);
+				if (conn != null && !conn.isClosed()){
+					active ++;
+					pending += conn.getPending();
+					sent += conn.getSent();
+					replied += conn.getReplied();
+					errors += conn.getErrors();
+				}
+			}
+			Element async = xml.getOwnerDocument().createElement("async");
+			XmlTools.setInt(async, "active", active);
+			XmlTools.setLong(async, "pending", pending);
+			XmlTools.setLong(async, "sent", sent);
+			XmlTools.setLong(async, "replied", replied);
+			XmlTools.setLong(async, "errors", errors);
+			xml.appendChild(async);
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			super.report(json);
+			JsonTools.setInt(json, "connections", connections);
+			JsonTools.setInt(json, "maxPending", maxPending);
+
+			int active = 0;
+			long pending = 0, sent = 0, replied = 0, errors = 0;
+			for (int i = 0 ; slots != null && i < slots.length() ; i ++){
+				AsyncConnection conn = slots.get(i);
+				if (conn != null && !conn.isClosed()){
+					active ++;
+					pending += conn.getPending();
+					sent += conn.getSent();
+					replied += conn.getReplied();
+					errors += conn.getErrors();
+				}
+			}
+			Map<String,Object> async = new HashMap<String,Object>();
+			JsonTools.setInt(async, "active", active);
+			JsonTools.setLong(async, "pending", pending);
+			JsonTools.setLong(async, "sent", sent);
+			JsonTools.setLong(async, "replied", replied);
+			JsonTools.setLong(async, "errors", errors);
+			json.put("async", async);
+		}
+	}
+
+	/**
+	 * 从RedisContext中获取指定连接池的异步客户端
+	 * @param context RedisContext
+	 * @param id 连接池id
+	 * @return 异步客户端
+	 */
+	public static AsyncClient getAsyncClient(RedisContext context,String id){
+		RedisPool pool = context.getPool(id);
+		if (pool == null){
+			throw new RedisContextException("core.e1003","Can not find the redis pool:" + id);
+		}
+		if (!(pool instanceof MultiplexedRedisPool)){
+			throw new RedisContextException("core.e1003",
+					String.format("The redis pool %s does not support async client,module=%s",id,pool.getClass().getName()));
+		}
+		return ((MultiplexedRedisPool)pool).getAsyncClient();
+	}
+}
@@ -30,6 +30,9 @@ import com.logicbus.redis.util.RedisContextException;
  * 
  * @version 1.6.10.8 [20171122 duanyy] <br>
  * - 支持用户名密码等信息实时从SDA获取 <br>
+ * 
+ * @version 1.6.11.70 [20181015 duanyy] <br>
+ * - 连接信息的获取提取为getEndpoint，以便其他类型的连接复用 <br>
  */
 public class RedisPool extends Queued{
 
@@ -116,42 +119,56 @@ public class RedisPool extends Queued{
 	protected <pooled> pooled createObject(){
 		Client instance = null;
 		try {
-			SecretDataArea sda = null;
-			if (StringUtils.isNotEmpty(sdaId)){
-				//从sda中装入信息
+			Endpoint endpoint = getEndpoint();
+			instance =  new Client(endpoint.host,endpoint.port,endpoint.password,endpoint.db);
+			instance.register(this);
+		}catch (Exception ex){
+			logger.error(String.format("Can not create a connection to redis %s:%d",host,port),ex);
+		}
+		return (pooled)instance;
+	}
+	
+	/**
+	 * 获取连接信息
+	 * 
+	 * <p>
+	 * 如果配置了sda，则从sda中实时获取，否则采用配置的信息，密码通过coder解密.
+	 * 
+	 * @return 连接信息
+	 * 
+	 * @since 1.6.11.70
+	 */
+	protected Endpoint getEndpoint(){
+		SecretDataArea sda = null;
+		if (StringUtils.isNotEmpty(sdaId)){
+			//从sda中装入信息
+			try {
+				sda = SDAFactory.getDefault().load(sdaId, true);
+			}catch (Exception ex){
+				logger.error("Can not find sda : " + sdaId);
+				logger.error(ExceptionUtils.getStackTrace(ex));
+			}
+		}
+		
+		if (sda != null){
+			String pwd = sda.getField("password", password);
+			String ip = sda.getField("ip", host);
+			int p = sda.getField("port", port);
+			int index = sda.getField("db", db);
+			return new Endpoint(ip,p,pwd,index);
+		}else{
+			String pwd = password;
+			if (StringUtils.isNotEmpty(coder)){
+				//通过coder进行密码解密
 				try {
-					sda = SDAFactory.getDefault().load(sdaId, true);
+					Coder _coder = CoderFactory.newCoder(coder);
+					pwd = _coder.decode(password, username);
 				}catch (Exception ex){
-					logger.error("Can not find sda : " + sdaId);
-					logger.error(ExceptionUtils.getStackTrace(ex));
+					logger.error("Can not find coder:" + coder);
 				}
 			}
-			
-			if (sda != null){
-				String pwd = sda.getField("password", password);
-				String ip = sda.getField("ip", host);
-				int p = sda.getField("port", port);
-				int index = sda.getField("db", db);
-				instance =  new Client(ip,p,pwd,index);
-				instance.register(this);
-			}else{
-				String pwd = password;
-				if (StringUtils.isNotEmpty(coder)){
-					//通过coder进行密码解密
-					try {
-						Coder _coder = CoderFactory.newCoder(coder);
-						pwd = _coder.decode(password, username);
-					}catch (Exception ex){
-						logger.error("Can not find coder:" + coder);
-					}
-				}
-				instance =  new Client(host,port,pwd,db);
-				instance.register(this);
-			}
-		}catch (Exception ex){
-			logger.error(String.format("Can not create a connection to redis %d:%d",host,port),ex);
+			return new Endpoint(host,port,pwd,db);
 		}
-		return (pooled)instance;
 	}
 
 	public void configure(Element _e, Properties _properties) {
@@ -189,5 +206,23 @@ public class RedisPool extends Queued{
 			super.report(json);
 		}
 	}
-
+	
+	/**
+	 * 连接信息
+	 * 
+	 * @since 1.6.11.70
+	 */
+	public static class Endpoint {
+		public final String host;
+		public final int port;
+		public final String password;
+		public final int db;
+		
+		public Endpoint(String host,int port,String password,int db){
+			this.host = host;
+			this.port = port;
+			this.password = password;
+			this.db = db;
+		}
+	}
 }
@@ -1,9 +1,14 @@
 package com.logicbus.redis.kvalue;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -15,9 +20,15 @@ import com.anysoft.util.XmlElementProperties;
 import com.anysoft.util.XmlTools;
 import com.logicbus.kvalue.common.Partition;
 import com.logicbus.kvalue.common.Partitioner;
+import com.logicbus.kvalue.core.BatchTable;
 import com.logicbus.kvalue.core.KeyValueRow;
 import com.logicbus.kvalue.core.Table;
+import com.logicbus.redis.client.Client;
 import com.logicbus.redis.context.RedisContext;
+import com.logicbus.redis.context.RedisPool;
+import com.logicbus.redis.toolkit.HashTool;
+import com.logicbus.redis.toolkit.SortedSetTool;
+import com.logicbus.redis.util.RedisException;
 
 
 /**
@@ -26,8 +37,11 @@ import com.logicbus.redis.context.RedisContext;
  * 
  * @version 1.0.0.2 [20141108 duanyy] <br>
  * - 补充Reportable实现. <br>
+ * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 实现BatchTable，多key操作按分区合并到管道中执行 <br>
  */
-public class RedisTable implements Table {
+public class RedisTable implements BatchTable {
 	
 	/**
 	 * redis context，用于从中获取redis connection
@@ -175,6 +189,190 @@ public class RedisTable implements Table {
 		}
 	}
 
+	@Override
+	public List<String> mhget(final String field, boolean enableRWSplit, String... keys) {
+		String[] result = new String[keys.length];
+		String[] fullKeys = getKeys(keys);
+		Map<String,List<Integer>> groups = group(fullKeys,true,enableRWSplit);
+		for (Map.Entry<String,List<Integer>> entry:groups.entrySet()){
+			List<Integer> indexes = entry.getValue();
+			String[] groupKeys = getKeys(fullKeys,indexes);
+			Client client = getClient(entry.getKey());
+			try {
+				HashTool tool = (HashTool)client.getToolKit(HashTool.class);
+				List<String> values = tool.mhget(field, groupKeys);
+				for (int i = 0 ; i < indexes.size() ; i ++){
+					result[indexes.get(i)] = values.get(i);
+				}
+			}finally{
+				client.poolClose();
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	@Override
+	public List<Map<String, String>> mhgetall(boolean enableRWSplit, String... keys) {
+		List<Map<String,String>> result = new ArrayList<Map<String,String>>(keys.length);
+		for (int i = 0 ; i < keys.length ; i ++){
+			result.add(null);
+		}
+		String[] fullKeys = getKeys(keys);
+		Map<String,List<Integer>> groups = group(fullKeys,true,enableRWSplit);
+		for (Map.Entry<String,List<Integer>> entry:groups.entrySet()){
+			List<Integer> indexes = entry.getValue();
+			String[] groupKeys = getKeys(fullKeys,indexes);
+			Client client = getClient(entry.getKey());
+			try {
+				HashTool tool = (HashTool)client.getToolKit(HashTool.class);
+				List<Map<String,String>> values = tool.mhgetall(groupKeys);
+				for (int i = 0 ; i < indexes.size() ; i ++){
+					result.set(indexes.get(i), values.get(i));
+				}
+			}finally{
+				client.poolClose();
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public long mhset(String field, Map<String, String> keyValues) {
+		long count = 0;
+		Map<String,Map<String,String>> groups = group(keyValues);
+		for (Map.Entry<String,Map<String,String>> entry:groups.entrySet()){
+			Client client = getClient(entry.getKey());
+			try {
+				HashTool tool = (HashTool)client.getToolKit(HashTool.class);
+				count += tool.mhset(field, entry.getValue());
+			}finally{
+				client.poolClose();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void mhmset(Map<String, Map<String, String>> rows) {
+		Map<String,Map<String,Map<String,String>>> groups = group(rows);
+		for (Map.Entry<String,Map<String,Map<String,String>>> entry:groups.entrySet()){
+			Client client = getClient(entry.getKey());
+			try {
+				HashTool tool = (HashTool)client.getToolKit(HashTool.class);
+				tool.mhmset(entry.getValue());
+			}finally{
+				client.poolClose();
+			}
+		}
+	}
+
+	@Override
+	public long mzadd(Map<String, Map<String, Double>> rows) {
+		long count = 0;
+		Map<String,Map<String,Map<String,Double>>> groups = group(rows);
+		for (Map.Entry<String,Map<String,Map<String,Double>>> entry:groups.entrySet()){
+			Client client = getClient(entry.getKey());
+			try {
+				SortedSetTool tool = (SortedSetTool)client.getToolKit(SortedSetTool.class);
+				count += tool.mzadd(entry.getValue());
+			}finally{
+				client.poolClose();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 按照数据源对key进行分组
+	 * @param keys 真正的key列表
+	 * @param readOnly 是否只读
+	 * @param enableRWSplit 是否允许读写分离
+	 * @return 数据源及其对应的key序号
+	 */
+	protected Map<String,List<Integer>> group(String[] keys,boolean readOnly,boolean enableRWSplit){
+		Map<String,List<Integer>> groups = new LinkedHashMap<String,List<Integer>>();
+		for (int i = 0 ; i < keys.length ; i ++){
+			String src = getSource(partitioner.getPartition(keys[i]),readOnly,enableRWSplit);
+			List<Integer> found = groups.get(src);
+			if (found == null){
+				found = new ArrayList<Integer>();
+				groups.put(src, found);
+			}
+			found.add(i);
+		}
+		return groups;
+	}
+
+	/**
+	 * 按照数据源对写入的数据进行分组
+	 * @param rows 行的key及其数据
+	 * @return 数据源及其对应的数据，key已经加工为真正的key
+	 */
+	protected <V> Map<String,Map<String,V>> group(Map<String,V> rows){
+		Map<String,Map<String,V>> groups = new LinkedHashMap<String,Map<String,V>>();
+		for (Map.Entry<String,V> entry:rows.entrySet()){
+			String key = getKey(entry.getKey());
+			String src = getSource(partitioner.getPartition(key),false,false);
+			Map<String,V> found = groups.get(src);
+			if (found == null){
+				found = new LinkedHashMap<String,V>();
+				groups.put(src, found);
+			}
+			found.put(key, entry.getValue());
+		}
+		return groups;
+	}
+
+	private String[] getKeys(String[] keys){
+		String[] result = new String[keys.length];
+		for (int i = 0 ; i < result.length ; i ++){
+			result[i] = getKey(keys[i]);
+		}
+		return result;
+	}
+
+	private static String[] getKeys(String[] keys,List<Integer> indexes){
+		String[] result = new String[indexes.size()];
+		for (int i = 0 ; i < result.length ; i ++){
+			result[i] = keys[indexes.get(i)];
+		}
+		return result;
+	}
+
+	/**
+	 * 选取分区中合适的数据源
+	 * @param part 分区
+	 * @param readOnly 是否只读
+	 * @param enableRWSplit 是否允许读写分离
+	 * @return 数据源
+	 */
+	protected String getSource(Partition part,boolean readOnly,boolean enableRWSplit){
+		if (readOnly && enableRWSplit){
+			String [] replicates = part.getReplicates();
+			if (replicates != null && replicates.length > 0){
+				return replicates[random.nextInt(replicates.length)];
+			}
+		}
+		return part.getSource();
+	}
+
+	/**
+	 * 从数据源中获取Client
+	 * @param src 数据源
+	 * @return Client实例
+	 */
+	protected Client getClient(String src){
+		RedisPool pool = source.getPool(src);
+		Client client = pool == null ? null : pool.getClient();
+		if (client == null){
+			throw new RedisException("core.e1003",
+					"Can not get a client by source name:" + src);
+		}
+		return client;
+	}
+
+	protected static Random random = new Random();
+
 	protected static Hashtable<Table.DataType,Class<? extends KeyValueRow>> dataTypeMappping = null;
 	
 	static {
@@ -14,6 +14,8 @@ import com.logicbus.redis.util.SafeEncoder;
  * Hash类型数据的工具集
  * @author duanyy
  *
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加基于管道的多key批量操作 <br>
  */
 public class HashTool extends KeyTool {
 	public static enum Command {
@@ -219,6 +221,104 @@ public class HashTool extends KeyTool {
 		return getIntegerReply() > 0;
 	}
 	
+	/**
+	 * 在管道中批量获取多个Hash的同一字段
+	 * @param field 字段
+	 * @param keys Hash的key列表
+	 * @return 按keys顺序排列的字段值,不存在的为null
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public List<String> mhget(final String field,final String...keys){
+		List<Object> replies = pipelined(keys.length,new Batch(){
+			@Override
+			public void send(int index) {
+				_hget(keys[index],field);
+			}
+		});
+		List<String> result = new ArrayList<String>(replies.size());
+		for (Object reply:replies){
+			result.add(BuilderFactory.STRING.build(checkReply(reply), null));
+		}
+		return result;
+	}
+	
+	/**
+	 * 在管道中批量获取多个Hash的全部字段
+	 * @param keys Hash的key列表
+	 * @return 按keys顺序排列的Hash内容
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public List<Map<String,String>> mhgetall(final String...keys){
+		List<Object> replies = pipelined(keys.length,new Batch(){
+			@Override
+			public void send(int index) {
+				_hgetall(keys[index]);
+			}
+		});
+		List<Map<String,String>> result = new ArrayList<Map<String,String>>(replies.size());
+		for (Object reply:replies){
+			result.add(BuilderFactory.STRING_MAP.build(checkReply(reply), null));
+		}
+		return result;
+	}
+	
+	/**
+	 * 在管道中批量设置多个Hash的同一字段
+	 * @param field 字段
+	 * @param keyValues Hash的key及其字段值
+	 * @return 新增的字段个数
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public long mhset(final String field,final Map<String,String> keyValues){
+		final List<Map.Entry<String,String>> entries = new ArrayList<Map.Entry<String,String>>(keyValues.entrySet());
+		List<Object> replies = pipelined(entries.size(),new Batch(){
+			@Override
+			public void send(int index) {
+				Map.Entry<String,String> entry = entries.get(index);
+				_hset(entry.getKey(),field,entry.getValue());
+			}
+		});
+		long count = 0;
+		for (Object reply:replies){
+			count += (Long)checkReply(reply);
+		}
+		return count;
+	}
+	
+	/**
+	 * 在管道中批量设置多个Hash的多个字段,可用于缓存的批量装入
+	 * @param rows Hash的key及其字段值
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public void mhmset(final Map<String,Map<String,String>> rows){
+		final List<Map.Entry<String,Map<String,String>>> entries = new ArrayList<Map.Entry<String,Map<String,String>>>();
+		for (Map.Entry<String,Map<String,String>> entry:rows.entrySet()){
+			if (entry.getValue() != null && !entry.getValue().isEmpty()){
+				entries.add(entry);
+			}
+		}
+		List<Object> replies = pipelined(entries.size(),new Batch(){
+			@Override
+			public void send(int index) {
+				Map.Entry<String,Map<String,String>> entry = entries.get(index);
+				String[] fieldvalues = new String[entry.getValue().size() * 2];
+				int i = 0;
+				for (Map.Entry<String,String> fv:entry.getValue().entrySet()){
+					fieldvalues[i++] = fv.getKey();
+					fieldvalues[i++] = fv.getValue();
+				}
+				_hmset(entry.getKey(),fieldvalues);
+			}
+		});
+		for (Object reply:replies){
+			checkReply(reply);
+		}
+	}
+	
 	public void _hdel(final String key,final String... fields){
 		final List<byte[]> args = new ArrayList<byte[]>();
 		args.add(SafeEncoder.encode(key));
@@ -2,12 +2,22 @@ package com.logicbus.redis.toolkit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.logicbus.redis.client.Connection;
 import com.logicbus.redis.params.ScanParams;
 import com.logicbus.redis.result.ScanResult;
+import com.logicbus.redis.util.BuilderFactory;
 import com.logicbus.redis.util.SafeEncoder;
 
+/**
+ * Set类型数据的工具集
+ * 
+ * @author duanyy
+ * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加基于管道的多key批量操作 <br>
+ */
 public class SetTool extends KeyTool {
 
 	public static enum Command {
@@ -246,4 +256,53 @@ public class SetTool extends KeyTool {
 		_sadd(key,values);
 		return getIntegerReply();
 	}
+	
+	/**
+	 * 在管道中批量获取多个Set的成员
+	 * @param keys Set的key列表
+	 * @return 按keys顺序排列的成员列表
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public List<List<String>> msmembers(final String...keys){
+		List<Object> replies = pipelined(keys.length,new Batch(){
+			@Override
+			public void send(int index) {
+				_smembers(keys[index]);
+			}
+		});
+		List<List<String>> result = new ArrayList<List<String>>(replies.size());
+		for (Object reply:replies){
+			result.add(BuilderFactory.STRING_LIST.build(checkReply(reply), null));
+		}
+		return result;
+	}
+	
+	/**
+	 * 在管道中批量向多个Set增加成员
+	 * @param members Set的key及其待增加的成员
+	 * @return 新增的成员个数
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public long msadd(final Map<String,String[]> members){
+		final List<Map.Entry<String,String[]>> entries = new ArrayList<Map.Entry<String,String[]>>();
+		for (Map.Entry<String,String[]> entry:members.entrySet()){
+			if (entry.getValue() != null && entry.getValue().length > 0){
+				entries.add(entry);
+			}
+		}
+		List<Object> replies = pipelined(entries.size(),new Batch(){
+			@Override
+			public void send(int index) {
+				Map.Entry<String,String[]> entry = entries.get(index);
+				_sadd(entry.getKey(),entry.getValue());
+			}
+		});
+		long count = 0;
+		for (Object reply:replies){
+			count += (Long)checkReply(reply);
+		}
+		return count;
+	}
 }
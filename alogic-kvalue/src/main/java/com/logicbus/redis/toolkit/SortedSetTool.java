@@ -12,6 +12,14 @@ import com.logicbus.redis.params.ZParams;
 import com.logicbus.redis.result.ScanResult;
 import com.logicbus.redis.util.SafeEncoder;
 
+/**
+ * SortedSet类型数据的工具集
+ * 
+ * @author duanyy
+ * 
+ * @version 1.6.11.69 [20181014 duanyy] <br>
+ * - 增加基于管道的多key批量操作 <br>
+ */
 public class SortedSetTool extends KeyTool {
 
 	public static enum Command {
@@ -533,6 +541,34 @@ public class SortedSetTool extends KeyTool {
 		return getIntegerReply();
 	}
 	
+	/**
+	 * 在管道中批量向多个SortedSet增加成员
+	 * @param rows SortedSet的key及其成员和分值
+	 * @return 新增的成员个数
+	 * 
+	 * @since 1.6.11.69
+	 */
+	public long mzadd(final Map<String,Map<String,Double>> rows){
+		final List<Map.Entry<String,Map<String,Double>>> entries = new ArrayList<Map.Entry<String,Map<String,Double>>>();
+		for (Map.Entry<String,Map<String,Double>> entry:rows.entrySet()){
+			if (entry.getValue() != null && !entry.getValue().isEmpty()){
+				entries.add(entry);
+			}
+		}
+		List<Object> replies = pipelined(entries.size(),new Batch(){
+			@Override
+			public void send(int index) {
+				Map.Entry<String,Map<String,Double>> entry = entries.get(index);
+				_zadd(entry.getKey(),entry.getValue());
+			}
+		});
+		long count = 0;
+		for (Object reply:replies){
+			count += (Long)checkReply(reply);
+		}
+		return count;
+	}
+	
 	private List<Pair<String,Double>> getResultWithScores(){
 		List<String> membersWithScores = getMultiBulkReply(null);
 		
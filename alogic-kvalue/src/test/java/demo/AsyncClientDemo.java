@@ -0,0 +1,105 @@
+package demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.anysoft.util.Settings;
+import com.logicbus.redis.client.Client;
+import com.logicbus.redis.client.nio.AsyncClient;
+import com.logicbus.redis.client.nio.RedisFuture;
+import com.logicbus.redis.context.MultiplexedRedisPool;
+import com.logicbus.redis.context.RedisPool;
+import com.logicbus.redis.context.RedisSource;
+import com.logicbus.redis.toolkit.HashTool;
+
+/**
+ * 比较阻塞式客户端和多路复用的异步客户端的吞吐量
+ * 
+ * @author duanyy
+ *
+ */
+public class AsyncClientDemo {
+
+	public static void main(String[] args) {
+		final Settings settings = Settings.get();
+		settings.SetValue("redis.master", "java:///com/logicbus/redis/context/redis.async.xml#" + AsyncClientDemo.class.getName());
+
+		final int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		final int loops = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		
+		final RedisPool pool = RedisSource.get().getPool("default");
+		final AsyncClient async = MultiplexedRedisPool.getAsyncClient(RedisSource.get(), "default");
+
+		long start = System.currentTimeMillis();
+		run(threadCnt,new Runnable(){
+			@Override
+			public void run() {
+				for (int i = 0 ; i < loops ; i ++){
+					Client client = pool.getClient();
+					try {
+						HashTool tool = (HashTool)client.getToolKit(HashTool.class);
+						tool.hset("demo:sync:" + i, "f", String.valueOf(i));
+						tool.hget("demo:sync:" + i, "f");
+					}finally{
+						client.poolClose();
+					}
+				}
+			}
+		});
+		System.out.println(String.format("blocking:%d threads x %d loops,%d ms",threadCnt,loops,System.currentTimeMillis() - start));
+		
+		start = System.currentTimeMillis();
+		run(threadCnt,new Runnable(){
+			@Override
+			public void run() {
+				//每批发出window个指令，再统一等待结果
+				int window = 100;
+				List<RedisFuture<String>> futures = new ArrayList<RedisFuture<String>>(window);
+				for (int from = 0 ; from < loops ; from += window){
+					int to = Math.min(loops, from + window);
+					futures.clear();
+					for (int i = from ; i < to ; i ++){
+						async.hset("demo:async:" + i, "f", String.valueOf(i));
+						futures.add(async.hget("demo:async:" + i, "f"));
+					}
+					for (int i = from ; i < to ; i ++){
+						String value = futures.get(i - from).getResult(10000);
+						if (!String.valueOf(i).equals(value)){
+							System.out.println(String.format("Mismatch:expected=%d,actual=%s",i,value));
+						}
+					}
+				}
+			}
+		});
+		System.out.println(String.format("async:%d threads x %d loops,%d ms",threadCnt,loops,System.currentTimeMillis() - start));
+		
+		Map<String,Object> report = new HashMap<String,Object>();
+		pool.report(report);
+		System.out.println(report);
+		RedisSource.get().close();
+	}
+	
+	protected static void run(int threadCnt,final Runnable task){
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						task.run();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		try {
+			latch.await();
+		}catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -25,6 +25,8 @@
  */
 package com.alogic.ik.dic;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -35,101 +37,233 @@ import com.alogic.ik.configuration.DictionaryConfiguration;
 /**
  * 词典管理类
  * 
+ * <p>
+ * 主词典、停止词词典和量词词典均为不可变的{@link DoubleArrayTrie}，查询时无需加锁；
+ * 词典的修改在锁内重新生成新的Trie，再替换原有的引用(copy-on-write).
+ * 
+ * <p>
+ * 在{@link #beginUpdate()}和{@link #endUpdate()}之间对主词典的修改会被暂存，在endUpdate时一次性重建，
+ * 以避免逐个加词时的反复重建.
+ * 
  * @since 1.6.11.32
  * 
  * @version 1.6.11.34 [20180606 duanyy] <br>
  * - 增加单个关键在加入的接口 <br>
+ * 
+ * @version 1.6.11.83 [20181028 duanyy] <br>
+ * - 词典改为双数组Trie，支持从二进制文件映射装载以及copy-on-write的修改 <br>
  */
 public class Dictionary {
 
-	private DictSegment _MainDict;
+	private volatile DoubleArrayTrie _MainDict = DoubleArrayTrie.EMPTY;
 	
 	/*
 	 * 停止词词典 
 	 */
-	private DictSegment _StopWordDict;
+	private volatile DoubleArrayTrie _StopWordDict = DoubleArrayTrie.EMPTY;
 	/*
 	 * 量词词典
 	 */
-	private DictSegment _QuantifierDict;
+	private volatile DoubleArrayTrie _QuantifierDict = DoubleArrayTrie.EMPTY;
+	
+	/*
+	 * 暂存的新增词
+	 */
+	private List<char[]> pendingAdded = new ArrayList<char[]>();
+	
+	/*
+	 * 暂存的屏蔽词
+	 */
+	private List<char[]> pendingDisabled = new ArrayList<char[]>();
+	
+	/*
+	 * 批量修改的嵌套层数
+	 */
+	private int updating = 0;
 	
 	public Dictionary(){
-        _MainDict = new DictSegment((char) 0);
-		_StopWordDict = new DictSegment((char)0);        
-		_QuantifierDict = new DictSegment((char)0);		
 	}
 	
 	public void addConfiguration(DictionaryConfiguration cfg){
-		this.loadMainDict(cfg);
+		this.addConfiguration(cfg, true);
+	}
+	
+	/**
+	 * 加载词典配置
+	 * @param cfg 词典配置
+	 * @param withMain 是否加载主词典，主词典已经从二进制文件装载时可以跳过
+	 */
+	public synchronized void addConfiguration(DictionaryConfiguration cfg,boolean withMain){
+		if (withMain){
+			this.loadMainDict(cfg);
+		}
 		this.loadStopWordDict(cfg);
 		this.loadQuantifierDict(cfg);		
 	}
 	
+	/**
+	 * 从二进制文件装载主词典
+	 * @param file 文件
+	 */
+	public synchronized void loadMainDict(File file){
+		_MainDict = DoubleArrayTrie.load(file);
+	}
+	
+	/**
+	 * 从二进制文件装载主词典，文件中记录的校验和必须和源词表一致
+	 * @param file 文件
+	 * @param checksum 源词表的校验和
+	 */
+	public synchronized void loadMainDict(File file,long checksum){
+		_MainDict = DoubleArrayTrie.load(file,checksum);
+	}
+	
+	/**
+	 * 将主词典保存到二进制文件
+	 * @param file 文件
+	 */
+	public void saveMainDict(File file){
+		_MainDict.save(file);
+	}
+	
+	/**
+	 * 将主词典保存到二进制文件，并记录源词表的校验和
+	 * @param file 文件
+	 * @param checksum 源词表的校验和
+	 */
+	public void saveMainDict(File file,long checksum){
+		_MainDict.save(file,checksum);
+	}
+	
+	/**
+	 * 获取主词典
+	 * @return 主词典
+	 */
+	public DoubleArrayTrie getMainDict(){
+		return _MainDict;
+	}
+	
+	/**
+	 * 开始批量修改
+	 */
+	public synchronized void beginUpdate(){
+		updating ++;
+	}
+	
+	/**
+	 * 结束批量修改，重建主词典
+	 */
+	public synchronized void endUpdate(){
+		if (updating > 0){
+			updating --;
+		}
+		if (updating == 0){
+			flush();
+		}
+	}
+	
 	public void addWord(String word){
 		if (StringUtils.isNotEmpty(word)){
-			_MainDict.fillSegment(word.trim().toLowerCase().toCharArray());
+			List<String> words = new ArrayList<String>(1);
+			words.add(word);
+			addWords(words);
 		}
 	}
 	
 	public void disableWord(String word){
 		if (StringUtils.isNotEmpty(word)){
-			_MainDict.disableSegment(word.trim().toLowerCase().toCharArray());
+			List<String> words = new ArrayList<String>(1);
+			words.add(word);
+			disableWords(words);
 		}		
 	}
 	
-	public void addWords(Collection<String> words){
+	public synchronized void addWords(Collection<String> words){
 		if(words != null){
 			for(String word : words){
 				if (word != null) {
-					//批量加载词条到主内存词典中
-					_MainDict.fillSegment(word.trim().toLowerCase().toCharArray());
+					char[] segment = word.trim().toLowerCase().toCharArray();
+					if (segment.length > 0 && !_MainDict.contains(segment)){
+						pendingAdded.add(segment);
+					}
 				}
 			}
+			if (updating == 0){
+				flush();
+			}
 		}
 	}
 	
-	public void disableWords(Collection<String> words){
+	public synchronized void disableWords(Collection<String> words){
 		if(words != null){
 			for(String word : words){
 				if (word != null) {
-					//批量屏蔽词条
-					_MainDict.disableSegment(word.trim().toLowerCase().toCharArray());
+					char[] segment = word.trim().toLowerCase().toCharArray();
+					//只屏蔽词典中存在的词，或者是同一批次中加入的词，避免无谓的重建
+					if (segment.length > 0 && (!pendingAdded.isEmpty() || _MainDict.contains(segment))){
+						pendingDisabled.add(segment);
+					}
 				}
 			}
+			if (updating == 0){
+				flush();
+			}
 		}
 	}
 	
 	public Hit matchInMainDict(char[] charArray){
-		return _MainDict.match(charArray);
+		return _MainDict.match(charArray, 0, charArray.length, null);
 	}
 	
 	public Hit matchInMainDict(char[] charArray , int begin, int length){
-		return _MainDict.match(charArray, begin, length);
+		return _MainDict.match(charArray, begin, length, null);
 	}
 	
 	public Hit matchInQuantifierDict(char[] charArray , int begin, int length){
-		return _QuantifierDict.match(charArray, begin, length);
+		return _QuantifierDict.match(charArray, begin, length, null);
 	}
 	
 	public Hit matchWithHit(char[] charArray , int currentIndex , Hit matchedHit){
-		DictSegment ds = matchedHit.getMatchedDictSegment();
-		return ds.match(charArray, currentIndex, 1 , matchedHit);
+		DoubleArrayTrie trie = matchedHit.getMatchedTrie();
+		matchedHit.setUnmatch();
+		return trie.match(matchedHit.getMatchedState(), charArray, currentIndex, 1, matchedHit);
 	}
 	
 	public boolean isStopWord(char[] charArray , int begin, int length){
-		return _StopWordDict.match(charArray, begin, length).isMatch();
+		return _StopWordDict.match(charArray, begin, length, null).isMatch();
 	}	
 	
+	/**
+	 * 将暂存的修改应用到主词典
+	 */
+	private void flush(){
+		if (pendingAdded.isEmpty() && pendingDisabled.isEmpty()){
+			return;
+		}
+		//同一批次中既加入又被屏蔽的词以屏蔽为准
+		if (!pendingDisabled.isEmpty()){
+			DoubleArrayTrie disabled = DoubleArrayTrie.build(pendingDisabled);
+			List<char[]> added = new ArrayList<char[]>(pendingAdded.size());
+			for (char[] word:pendingAdded){
+				if (!disabled.contains(word)){
+					added.add(word);
+				}
+			}
+			pendingAdded = added;
+		}
+		_MainDict = _MainDict.rebuild(pendingAdded, pendingDisabled);
+		pendingAdded = new ArrayList<char[]>();
+		pendingDisabled = new ArrayList<char[]>();
+	}
+	
 	/**
 	 * 加载主词典及扩展词典
 	 */
 	private void loadMainDict(DictionaryConfiguration cfg) {
 		List<char[]> list = cfg.getMainDictionary();
 		
-		if (list != null){
-	        for (char[] segment : list) {
-	            _MainDict.fillSegment(segment);
-	        }
+		if (list != null && !list.isEmpty()){
+			_MainDict = _MainDict.rebuild(list, null);
 		}
     }
 
@@ -138,10 +272,8 @@ public class Dictionary {
 	 */
 	private void loadStopWordDict(DictionaryConfiguration cfg){
 		List<char[]> list = cfg.getStopWordDictionary();
-		if (list != null){
-	        for (char[] segment : list) {
-	            _StopWordDict.fillSegment(segment);
-	        }
+		if (list != null && !list.isEmpty()){
+			_StopWordDict = _StopWordDict.rebuild(list, null);
 		}
 	}
 	
@@ -150,10 +282,8 @@ public class Dictionary {
 	 */
 	private void loadQuantifierDict(DictionaryConfiguration cfg){
 		List<char[]> list = cfg.getQuantifierDictionary();
-		if (list != null){
-	        for (char[] segment : list) {
-	            _QuantifierDict.fillSegment(segment);
-	        }
+		if (list != null && !list.isEmpty()){
+			_QuantifierDict = _QuantifierDict.rebuild(list, null);
 		}
 	}
 	
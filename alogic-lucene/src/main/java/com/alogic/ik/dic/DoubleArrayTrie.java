@@ -0,0 +1,677 @@
+package com.alogic.ik.dic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.anysoft.util.BaseException;
+import com.anysoft.util.IOTools;
+
+/**
+ * 双数组Trie
+ * 
+ * <p>
+ * 不可变的词典树，状态s经过字符c转移到t = base[s] + code(c)，当且仅当check[t] == s时转移有效；
+ * flags[t]记录状态t是否为一个完整的词以及是否还有后继状态. 字符按照出现的频次编码为1..n，使得数组较为紧凑.
+ * 
+ * <p>
+ * 双数组可以保存为二进制文件，并通过内存映射的方式装载，装载之后不占用堆内存.文件头中记录了源词表的校验和，
+ * 装载时可以据此判断文件是否过期.
+ * 
+ * <p>
+ * 词典的修改通过{@link #rebuild(Collection, Collection)}重新生成一个新的实例来实现(copy-on-write)，
+ * 原有的实例在修改期间仍然可以被并发读取.
+ * 
+ * @author duanyy
+ * @since 1.6.11.83
+ */
+public class DoubleArrayTrie {
+	/**
+	 * 状态标记:完整的词
+	 */
+	public static final byte WORD = 0x01;
+
+	/**
+	 * 状态标记:有后继状态
+	 */
+	public static final byte PREFIX = 0x02;
+
+	/**
+	 * 二进制文件的魔数
+	 */
+	public static final int MAGIC = 0x494B4441;
+
+	/**
+	 * 二进制文件的版本
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * 根状态
+	 */
+	public static final int ROOT = 0;
+
+	/**
+	 * 空的Trie
+	 */
+	public static final DoubleArrayTrie EMPTY = build(new ArrayList<char[]>());
+
+	/**
+	 * 字符到编码的映射，0表示不在字典中
+	 */
+	protected final char[] codes = new char[Character.MAX_VALUE + 1];
+
+	/**
+	 * 编码到字符的映射
+	 */
+	protected final char[] alphabet;
+
+	/**
+	 * base数组
+	 */
+	protected final IntBuffer base;
+
+	/**
+	 * check数组
+	 */
+	protected final IntBuffer check;
+
+	/**
+	 * 状态标记
+	 */
+	protected final ByteBuffer flags;
+
+	/**
+	 * 数组的大小
+	 */
+	protected final int size;
+
+	/**
+	 * 词的个数
+	 */
+	protected final int words;
+
+	protected DoubleArrayTrie(char[] alphabet,IntBuffer base,IntBuffer check,ByteBuffer flags,int size,int words){
+		this.alphabet = alphabet;
+		for (int i = 1 ; i < alphabet.length ; i ++){
+			codes[alphabet[i]] = (char)i;
+		}
+		this.base = base;
+		this.check = check;
+		this.flags = flags;
+		this.size = size;
+		this.words = words;
+	}
+
+	/**
+	 * 获取词的个数
+	 * @return 词的个数
+	 */
+	public int getWordCount(){
+		return words;
+	}
+
+	/**
+	 * 获取数组的大小
+	 * @return 数组的大小
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * 状态转移
+	 * @param state 当前状态
+	 * @param ch 字符
+	 * @return 转移之后的状态，无法转移时返回-1
+	 */
+	public int transition(int state,char ch){
+		int code = codes[ch];
+		if (code == 0){
+			return -1;
+		}
+		int t = base.get(state) + code;
+		return t < size && check.get(t) == state ? t : -1;
+	}
+
+	/**
+	 * 状态是否为一个完整的词
+	 * @param state 状态
+	 * @return true|false
+	 */
+	public boolean isWord(int state){
+		return (flags.get(state) & WORD) != 0;
+	}
+
+	/**
+	 * 状态是否有后继状态
+	 * @param state 状态
+	 * @return true|false
+	 */
+	public boolean isPrefix(int state){
+		return (flags.get(state) & PREFIX) != 0;
+	}
+
+	/**
+	 * 从根状态开始匹配
+	 * @param charArray 字符数组
+	 * @param begin 开始位置
+	 * @param length 长度
+	 * @param searchHit 命中，为空时新建
+	 * @return 命中
+	 */
+	public Hit match(char[] charArray,int begin,int length,Hit searchHit){
+		if (searchHit == null){
+			searchHit = new Hit();
+			searchHit.setBegin(begin);
+		}else{
+			searchHit.setUnmatch();
+		}
+		return match(ROOT,charArray,begin,length,searchHit);
+	}
+
+	/**
+	 * 从指定状态开始匹配
+	 * @param state 开始状态
+	 * @param charArray 字符数组
+	 * @param begin 开始位置
+	 * @param length 长度
+	 * @param searchHit 命中
+	 * @return 命中
+	 */
+	public Hit match(int state,char[] charArray,int begin,int length,Hit searchHit){
+		int s = state;
+		for (int i = 0 ; i < length ; i ++){
+			searchHit.setEnd(begin + i);
+			s = transition(s,charArray[begin + i]);
+			if (s < 0){
+				return searchHit;
+			}
+		}
+		if (isWord(s)){
+			searchHit.setMatch();
+		}
+		if (isPrefix(s)){
+			searchHit.setPrefix();
+			searchHit.setMatchedState(this,s);
+		}
+		return searchHit;
+	}
+
+	/**
+	 * 是否包含指定的词
+	 * @param word 词
+	 * @return true|false
+	 */
+	public boolean contains(char[] word){
+		int s = ROOT;
+		for (int i = 0 ; i < word.length && s >= 0; i ++){
+			s = transition(s,word[i]);
+		}
+		return s >= 0 && word.length > 0 && isWord(s);
+	}
+
+	/**
+	 * 列出所有的词
+	 * @return 词列表
+	 */
+	public List<char[]> list(){
+		//通过check数组找出每个状态的子状态
+		int[] firstChild = new int[size];
+		int[] nextSibling = new int[size];
+		Arrays.fill(firstChild, -1);
+		for (int t = size - 1 ; t > 0 ; t --){
+			int parent = check.get(t);
+			if (parent >= 0){
+				nextSibling[t] = firstChild[parent];
+				firstChild[parent] = t;
+			}
+		}
+
+		List<char[]> result = new ArrayList<char[]>(words);
+		char[] path = new char[64];
+		int[] stack = new int[64];
+		int depth = 0;
+		stack[0] = firstChild[ROOT];
+		while (depth >= 0){
+			int t = stack[depth];
+			if (t < 0){
+				depth --;
+				if (depth >= 0){
+					stack[depth] = nextSibling[stack[depth]];
+				}
+				continue;
+			}
+			if (depth + 1 >= path.length){
+				path = Arrays.copyOf(path, path.length * 2);
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			path[depth] = alphabet[t - base.get(check.get(t))];
+			if (isWord(t)){
+				result.add(Arrays.copyOf(path, depth + 1));
+			}
+			depth ++;
+			stack[depth] = firstChild[t];
+		}
+		return result;
+	}
+
+	/**
+	 * 在当前实例的基础上增加和屏蔽若干词，生成新的实例
+	 * @param added 增加的词
+	 * @param disabled 屏蔽的词
+	 * @return 新的实例
+	 */
+	public DoubleArrayTrie rebuild(Collection<char[]> added,Collection<char[]> disabled){
+		List<char[]> all = list();
+		if (added != null){
+			all.addAll(added);
+		}
+		if (disabled != null && !disabled.isEmpty()){
+			DoubleArrayTrie removed = build(disabled);
+			List<char[]> result = new ArrayList<char[]>(all.size());
+			for (char[] word:all){
+				if (!removed.contains(word)){
+					result.add(word);
+				}
+			}
+			all = result;
+		}
+		return build(all);
+	}
+
+	/**
+	 * 保存到二进制文件
+	 * @param file 文件
+	 */
+	public void save(File file){
+		save(file,0);
+	}
+	
+	/**
+	 * 保存到二进制文件
+	 * @param file 文件
+	 * @param checksum 源词表的校验和，参见{@link #checksum(Collection)}
+	 */
+	public void save(File file,long checksum){
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(alphabet.length);
+			out.writeInt(size);
+			out.writeInt(words);
+			out.writeLong(checksum);
+			for (int i = 0 ; i < alphabet.length ; i ++){
+				out.writeChar(alphabet[i]);
+			}
+			if (alphabet.length % 2 != 0){
+				//按4字节对齐
+				out.writeChar(0);
+			}
+			for (int i = 0 ; i < size ; i ++){
+				out.writeInt(base.get(i));
+			}
+			for (int i = 0 ; i < size ; i ++){
+				out.writeInt(check.get(i));
+			}
+			for (int i = 0 ; i < size ; i ++){
+				out.writeByte(flags.get(i));
+			}
+		}catch (IOException ex){
+			throw new BaseException("core.e1004","Can not save trie to " + file.getPath() + ":" + ex.getMessage());
+		}finally{
+			IOTools.close(out);
+		}
+	}
+
+	/**
+	 * 从二进制文件装载，数组通过内存映射访问
+	 * @param file 文件
+	 * @return 实例
+	 */
+	public static DoubleArrayTrie load(File file){
+		return load(file,0,false);
+	}
+	
+	/**
+	 * 从二进制文件装载，并检查源词表的校验和
+	 * @param file 文件
+	 * @param checksum 源词表的校验和，和文件中记录的不一致时抛出异常
+	 * @return 实例
+	 */
+	public static DoubleArrayTrie load(File file,long checksum){
+		return load(file,checksum,true);
+	}
+	
+	protected static DoubleArrayTrie load(File file,long checksum,boolean verify){
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file,"r");
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < 28){
+				throw new BaseException("core.e1004","The trie file is truncated:" + file.getPath());
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				throw new BaseException("core.e1004","It is not a trie file or the version is not supported:" + file.getPath());
+			}
+			int alphabetLength = buffer.getInt();
+			int size = buffer.getInt();
+			int words = buffer.getInt();
+			long source = buffer.getLong();
+			if (verify && source != checksum){
+				throw new BaseException("core.e1004","The trie file is out of date:" + file.getPath());
+			}
+			int offset = buffer.position() + (alphabetLength + alphabetLength % 2) * 2;
+			if (alphabetLength <= 0 || size <= 0 || offset + (long)size * 9 > length){
+				throw new BaseException("core.e1004","The trie file is truncated:" + file.getPath());
+			}
+			char[] alphabet = new char[alphabetLength];
+			buffer.asCharBuffer().get(alphabet);
+
+			IntBuffer base = slice(buffer,offset,size * 4).asIntBuffer();
+			IntBuffer check = slice(buffer,offset + size * 4,size * 4).asIntBuffer();
+			ByteBuffer flags = slice(buffer,offset + size * 8,size);
+			return new DoubleArrayTrie(alphabet,base,check,flags,size,words);
+		}catch (IOException ex){
+			throw new BaseException("core.e1004","Can not load trie from " + file.getPath() + ":" + ex.getMessage());
+		}catch (BaseException ex){
+			throw ex;
+		}catch (RuntimeException ex){
+			//文件内容损坏
+			throw new BaseException("core.e1004","The trie file is corrupted:" + file.getPath() + ":" + ex.getMessage());
+		}finally{
+			IOTools.close(raf);
+		}
+	}
+	
+	/**
+	 * 计算词表的校验和
+	 * @param words 词表
+	 * @return 校验和
+	 */
+	public static long checksum(Collection<char[]> words){
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[256];
+		for (char[] word:words){
+			if (buf.length < word.length * 2 + 2){
+				buf = new byte[word.length * 2 + 2];
+			}
+			int len = 0;
+			for (char c:word){
+				buf[len ++] = (byte)(c >> 8);
+				buf[len ++] = (byte)c;
+			}
+			buf[len ++] = 0;
+			buf[len ++] = '\n';
+			crc.update(buf, 0, len);
+		}
+		return (crc.getValue() << 32) | (words.size() & 0xFFFFFFFFL);
+	}
+
+	protected static ByteBuffer slice(ByteBuffer buffer,int offset,int length){
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(offset);
+		dup.limit(offset + length);
+		return dup.slice();
+	}
+
+	/**
+	 * 根据词列表生成实例
+	 * @param words 词列表，可以包含重复的词和空词
+	 * @return 实例
+	 */
+	public static DoubleArrayTrie build(Collection<char[]> words){
+		return new Builder(words).build();
+	}
+
+	/**
+	 * 双数组的构造器
+	 * 
+	 * <p>
+	 * 词按照编码排序之后，按深度优先的顺序为每个状态寻找一个base，使得其所有子状态在check数组中都是空闲的.
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.83
+	 */
+	protected static class Builder {
+		/**
+		 * 多个子状态寻找base时允许的最大失败次数
+		 */
+		protected static final int MAX_FAILED = 4096;
+
+		protected char[] codes = new char[Character.MAX_VALUE + 1];
+		protected char[] alphabet;
+		protected char[][] keys;
+		protected int[] base;
+		protected int[] check;
+		protected byte[] flags;
+		protected int size = 1;
+		protected int count = 0;
+
+		/**
+		 * 多个子状态时开始扫描的位置
+		 */
+		protected int nextCheckPos = 1;
+
+		/**
+		 * 最近扫描过的候选位置
+		 */
+		protected int[] scanned = new int[MAX_FAILED];
+
+		/**
+		 * 空闲位置的跳转表，指向不小于当前位置的空闲位置(延迟压缩)
+		 */
+		protected int[] free;
+
+		protected Builder(Collection<char[]> words){
+			//按照字符出现的频次编码
+			final int[] freq = new int[Character.MAX_VALUE + 1];
+			List<char[]> list = new ArrayList<char[]>(words.size());
+			for (char[] word:words){
+				if (word != null && word.length > 0){
+					list.add(word);
+					for (char c:word){
+						freq[c] ++;
+					}
+				}
+			}
+			List<Character> chars = new ArrayList<Character>();
+			for (int c = 0 ; c < freq.length ; c ++){
+				if (freq[c] > 0){
+					chars.add((char)c);
+				}
+			}
+			Collections.sort(chars,new Comparator<Character>(){
+				@Override
+				public int compare(Character o1, Character o2) {
+					return freq[o2] - freq[o1];
+				}
+			});
+			alphabet = new char[chars.size() + 1];
+			for (int i = 0 ; i < chars.size() ; i ++){
+				alphabet[i + 1] = chars.get(i);
+				codes[chars.get(i)] = (char)(i + 1);
+			}
+
+			keys = new char[list.size()][];
+			for (int i = 0 ; i < keys.length ; i ++){
+				char[] word = list.get(i);
+				char[] key = new char[word.length];
+				for (int j = 0 ; j < word.length ; j ++){
+					key[j] = codes[word[j]];
+				}
+				keys[i] = key;
+			}
+			Arrays.sort(keys,new Comparator<char[]>(){
+				@Override
+				public int compare(char[] o1, char[] o2) {
+					int n = Math.min(o1.length, o2.length);
+					for (int i = 0 ; i < n ; i ++){
+						if (o1[i] != o2[i]){
+							return o1[i] - o2[i];
+						}
+					}
+					return o1.length - o2.length;
+				}
+			});
+
+			int capacity = Math.max(1024, keys.length * 4);
+			base = new int[capacity];
+			check = new int[capacity];
+			flags = new byte[capacity];
+			free = new int[capacity];
+			Arrays.fill(check, -1);
+			for (int i = 0 ; i < capacity ; i ++){
+				free[i] = i;
+			}
+		}
+
+		protected DoubleArrayTrie build(){
+			insert(ROOT,0,keys.length,0);
+			return new DoubleArrayTrie(alphabet,
+					IntBuffer.wrap(Arrays.copyOf(base, size)),
+					IntBuffer.wrap(Arrays.copyOf(check, size)),
+					ByteBuffer.wrap(Arrays.copyOf(flags, size)),
+					size,count);
+		}
+
+		/**
+		 * 插入状态的子状态
+		 * @param state 状态
+		 * @param lo 以该状态为前缀的词的开始位置
+		 * @param hi 以该状态为前缀的词的结束位置
+		 * @param depth 深度
+		 */
+		protected void insert(int state,int lo,int hi,int depth){
+			//排序之后，和前缀等长的词(可能重复)排在最前面
+			int start = lo;
+			while (start < hi && keys[start].length == depth){
+				start ++;
+			}
+			if (start > lo && depth > 0){
+				flags[state] |= WORD;
+				count ++;
+			}
+			if (start >= hi){
+				return;
+			}
+
+			//收集子状态的编码及其对应的词的范围
+			List<int[]> children = new ArrayList<int[]>();
+			int from = start;
+			for (int i = start + 1 ; i <= hi ; i ++){
+				if (i == hi || keys[i][depth] != keys[from][depth]){
+					children.add(new int[]{keys[from][depth],from,i});
+					from = i;
+				}
+			}
+
+			int b = findBase(children);
+			base[state] = b;
+			flags[state] |= PREFIX;
+			for (int[] child:children){
+				check[b + child[0]] = state;
+				free[b + child[0]] = b + child[0] + 1;
+				size = Math.max(size, b + child[0] + 1);
+			}
+			for (int[] child:children){
+				insert(b + child[0],child[1],child[2],depth + 1);
+			}
+		}
+
+		/**
+		 * 寻找base，使得所有子状态的位置都是空闲的
+		 * 
+		 * <p>
+		 * 通过跳转表只扫描空闲的位置作为第一个子状态的候选位置.只有一个子状态时，第一个空闲位置即可，
+		 * 用于填补空洞；多个子状态时从nextCheckPos开始扫描，当失败次数过多时向后推进nextCheckPos，
+		 * 避免反复扫描无法利用的空洞.
+		 * 
+		 * @param children 子状态
+		 * @return base
+		 */
+		protected int findBase(List<int[]> children){
+			int first = children.get(0)[0];
+			int last = children.get(children.size() - 1)[0];
+			if (children.size() == 1){
+				return nextFree(first + 1) - first;
+			}
+			int pos = nextFree(Math.max(first + 1, nextCheckPos));
+			int failed = 0;
+			while (true){
+				int b = pos - first;
+				ensure(b + last + 1);
+				boolean ok = true;
+				for (int i = 1 ; i < children.size() ; i ++){
+					if (check[b + children.get(i)[0]] >= 0){
+						ok = false;
+						break;
+					}
+				}
+				if (ok){
+					return b;
+				}
+				scanned[failed % MAX_FAILED] = pos;
+				failed ++;
+				if (failed > MAX_FAILED){
+					//保证下一次扫描的失败次数不超过MAX_FAILED
+					nextCheckPos = scanned[failed % MAX_FAILED];
+				}
+				pos = nextFree(pos + 1);
+			}
+		}
+
+		/**
+		 * 查找不小于指定位置的第一个空闲位置
+		 * @param pos 位置
+		 * @return 空闲位置
+		 */
+		protected int nextFree(int pos){
+			ensure(pos + 1);
+			int found = pos;
+			while (free[found] != found){
+				found = free[found];
+				ensure(found + 1);
+			}
+			//路径压缩
+			while (free[pos] != found){
+				int next = free[pos];
+				free[pos] = found;
+				pos = next;
+			}
+			return found;
+		}
+
+		protected void ensure(int capacity){
+			if (capacity >= base.length){
+				int newLength = Math.max(capacity + 1, base.length + base.length / 2);
+				base = Arrays.copyOf(base, newLength);
+				flags = Arrays.copyOf(flags, newLength);
+				int old = check.length;
+				check = Arrays.copyOf(check, newLength);
+				Arrays.fill(check, old, newLength, -1);
+				free = Arrays.copyOf(free, newLength);
+				for (int i = old ; i < newLength ; i ++){
+					free[i] = i;
+				}
+			}
+		}
+	}
+}
@@ -29,6 +29,9 @@ package com.alogic.ik.dic;
  * 表示一次词典匹配的命中
  * 
  * @since 1.6.11.32
+ * 
+ * @version 1.6.11.83 [20181028 duanyy] <br>
+ * - 词典改为双数组Trie，记录匹配到的Trie及其状态 <br>
  */
 public class Hit {
 	//Hit不匹配
@@ -42,8 +45,10 @@ public class Hit {
 	//该HIT当前状态，默认未匹配
 	private int hitState = UNMATCH;
 	
-	//记录词典匹配过程中，当前匹配到的词典分支节点
-	private DictSegment matchedDictSegment; 
+	//记录词典匹配过程中，当前匹配到的词典及其状态
+	private DoubleArrayTrie matchedTrie;
+	
+	private int matchedState = -1;
 	/*
 	 * 词段开始位置
 	 */
@@ -92,12 +97,23 @@ public class Hit {
 		this.hitState = UNMATCH;
 	}
 	
-	public DictSegment getMatchedDictSegment() {
-		return matchedDictSegment;
+	public DoubleArrayTrie getMatchedTrie() {
+		return matchedTrie;
+	}
+	
+	public int getMatchedState() {
+		return matchedState;
 	}
 	
-	public void setMatchedDictSegment(DictSegment matchedDictSegment) {
-		this.matchedDictSegment = matchedDictSegment;
+	/**
+	 * 记录匹配到的词典及其状态
+	 * 
+	 * <p>
+	 * 词典修改时会生成新的Trie，记录Trie的引用以保证后续的匹配在同一个Trie上进行.
+	 */
+	public void setMatchedState(DoubleArrayTrie trie,int state) {
+		this.matchedTrie = trie;
+		this.matchedState = state;
 	}
 	
 	public int getBegin() {
@@ -1,9 +1,11 @@
 package com.alogic.lucene.analyzer.ik;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.Tokenizer;
 import org.slf4j.Logger;
@@ -12,11 +14,13 @@ import org.w3c.dom.Element;
 
 import com.alogic.ik.configuration.DictionaryConfiguration;
 import com.alogic.ik.dic.Dictionary;
+import com.alogic.ik.dic.DoubleArrayTrie;
 import com.alogic.lucene.analyzer.ik.dic.FromFile;
 import com.alogic.xscript.LogicletContext;
 import com.alogic.xscript.Script;
 import com.alogic.xscript.doc.XsObject;
 import com.alogic.xscript.doc.json.JsonObject;
+import com.anysoft.util.BaseException;
 import com.anysoft.util.Configurable;
 import com.anysoft.util.Factory;
 import com.anysoft.util.Properties;
@@ -33,6 +37,10 @@ import com.anysoft.util.XmlTools;
  * @since 1.6.11.31
  * @version 1.6.11.34 [20180606 duanyy] <br>
  * - 增加脚本插件支持扩展字典 <br>
+ * 
+ * @version 1.6.11.83 [20181028 duanyy] <br>
+ * - 增加dic.cache参数，主词典可从二进制文件映射装载；扩展字典加载之后一次性重建词典 <br>
+ * - dic.cache按源词表的校验和判断是否过期，过期或损坏时重新生成 <br>
  */
 public class IKAnalyzer extends Analyzer implements Configurable,XMLConfigurable,Runnable{
 	/**
@@ -110,8 +118,33 @@ public class IKAnalyzer extends Analyzer implements Configurable,XMLConfigurable
 			}				
 		}
 		
+		//主词典的二进制缓存文件，存在并且和源词表一致时直接映射装载，否则在加载之后重新生成
+		String cache = PropertiesConstants.getString(p,"dic.cache","");
+		boolean cached = false;
+		long checksum = 0;
+		if (StringUtils.isNotEmpty(cache) && dicConf != null){
+			checksum = DoubleArrayTrie.checksum(dicConf.getMainDictionary());
+			if (new File(cache).exists()){
+				try {
+					dic.loadMainDict(new File(cache),checksum);
+					cached = true;
+					LOG.info("Main dictionary is loaded from " + cache);
+				}catch (BaseException ex){
+					LOG.warn("Can not load main dictionary from " + cache + ",rebuild it:" + ex.getMessage());
+				}
+			}
+		}
+		
 		if (dicConf != null){
-			dic.addConfiguration(dicConf);
+			dic.addConfiguration(dicConf,!cached);
+		}
+		
+		if (StringUtils.isNotEmpty(cache) && !cached){
+			try {
+				dic.saveMainDict(new File(cache),checksum);
+			}catch (BaseException ex){
+				LOG.error("Can not save main dictionary to " + cache,ex);
+			}
 		}
 		
 		if (extDicLoader != null){
@@ -129,11 +162,13 @@ public class IKAnalyzer extends Analyzer implements Configurable,XMLConfigurable
 		if (extDicLoader != null){
 			LogicletContext logicletContext = new LogicletContext(Settings.get());
 			logicletContext.setObject("$indexer-dic",dic);
+			dic.beginUpdate();
 			try {
 				XsObject doc = new JsonObject("root",new HashMap<String,Object>());
 				extDicLoader.execute(doc,doc, logicletContext, null);
 			}finally{
 				logicletContext.removeObject("$indexer-dic");
+				dic.endUpdate();
 			}			
 		}		
 	}
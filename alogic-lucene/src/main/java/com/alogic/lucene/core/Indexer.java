@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DirectoryReader;
@@ -14,7 +15,10 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,9 +27,11 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import com.alogic.lucene.analyzer.ik.IKAnalyzer;
+import com.anysoft.util.BaseException;
 import com.anysoft.util.Configurable;
 import com.anysoft.util.Factory;
 import com.anysoft.util.IOTools;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.Reportable;
@@ -42,8 +48,12 @@ import com.anysoft.util.XmlTools;
  * 
  * @version 1.6.7.9 [20170201 duanyy] <br>
  * - 采用SLF4j日志框架输出日志 <br>
+ * 
+ * @version 1.6.11.81 [20181026 duanyy] <br>
+ * - 持有长期的IndexWriter和SearcherManager，支持近实时(NRT)查询 <br>
+ * - 增加批量修改接口{@link #beginBatch(boolean)}和{@link #endBatch(boolean)}，重建期间暂停刷新 <br>
  */
-public interface Indexer extends Configurable,XMLConfigurable,Reportable{
+public interface Indexer extends Configurable,XMLConfigurable,Reportable,AutoCloseable{
 	
 	/**
 	 * 获取本库的Analyzer
@@ -67,16 +77,93 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 	
 	/**
 	 * 新建Reader
+	 * 
+	 * <p>
+	 * 每次调用都会打开新的Reader，由调用者负责关闭，查询请使用{@link #acquireSearcher()}.如果共享的Writer已经打开，
+	 * 并且不在重建过程中，打开的是近实时的Reader，否则打开最近一次提交的索引.
+	 * 
 	 * @return Reader
 	 */
 	public IndexReader newReader();
 	
 	/**
 	 * 新建Writer
+	 * 
+	 * <p>
+	 * 由于索引锁的限制，在共享的Writer打开之后无法再新建Writer，请使用{@link #getWriter()}.
+	 * 
 	 * @return Writer
 	 */
 	public IndexWriter newWriter(boolean create);
 	
+	/**
+	 * 获取共享的Writer
+	 * 
+	 * <p>
+	 * Writer由Indexer持有，调用者不要关闭.
+	 * 
+	 * @return Writer
+	 */
+	public IndexWriter getWriter();
+	
+	/**
+	 * 获取当前的Searcher
+	 * 
+	 * <p>
+	 * 使用完毕之后必须通过{@link #releaseSearcher(IndexSearcher)}释放.
+	 * 
+	 * @return Searcher
+	 */
+	public IndexSearcher acquireSearcher();
+	
+	/**
+	 * 释放Searcher
+	 * @param searcher 通过{@link #acquireSearcher()}获取的Searcher
+	 */
+	public void releaseSearcher(IndexSearcher searcher);
+	
+	/**
+	 * 提交共享Writer的修改，并刷新Searcher
+	 * 
+	 * <p>
+	 * 如果其他线程正在进行批量修改，等待其结束之后再提交.
+	 */
+	public void commit();
+	
+	/**
+	 * 开始一批修改
+	 * 
+	 * <p>
+	 * 同一时间只能有一批修改，其他的批量修改和{@link #commit()}要等待本批修改结束，以免提交不完整的修改.
+	 * 如果需要重建，清除现有的索引，并暂停Searcher的刷新直到本批修改结束，以免查询看到空的或者不完整的索引.
+	 * 
+	 * <p>
+	 * 必须在finally中调用{@link #endBatch(boolean)}结束.
+	 * 
+	 * @param rebuild 是否重建
+	 * @return 共享的Writer
+	 * 
+	 * @since 1.6.11.81
+	 */
+	public IndexWriter beginBatch(boolean rebuild);
+	
+	/**
+	 * 结束一批修改
+	 * 
+	 * <p>
+	 * 重建时，如果不提交，则回滚到重建之前的索引.
+	 * 
+	 * @param commit 是否提交
+	 * 
+	 * @since 1.6.11.81
+	 */
+	public void endBatch(boolean commit);
+	
+	/**
+	 * 关闭Indexer
+	 */
+	public void close();
+	
 	/**
 	 * 建索引
 	 * @param rebuild 是否重建
@@ -97,9 +184,18 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 	
 	/**
 	 * Abstract实现
+	 * 
+	 * <p>
+	 * 持有一个长期的IndexWriter以及基于该Writer的SearcherManager，后台线程每隔refreshInterval毫秒刷新一次Searcher，
+	 * 使得Writer的修改在该时间内可以被查询到(近实时)；refreshInterval小于等于0时只在{@link #commit()}时刷新.
+	 * 重建期间暂停刷新，重建提交之后才切换到新的索引.
+	 * 
 	 * @author duanyy
 	 * 
 	 * @since 1.6.4.1
+	 * 
+	 * @version 1.6.11.81 [20181026 duanyy] <br>
+	 * - 持有长期的IndexWriter和SearcherManager，支持近实时(NRT)查询 <br>
 	 */
 	abstract public static class Abstract implements Indexer{
 		/**
@@ -119,8 +215,64 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 		
 		private boolean autoBuild = true;
 		
+		/**
+		 * 刷新Searcher的时间间隔(ms)
+		 */
+		protected long refreshInterval = 1000;
+		
+		/**
+		 * 共享的Writer
+		 */
+		protected volatile IndexWriter writer = null;
+		
+		/**
+		 * Searcher管理器
+		 */
+		protected volatile SearcherManager manager = null;
+		
+		/**
+		 * 批量修改的锁
+		 */
+		protected final ReentrantLock batchLock = new ReentrantLock();
+		
+		/**
+		 * 是否正在重建，重建期间暂停刷新Searcher
+		 */
+		protected volatile boolean rebuilding = false;
+		
+		/**
+		 * 刷新线程
+		 */
+		protected Thread refresher = null;
+		
+		/**
+		 * 是否已经关闭
+		 */
+		protected volatile boolean closed = false;
+		
+		/**
+		 * Searcher的代数，每打开一个新的Searcher加1
+		 */
+		protected volatile long generation = 0;
+		
+		/**
+		 * 当前Searcher的打开时间
+		 */
+		protected volatile long refreshedAt = System.currentTimeMillis();
+		
+		/**
+		 * 最近一次刷新的耗时(ms)
+		 */
+		protected volatile long refreshCost = 0;
+		
+		/**
+		 * 刷新开始的时间
+		 */
+		protected volatile long refreshStart = 0;
+		
 		public void configure(Properties p) {
 			autoBuild = PropertiesConstants.getBoolean(p, "autoBuild", autoBuild);
+			refreshInterval = PropertiesConstants.getLong(p, "refreshInterval", refreshInterval);
 			if (analyzer == null){
 				Factory<Analyzer> f = new Factory<Analyzer>();
 				String analyzerClass = PropertiesConstants.getString(p,"analyzer",IKAnalyzer.class.getName());
@@ -191,24 +343,33 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 			
 			if (!exist || rebuild){
 				//当不存在或需要重建时
-				IndexWriter writer = newWriter(true);
-				if (writer != null){
-					try {
-						logger.info("Start to build index..");
-						logger.info("Builders = " + builders.size());
-						
-						for (IndexBuilder builder:builders){
-							if (builder != null){
-								builder.build(writer);
-							}
+				IndexWriter writer = null;
+				try {
+					writer = beginBatch(rebuild);
+				}catch (BaseException ex){
+					logger.error("Can not build index",ex);
+					return;
+				}
+				boolean ok = false;
+				try {
+					logger.info("Start to build index..");
+					logger.info("Builders = " + builders.size());
+					
+					for (IndexBuilder builder:builders){
+						if (builder != null){
+							builder.build(writer);
 						}
-						writer.commit();
-					}catch (Exception ex){
+					}
+					ok = true;
+				}catch (Exception ex){
+					logger.error("Failed to build indexes",ex);
+				}finally{
+					try {
+						endBatch(ok);
+					}catch (BaseException ex){
 						logger.error("Failed to commit indexes",ex);
-					}finally{
-						logger.info("End.");
-						IOTools.close(writer);
 					}
+					logger.info("End.");
 				}
 			}
 		}
@@ -223,6 +384,11 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 
 		public void report(Element xml) {
 			if (xml != null){
+				XmlTools.setLong(xml,"refreshInterval",refreshInterval);
+				XmlTools.setLong(xml,"generation",generation);
+				XmlTools.setLong(xml,"refreshCost",refreshCost);
+				XmlTools.setLong(xml,"lag",getLag());
+				
 				Document doc = xml.getOwnerDocument();
 				
 				for (IndexBuilder builder:builders){
@@ -237,6 +403,11 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 
 		public void report(Map<String, Object> json) {
 			if (json != null){
+				JsonTools.setLong(json,"refreshInterval",refreshInterval);
+				JsonTools.setLong(json,"generation",generation);
+				JsonTools.setLong(json,"refreshCost",refreshCost);
+				JsonTools.setLong(json,"lag",getLag());
+				
 				List<Object> _builders = new ArrayList<Object>();
 				
 				for (IndexBuilder builder:builders){
@@ -267,7 +438,9 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 
 		public IndexReader newReader() {
 			try {
-				return DirectoryReader.open(getDirectory());
+				//不强制打开Writer，重建期间只能看到最近一次提交的索引
+				IndexWriter w = writer;
+				return w == null || rebuilding ? DirectoryReader.open(getDirectory()) : DirectoryReader.open(w, true);
 			} catch (IOException ex) {
 				logger.error("Can not open index",ex);
 				return null;
@@ -284,5 +457,245 @@ public interface Indexer extends Configurable,XMLConfigurable,Reportable{
 				return null;
 			}
 		}
+		
+		/**
+		 * 创建共享的Writer的配置
+		 * @return IndexWriterConfig
+		 */
+		protected IndexWriterConfig newWriterConfig(){
+			return new IndexWriterConfig(getAnalyzer()).setOpenMode(OpenMode.CREATE_OR_APPEND);
+		}
+		
+		@Override
+		public IndexWriter getWriter() {
+			if (writer == null){
+				synchronized (this){
+					if (writer == null && !closed){
+						open();
+					}
+				}
+			}
+			return writer;
+		}
+		
+		/**
+		 * 打开共享的Writer和SearcherManager，并启动刷新线程
+		 */
+		protected void open(){
+			IndexWriter w = null;
+			try {
+				w = new IndexWriter(getDirectory(),newWriterConfig());
+				SearcherManager m = new SearcherManager(w, true, null);
+				m.addListener(new ReferenceManager.RefreshListener() {
+					@Override
+					public void beforeRefresh() throws IOException {
+						refreshStart = System.currentTimeMillis();
+					}
+
+					@Override
+					public void afterRefresh(boolean didRefresh) throws IOException {
+						long now = System.currentTimeMillis();
+						refreshCost = now - refreshStart;
+						if (didRefresh){
+							refreshedAt = now;
+							generation ++;
+						}
+					}
+				});
+				manager = m;
+				writer = w;
+			}catch (IOException ex){
+				logger.error("Can not create index writer",ex);
+				IOTools.close(w);
+				return;
+			}
+			
+			if (refreshInterval > 0){
+				refresher = new Thread(new Runnable(){
+					@Override
+					public void run() {
+						while (!closed){
+							try {
+								Thread.sleep(refreshInterval);
+								SearcherManager m = manager;
+								if (m != null && !rebuilding){
+									m.maybeRefresh();
+								}
+							}catch (InterruptedException ex){
+								break;
+							}catch (Exception ex){
+								if (!closed){
+									logger.error("Failed to refresh searcher",ex);
+								}
+							}
+						}
+					}
+				},"lucene-refresher");
+				refresher.setDaemon(true);
+				refresher.start();
+			}
+		}
+		
+		/**
+		 * 获取Searcher管理器
+		 * @return SearcherManager
+		 */
+		protected SearcherManager getManager(){
+			SearcherManager m = getWriter() == null ? null : manager;
+			if (m == null){
+				throw new BaseException("core.e1004","The index writer is not available.");
+			}
+			return m;
+		}
+		
+		@Override
+		public IndexSearcher acquireSearcher() {
+			try {
+				return getManager().acquire();
+			}catch (IOException ex){
+				logger.error("Can not acquire searcher",ex);
+				throw new BaseException("core.e1004","Can not acquire searcher.");
+			}
+		}
+		
+		@Override
+		public void releaseSearcher(IndexSearcher searcher) {
+			if (searcher != null && manager != null){
+				try {
+					manager.release(searcher);
+				}catch (IOException ex){
+					logger.error("Can not release searcher",ex);
+				}
+			}
+		}
+		
+		@Override
+		public void commit() {
+			batchLock.lock();
+			try {
+				IndexWriter w = getWriter();
+				if (w != null){
+					w.commit();
+					manager.maybeRefreshBlocking();
+				}
+			}catch (IOException ex){
+				logger.error("Failed to commit indexes",ex);
+				throw new BaseException("core.e1004","Failed to commit indexes.");
+			}finally{
+				batchLock.unlock();
+			}
+		}
+		
+		@Override
+		public IndexWriter beginBatch(boolean rebuild){
+			batchLock.lock();
+			IndexWriter w = getWriter();
+			if (w == null){
+				batchLock.unlock();
+				throw new BaseException("core.e1004","The index writer is not available.");
+			}
+			if (rebuild){
+				rebuilding = true;
+				try {
+					w.deleteAll();
+				}catch (IOException ex){
+					rebuilding = false;
+					batchLock.unlock();
+					logger.error("Failed to clear indexes",ex);
+					throw new BaseException("core.e1004","Failed to clear indexes.");
+				}
+			}
+			return w;
+		}
+		
+		@Override
+		public void endBatch(boolean commit){
+			if (!batchLock.isHeldByCurrentThread()){
+				return;
+			}
+			try {
+				if (commit){
+					commit();
+				}else if (rebuilding){
+					//重建失败，回滚到重建之前的索引
+					rollback();
+				}
+			}catch (BaseException ex){
+				if (rebuilding){
+					rollback();
+				}
+				throw ex;
+			}finally{
+				rebuilding = false;
+				batchLock.unlock();
+			}
+		}
+		
+		/**
+		 * 回滚共享Writer中尚未提交的修改
+		 * 
+		 * <p>
+		 * 回滚会关闭Writer，下次使用时重新打开.
+		 */
+		protected void rollback(){
+			synchronized (this){
+				IndexWriter w = writer;
+				SearcherManager m = manager;
+				writer = null;
+				manager = null;
+				if (refresher != null){
+					refresher.interrupt();
+					refresher = null;
+				}
+				IOTools.close(m);
+				if (w != null){
+					try {
+						w.rollback();
+					}catch (IOException ex){
+						logger.error("Failed to rollback indexes",ex);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * 获取刷新的滞后时间
+		 * 
+		 * <p>
+		 * 当Writer有尚未被Searcher看到的修改时，返回距离上次刷新的时间(ms)，否则返回0.
+		 * 
+		 * @return 滞后时间
+		 */
+		public long getLag(){
+			SearcherManager m = manager;
+			if (m == null){
+				return 0;
+			}
+			try {
+				return m.isSearcherCurrent() ? 0 : System.currentTimeMillis() - refreshedAt;
+			}catch (Exception ex){
+				return 0;
+			}
+		}
+		
+		@Override
+		public void close() {
+			synchronized (this){
+				closed = true;
+				if (refresher != null){
+					refresher.interrupt();
+					try {
+						refresher.join(refreshInterval + 1000);
+					}catch (InterruptedException ex){
+						Thread.currentThread().interrupt();
+					}
+					refresher = null;
+				}
+				IOTools.close(manager);
+				IOTools.close(writer);
+				manager = null;
+				writer = null;
+			}
+		}
 	}
 }
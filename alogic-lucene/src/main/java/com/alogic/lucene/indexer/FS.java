@@ -0,0 +1,223 @@
+package com.alogic.lucene.indexer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.w3c.dom.Element;
+
+import com.alogic.lucene.core.Indexer;
+import com.anysoft.util.BaseException;
+import com.anysoft.util.IOTools;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 基于文件系统的Indexer
+ * 
+ * <p>
+ * 索引保存在home目录下，通过directory参数选择访问方式：<br>
+ * - mmap:MMapDirectory，索引文件映射到内存，不占用堆内存，缺省值 <br>
+ * - nio:NIOFSDirectory，通过FileChannel的位置读取访问索引文件 <br>
+ * - auto:由FSDirectory.open根据平台选择 <br>
+ * 
+ * <p>
+ * 当hybrid为true时，在文件目录之前增加一个NRTCachingDirectory内存层，新刷出的小段(不超过hybrid.maxMergeSize MB)
+ * 先保存在内存中(总量不超过hybrid.maxCached MB)，以降低近实时刷新的IO开销.
+ * 
+ * <p>
+ * Writer的参数包括：<br>
+ * - ramBufferSize:内存缓冲区大小(MB)，缺省为64 <br>
+ * - mergePolicy:合并策略，tiered|logByteSize|logDoc，缺省为tiered <br>
+ * - maxMergedSegment:tiered策略下合并后段的最大大小(MB)，缺省为5120 <br>
+ * - segmentsPerTier:tiered策略下每层的段数，缺省为10 <br>
+ * - mergeFactor:log策略下的合并因子，缺省为10 <br>
+ * - compoundFile:是否使用复合文件，缺省为false <br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.82
+ */
+public class FS extends Indexer.Abstract{
+
+	/**
+	 * 索引目录
+	 */
+	protected String home = "${local.home}/lucene/index";
+
+	/**
+	 * 目录的访问方式:mmap|nio|auto
+	 */
+	protected String directoryType = "mmap";
+
+	/**
+	 * 是否启用内存层
+	 */
+	protected boolean hybrid = false;
+
+	/**
+	 * 内存层缓存的段的最大大小(MB)
+	 */
+	protected double maxMergeSize = 5.0;
+
+	/**
+	 * 内存层缓存的最大总量(MB)
+	 */
+	protected double maxCached = 60.0;
+
+	/**
+	 * 内存缓冲区大小(MB)
+	 */
+	protected double ramBufferSize = 64.0;
+
+	/**
+	 * 合并策略
+	 */
+	protected String mergePolicy = "tiered";
+
+	/**
+	 * 合并后段的最大大小(MB)
+	 */
+	protected double maxMergedSegment = 5 * 1024.0;
+
+	/**
+	 * 每层的段数
+	 */
+	protected double segmentsPerTier = 10.0;
+
+	/**
+	 * 合并因子
+	 */
+	protected int mergeFactor = 10;
+
+	/**
+	 * 是否使用复合文件
+	 */
+	protected boolean compoundFile = false;
+
+	/**
+	 * dircectory
+	 */
+	protected Directory index = null;
+
+	@Override
+	public void configure(Properties p) {
+		home = PropertiesConstants.getString(p,"home",home);
+		directoryType = PropertiesConstants.getString(p,"directory",directoryType);
+		hybrid = PropertiesConstants.getBoolean(p,"hybrid",hybrid);
+		maxMergeSize = PropertiesConstants.getDouble(p,"hybrid.maxMergeSize",maxMergeSize);
+		maxCached = PropertiesConstants.getDouble(p,"hybrid.maxCached",maxCached);
+		ramBufferSize = PropertiesConstants.getDouble(p,"ramBufferSize",ramBufferSize);
+		mergePolicy = PropertiesConstants.getString(p,"mergePolicy",mergePolicy);
+		maxMergedSegment = PropertiesConstants.getDouble(p,"maxMergedSegment",maxMergedSegment);
+		segmentsPerTier = PropertiesConstants.getDouble(p,"segmentsPerTier",segmentsPerTier);
+		mergeFactor = PropertiesConstants.getInt(p,"mergeFactor",mergeFactor);
+		compoundFile = PropertiesConstants.getBoolean(p,"compoundFile",compoundFile);
+
+		if (index == null){
+			index = newDirectory();
+		}
+
+		super.configure(p);
+	}
+
+	/**
+	 * 创建Directory
+	 * @return Directory
+	 */
+	protected Directory newDirectory(){
+		Path path = Paths.get(home);
+		try {
+			Directory dir = null;
+			if (directoryType.equals("nio")){
+				dir = new NIOFSDirectory(path);
+			}else{
+				if (directoryType.equals("auto")){
+					dir = FSDirectory.open(path);
+				}else{
+					dir = new MMapDirectory(path);
+				}
+			}
+			return hybrid ? new NRTCachingDirectory(dir, maxMergeSize, maxCached) : dir;
+		}catch (IOException ex){
+			logger.error("Can not open index directory:" + home,ex);
+			throw new BaseException("core.e1004","Can not open index directory:" + home);
+		}
+	}
+
+	/**
+	 * 创建合并策略
+	 * @return MergePolicy
+	 */
+	protected MergePolicy newMergePolicy(){
+		if (mergePolicy.equals("logByteSize")){
+			LogByteSizeMergePolicy policy = new LogByteSizeMergePolicy();
+			policy.setMergeFactor(mergeFactor);
+			return policy;
+		}
+		if (mergePolicy.equals("logDoc")){
+			LogDocMergePolicy policy = new LogDocMergePolicy();
+			policy.setMergeFactor(mergeFactor);
+			return policy;
+		}
+		TieredMergePolicy policy = new TieredMergePolicy();
+		policy.setMaxMergedSegmentMB(maxMergedSegment);
+		policy.setSegmentsPerTier(segmentsPerTier);
+		return policy;
+	}
+
+	@Override
+	protected IndexWriterConfig newWriterConfig(){
+		return super.newWriterConfig()
+				.setRAMBufferSizeMB(ramBufferSize)
+				.setMergePolicy(newMergePolicy())
+				.setUseCompoundFile(compoundFile);
+	}
+
+	@Override
+	public Directory getDirectory() {
+		return index;
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setString(xml,"home",home);
+			XmlTools.setString(xml,"directory",directoryType);
+			XmlTools.setBoolean(xml,"hybrid",hybrid);
+			XmlTools.setString(xml,"mergePolicy",mergePolicy);
+			XmlTools.setDouble(xml,"ramBufferSize",ramBufferSize);
+			super.report(xml);
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setString(json,"home",home);
+			JsonTools.setString(json,"directory",directoryType);
+			JsonTools.setBoolean(json,"hybrid",hybrid);
+			JsonTools.setString(json,"mergePolicy",mergePolicy);
+			JsonTools.setDouble(json,"ramBufferSize",ramBufferSize);
+			super.report(json);
+		}
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		IOTools.close(index);
+	}
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -27,7 +26,6 @@ import com.alogic.xscript.Logiclet;
 import com.alogic.xscript.LogicletContext;
 import com.alogic.xscript.doc.XsObject;
 import com.anysoft.util.BaseException;
-import com.anysoft.util.IOTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.XmlElementProperties;
@@ -45,6 +43,8 @@ import com.anysoft.util.XmlTools;
  * @version 1.6.11.46 [20180726 duanyy] <br>
  * - QueryBuilder增加Analyzer上下文 <br>
  * 
+ * @version 1.6.11.81 [20181026 duanyy] <br>
+ * - 从Indexer获取共享的Searcher，不再每次打开新的Reader <br>
  */
 
 public class XsReader extends NS{
@@ -167,10 +167,9 @@ public class XsReader extends NS{
 		int offset = PropertiesConstants.transform(ctx, $offset, 0);
 		int limit = PropertiesConstants.transform(ctx, $limit, 100);
 		
-		IndexReader reader = indexer.newReader();
+		IndexSearcher searcher = indexer.acquireSearcher();
 		try {
 			Query query = getQuery(ctx,indexer.getAnalyzer());	
-			IndexSearcher searcher = new IndexSearcher(reader);			
 
 			Sort sort = Sort.RELEVANCE;
 			String sortBy = PropertiesConstants.transform(ctx, $sortField, "");
@@ -201,7 +200,7 @@ public class XsReader extends NS{
 			logger.error(ExceptionUtils.getStackTrace(ex));
 			throw new BaseException("core.e1004","Can not query from indexer.");
 		}finally{
-			IOTools.close(reader);
+			indexer.releaseSearcher(searcher);
 		}		
 	}	
 	
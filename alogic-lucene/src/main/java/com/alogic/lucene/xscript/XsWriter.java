@@ -10,7 +10,6 @@ import com.alogic.xscript.Logiclet;
 import com.alogic.xscript.LogicletContext;
 import com.alogic.xscript.doc.XsObject;
 import com.anysoft.util.BaseException;
-import com.anysoft.util.IOTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
 
@@ -19,6 +18,10 @@ import com.anysoft.util.PropertiesConstants;
  * 
  * @author yyduan
  * @since 1.6.11.31
+ * 
+ * @version 1.6.11.81 [20181026 duanyy] <br>
+ * - 使用Indexer共享的Writer，执行完毕之后提交(可通过commit参数关闭)，由Indexer刷新Searcher <br>
+ * - 通过Indexer的批量修改接口执行，并发执行时不会提交彼此未完成的修改，重建失败时回滚 <br>
  */
 public class XsWriter extends NS{
 	/**
@@ -38,6 +41,11 @@ public class XsWriter extends NS{
 	
 	protected String $rebuild = "false";
 	
+	/**
+	 * 执行完毕之后是否提交
+	 */
+	protected String $commit = "true";
+	
 	public XsWriter(String tag, Logiclet p) {
 		super(tag, p);
 	}
@@ -50,6 +58,7 @@ public class XsWriter extends NS{
 		cid = PropertiesConstants.getString(p,"cid",cid,true);
 		indexerId = PropertiesConstants.getString(p,"indexerId",indexerId,true);
 		$rebuild = PropertiesConstants.getRaw(p,"rebuild",$rebuild);
+		$commit = PropertiesConstants.getRaw(p,"commit",$commit);
 	}
 	
 	@Override
@@ -64,13 +73,17 @@ public class XsWriter extends NS{
 			}
 		}
 		
-		IndexWriter writer = indexer.newWriter(PropertiesConstants.transform(ctx, $rebuild, false));
+		boolean rebuild = PropertiesConstants.transform(ctx, $rebuild, false);
+		IndexWriter writer = indexer.beginBatch(rebuild);
+		boolean ok = false;
 		try {
 			ctx.setObject(cid, writer);
 			super.onExecute(root, current, ctx, watcher);
+			ok = true;
 		}finally{
 			ctx.removeObject(cid);
-			IOTools.close(writer);
-		}	
+			//重建时总是提交，否则Searcher不会切换到新的索引
+			indexer.endBatch(ok && (rebuild || PropertiesConstants.transform(ctx, $commit, true)));
+		}
 	}	
 }
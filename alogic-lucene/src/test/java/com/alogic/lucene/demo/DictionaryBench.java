@@ -0,0 +1,117 @@
+package com.alogic.lucene.demo;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.alogic.ik.core.IKSegmenter;
+import com.alogic.ik.dic.Dictionary;
+import com.alogic.ik.dic.DoubleArrayTrie;
+import com.alogic.lucene.analyzer.ik.dic.FromFile;
+import com.anysoft.util.DefaultProperties;
+
+/**
+ * IK词典的测试
+ * 
+ * <p>
+ * 加载缺省的主词典，输出构建时间和堆内存占用，将主词典保存为二进制文件并映射装载，
+ * 然后用主词典中的词随机拼接成句子，测试分词的吞吐量(字符/秒)以及增加扩展词时重建的时间.
+ * 
+ * <p>
+ * 参数：文本长度(字符) 测试轮数
+ * 
+ * @author duanyy
+ * 
+ */
+public class DictionaryBench {
+
+	public static void main(String[] args) throws Exception{
+		int textLength = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		FromFile loader = new FromFile();
+		loader.configure(new DefaultProperties());
+		List<char[]> words = loader.getMainDictionary();
+
+		long heap = usedMemory();
+		long start = System.currentTimeMillis();
+		Dictionary dic = new Dictionary();
+		dic.addConfiguration(loader);
+		System.out.println(String.format("build:%d words,%d ms,%d KB heap",
+				words.size(),System.currentTimeMillis() - start,(usedMemory() - heap) / 1024));
+
+		File cache = File.createTempFile("ikdic", ".bin");
+		cache.deleteOnExit();
+		dic.saveMainDict(cache);
+
+		heap = usedMemory();
+		start = System.currentTimeMillis();
+		Dictionary mapped = new Dictionary();
+		mapped.loadMainDict(cache);
+		mapped.addConfiguration(loader,false);
+		DoubleArrayTrie trie = mapped.getMainDict();
+		System.out.println(String.format("mmap:%d states,%d bytes,%d ms,%d KB heap",
+				trie.getSize(),cache.length(),System.currentTimeMillis() - start,(usedMemory() - heap) / 1024));
+
+		List<String> sentences = newSentences(words,textLength);
+		for (int i = 0 ; i < rounds ; i ++){
+			run("build",dic,sentences);
+			run("mmap",mapped,sentences);
+		}
+
+		List<String> added = new ArrayList<String>();
+		for (int i = 0 ; i < 1000 ; i ++){
+			added.add("扩展词" + i);
+		}
+		start = System.currentTimeMillis();
+		mapped.addWords(added);
+		System.out.println(String.format("rebuild:%d words added,%d ms",
+				added.size(),System.currentTimeMillis() - start));
+	}
+
+	protected static void run(String name,Dictionary dic,List<String> sentences) throws Exception{
+		long start = System.nanoTime();
+		IKSegmenter segmenter = new IKSegmenter(new StringReader(""),dic,true);
+		long chars = 0;
+		long count = 0;
+		for (String sentence:sentences){
+			segmenter.reset(new StringReader(sentence));
+			while (segmenter.next() != null){
+				count ++;
+			}
+			chars += sentence.length();
+		}
+		long duration = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.out.println(String.format("%s:%d chars,%d lexemes,%d ms,%d chars/s",
+				name,chars,count,duration,chars * 1000L / duration));
+	}
+
+	protected static List<String> newSentences(List<char[]> words,int length){
+		Random random = new Random(0);
+		List<String> result = new ArrayList<String>();
+		int total = 0;
+		while (total < length){
+			StringBuffer buffer = new StringBuffer();
+			while (buffer.length() < 50){
+				buffer.append(words.get(random.nextInt(words.size())));
+				if (random.nextInt(10) == 0){
+					buffer.append('，');
+				}
+			}
+			buffer.append('。');
+			result.add(buffer.toString());
+			total += buffer.length();
+		}
+		return result;
+	}
+
+	protected static long usedMemory(){
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0 ; i < 3 ; i ++){
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
@@ -0,0 +1,147 @@
+package com.alogic.lucene.demo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+
+import com.alogic.lucene.core.Indexer;
+import com.alogic.lucene.indexer.FS;
+import com.alogic.lucene.indexer.RAM;
+import com.anysoft.util.DefaultProperties;
+
+/**
+ * 比较RAM和FS(mmap,nio,hybrid)的Indexer
+ * 
+ * <p>
+ * 分别写入指定个数的文档，统计建索引的耗时以及完成之后的堆内存占用，然后多线程并发查询，统计查询的吞吐量；
+ * 最后在持续写入的同时按照固定间隔刷新，统计近实时刷新的平均耗时.
+ * 
+ * <p>
+ * 参数：索引目录 文档个数 查询线程数 查询时间(ms)
+ * 
+ * @author duanyy
+ * 
+ */
+public class IndexerBench {
+
+	public static void main(String[] args) throws Exception{
+		String home = args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/lucene-bench";
+		int docs = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+		int threadCnt = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long duration = args.length > 3 ? Long.parseLong(args[3]) : 5000;
+
+		String[][] modes = {
+				{"ram",""},
+				{"mmap","false"},
+				{"nio","false"},
+				{"mmap","true"}
+		};
+		for (String[] mode:modes){
+			clear(new File(home));
+			DefaultProperties p = new DefaultProperties();
+			p.SetValue("analyzer", StandardAnalyzer.class.getName());
+			p.SetValue("refreshInterval", "0");
+			p.SetValue("home", home);
+			p.SetValue("directory", mode[0]);
+			p.SetValue("hybrid", mode[1]);
+			Indexer indexer = mode[0].equals("ram") ? new RAM() : new FS();
+			indexer.configure(p);
+			run(mode[0] + ("true".equals(mode[1]) ? "+hybrid" : ""),indexer,docs,threadCnt,duration);
+			indexer.close();
+		}
+	}
+
+	protected static void run(String name,final Indexer indexer,int docs,int threadCnt,final long duration) throws Exception{
+		IndexWriter writer = indexer.getWriter();
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < docs ; i ++){
+			writer.addDocument(newDocument(i));
+		}
+		indexer.commit();
+		long build = System.currentTimeMillis() - start;
+		long heap = getUsedHeap();
+
+		final AtomicLong queries = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					Random r = new Random();
+					long end = System.currentTimeMillis() + duration;
+					try {
+						while (System.currentTimeMillis() < end){
+							TermQuery query = new TermQuery(new Term("name","word" + r.nextInt(10000)));
+							IndexSearcher searcher = indexer.acquireSearcher();
+							try {
+								searcher.search(query, 10);
+							}finally{
+								indexer.releaseSearcher(searcher);
+							}
+							queries.incrementAndGet();
+						}
+					}catch (Exception ex){
+						ex.printStackTrace();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+
+		//每写入1000个文档刷新一次
+		long refresh = 0;
+		int rounds = 100;
+		for (int i = 0 ; i < rounds ; i ++){
+			for (int j = 0 ; j < 1000 ; j ++){
+				writer.addDocument(newDocument(docs + i * 1000 + j));
+			}
+			long now = System.nanoTime();
+			indexer.commit();
+			refresh += System.nanoTime() - now;
+		}
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		indexer.report(report);
+		System.out.println(String.format("%s:%d docs,build %d ms,heap %d MB,%d queries/s,commit+refresh %.2f ms,generation %s",
+				name,docs,build,heap / 1024 / 1024,queries.get() * 1000 / duration,refresh / 1000000.0 / rounds,report.get("generation")));
+	}
+
+	protected static long getUsedHeap(){
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0 ; i < 3 ; i ++){
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	protected static Document newDocument(int id){
+		Document doc = new Document();
+		doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+		doc.add(new TextField("name", "word" + (id % 10000) + " word" + (id % 997) + " text" + (id % 101), Field.Store.YES));
+		return doc;
+	}
+
+	protected static void clear(File dir){
+		File[] files = dir.listFiles();
+		if (files != null){
+			for (File file:files){
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.alogic.lucene.demo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+
+import com.alogic.lucene.core.Indexer;
+import com.alogic.lucene.indexer.RAM;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.IOTools;
+
+/**
+ * 近实时查询的测试
+ *
+ * <p>
+ * 一个线程持续向共享的Writer写入文档，多个线程并发查询，比较每次打开新Reader和从SearcherManager获取Searcher
+ * 两种方式的查询吞吐量，并输出Searcher的代数和刷新滞后时间.
+ *
+ * <p>
+ * 参数：查询线程数 每种方式的测试时间(ms) 刷新间隔(ms)
+ *
+ * @author duanyy
+ *
+ */
+public class NrtDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		long duration = args.length > 1 ? Long.parseLong(args[1]) : 5000;
+		String refreshInterval = args.length > 2 ? args[2] : "100";
+
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("analyzer", StandardAnalyzer.class.getName());
+		p.SetValue("refreshInterval", refreshInterval);
+
+		final RAM indexer = new RAM();
+		indexer.configure(p);
+
+		IndexWriter writer = indexer.getWriter();
+		for (int i = 0 ; i < 100000 ; i ++){
+			writer.addDocument(newDocument(i));
+		}
+		indexer.commit();
+
+		final AtomicLong written = new AtomicLong(100000);
+		final boolean[] stopped = {false};
+		Thread thread = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				IndexWriter w = indexer.getWriter();
+				try {
+					while (!stopped[0]){
+						w.addDocument(newDocument((int)written.getAndIncrement()));
+						if (written.get() % 100 == 0){
+							Thread.sleep(1);
+						}
+					}
+				}catch (Exception ex){
+					ex.printStackTrace();
+				}
+			}
+		});
+		thread.start();
+
+		for (int round = 0 ; round < 2 ; round ++){
+			run("reader",indexer,threadCnt,duration,false);
+			run("searcher",indexer,threadCnt,duration,true);
+		}
+		stopped[0] = true;
+		thread.join();
+		indexer.close();
+	}
+
+	protected static void run(String name,final Indexer indexer,int threadCnt,final long duration,final boolean shared) throws Exception{
+		final AtomicLong queries = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					long end = System.currentTimeMillis() + duration;
+					try {
+						while (System.currentTimeMillis() < end){
+							TermQuery query = new TermQuery(new Term("name","word" + (queries.get() % 100)));
+							if (shared){
+								IndexSearcher searcher = indexer.acquireSearcher();
+								try {
+									searcher.search(query, 10);
+								}finally{
+									indexer.releaseSearcher(searcher);
+								}
+							}else{
+								IndexReader reader = indexer.newReader();
+								try {
+									new IndexSearcher(reader).search(query, 10);
+								}finally{
+									IOTools.close(reader);
+								}
+							}
+							queries.incrementAndGet();
+						}
+					}catch (Exception ex){
+						ex.printStackTrace();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		indexer.report(report);
+		System.out.println(String.format("%s:%d threads,%d ms,%d queries,%d queries/s,generation=%s,lag=%s ms,refreshCost=%s ms",
+				name,threadCnt,duration,queries.get(),queries.get() * 1000 / duration,
+				report.get("generation"),report.get("lag"),report.get("refreshCost")));
+	}
+
+	protected static Document newDocument(int id){
+		Document doc = new Document();
+		doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+		doc.add(new TextField("name", "word" + (id % 100) + " word" + (id % 1000), Field.Store.YES));
+		return doc;
+	}
+}
@@ -0,0 +1,164 @@
+package com.alogic.gw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.alogic.metrics.Fragment;
+import com.alogic.metrics.Fragment.Method;
+import com.alogic.metrics.Measures;
+import com.alogic.metrics.impl.DefaultFragment;
+import com.alogic.metrics.stream.MetricsCollector;
+import com.alogic.metrics.stream.MetricsReportable;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 固定大小的缓冲区池
+ * 
+ * <p>
+ * 用于网关在南北向之间转发正文，每次转发从池中借出一个固定大小的缓冲区，转发完成之后归还，
+ * 使得内存占用只和并发数有关，而和正文的大小无关.
+ * 
+ * <p>
+ * 池中最多保留maxPooled个缓冲区，池为空时临时分配，池满时归还的缓冲区直接丢弃.
+ * 
+ * @author duanyy
+ * @since 1.6.11.84
+ */
+public class BufferPool implements Reportable,MetricsReportable{
+
+	/**
+	 * 指标id
+	 */
+	public static final String METRICS_ID = "gw.buffer";
+
+	/**
+	 * 缓冲区大小
+	 */
+	protected int bufferSize = 8192;
+
+	/**
+	 * 池中保留的最大缓冲区个数
+	 */
+	protected int maxPooled = 256;
+
+	/**
+	 * 空闲的缓冲区
+	 */
+	protected ArrayBlockingQueue<byte[]> idle = null;
+
+	/**
+	 * 借出次数
+	 */
+	protected AtomicLong borrowed = new AtomicLong(0);
+
+	/**
+	 * 临时分配的次数
+	 */
+	protected AtomicLong allocated = new AtomicLong(0);
+
+	public BufferPool(int bufferSize,int maxPooled){
+		this.bufferSize = bufferSize <= 0 ? 8192 : bufferSize;
+		this.maxPooled = maxPooled <= 0 ? 1 : maxPooled;
+		idle = new ArrayBlockingQueue<byte[]>(this.maxPooled);
+	}
+
+	/**
+	 * 借出缓冲区
+	 * @return 缓冲区
+	 */
+	public byte[] borrow(){
+		borrowed.incrementAndGet();
+		byte[] buffer = idle.poll();
+		if (buffer == null){
+			allocated.incrementAndGet();
+			buffer = new byte[bufferSize];
+		}
+		return buffer;
+	}
+
+	/**
+	 * 归还缓冲区
+	 * @param buffer 缓冲区
+	 */
+	public void giveBack(byte[] buffer){
+		if (buffer != null && buffer.length == bufferSize){
+			idle.offer(buffer);
+		}
+	}
+
+	/**
+	 * 通过池中的缓冲区将输入流复制到输出流
+	 * 
+	 * <p>
+	 * 每读入一块就写出一块，不缓存整个正文.
+	 * 
+	 * @param in 输入流
+	 * @param out 输出流
+	 * @return 复制的字节数
+	 * @throws IOException
+	 */
+	public long copy(InputStream in,OutputStream out) throws IOException{
+		long total = 0;
+		if (in != null){
+			byte[] buffer = borrow();
+			try {
+				int read = 0;
+				while ((read = in.read(buffer,0,buffer.length)) != -1){
+					out.write(buffer, 0, read);
+					total += read;
+				}
+			}finally{
+				giveBack(buffer);
+			}
+		}
+		return total;
+	}
+
+	public int getBufferSize(){
+		return bufferSize;
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setInt(xml,"bufferSize",bufferSize);
+			XmlTools.setInt(xml,"maxPooled",maxPooled);
+			XmlTools.setInt(xml,"idle",idle.size());
+			XmlTools.setLong(xml,"borrowed",borrowed.get());
+			XmlTools.setLong(xml,"allocated",allocated.get());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setInt(json,"bufferSize",bufferSize);
+			JsonTools.setInt(json,"maxPooled",maxPooled);
+			JsonTools.setInt(json,"idle",idle.size());
+			JsonTools.setLong(json,"borrowed",borrowed.get());
+			JsonTools.setLong(json,"allocated",allocated.get());
+		}
+	}
+
+	@Override
+	public void report(MetricsCollector collector) {
+		if (collector != null){
+			Fragment f = new DefaultFragment(METRICS_ID);
+			Measures meas = f.getMeasures();
+			if (meas != null){
+				meas.set("idle", idle.size(), Method.avg);
+				meas.set("borrowed", borrowed.get(), Method.lst);
+				meas.set("allocated", allocated.get(), Method.lst);
+			}
+			collector.metricsIncr(f);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.alogic.gw;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 开放服务的响应缓存策略
+ * 
+ * <p>
+ * 在服务描述中通过cache.*参数配置：<br>
+ * - cache.enable:是否启用缓存，缺省为false <br>
+ * - cache.ttl:缓存的生存时间(ms)，后端响应中有Cache-Control:max-age时以后端为准，缺省为60000 <br>
+ * - cache.stale:过期之后仍可使用的时间(ms)，在此期间返回旧的响应并在后台刷新(stale-while-revalidate)，缺省为0 <br>
+ * - cache.query:参与缓存key的查询参数，逗号分隔，*表示整个查询串，缺省为* <br>
+ * - cache.headers:参与缓存key的http头，逗号分隔，缺省为空 <br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.85
+ */
+public class CachePolicy {
+
+	/**
+	 * 是否启用
+	 */
+	protected boolean enable = false;
+
+	/**
+	 * 生存时间(ms)
+	 */
+	protected long ttl = 60000L;
+
+	/**
+	 * 过期之后仍可使用的时间(ms)
+	 */
+	protected long stale = 0;
+
+	/**
+	 * 参与key的查询参数
+	 */
+	protected String query = "*";
+
+	/**
+	 * 参与key的http头
+	 */
+	protected String headers = "";
+
+	protected String[] queryNames = null;
+
+	protected String[] headerNames = new String[0];
+
+	public boolean isEnable(){
+		return enable;
+	}
+
+	public long getTtl(){
+		return ttl;
+	}
+
+	public long getStale(){
+		return stale;
+	}
+
+	/**
+	 * 获取参与key的http头
+	 * @return http头列表
+	 */
+	public String[] getHeaderNames(){
+		return headerNames;
+	}
+
+	/**
+	 * 根据请求生成缓存的key
+	 * @param openId 开放服务id
+	 * @param request http请求
+	 * @return key
+	 */
+	public String getKey(String openId,HttpServletRequest request){
+		StringBuilder key = new StringBuilder(openId);
+		key.append('?');
+		if (queryNames == null){
+			String queryString = request.getQueryString();
+			if (queryString != null){
+				key.append(queryString);
+			}
+		}else{
+			for (String name:queryNames){
+				String value = request.getParameter(name);
+				if (value != null){
+					key.append(name).append('=').append(value).append('&');
+				}
+			}
+		}
+		for (String name:headerNames){
+			String value = request.getHeader(name);
+			if (value != null){
+				key.append('#').append(name).append('=').append(value);
+			}
+		}
+		return key.toString();
+	}
+
+	public void configure(Properties p){
+		enable = PropertiesConstants.getBoolean(p, "cache.enable", enable, true);
+		ttl = PropertiesConstants.getLong(p, "cache.ttl", ttl, true);
+		stale = PropertiesConstants.getLong(p, "cache.stale", stale, true);
+		query = PropertiesConstants.getString(p, "cache.query", query, true);
+		headers = PropertiesConstants.getString(p, "cache.headers", headers, true);
+		parse();
+	}
+
+	public void fromXML(Element root){
+		if (root != null){
+			enable = XmlTools.getBoolean(root, "cache.enable", enable);
+			ttl = XmlTools.getLong(root, "cache.ttl", ttl);
+			stale = XmlTools.getLong(root, "cache.stale", stale);
+			query = XmlTools.getString(root, "cache.query", query);
+			headers = XmlTools.getString(root, "cache.headers", headers);
+			parse();
+		}
+	}
+
+	public void toXML(Element root){
+		if (root != null){
+			XmlTools.setBoolean(root, "cache.enable", enable);
+			XmlTools.setLong(root, "cache.ttl", ttl);
+			XmlTools.setLong(root, "cache.stale", stale);
+			XmlTools.setString(root, "cache.query", query);
+			XmlTools.setString(root, "cache.headers", headers);
+		}
+	}
+
+	public void fromJson(Map<String,Object> json){
+		if (json != null){
+			enable = JsonTools.getBoolean(json, "cache.enable", enable);
+			ttl = JsonTools.getLong(json, "cache.ttl", ttl);
+			stale = JsonTools.getLong(json, "cache.stale", stale);
+			query = JsonTools.getString(json, "cache.query", query);
+			headers = JsonTools.getString(json, "cache.headers", headers);
+			parse();
+		}
+	}
+
+	public void toJson(Map<String,Object> json){
+		if (json != null){
+			JsonTools.setBoolean(json, "cache.enable", enable);
+			JsonTools.setLong(json, "cache.ttl", ttl);
+			JsonTools.setLong(json, "cache.stale", stale);
+			JsonTools.setString(json, "cache.query", query);
+			JsonTools.setString(json, "cache.headers", headers);
+		}
+	}
+
+	protected void parse(){
+		queryNames = StringUtils.isEmpty(query) || query.equals("*") ? null : StringUtils.split(query, ",");
+		headerNames = StringUtils.isEmpty(headers) ? new String[0] : StringUtils.split(headers, ",");
+	}
+}
@@ -2,8 +2,25 @@ package com.alogic.gw;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -20,6 +37,10 @@ import org.w3c.dom.Element;
 
 import com.alogic.gw.loader.FromInner;
 import com.alogic.load.Loader;
+import com.alogic.metrics.Fragment;
+import com.alogic.metrics.stream.MetricsCollector;
+import com.alogic.metrics.stream.MetricsHandlerFactory;
+import com.alogic.metrics.stream.MetricsReportable;
 import com.alogic.remote.Client;
 import com.alogic.remote.ClientFactory;
 import com.alogic.remote.HttpConstants;
@@ -28,11 +49,15 @@ import com.alogic.remote.Response;
 import com.alogic.remote.httpclient.HttpClient;
 import com.alogic.tracer.Tool;
 import com.alogic.tracer.TraceContext;
+import com.anysoft.stream.Handler;
 import com.anysoft.util.Configurable;
+import com.anysoft.util.DefaultProperties;
 import com.anysoft.util.Factory;
 import com.anysoft.util.IOTools;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
 import com.anysoft.util.Settings;
 import com.anysoft.util.XMLConfigurable;
 import com.anysoft.util.XmlElementProperties;
@@ -61,8 +86,18 @@ import com.logicbus.models.catalog.Path;
  * @version 1.6.11.50 [20180808 duanyy] <br>
  * - 增加form数据的拦截模式 <br>
  * - 优化Gateway的缓存处理 <br>
+ * 
+ * @version 1.6.11.84 [20181029 duanyy] <br>
+ * - 增加流式转发模式(gateway.streaming)，南北向正文通过池化的固定大小缓冲区转发 <br>
+ * - 增加Servlet 3的异步模式(gateway.async)，释放容器线程，后端调用仍以阻塞方式在网关的工作线程池中执行 <br>
+ * - 增加按路由的在途调用统计和背压控制(gateway.maxInFlight) <br>
+ * - 按gateway.metrics.interval定时输出路由、缓冲区池和响应缓存的指标 <br>
+ * 
+ * @version 1.6.11.85 [20181030 duanyy] <br>
+ * - 增加按服务描述配置的响应缓存 <br>
+ * - 响应缓存的指标随网关指标定时输出 <br>
  */
-public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurable{
+public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurable,Reportable,MetricsReportable,MetricsCollector{
 	/**
 	 * a logger of slf4j
 	 */
@@ -160,6 +195,82 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 	
 	protected HttpCacheTool cacheTool = null;
 	
+	/**
+	 * 是否流式转发正文
+	 */
+	protected boolean streaming = false;
+	
+	/**
+	 * 转发正文的缓冲区池
+	 */
+	protected BufferPool bufferPool = null;
+	
+	/**
+	 * 路由的在途统计
+	 */
+	protected RouteMetrics routeMetrics = null;
+	
+	/**
+	 * 是否启用异步模式
+	 */
+	protected boolean async = false;
+	
+	/**
+	 * 异步模式的超时时间(ms)
+	 */
+	protected long asyncTimeout = 60000L;
+	
+	/**
+	 * 异步模式的工作线程池
+	 */
+	protected ThreadPoolExecutor asyncExecutor = null;
+	
+	/**
+	 * 响应缓存
+	 */
+	protected ResponseCache responseCache = null;
+	
+	/**
+	 * 定时输出指标的线程，所有网关实例共享
+	 */
+	protected static final ScheduledExecutorService metricsKeeper = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r,"gateway-metrics");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	/**
+	 * 输出指标的间隔时间(ms)，小于等于0时不输出
+	 */
+	protected long metricsInterval = 60000L;
+	
+	/**
+	 * 定时输出指标的任务
+	 */
+	protected ScheduledFuture<?> metricsTask = null;
+	
+	/**
+	 * 指标处理器
+	 */
+	protected Handler<Fragment> metricsHandler = null;
+	
+	/**
+	 * 当前的实例
+	 */
+	protected static volatile GatewayHandler instance = null;
+	
+	/**
+	 * 获取当前的网关实例
+	 * @return 网关实例，未初始化时为null
+	 */
+	public static GatewayHandler get(){
+		return instance;
+	}
+	
 	@Override
 	public void init(ServletConfig servletConfig) throws ServletException {
 		ServletConfigProperties props = new ServletConfigProperties(servletConfig);
@@ -184,6 +295,21 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 		dispatcher = servletConfig.getServletContext().getNamedDispatcher(
 				PropertiesConstants.getString(props, "gateway.self.servlet", "MessageRouter")
 			);
+		
+		metricsHandler = MetricsHandlerFactory.getClientInstance();
+		if (metricsInterval > 0){
+			metricsTask = metricsKeeper.scheduleWithFixedDelay(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						report(GatewayHandler.this);
+					}catch (Throwable t){
+						LOG.error("Error when reporting gateway metrics",t);
+					}
+				}
+			}, metricsInterval, metricsInterval, TimeUnit.MILLISECONDS);
+		}
+		instance = this;
 	}
 	
 	@Override
@@ -201,6 +327,25 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 		acmEnable = PropertiesConstants.getBoolean(props, "gateway.acm", acmEnable);	
 		selfApp = PropertiesConstants.getString(props, "gateway.self.app", selfApp);
 		interceptMode = PropertiesConstants.getBoolean(props, "gateway.intercept", interceptMode);		
+		streaming = PropertiesConstants.getBoolean(props, "gateway.streaming", streaming);
+		bufferPool = new BufferPool(
+				PropertiesConstants.getInt(props, "gateway.buffer.size", 8192),
+				PropertiesConstants.getInt(props, "gateway.buffer.pooled", 256));
+		routeMetrics = new RouteMetrics(
+				PropertiesConstants.getInt(props, "gateway.maxInFlight", 0),
+				PropertiesConstants.getInt(props, "gateway.maxInFlight.total", 0));
+		async = PropertiesConstants.getBoolean(props, "gateway.async", async);
+		asyncTimeout = PropertiesConstants.getLong(props, "gateway.async.timeout", asyncTimeout);
+		metricsInterval = PropertiesConstants.getLong(props, "gateway.metrics.interval", metricsInterval);
+		if (responseCache == null){
+			responseCache = new ResponseCache();
+			responseCache.configure(props);
+		}
+		if (async && asyncExecutor == null){
+			asyncExecutor = newAsyncExecutor(
+					PropertiesConstants.getInt(props, "gateway.async.threads", 64),
+					PropertiesConstants.getInt(props, "gateway.async.queue", 1024));
+		}
 		cacheTool = Settings.get().getToolkit(HttpCacheTool.class);
 		//采用统一的访问控制器
 		ac = (AccessController) Settings.get().get("accessController");
@@ -297,78 +442,398 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 				response.setHeader("Access-Control-Allow-Credentials", "true");
 			}			
 			
-			Context ctx = new HttpContext(request, response, encoding,interceptMode);
-			ctx.SetValue("$app", backendApp);
-			
-			TraceContext tc = null;
-			if (tracerEnable) {
-				tc = Tool.start(ctx.getGlobalSerial(), ctx.getGlobalSerialOrder());
+			//背压控制：超过在途限制时直接拒绝
+			//按解析后的服务id统计，未知的路径都落到缺省服务的同一个路由上
+			RouteMetrics.Route route = routeMetrics.enter(sd.getServiceID());
+			if (route == null){
+				response.setHeader("Retry-After", "1");
+				response.sendError(HttpConstants.E503, String.format("Service %s is too busy.", openId));
+				return ;
 			}
 			
-			Request req = client.build(method);
-			
-			boolean ok = true;
-			String reason = String.format("[%s]", ctx.getClientIp());
-			int contentLength = 0;
-			String sessionId = "";
-			Path id = new Path(openId);
-			String query = request.getQueryString();
-			
-			try {
-				int priority = 0;			
-				if (acmEnable && null != ac){
-					sessionId = ac.createSessionId(id, sd, ctx);
-					priority = ac.accessStart(sessionId,id, sd, ctx);
-					if (priority < 0){
-						ok = false;
-						reason = reason + "Unauthorized Access:" + ctx.getClientIp() + ",url:" + ctx.getRequestURI();
-						LOG.info("Unauthorized Access:" + ctx.getClientIp() + ",url:" + ctx.getRequestURI());
-						response.sendError(HttpConstants.E404, "Permission denied!service id: "+ id);
-						return;
+			if (async && asyncExecutor != null && request.isAsyncSupported()){
+				doAsyncService(request, method, openId, sd, route);
+			}else{
+				doProxy(request, response, method, openId, sd, route);
+			}
+		}
+	}
+	
+	/**
+	 * 以异步方式执行转发
+	 * 
+	 * <p>
+	 * 通过{@link AsyncContext}释放容器线程，后端调用在网关的工作线程池中执行，
+	 * 工作线程池满时拒绝请求.
+	 * 
+	 * <p>
+	 * 注意：后端调用仍然是阻塞的，每个在途的后端调用都占用一个网关工作线程，并发的后端调用数受限于
+	 * gateway.async.threads，超出的请求在gateway.async.queue中排队.
+	 * 
+	 * <p>
+	 * 超时处理和工作线程通过{@link AsyncCall}竞争南向响应的所有权，只有取得所有权的一方才能写出响应并结束
+	 * 异步上下文；超时处理取得所有权时，同时中止北向的调用.
+	 * 
+	 * @param request 南向http请求
+	 * @param method 方法
+	 * @param openId 开放服务id
+	 * @param sd 服务描述
+	 * @param route 路由统计
+	 * @throws IOException
+	 */
+	protected void doAsyncService(HttpServletRequest request,final String method,
+			final String openId,final OpenServiceDescription sd,final RouteMetrics.Route route) throws IOException{
+		final AsyncCall call = new AsyncCall();
+		final AsyncContext asyncContext;
+		try {
+			asyncContext = request.startAsync();
+			asyncContext.setTimeout(asyncTimeout);
+			asyncContext.addListener(new AsyncListener(){
+				@Override
+				public void onComplete(AsyncEvent event) throws IOException {
+					// nothing to do
+				}
+	
+				@Override
+				public void onTimeout(AsyncEvent event) throws IOException {
+					LOG.warn(String.format("Async call of %s is timeout after %d ms", openId, asyncTimeout));
+					if (call.claim()){
+						call.abort();
+						HttpServletResponse response = (HttpServletResponse)event.getAsyncContext().getResponse();
+						if (!response.isCommitted()){
+							response.sendError(HttpConstants.E504, String.format("Service %s is timeout.", openId));
+						}
+						complete(event.getAsyncContext());
+					}else{
+						//工作线程正在写出响应，等待其结束异步上下文
+						call.await(asyncTimeout);
 					}
 				}
-				
-				TraceContext child = tc == null ? null:tc.newChild();
-				if (child != null){
-					req.setHeader("GlobalSerial", child.sn());
-					req.setHeader("GlobalSerialOrder", child.order());
+	
+				@Override
+				public void onError(AsyncEvent event) throws IOException {
+					LOG.error("Error occurs in async call of " + openId, event.getThrowable());
+					if (call.claim()){
+						call.abort();
+						complete(event.getAsyncContext());
+					}
 				}
-				
-				String endpointPath = proxyPath + sd.getBackendPath() + "?openId=" + URLEncoder.encode(openId,encoding);
-				if (StringUtils.isNotEmpty(query)){
-					endpointPath += "&" + query;
+	
+				@Override
+				public void onStartAsync(AsyncEvent event) throws IOException {
+					// nothing to do
+				}
+			});
+		}catch (RuntimeException ex){
+			routeMetrics.leave(route, 0, 0, false);
+			throw ex;
+		}
+		
+		try {
+			asyncExecutor.execute(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						doProxy((HttpServletRequest)asyncContext.getRequest(), 
+								(HttpServletResponse)asyncContext.getResponse(), method, openId, sd, route, call);
+					}catch (Exception ex){
+						LOG.error("Error occurs when calling " + openId, ex);
+					}finally{
+						if (call.claimByWorker()){
+							complete(asyncContext);
+						}
+						call.finish();
+					}
+				}
+			});
+		}catch (RejectedExecutionException ex){
+			routeMetrics.leave(route, 0, 0, false);
+			if (call.claim()){
+				HttpServletResponse response = (HttpServletResponse)asyncContext.getResponse();
+				response.setHeader("Retry-After", "1");
+				response.sendError(HttpConstants.E503, String.format("Service %s is too busy.", openId));
+				complete(asyncContext);
+			}
+		}
+	}
+	
+	/**
+	 * 结束异步上下文，已经超时结束的忽略
+	 * @param asyncContext 异步上下文
+	 */
+	protected void complete(AsyncContext asyncContext){
+		try {
+			asyncContext.complete();
+		}catch (IllegalStateException ex){
+			//已经由超时处理结束
+		}
+	}
+	
+	/**
+	 * 转发到后端服务
+	 * 
+	 * @param request 南向http请求
+	 * @param response 南向http响应
+	 * @param method 方法
+	 * @param openId 开放服务id
+	 * @param sd 服务描述
+	 * @param route 路由统计
+	 * @throws IOException
+	 */
+	protected void doProxy(HttpServletRequest request, HttpServletResponse response, String method, 
+			String openId, OpenServiceDescription sd, RouteMetrics.Route route) throws IOException{
+		doProxy(request, response, method, openId, sd, route, null);
+	}
+	
+	/**
+	 * 转发到后端服务
+	 * 
+	 * <p>
+	 * 在异步模式下，写出南向响应之前必须先取得响应的所有权，已经被超时处理接管的请求不再写出响应.
+	 * 
+	 * @param request 南向http请求
+	 * @param response 南向http响应
+	 * @param method 方法
+	 * @param openId 开放服务id
+	 * @param sd 服务描述
+	 * @param route 路由统计
+	 * @param call 异步调用的状态，同步模式下为null
+	 * @throws IOException
+	 */
+	protected void doProxy(HttpServletRequest request, HttpServletResponse response, String method, 
+			String openId, OpenServiceDescription sd, RouteMetrics.Route route, AsyncCall call) throws IOException{
+		long start = System.currentTimeMillis();
+		Context ctx = new HttpContext(request, response, encoding,interceptMode);
+		ctx.SetValue("$app", sd.getBackendApp());
+		
+		TraceContext tc = null;
+		if (tracerEnable) {
+			tc = Tool.start(ctx.getGlobalSerial(), ctx.getGlobalSerialOrder());
+		}
+		
+		Request req = client.build(method);
+		if (call != null){
+			call.setRequest(req);
+		}
+		
+		boolean ok = true;
+		String reason = String.format("[%s]", ctx.getClientIp());
+		long contentLength = 0;
+		String sessionId = "";
+		Path id = new Path(openId);
+		String query = request.getQueryString();
+		ResponseCache.Result result = null;
+		
+		try {
+			int priority = 0;			
+			if (acmEnable && null != ac){
+				sessionId = ac.createSessionId(id, sd, ctx);
+				priority = ac.accessStart(sessionId,id, sd, ctx);
+				if (priority < 0){
+					ok = false;
+					reason = reason + "Unauthorized Access:" + ctx.getClientIp() + ",url:" + ctx.getRequestURI();
+					LOG.info("Unauthorized Access:" + ctx.getClientIp() + ",url:" + ctx.getRequestURI());
+					if (call == null || call.claimByWorker()){
+						response.sendError(HttpConstants.E404, "Permission denied!service id: "+ id);
+					}
+					return;
 				}
-											
+			}
+			
+			TraceContext child = tc == null ? null:tc.newChild();
+			if (child != null){
+				req.setHeader("GlobalSerial", child.sn());
+				req.setHeader("GlobalSerialOrder", child.order());
+			}
+			
+			String endpointPath = proxyPath + sd.getBackendPath() + "?openId=" + URLEncoder.encode(openId,encoding);
+			if (StringUtils.isNotEmpty(query)){
+				endpointPath += "&" + query;
+			}
+										
+			CachePolicy policy = sd.getCachePolicy();
+			if (isCacheable(method,request,policy)){
+				result = doCachedExecute(endpointPath,openId,sd,policy,request,req,ctx,child);
+				if (call != null && !call.claimByWorker()){
+					ok = false;
+					reason = reason + "Async call is timeout.";
+					return;
+				}
+				contentLength = doCachedResponse(request,response,result,ctx);
+				reason = reason + result.getEntry().getStatus() + String.format("[cache:%s,ratio=%.3f,saved=%d]", 
+						result.getOutcome().name(),responseCache.getHitRatio(),responseCache.getBytesSaved());
+			}else{
 				doRequest(request,req,ctx);				
 				Response resp = doExecute(endpointPath,request,req,ctx);	
-				doResponse(response,resp,ctx);
+				if (call != null && !call.claimByWorker()){
+					ok = false;
+					reason = reason + "Async call is timeout.";
+					return;
+				}
+				contentLength = doResponse(response,resp,ctx);
 				
-				reason = reason + resp.getStatusCode() + resp.getReasonPhrase();							
-			}catch (Exception ex){
-				ok = false;
-				reason = reason + ExceptionUtils.getStackTrace(ex).substring(0,128);
-				LOG.error("Error occurs when calling.",ex);
+				reason = reason + resp.getStatusCode() + resp.getReasonPhrase();
+			}
+		}catch (Exception ex){
+			ok = false;
+			reason = reason + ExceptionUtils.getStackTrace(ex).substring(0,128);
+			LOG.error("Error occurs when calling.",ex);
+			if ((call == null || call.claimByWorker()) && !response.isCommitted()){
 				response.sendError(HttpConstants.E404, ex.getMessage());
-			}finally{
-				if (acmEnable && ac != null){
-					ac.accessEnd(sessionId,id, sd, ctx);
-				}	
-				IOTools.close(req);
-				if (tracerEnable){
-					Tool.end(tc, "Native", openId, ok ?"OK":"FAILED", reason,query, contentLength);
-				}			
 			}
+		}finally{
+			if (acmEnable && ac != null){
+				ac.accessEnd(sessionId,id, sd, ctx);
+			}	
+			IOTools.close(req);
+			if (result != null){
+				result.release();
+			}
+			routeMetrics.leave(route, contentLength, System.currentTimeMillis() - start, ok);
+			if (tracerEnable){
+				Tool.end(tc, "Native", openId, ok ?"OK":"FAILED", reason,query, contentLength);
+			}			
 		}
 	}
 
+	/**
+	 * 是否可以使用响应缓存
+	 * 
+	 * <p>
+	 * 只有GET请求，并且服务描述启用了缓存，请求中没有Cache-Control:no-store时才使用缓存.
+	 * 
+	 * @param method 方法
+	 * @param request 南向http请求
+	 * @param policy 缓存策略
+	 * @return 是否使用缓存
+	 */
+	protected boolean isCacheable(String method,HttpServletRequest request,CachePolicy policy){
+		if (responseCache == null || policy == null || !policy.isEnable() || !method.equals("get")){
+			return false;
+		}
+		String cacheControl = request.getHeader("Cache-Control");
+		return cacheControl == null || !cacheControl.contains("no-store");
+	}
+	
+	/**
+	 * 通过响应缓存执行调用
+	 * 
+	 * <p>
+	 * 后台刷新的请求和前台请求一样传递Content-Type,真实地址和调用链的http头.
+	 * 
+	 * @param endpointPath 最终的URL地址
+	 * @param openId 开放服务id
+	 * @param sd 服务描述
+	 * @param policy 缓存策略
+	 * @param request 南向http请求
+	 * @param req 北向http请求
+	 * @param ctx 上下文
+	 * @param child 调用链上下文，可以为null
+	 * @return 缓存的查找结果，使用完之后需要释放
+	 * @throws IOException
+	 */
+	protected ResponseCache.Result doCachedExecute(final String endpointPath,String openId,OpenServiceDescription sd,
+			final CachePolicy policy,final HttpServletRequest request,final Request req,final Context ctx,
+			TraceContext child) throws IOException{
+		final String key = policy.getKey(openId, request);
+		String cacheControl = request.getHeader("Cache-Control");
+		boolean revalidate = cacheControl != null && cacheControl.contains("no-cache");
+		
+		//后台刷新时不能访问当前请求，预先保存参与key的http头
+		final DefaultProperties refreshCtx = new DefaultProperties();
+		refreshCtx.SetValue("$app", sd.getBackendApp());
+		final Map<String,String> headers = new HashMap<String,String>();
+		for (String name:policy.getHeaderNames()){
+			String value = request.getHeader(name);
+			if (value != null){
+				headers.put(name, value);
+			}
+		}
+		doRequestHeaders(request,headers);
+		if (child != null){
+			headers.put("GlobalSerial", child.sn());
+			headers.put("GlobalSerialOrder", child.order());
+		}
+		final String serial = ctx.getGlobalSerial();
+		
+		return responseCache.get(key, revalidate, 
+			new ResponseCache.Fetcher(){
+				@Override
+				public ResponseCache.Entry fetch() throws IOException {
+					doRequest(request,req,ctx);
+					Response resp = doExecute(endpointPath,request,req,ctx);
+					return responseCache.newEntry(resp, policy);
+				}
+			},
+			new ResponseCache.Fetcher(){
+				@Override
+				public ResponseCache.Entry fetch() throws IOException {
+					Request refreshReq = client.build("get");
+					try {
+						for (Map.Entry<String,String> header:headers.entrySet()){
+							refreshReq.setHeader(header.getKey(), header.getValue());
+						}
+						Response resp = refreshReq.execute(endpointPath, serial, refreshCtx);
+						return responseCache.newEntry(resp, policy);
+					}finally{
+						IOTools.close(refreshReq);
+					}
+				}
+			});
+	}
+	
+	/**
+	 * 输出缓存的响应
+	 * 
+	 * <p>
+	 * 当请求的If-None-Match和响应的ETag一致时，返回304.
+	 * 
+	 * @param request 南向http请求
+	 * @param response 南向http响应
+	 * @param result 缓存的查找结果
+	 * @param ctx 上下文
+	 * @return 输出的正文字节数
+	 * @throws IOException
+	 */
+	protected long doCachedResponse(HttpServletRequest request,HttpServletResponse response,ResponseCache.Result result,Context ctx) throws IOException{
+		ResponseCache.Entry entry = result.getEntry();
+		response.setHeader("X-Cache", result.getOutcome().name());
+		if (entry.isCacheable()){
+			response.setHeader("ETag", entry.getETag());
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null && ifNoneMatch.equals(entry.getETag())){
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return 0;
+			}
+		}
+		
+		String contentType = entry.getContentType();
+		if (StringUtils.isNotEmpty(contentType)){
+			response.setContentType(contentType);
+		}
+		if (entry.isCacheEnable()){
+			cacheTool.cacheEnable(response);
+		}else{
+			cacheTool.cacheDisable(response);
+		}
+		response.setContentLength(entry.getSize());
+		response.setStatus(entry.getStatus());
+		entry.writeTo(response.getOutputStream(), bufferPool);
+		return entry.getSize();
+	}
+	
 	/**
 	 * 进行Reponse操作
 	 * @param response 南向Response
 	 * @param resp 北向Response
 	 * @param ctx 上下文
+	 * @return 输出的正文字节数
 	 * @throws IOException
 	 */
-	protected void doResponse(HttpServletResponse response, Response resp,Context ctx) throws IOException {
+	protected long doResponse(HttpServletResponse response, Response resp,Context ctx) throws IOException {
+		if (streaming){
+			return doStreamResponse(response, resp, ctx);
+		}
 		byte[] result = resp.asBytes();
 		response.setContentLength(result.length);
 		String contentType = resp.getContentType();
@@ -384,6 +849,45 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 		
 		response.setStatus(resp.getStatusCode());
 		response.getOutputStream().write(result);
+		return result.length;
+	}
+	
+	/**
+	 * 以流式方式进行Response操作
+	 * 
+	 * <p>
+	 * 北向响应的正文通过池化的缓冲区逐块写出到南向响应，不在内存中缓存整个正文；
+	 * 当后端给出Content-Length时透传，否则由容器采用chunked方式输出.
+	 * 
+	 * @param response 南向Response
+	 * @param resp 北向Response
+	 * @param ctx 上下文
+	 * @return 输出的正文字节数
+	 * @throws IOException
+	 */
+	protected long doStreamResponse(HttpServletResponse response, Response resp,Context ctx) throws IOException {
+		String contentLength = resp.getHeader(HttpConstants.CONTENT_LEN, null);
+		if (StringUtils.isNotEmpty(contentLength)){
+			response.setHeader(HttpConstants.CONTENT_LEN, contentLength);
+		}
+		String contentType = resp.getContentType();
+		if (StringUtils.isNotEmpty(contentType)){
+			response.setContentType(contentType);
+		}
+		
+		if (BooleanUtils.toBoolean(resp.getHeader("Cache-Enable", "false"))){
+			cacheTool.cacheEnable(response);
+		}else{
+			cacheTool.cacheDisable(response);
+		}
+		
+		response.setStatus(resp.getStatusCode());
+		InputStream in = resp.asStream();
+		try {
+			return bufferPool.copy(in, response.getOutputStream());
+		}finally{
+			IOTools.close(in);
+		}
 	}
 
 	/**
@@ -394,9 +898,40 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 	 * @throws IOException 
 	 */
 	protected void doRequest(HttpServletRequest request, Request req,Context ctx)  throws IOException{
+		Map<String,String> headers = new HashMap<String,String>();
+		doRequestHeaders(request,headers);
+		for (Map.Entry<String,String> header:headers.entrySet()){
+			req.setHeader(header.getKey(), header.getValue());
+		}
+		
+		byte[] data = ctx.getRequestRaw();
+		if (data != null){
+			req.setBody(data);
+		}else{
+			if (streaming){
+				//通过池化的缓冲区转发请求正文
+				final InputStream in = request.getInputStream();
+				req.setBody(new Request.DirectOutput(){
+					@Override
+					public void writeTo(OutputStream out) throws IOException {
+						bufferPool.copy(in, out);
+					}
+				});
+			}else{
+				req.setBody(request.getInputStream());
+			}
+		}
+	}
+	
+	/**
+	 * 生成北向请求的http头
+	 * @param request 南向http请求
+	 * @param headers 北向请求的http头
+	 */
+	protected void doRequestHeaders(HttpServletRequest request,Map<String,String> headers){
 		String reqContextType = request.getContentType();
 		if (StringUtils.isNotEmpty(reqContextType)){
-			req.setHeader(HttpConstants.CONTENT_TYPE, reqContextType);
+			headers.put(HttpConstants.CONTENT_TYPE, reqContextType);
 		}					
 		if (forwarded){
 			String forwarded = request.getHeader(forwardedHeader);
@@ -405,15 +940,8 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 			}else{
 				forwarded = request.getRemoteHost();
 			}
-			req.setHeader(forwardedHeader, forwarded);
-			req.setHeader(readIpHeader, request.getRemoteHost());
-		}
-		
-		byte[] data = ctx.getRequestRaw();
-		if (data != null){
-			req.setBody(data);
-		}else{
-			req.setBody(request.getInputStream());
+			headers.put(forwardedHeader, forwarded);
+			headers.put(readIpHeader, request.getRemoteHost());
 		}
 	}
 	
@@ -430,10 +958,203 @@ public class GatewayHandler implements ServletHandler,XMLConfigurable,Configurab
 		return req.execute(endpointPath, ctx.getGlobalSerial(), ctx);
 	}
 
+	/**
+	 * 创建异步模式的工作线程池
+	 * 
+	 * <p>
+	 * 后端调用在工作线程中阻塞执行，线程数即为异步模式下并发的后端调用数上限.
+	 * 
+	 * @param threads 线程数
+	 * @param queueSize 队列长度
+	 * @return 线程池
+	 */
+	protected ThreadPoolExecutor newAsyncExecutor(int threads,int queueSize){
+		threads = threads <= 0 ? 1 : threads;
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60000L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize <= 0 ? 1 : queueSize),
+				new ThreadFactory(){
+					private AtomicInteger seq = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,"gateway-async-" + seq.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		LOG.info(String.format("Gateway async executor is created,threads=%d,queue=%d", threads, queueSize));
+		return executor;
+	}
+	
 	@Override
-	public void destroy() {
-		// nothing to do
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setBoolean(xml, "streaming", streaming);
+			XmlTools.setBoolean(xml, "async", async);
+			Document doc = xml.getOwnerDocument();
+			if (bufferPool != null){
+				Element elem = doc.createElement("buffer");
+				bufferPool.report(elem);
+				xml.appendChild(elem);
+			}
+			if (responseCache != null){
+				Element elem = doc.createElement("cache");
+				responseCache.report(elem);
+				xml.appendChild(elem);
+			}
+			if (routeMetrics != null){
+				Element elem = doc.createElement("routes");
+				routeMetrics.report(elem);
+				xml.appendChild(elem);
+			}
+			if (asyncExecutor != null){
+				XmlTools.setInt(xml, "asyncActive", asyncExecutor.getActiveCount());
+				XmlTools.setInt(xml, "asyncQueued", asyncExecutor.getQueue().size());
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setBoolean(json, "streaming", streaming);
+			JsonTools.setBoolean(json, "async", async);
+			if (bufferPool != null){
+				Map<String,Object> map = new HashMap<String,Object>();
+				bufferPool.report(map);
+				json.put("buffer", map);
+			}
+			if (responseCache != null){
+				Map<String,Object> map = new HashMap<String,Object>();
+				responseCache.report(map);
+				json.put("cache", map);
+			}
+			if (routeMetrics != null){
+				Map<String,Object> map = new HashMap<String,Object>();
+				routeMetrics.report(map);
+				json.put("routes", map);
+			}
+			if (asyncExecutor != null){
+				JsonTools.setInt(json, "asyncActive", asyncExecutor.getActiveCount());
+				JsonTools.setInt(json, "asyncQueued", asyncExecutor.getQueue().size());
+			}
+		}
 	}
 
+	@Override
+	public void report(MetricsCollector collector) {
+		if (routeMetrics != null){
+			routeMetrics.report(collector);
+		}
+		if (bufferPool != null){
+			bufferPool.report(collector);
+		}
+		if (responseCache != null){
+			responseCache.report(collector);
+		}
+	}
+	
+	@Override
+	public void metricsIncr(Fragment fragment) {
+		if (metricsHandler != null){
+			metricsHandler.handle(fragment,System.currentTimeMillis());
+		}
+	}
 
+	@Override
+	public void destroy() {
+		if (instance == this){
+			instance = null;
+		}
+		if (metricsTask != null){
+			metricsTask.cancel(false);
+			metricsTask = null;
+		}
+		if (asyncExecutor != null){
+			asyncExecutor.shutdown();
+		}
+		if (responseCache != null){
+			responseCache.close();
+		}
+	}
+	
+	/**
+	 * 异步调用的状态
+	 * 
+	 * <p>
+	 * 超时处理和工作线程都必须先通过compareAndSet取得南向响应的所有权，才能写出响应和结束异步上下文.
+	 */
+	public static class AsyncCall {
+		/**
+		 * 南向响应是否已经被接管
+		 */
+		protected final AtomicBoolean claimed = new AtomicBoolean(false);
+		
+		/**
+		 * 工作线程是否取得了所有权
+		 */
+		protected volatile boolean ownedByWorker = false;
+		
+		/**
+		 * 北向请求
+		 */
+		protected volatile Request request = null;
+		
+		/**
+		 * 工作线程是否已经结束
+		 */
+		protected final CountDownLatch finished = new CountDownLatch(1);
+		
+		/**
+		 * 由超时或错误处理接管南向响应
+		 * @return 是否取得所有权
+		 */
+		public boolean claim(){
+			return claimed.compareAndSet(false, true);
+		}
+		
+		/**
+		 * 由工作线程接管南向响应，工作线程已经取得所有权时返回true
+		 * @return 是否取得所有权
+		 */
+		public boolean claimByWorker(){
+			if (!ownedByWorker){
+				ownedByWorker = claimed.compareAndSet(false, true);
+			}
+			return ownedByWorker;
+		}
+		
+		public void setRequest(Request req){
+			request = req;
+		}
+		
+		/**
+		 * 中止北向调用
+		 */
+		public void abort(){
+			Request req = request;
+			if (req != null){
+				req.abort();
+			}
+		}
+		
+		/**
+		 * 工作线程结束
+		 */
+		public void finish(){
+			finished.countDown();
+		}
+		
+		/**
+		 * 等待工作线程结束
+		 * @param timeout 超时时间(ms)
+		 */
+		public void await(long timeout){
+			try {
+				finished.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 }
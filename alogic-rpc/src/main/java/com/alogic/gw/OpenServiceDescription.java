@@ -20,6 +20,9 @@ import com.logicbus.models.servant.ServiceDescription;
  * 
  * @author yyduan
  * @since 1.6.11.4
+ * 
+ * @version 1.6.11.85 [20181030 duanyy] <br>
+ * - 增加响应缓存策略 <br>
  */
 public interface OpenServiceDescription extends ServiceDescription,Loadable {
 	
@@ -35,6 +38,12 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 	 */
 	public String getBackendPath();
 	
+	/**
+	 * 获取响应缓存策略
+	 * @return 缓存策略，为空时不缓存
+	 */
+	public CachePolicy getCachePolicy();
+	
 	/**
 	 * 缺省实现
 	 * @author yyduan
@@ -96,6 +105,11 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 		 */
 		protected long ttl = 5 * 60 * 1000L;
 		
+		/**
+		 * 响应缓存策略
+		 */
+		protected CachePolicy cachePolicy = new CachePolicy();
+		
 		@Override
 		public LogType getLogType() {
 			return logType;
@@ -186,6 +200,11 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 			return this.backendPath;
 		}
 		
+		@Override
+		public CachePolicy getCachePolicy(){
+			return this.cachePolicy;
+		}
+		
 		@Override
 		public void toXML(Element root) {
 			if (root != null){
@@ -198,6 +217,7 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 				XmlTools.setString(root,"privilege",getPrivilege());
 				XmlTools.setString(root,"backendApp", getBackendApp());
 				XmlTools.setString(root,"backendPath",getBackendPath());
+				cachePolicy.toXML(root);
 			}
 		}
 
@@ -213,6 +233,7 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 				backendApp = XmlTools.getString(root, "backendApp", getBackendApp());
 				backendPath = XmlTools.getString(root, "backendPath",getBackendPath());
 				logType = this.parseLogType(XmlTools.getString(root, "logType", getLogType().toString()));
+				cachePolicy.fromXML(root);
 			}
 		}
 
@@ -228,6 +249,7 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 				JsonTools.setString(json,"privilege",getPrivilege());
 				JsonTools.setString(json,"backendApp", getBackendApp());
 				JsonTools.setString(json,"backendPath",getBackendPath());
+				cachePolicy.toJson(json);
 			}
 		}
 
@@ -243,6 +265,7 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 				backendApp = JsonTools.getString(json, "backendApp", getBackendApp());
 				backendPath = JsonTools.getString(json, "backendPath",getBackendPath());
 				logType = parseLogType(JsonTools.getString(json, "logType", getLogType().toString()));
+				cachePolicy.fromJson(json);
 			}
 		}
 
@@ -267,6 +290,7 @@ public interface OpenServiceDescription extends ServiceDescription,Loadable {
 			backendApp = PropertiesConstants.getString(p, "backendApp", getBackendApp(),true);
 			backendPath = PropertiesConstants.getString(p, "backendPath",getBackendPath(),true);
 			logType = parseLogType(PropertiesConstants.getString(p, "logType", getLogType().toString(),true));			
+			cachePolicy.configure(p);
 		}
 
 		@Override
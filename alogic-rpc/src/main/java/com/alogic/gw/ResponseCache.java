@@ -0,0 +1,733 @@
+package com.alogic.gw;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.alogic.metrics.Fragment;
+import com.alogic.metrics.Fragment.Method;
+import com.alogic.metrics.Measures;
+import com.alogic.metrics.impl.DefaultFragment;
+import com.alogic.metrics.stream.MetricsCollector;
+import com.alogic.metrics.stream.MetricsReportable;
+import com.alogic.remote.Response;
+import com.anysoft.util.Configurable;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 网关的响应缓存
+ * 
+ * <p>
+ * 按照{@link CachePolicy}生成的key缓存后端的响应，特性包括：<br>
+ * - 按字节数限制容量，超过时按LRU淘汰(gateway.cache.maxBytes) <br>
+ * - 超过一定大小的正文保存在堆外内存中(gateway.cache.offHeap)，堆外内存按固定大小的块(gateway.cache.chunk)池化复用，
+ * 总量不超过maxBytes，块用尽时保存在堆内 <br>
+ * - 同一key并发的未命中只有一个请求访问后端，其余请求等待其结果(gateway.cache.wait)；该请求失败时，等待者直接得到失败 <br>
+ * - 过期之后在stale时间内返回旧的响应，同时在后台刷新(stale-while-revalidate) <br>
+ * - 遵循后端响应的Cache-Control(no-store,no-cache,private,max-age)，并为响应提供ETag <br>
+ * 
+ * <p>
+ * 条目采用引用计数，{@link #get(String, boolean, Fetcher, Fetcher)}返回的结果在使用完之后必须通过
+ * {@link Result#release()}释放，条目的堆外内存在没有引用之后归还到池中.
+ * 
+ * @author duanyy
+ * @since 1.6.11.85
+ */
+public class ResponseCache implements Configurable,Reportable,MetricsReportable{
+	/**
+	 * 指标id
+	 */
+	public static final String METRICS_ID = "gw.cache";
+	
+	/**
+	 * a logger of slf4j
+	 */
+	protected static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+	/**
+	 * 查找的结果类型
+	 */
+	public static enum Outcome {
+		/**
+		 * 命中
+		 */
+		hit,
+		/**
+		 * 命中过期的响应，后台刷新
+		 */
+		stale,
+		/**
+		 * 等待同一key的其他请求的结果
+		 */
+		coalesced,
+		/**
+		 * 未命中
+		 */
+		miss
+	}
+
+	/**
+	 * 最大容量(字节)
+	 */
+	protected long maxBytes = 64 * 1024 * 1024L;
+
+	/**
+	 * 单个响应的最大大小(字节)，超过的不缓存
+	 */
+	protected int maxEntrySize = 1024 * 1024;
+
+	/**
+	 * 超过该大小的正文保存在堆外内存，小于等于0表示不使用堆外内存
+	 */
+	protected int offHeapThreshold = 64 * 1024;
+
+	/**
+	 * 堆外内存块的大小
+	 */
+	protected int chunkSize = 64 * 1024;
+
+	/**
+	 * 堆外内存块的最大个数
+	 */
+	protected int maxChunks = 1024;
+
+	/**
+	 * 已分配的堆外内存块个数
+	 */
+	protected AtomicInteger chunks = new AtomicInteger(0);
+
+	/**
+	 * 空闲的堆外内存块
+	 */
+	protected ConcurrentLinkedQueue<ByteBuffer> idleChunks = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * 等待同一key的其他请求结果的超时时间(ms)
+	 */
+	protected long waitTimeout = 10000L;
+
+	/**
+	 * 缓存条目，按访问顺序排列
+	 */
+	protected LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>(1024,0.75f,true);
+
+	/**
+	 * 已使用的字节数
+	 */
+	protected long used = 0;
+
+	/**
+	 * 正在访问后端的请求
+	 */
+	protected ConcurrentHashMap<String,Flight> flights = new ConcurrentHashMap<String,Flight>();
+
+	/**
+	 * 后台刷新的线程池
+	 */
+	protected ThreadPoolExecutor refresher = null;
+
+	protected AtomicLong lookups = new AtomicLong(0);
+	protected AtomicLong hits = new AtomicLong(0);
+	protected AtomicLong stales = new AtomicLong(0);
+	protected AtomicLong coalesced = new AtomicLong(0);
+	protected AtomicLong misses = new AtomicLong(0);
+	protected AtomicLong refreshes = new AtomicLong(0);
+	protected AtomicLong evicted = new AtomicLong(0);
+	protected AtomicLong bytesSaved = new AtomicLong(0);
+	protected AtomicLong leaderFailures = new AtomicLong(0);
+
+	@Override
+	public void configure(Properties p) {
+		maxBytes = PropertiesConstants.getLong(p, "gateway.cache.maxBytes", maxBytes);
+		maxEntrySize = PropertiesConstants.getInt(p, "gateway.cache.maxEntry", maxEntrySize);
+		offHeapThreshold = PropertiesConstants.getInt(p, "gateway.cache.offHeap", offHeapThreshold);
+		waitTimeout = PropertiesConstants.getLong(p, "gateway.cache.wait", waitTimeout);
+		chunkSize = PropertiesConstants.getInt(p, "gateway.cache.chunk", chunkSize);
+		chunkSize = chunkSize <= 0 ? 64 * 1024 : chunkSize;
+		maxChunks = (int)Math.min(Integer.MAX_VALUE, Math.max(1L, maxBytes / chunkSize));
+
+		int threads = PropertiesConstants.getInt(p, "gateway.cache.refresher", 2);
+		refresher = new ThreadPoolExecutor(threads, threads, 60000L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(1024),
+				new ThreadFactory(){
+					private AtomicInteger seq = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,"gateway-cache-" + seq.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		refresher.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 查找缓存
+	 * 
+	 * <p>
+	 * 未命中时通过fetcher访问后端，并发的未命中只有一个会访问后端，该请求失败时，等待的请求得到同样的失败，
+	 * 不再各自访问后端；命中过期的响应时通过refresher在后台刷新.
+	 * 
+	 * @param key 缓存key
+	 * @param revalidate 是否忽略已缓存的响应(请求带有Cache-Control:no-cache)
+	 * @param fetcher 在当前线程访问后端
+	 * @param refresher 在后台线程访问后端，不能依赖于当前请求的上下文
+	 * @return 结果，使用完之后需要释放
+	 * @throws IOException
+	 */
+	public Result get(String key,boolean revalidate,Fetcher fetcher,Fetcher refresher) throws IOException{
+		lookups.incrementAndGet();
+		if (!revalidate){
+			Entry entry = lookup(key);
+			if (entry != null){
+				long now = System.currentTimeMillis();
+				if (now < entry.expireTime){
+					hits.incrementAndGet();
+					bytesSaved.addAndGet(entry.size);
+					return new Result(entry,Outcome.hit);
+				}
+				if (now < entry.staleTime){
+					refresh(key, refresher);
+					stales.incrementAndGet();
+					bytesSaved.addAndGet(entry.size);
+					return new Result(entry,Outcome.stale);
+				}
+				entry.release();
+			}
+		}
+
+		Flight flight = new Flight();
+		Flight found = flights.putIfAbsent(key, flight);
+		if (found != null){
+			if (found.await(waitTimeout)){
+				if (found.error != null){
+					//领头的请求失败，不再访问后端
+					leaderFailures.incrementAndGet();
+					throw new IOException("The leading request of " + key + " failed.",found.error);
+				}
+				Entry shared = found.result;
+				if (shared != null && shared.isCacheable() && shared.retain()){
+					coalesced.incrementAndGet();
+					bytesSaved.addAndGet(shared.size);
+					return new Result(shared,Outcome.coalesced);
+				}
+			}
+			//等待超时或者结果不可共享，自行访问后端
+			misses.incrementAndGet();
+			Entry entry = fetcher.fetch();
+			put(key,entry);
+			return new Result(entry,Outcome.miss);
+		}
+
+		try {
+			misses.incrementAndGet();
+			Entry entry = fetcher.fetch();
+			put(key,entry);
+			flight.result = entry;
+			return new Result(entry,Outcome.miss);
+		}catch (IOException ex){
+			flight.error = ex;
+			throw ex;
+		}catch (RuntimeException ex){
+			flight.error = ex;
+			throw ex;
+		}finally{
+			flights.remove(key, flight);
+			flight.done();
+		}
+	}
+
+	/**
+	 * 在后台刷新缓存
+	 * @param key 缓存key
+	 * @param fetcher 访问后端
+	 */
+	protected void refresh(final String key,final Fetcher fetcher){
+		final Flight flight = new Flight();
+		if (fetcher == null || flights.putIfAbsent(key, flight) != null){
+			//已经在刷新
+			return;
+		}
+		try {
+			refresher.execute(new Runnable(){
+				@Override
+				public void run() {
+					Entry entry = null;
+					try {
+						entry = fetcher.fetch();
+						put(key,entry);
+						flight.result = entry;
+						refreshes.incrementAndGet();
+					}catch (Exception ex){
+						flight.error = ex;
+						LOG.warn("Failed to refresh cache:" + key,ex);
+					}finally{
+						flights.remove(key, flight);
+						flight.done();
+						if (entry != null){
+							entry.release();
+						}
+					}
+				}
+			});
+		}catch (RejectedExecutionException ex){
+			flights.remove(key, flight);
+			flight.done();
+		}
+	}
+
+	/**
+	 * 查找未完全过期的条目
+	 * @param key 缓存key
+	 * @return 条目
+	 */
+	protected synchronized Entry lookup(String key){
+		Entry entry = entries.get(key);
+		if (entry != null && System.currentTimeMillis() >= entry.staleTime){
+			entries.remove(key);
+			used -= entry.size;
+			entry.release();
+			entry = null;
+		}
+		if (entry != null){
+			//缓存持有引用，这里总是成功
+			entry.retain();
+		}
+		return entry;
+	}
+
+	/**
+	 * 保存条目，超过容量时淘汰最近最少使用的条目
+	 * @param key 缓存key
+	 * @param entry 条目
+	 */
+	protected synchronized void put(String key,Entry entry){
+		if (entry == null || !entry.isCacheable() || !entry.retain()){
+			return;
+		}
+		Entry old = entries.put(key, entry);
+		used += entry.size - (old == null ? 0 : old.size);
+		if (old != null){
+			old.release();
+		}
+
+		Iterator<Entry> iter = entries.values().iterator();
+		while (used > maxBytes && iter.hasNext()){
+			Entry eldest = iter.next();
+			iter.remove();
+			used -= eldest.size;
+			eldest.release();
+			evicted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 根据后端的响应生成条目
+	 * 
+	 * <p>
+	 * 生成的条目由调用者持有一个引用.
+	 * 
+	 * @param resp 后端响应
+	 * @param policy 缓存策略
+	 * @return 条目
+	 * @throws IOException
+	 */
+	public Entry newEntry(Response resp,CachePolicy policy) throws IOException{
+		int status = resp.getStatusCode();
+		boolean cacheable = status == 200;
+		long ttl = policy.getTtl();
+
+		String cacheControl = resp.getHeader("Cache-Control", "");
+		for (String directive:StringUtils.split(cacheControl.toLowerCase(), ',')){
+			directive = directive.trim();
+			if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")){
+				cacheable = false;
+			}else{
+				if (directive.startsWith("max-age=")){
+					try {
+						ttl = Long.parseLong(directive.substring(8).trim()) * 1000L;
+					}catch (NumberFormatException ex){
+						// ignore
+					}
+				}
+			}
+		}
+
+		byte[] body = resp.asBytes();
+		cacheable = cacheable && ttl > 0 && body.length <= maxEntrySize;
+
+		String etag = resp.getHeader("ETag", null);
+		if (StringUtils.isEmpty(etag) && cacheable){
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+		}
+
+		Entry entry = new Entry(this);
+		entry.status = status;
+		entry.contentType = resp.getContentType();
+		entry.cacheEnable = BooleanUtils.toBoolean(resp.getHeader("Cache-Enable", "false"));
+		entry.etag = etag;
+		entry.cacheable = cacheable;
+		entry.size = body.length;
+		if (cacheable && offHeapThreshold > 0 && body.length > offHeapThreshold){
+			entry.offHeap = allocChunks(body);
+		}
+		if (entry.offHeap == null){
+			entry.body = body;
+		}
+		long now = System.currentTimeMillis();
+		entry.expireTime = now + ttl;
+		entry.staleTime = entry.expireTime + policy.getStale();
+		return entry;
+	}
+
+	/**
+	 * 从池中分配堆外内存块并写入正文
+	 * @param body 正文
+	 * @return 堆外内存块，块已用尽时返回null
+	 */
+	protected ByteBuffer[] allocChunks(byte[] body){
+		int count = (body.length + chunkSize - 1) / chunkSize;
+		ByteBuffer[] buffers = new ByteBuffer[count];
+		for (int i = 0 ; i < count ; i ++){
+			ByteBuffer buffer = idleChunks.poll();
+			if (buffer == null){
+				if (chunks.incrementAndGet() > maxChunks){
+					chunks.decrementAndGet();
+					freeChunks(buffers);
+					return null;
+				}
+				buffer = ByteBuffer.allocateDirect(chunkSize);
+			}
+			int offset = i * chunkSize;
+			buffer.clear();
+			buffer.put(body, offset, Math.min(chunkSize, body.length - offset));
+			buffer.flip();
+			buffers[i] = buffer;
+		}
+		return buffers;
+	}
+
+	/**
+	 * 将堆外内存块归还到池中
+	 * @param buffers 堆外内存块
+	 */
+	protected void freeChunks(ByteBuffer[] buffers){
+		for (ByteBuffer buffer:buffers){
+			if (buffer != null){
+				idleChunks.offer(buffer);
+			}
+		}
+	}
+
+	/**
+	 * 获取命中率(包括过期命中和合并的请求)
+	 * @return 命中率
+	 */
+	public double getHitRatio(){
+		long total = lookups.get();
+		return total <= 0 ? 0.0 : (double)(hits.get() + stales.get() + coalesced.get()) / total;
+	}
+
+	/**
+	 * 获取节省的后端流量(字节)
+	 * @return 节省的字节数
+	 */
+	public long getBytesSaved(){
+		return bytesSaved.get();
+	}
+
+	public void close(){
+		if (refresher != null){
+			refresher.shutdown();
+		}
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			synchronized (this){
+				XmlTools.setInt(xml, "entries", entries.size());
+				XmlTools.setLong(xml, "used", used);
+			}
+			XmlTools.setLong(xml, "maxBytes", maxBytes);
+			XmlTools.setLong(xml, "lookups", lookups.get());
+			XmlTools.setLong(xml, "hits", hits.get());
+			XmlTools.setLong(xml, "stales", stales.get());
+			XmlTools.setLong(xml, "coalesced", coalesced.get());
+			XmlTools.setLong(xml, "misses", misses.get());
+			XmlTools.setLong(xml, "refreshes", refreshes.get());
+			XmlTools.setLong(xml, "evicted", evicted.get());
+			XmlTools.setLong(xml, "bytesSaved", bytesSaved.get());
+			XmlTools.setLong(xml, "leaderFailures", leaderFailures.get());
+			XmlTools.setInt(xml, "chunkSize", chunkSize);
+			XmlTools.setInt(xml, "chunks", chunks.get());
+			XmlTools.setInt(xml, "maxChunks", maxChunks);
+			XmlTools.setDouble(xml, "hitRatio", getHitRatio());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			synchronized (this){
+				JsonTools.setInt(json, "entries", entries.size());
+				JsonTools.setLong(json, "used", used);
+			}
+			JsonTools.setLong(json, "maxBytes", maxBytes);
+			JsonTools.setLong(json, "lookups", lookups.get());
+			JsonTools.setLong(json, "hits", hits.get());
+			JsonTools.setLong(json, "stales", stales.get());
+			JsonTools.setLong(json, "coalesced", coalesced.get());
+			JsonTools.setLong(json, "misses", misses.get());
+			JsonTools.setLong(json, "refreshes", refreshes.get());
+			JsonTools.setLong(json, "evicted", evicted.get());
+			JsonTools.setLong(json, "bytesSaved", bytesSaved.get());
+			JsonTools.setLong(json, "leaderFailures", leaderFailures.get());
+			JsonTools.setInt(json, "chunkSize", chunkSize);
+			JsonTools.setInt(json, "chunks", chunks.get());
+			JsonTools.setInt(json, "maxChunks", maxChunks);
+			JsonTools.setDouble(json, "hitRatio", getHitRatio());
+		}
+	}
+
+	@Override
+	public void report(MetricsCollector collector) {
+		if (collector != null){
+			Fragment f = new DefaultFragment(METRICS_ID);
+			Measures meas = f.getMeasures();
+			if (meas != null){
+				synchronized (this){
+					meas.set("entries", entries.size(), Method.avg);
+					meas.set("used", used, Method.avg);
+				}
+				meas.set("lookups", lookups.get(), Method.lst);
+				meas.set("hits", hits.get(), Method.lst);
+				meas.set("stales", stales.get(), Method.lst);
+				meas.set("coalesced", coalesced.get(), Method.lst);
+				meas.set("misses", misses.get(), Method.lst);
+				meas.set("evicted", evicted.get(), Method.lst);
+				meas.set("bytesSaved", bytesSaved.get(), Method.lst);
+				meas.set("leaderFailures", leaderFailures.get(), Method.lst);
+				meas.set("chunks", chunks.get(), Method.avg);
+				meas.set("hitRatio", getHitRatio(), Method.lst);
+			}
+			collector.metricsIncr(f);
+		}
+	}
+
+	/**
+	 * 访问后端，生成条目
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.85
+	 */
+	public static interface Fetcher {
+		/**
+		 * 访问后端
+		 * @return 条目
+		 * @throws IOException
+		 */
+		public Entry fetch() throws IOException;
+	}
+
+	/**
+	 * 查找结果
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.85
+	 */
+	public static class Result {
+		protected Entry entry;
+		protected Outcome outcome;
+
+		public Result(Entry entry,Outcome outcome){
+			this.entry = entry;
+			this.outcome = outcome;
+		}
+
+		public Entry getEntry(){
+			return entry;
+		}
+
+		public Outcome getOutcome(){
+			return outcome;
+		}
+
+		/**
+		 * 释放结果所持有的条目
+		 */
+		public void release(){
+			Entry e = entry;
+			entry = null;
+			if (e != null){
+				e.release();
+			}
+		}
+	}
+
+	/**
+	 * 缓存的响应
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.85
+	 */
+	public static class Entry {
+		protected int status;
+		protected String contentType;
+		protected boolean cacheEnable = false;
+		protected String etag;
+		protected boolean cacheable = false;
+		protected byte[] body = null;
+		protected ByteBuffer[] offHeap = null;
+		protected int size = 0;
+		protected long expireTime = 0;
+		protected long staleTime = 0;
+
+		/**
+		 * 引用计数，归零时归还堆外内存
+		 */
+		protected AtomicInteger refs = new AtomicInteger(1);
+
+		/**
+		 * 所属的缓存
+		 */
+		protected ResponseCache owner;
+
+		public Entry(ResponseCache owner){
+			this.owner = owner;
+		}
+
+		/**
+		 * 增加引用
+		 * @return 是否成功，条目已经释放时返回false
+		 */
+		public boolean retain(){
+			int current;
+			do {
+				current = refs.get();
+				if (current <= 0){
+					return false;
+				}
+			}while (!refs.compareAndSet(current, current + 1));
+			return true;
+		}
+
+		/**
+		 * 释放引用
+		 */
+		public void release(){
+			if (refs.decrementAndGet() == 0 && offHeap != null){
+				ByteBuffer[] buffers = offHeap;
+				offHeap = null;
+				if (owner != null){
+					owner.freeChunks(buffers);
+				}
+			}
+		}
+
+		public int getStatus(){
+			return status;
+		}
+
+		public String getContentType(){
+			return contentType;
+		}
+
+		public boolean isCacheEnable(){
+			return cacheEnable;
+		}
+
+		public String getETag(){
+			return etag;
+		}
+
+		public boolean isCacheable(){
+			return cacheable;
+		}
+
+		public int getSize(){
+			return size;
+		}
+
+		public long getExpireTime(){
+			return expireTime;
+		}
+
+		/**
+		 * 输出正文
+		 * @param out 输出流
+		 * @param pool 缓冲区池，用于输出堆外的正文
+		 * @throws IOException
+		 */
+		public void writeTo(OutputStream out,BufferPool pool) throws IOException{
+			if (body != null){
+				out.write(body);
+				return;
+			}
+			ByteBuffer[] buffers = offHeap;
+			if (buffers != null){
+				byte[] buffer = pool.borrow();
+				try {
+					for (ByteBuffer chunk:buffers){
+						ByteBuffer data = chunk.duplicate();
+						while (data.hasRemaining()){
+							int length = Math.min(buffer.length, data.remaining());
+							data.get(buffer, 0, length);
+							out.write(buffer, 0, length);
+						}
+					}
+				}finally{
+					pool.giveBack(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 正在访问后端的请求
+	 */
+	protected static class Flight {
+		protected volatile Entry result = null;
+		protected volatile Throwable error = null;
+		protected CountDownLatch latch = new CountDownLatch(1);
+
+		protected boolean await(long timeout){
+			try {
+				return latch.await(timeout, TimeUnit.MILLISECONDS);
+			}catch (InterruptedException ex){
+				Thread.currentThread().interrupt();
+			}
+			return false;
+		}
+
+		protected void done(){
+			latch.countDown();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.alogic.gw;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.alogic.metrics.Dimensions;
+import com.alogic.metrics.Fragment;
+import com.alogic.metrics.Fragment.Method;
+import com.alogic.metrics.Measures;
+import com.alogic.metrics.impl.DefaultFragment;
+import com.alogic.metrics.stream.MetricsCollector;
+import com.alogic.metrics.stream.MetricsReportable;
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 网关路由的在途统计
+ * 
+ * <p>
+ * 按开放服务id统计在途的调用数、峰值、调用次数、拒绝次数、错误次数、转发字节数和累计时长，
+ * 同时作为背压的控制点：当单个路由的在途调用数超过maxInFlight，或者全部在途调用数超过maxTotal时，
+ * {@link #enter(String)}返回null，由调用者直接拒绝请求.
+ * 
+ * @author duanyy
+ * @since 1.6.11.84
+ */
+public class RouteMetrics implements Reportable,MetricsReportable{
+
+	/**
+	 * 指标id
+	 */
+	public static final String METRICS_ID = "gw.route";
+
+	/**
+	 * 单个路由的最大在途调用数，小于等于0表示不限制
+	 */
+	protected int maxInFlight = 0;
+
+	/**
+	 * 全部路由的最大在途调用数，小于等于0表示不限制
+	 */
+	protected int maxTotal = 0;
+
+	/**
+	 * 全部路由的在途调用数
+	 */
+	protected AtomicInteger total = new AtomicInteger(0);
+
+	/**
+	 * 路由列表
+	 */
+	protected ConcurrentHashMap<String,Route> routes = new ConcurrentHashMap<String,Route>();
+
+	public RouteMetrics(int maxInFlight,int maxTotal){
+		this.maxInFlight = maxInFlight;
+		this.maxTotal = maxTotal;
+	}
+
+	/**
+	 * 开始调用
+	 * @param id 路由id
+	 * @return 路由，当超过在途限制时返回null
+	 */
+	public Route enter(String id){
+		Route route = routes.get(id);
+		if (route == null){
+			route = new Route(id);
+			Route found = routes.putIfAbsent(id, route);
+			if (found != null){
+				route = found;
+			}
+		}
+
+		int current = total.incrementAndGet();
+		if (maxTotal > 0 && current > maxTotal){
+			total.decrementAndGet();
+			route.rejected.incrementAndGet();
+			return null;
+		}
+		if (!route.enter(maxInFlight)){
+			total.decrementAndGet();
+			return null;
+		}
+		return route;
+	}
+
+	/**
+	 * 结束调用
+	 * @param route 路由
+	 * @param bytes 转发的字节数
+	 * @param duration 时长(ms)
+	 * @param ok 是否成功
+	 */
+	public void leave(Route route,long bytes,long duration,boolean ok){
+		if (route != null){
+			route.leave(bytes, duration, ok);
+			total.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 获取全部路由的在途调用数
+	 * @return 在途调用数
+	 */
+	public int getInFlight(){
+		return total.get();
+	}
+
+	/**
+	 * 获取路由
+	 * @param id 路由id
+	 * @return 路由，不存在时返回null
+	 */
+	public Route getRoute(String id){
+		return routes.get(id);
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setInt(xml,"maxInFlight",maxInFlight);
+			XmlTools.setInt(xml,"maxTotal",maxTotal);
+			XmlTools.setInt(xml,"inFlight",total.get());
+
+			Document doc = xml.getOwnerDocument();
+			for (Route route:routes.values()){
+				Element elem = doc.createElement("route");
+				route.report(elem);
+				xml.appendChild(elem);
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setInt(json,"maxInFlight",maxInFlight);
+			JsonTools.setInt(json,"maxTotal",maxTotal);
+			JsonTools.setInt(json,"inFlight",total.get());
+
+			List<Object> list = new ArrayList<Object>();
+			for (Route route:routes.values()){
+				Map<String,Object> map = new HashMap<String,Object>();
+				route.report(map);
+				list.add(map);
+			}
+			json.put("route", list);
+		}
+	}
+
+	@Override
+	public void report(MetricsCollector collector) {
+		if (collector != null){
+			for (Route route:routes.values()){
+				route.report(collector);
+			}
+		}
+	}
+
+	/**
+	 * 路由的统计
+	 * 
+	 * @author duanyy
+	 * @since 1.6.11.84
+	 */
+	public static class Route implements Reportable,MetricsReportable{
+		protected String id;
+		protected AtomicInteger inFlight = new AtomicInteger(0);
+		protected AtomicInteger peak = new AtomicInteger(0);
+		protected AtomicLong requests = new AtomicLong(0);
+		protected AtomicLong rejected = new AtomicLong(0);
+		protected AtomicLong errors = new AtomicLong(0);
+		protected AtomicLong bytes = new AtomicLong(0);
+		protected AtomicLong duration = new AtomicLong(0);
+
+		public Route(String id){
+			this.id = id;
+		}
+
+		public String getId(){
+			return id;
+		}
+
+		public int getInFlight(){
+			return inFlight.get();
+		}
+
+		public int getPeak(){
+			return peak.get();
+		}
+
+		public long getRejected(){
+			return rejected.get();
+		}
+
+		protected boolean enter(int max){
+			int current = inFlight.incrementAndGet();
+			if (max > 0 && current > max){
+				inFlight.decrementAndGet();
+				rejected.incrementAndGet();
+				return false;
+			}
+			requests.incrementAndGet();
+			int old = peak.get();
+			while (current > old && !peak.compareAndSet(old, current)){
+				old = peak.get();
+			}
+			return true;
+		}
+
+		protected void leave(long size,long cost,boolean ok){
+			inFlight.decrementAndGet();
+			bytes.addAndGet(size);
+			duration.addAndGet(cost);
+			if (!ok){
+				errors.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void report(Element xml) {
+			if (xml != null){
+				XmlTools.setString(xml,"id",id);
+				XmlTools.setInt(xml,"inFlight",inFlight.get());
+				XmlTools.setInt(xml,"peak",peak.get());
+				XmlTools.setLong(xml,"requests",requests.get());
+				XmlTools.setLong(xml,"rejected",rejected.get());
+				XmlTools.setLong(xml,"errors",errors.get());
+				XmlTools.setLong(xml,"bytes",bytes.get());
+				XmlTools.setLong(xml,"duration",duration.get());
+			}
+		}
+
+		@Override
+		public void report(Map<String, Object> json) {
+			if (json != null){
+				JsonTools.setString(json,"id",id);
+				JsonTools.setInt(json,"inFlight",inFlight.get());
+				JsonTools.setInt(json,"peak",peak.get());
+				JsonTools.setLong(json,"requests",requests.get());
+				JsonTools.setLong(json,"rejected",rejected.get());
+				JsonTools.setLong(json,"errors",errors.get());
+				JsonTools.setLong(json,"bytes",bytes.get());
+				JsonTools.setLong(json,"duration",duration.get());
+			}
+		}
+
+		@Override
+		public void report(MetricsCollector collector) {
+			if (collector != null){
+				Fragment f = new DefaultFragment(METRICS_ID);
+				Dimensions dims = f.getDimensions();
+				if (dims != null){
+					dims.set("route", id, true);
+				}
+				Measures meas = f.getMeasures();
+				if (meas != null){
+					meas.set("inFlight", inFlight.get(), Method.avg);
+					meas.set("peak", peak.get(), Method.max);
+					meas.set("requests", requests.get(), Method.lst);
+					meas.set("rejected", rejected.get(), Method.lst);
+					meas.set("errors", errors.get(), Method.lst);
+				}
+				collector.metricsIncr(f);
+			}
+		}
+	}
+}
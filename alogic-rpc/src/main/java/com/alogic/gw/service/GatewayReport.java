@@ -0,0 +1,64 @@
+package com.alogic.gw.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.alogic.gw.GatewayHandler;
+import com.logicbus.backend.AbstractServant;
+import com.logicbus.backend.Context;
+import com.logicbus.backend.ServantException;
+import com.logicbus.backend.message.JsonMessage;
+import com.logicbus.backend.message.XMLMessage;
+import com.logicbus.models.servant.ServiceDescription;
+
+/**
+ * 网关报告
+ *
+ * <p>
+ * 输出网关的运行状况，包括各路由的在途调用数，缓冲区池和响应缓存的统计等；本服务只读，网关的指标由网关按gateway.metrics.interval定时输出.
+ *
+ * @author duanyy
+ * @since 1.6.11.84
+ */
+public class GatewayReport extends AbstractServant{
+
+	protected void onDestroy() {
+		// nothing to do
+	}
+
+	protected void onCreate(ServiceDescription sd) throws ServantException{
+		// nothing to do
+	}
+
+	protected int onXml(Context ctx) {
+		XMLMessage msg = (XMLMessage) ctx.asMessage(XMLMessage.class);
+
+		GatewayHandler gateway = GatewayHandler.get();
+		if (gateway != null){
+			Element root = msg.getRoot();
+			Document doc = root.getOwnerDocument();
+
+			Element e = doc.createElement("gateway");
+			gateway.report(e);
+			root.appendChild(e);
+		}
+		return 0;
+	}
+
+	protected int onJson(Context ctx) {
+		JsonMessage msg = (JsonMessage)ctx.asMessage(JsonMessage.class);
+
+		GatewayHandler gateway = GatewayHandler.get();
+		if (gateway != null){
+			Map<String,Object> root = msg.getRoot();
+
+			Map<String,Object> map = new HashMap<String,Object>();
+			gateway.report(map);
+			root.put("gateway", map);
+		}
+		return 0;
+	}
+}
@@ -1,9 +1,11 @@
 package com.alogic.remote;
 
+import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import com.alogic.remote.attempt.Failfast;
 import com.alogic.remote.backend.Backend;
@@ -25,6 +27,10 @@ import com.anysoft.util.Factory;
  * 虚基类
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 调用结果同时反馈给Attempt，用于熔断 <br>
+ * - report中输出负载均衡和Attempt(含各节点熔断状态及重试预算)的信息 <br>
  */
 public abstract class AbstractClient implements Client {
 	/**
@@ -64,14 +70,38 @@ public abstract class AbstractClient implements Client {
 	
 	@Override
 	public Backend getBackend(String key,Properties p,long tryTimes){		
+		String app = PropertiesConstants.getString(p,"$app",dftAppId,true);
+		return attempt.getBackend(getRoute(p), loadBalance, app, key, p, tryTimes);
+	}
+	
+	@Override
+	public Backend autoRetry(String key,Properties p){
+		String app = PropertiesConstants.getString(p,"$app",dftAppId,true);
+		return attempt.autoRetry(getRoute(p), loadBalance, app, key, p);
+	}
+	
+	/**
+	 * 获取路由策略
+	 * @param p 环境变量
+	 * @return 路由策略
+	 */
+	protected Route getRoute(Properties p){
 		String routeId = PropertiesConstants.getString(p,"$route",dftRouteId,true);
 		Route route = cluster.getRoute(routeId);
 		if (route == null){
 			throw new CallException("core.e1003","Can not find the route,id=" + routeId);
 		}
-		
-		String app = PropertiesConstants.getString(p,"$app",dftAppId,true);
-		return attempt.getBackend(route, loadBalance, app, key, p, tryTimes);
+		return route;
+	}
+	
+	@Override
+	public void count(Backend backend,long duration,boolean error){
+		if (backend != null){
+			backend.count(duration, error);
+			if (attempt != null){
+				attempt.count(backend, duration, error);
+			}
+		}
 	}
 	
 	public String getInvokeURL(Backend backend,String path){
@@ -90,6 +120,15 @@ public abstract class AbstractClient implements Client {
 	public void report(Element xml) {
 		if (xml != null){
 			XmlTools.setString(xml, "module", getClass().getName());
+			if (loadBalance != null){
+				XmlTools.setString(xml, "loadbalance", loadBalance.getClass().getName());
+			}
+			if (attempt != null){
+				Document doc = xml.getOwnerDocument();
+				Element e = doc.createElement("attempt");
+				attempt.report(e);
+				xml.appendChild(e);
+			}
 		}
 	}
 
@@ -97,6 +136,14 @@ public abstract class AbstractClient implements Client {
 	public void report(Map<String, Object> json) {
 		if (json != null){
 			JsonTools.setString(json, "module", getClass().getName());
+			if (loadBalance != null){
+				JsonTools.setString(json, "loadbalance", loadBalance.getClass().getName());
+			}
+			if (attempt != null){
+				Map<String,Object> map = new HashMap<String,Object>();
+				attempt.report(map);
+				json.put("attempt", map);
+			}
 		}
 	}
 
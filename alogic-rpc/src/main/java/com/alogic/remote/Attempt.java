@@ -1,21 +1,33 @@
 package com.alogic.remote;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.alogic.remote.attempt.CircuitBreaker;
 import com.alogic.remote.backend.Backend;
 import com.alogic.remote.route.Route;
 import com.alogic.rpc.CallException;
+import com.anysoft.loadbalance.LatencyCounter;
 import com.anysoft.loadbalance.LoadBalance;
+import com.anysoft.loadbalance.LoadCounter;
 import com.anysoft.util.Configurable;
 import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
 import com.anysoft.util.Reportable;
+import com.anysoft.util.Settings;
 import com.anysoft.util.XMLConfigurable;
 import com.anysoft.util.XmlElementProperties;
 import com.anysoft.util.XmlTools;
@@ -24,6 +36,10 @@ import com.anysoft.util.XmlTools;
  * 尝试接口
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 增加{@link #count(Backend, long, boolean)}，接收调用结果的反馈 <br>
+ * - 为每个后端节点维护熔断器，选择节点之前摘除熔断的节点 <br>
  */
 public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 	
@@ -40,10 +56,51 @@ public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 	 */
 	public Backend getBackend(Route route,LoadBalance<Backend> lb,String app,String key,Properties p,long tryTimes);
 	
+	/**
+	 * 为自动重试获取后端节点
+	 * 
+	 * <p>
+	 * 自动重试是指连接类错误(core.e1602,core.e1603,core.e1604)之后的重试，不计入已经重试的次数，
+	 * 但和普通的重试一样需要消耗重试预算.
+	 * 
+	 * @param route 路由策略
+	 * @param lb 负载均衡策略
+	 * @param app 应用id
+	 * @param key 关键字
+	 * @param p 变量集
+	 * @return 可用的后端节点，不允许重试时返回null
+	 * 
+	 * @since 1.6.11.87
+	 */
+	public Backend autoRetry(Route route,LoadBalance<Backend> lb,String app,String key,Properties p);
+	
+	/**
+	 * 反馈后端节点的调用结果
+	 * 
+	 * @param backend 后端节点
+	 * @param duration 调用时长(ns)
+	 * @param error 是否错误
+	 * 
+	 * @since 1.6.11.87
+	 */
+	public void count(Backend backend,long duration,boolean error);
+	
 	/**
 	 * 虚基类
+	 * 
+	 * <p>
+	 * 为每个后端节点维护一个{@link CircuitBreaker}，选择节点之前先摘除熔断的节点(outlier ejection)，
+	 * 但被摘除的节点不超过总数的rpc.ketty.cb.maxEjection(百分比，缺省为50)，超过部分按照恢复时间由近到远重新加入.
+	 * 只要rpc.ketty.cb.maxEjection大于0，至少允许摘除一个节点，因此只有一个节点时，该节点熔断之后调用快速失败.
+	 * 可通过rpc.ketty.cb.enable关闭熔断，缺省为true.
+	 * 
+	 * <p>
+	 * 超过rpc.ketty.cb.idleTime(ms，缺省为600000)没有被访问的熔断器会被清除，以便释放已经下线的节点.
+	 * 
 	 * @author yyduan
 	 *
+	 * @version 1.6.11.87 [20181101 duanyy] <br>
+	 * - 增加熔断和节点摘除 <br>
 	 */
 	public abstract static class Abstract implements Attempt{
 		/**
@@ -51,10 +108,61 @@ public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 		 */
 		protected static final Logger LOG = LoggerFactory.getLogger(Attempt.class);
 		
+		/**
+		 * 是否启用熔断
+		 */
+		protected boolean cbEnable = true;
+		
+		/**
+		 * 最多摘除的节点比例(百分比)
+		 */
+		protected int maxEjection = 50;
+		
+		/**
+		 * 熔断器的配置
+		 */
+		protected Properties cbProps = null;
+		
+		/**
+		 * 各后端节点的熔断器
+		 */
+		protected Map<String,CircuitBreaker> breakers = new ConcurrentHashMap<String,CircuitBreaker>();
+		
+		/**
+		 * 熔断器的最大空闲时间(ms)
+		 */
+		protected long idleTime = 10 * 60 * 1000L;
+		
+		/**
+		 * 上次清除空闲熔断器的时间
+		 */
+		protected AtomicLong lastPrune = new AtomicLong(System.currentTimeMillis());
+		
+		/**
+		 * 因超过最大摘除比例而重新加入的次数
+		 */
+		protected AtomicLong readmitted = new AtomicLong(0);
+		
+		/**
+		 * 所有节点均被摘除而快速失败的次数
+		 */
+		protected AtomicLong rejected = new AtomicLong(0);
+		
 		@Override
 		public void report(Element xml) {
 			if (xml != null){
 				XmlTools.setString(xml, "module", getClass().getName());
+				XmlTools.setBoolean(xml, "cbEnable", cbEnable);
+				XmlTools.setInt(xml, "maxEjection", maxEjection);
+				XmlTools.setLong(xml, "readmitted", readmitted.get());
+				XmlTools.setLong(xml, "rejected", rejected.get());
+				
+				Document doc = xml.getOwnerDocument();
+				for (CircuitBreaker cb:breakers.values()){
+					Element e = doc.createElement("backend");
+					cb.report(e);
+					xml.appendChild(e);
+				}
 			}
 		}
 
@@ -62,9 +170,124 @@ public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 		public void report(Map<String, Object> json) {
 			if (json != null){
 				JsonTools.setString(json,"module",getClass().getName());
+				JsonTools.setBoolean(json, "cbEnable", cbEnable);
+				JsonTools.setInt(json, "maxEjection", maxEjection);
+				JsonTools.setLong(json, "readmitted", readmitted.get());
+				JsonTools.setLong(json, "rejected", rejected.get());
+				
+				List<Object> list = new ArrayList<Object>();
+				for (CircuitBreaker cb:breakers.values()){
+					Map<String,Object> map = new HashMap<String,Object>();
+					cb.report(map);
+					list.add(map);
+				}
+				json.put("backend", list);
 			}
 		}
 		
+		@Override
+		public void configure(Properties p) {
+			cbEnable = PropertiesConstants.getBoolean(p,"rpc.ketty.cb.enable",cbEnable);
+			maxEjection = PropertiesConstants.getInt(p,"rpc.ketty.cb.maxEjection",maxEjection);
+			idleTime = PropertiesConstants.getLong(p,"rpc.ketty.cb.idleTime",idleTime);
+			cbProps = p;
+		}
+		
+		@Override
+		public void count(Backend backend,long duration,boolean error){
+			if (cbEnable && backend != null){
+				getCircuitBreaker(backend).record(duration / 1000000L, error, System.currentTimeMillis());
+			}
+		}
+		
+		/**
+		 * 获取后端节点的熔断器
+		 * @param backend 后端节点
+		 * @return 熔断器
+		 */
+		protected CircuitBreaker getCircuitBreaker(Backend backend){
+			String id = backend.getId();
+			CircuitBreaker found = breakers.get(id);
+			if (found == null){
+				synchronized (breakers){
+					found = breakers.get(id);
+					if (found == null){
+						found = new CircuitBreaker(id,cbProps == null ? Settings.get() : cbProps);
+						breakers.put(id, found);
+					}
+				}
+			}
+			found.touch(System.currentTimeMillis());
+			return found;
+		}
+		
+		/**
+		 * 清除长时间没有被访问的熔断器
+		 * 
+		 * <p>
+		 * 路由中的节点在每次选择时都会访问其熔断器，长时间没有被访问说明节点已经下线.
+		 * 
+		 * @param now 当前时间
+		 */
+		protected void prune(long now){
+			long last = lastPrune.get();
+			if (idleTime <= 0 || now - last < idleTime || !lastPrune.compareAndSet(last, now)){
+				return;
+			}
+			Iterator<CircuitBreaker> iter = breakers.values().iterator();
+			while (iter.hasNext()){
+				if (now - iter.next().getLastAccess() > idleTime){
+					iter.remove();
+				}
+			}
+		}
+		
+		/**
+		 * 摘除熔断的节点
+		 * 
+		 * @param backends 候选节点
+		 * @param now 当前时间
+		 * @return 摘除之后的节点
+		 */
+		protected List<Backend> eject(List<Backend> backends,long now){
+			List<Backend> available = new ArrayList<Backend>(backends.size());
+			List<Backend> ejected = null;
+			for (Backend b:backends){
+				if (getCircuitBreaker(b).isAvailable(now)){
+					available.add(b);
+				}else{
+					if (ejected == null){
+						ejected = new ArrayList<Backend>();
+					}
+					ejected.add(b);
+				}
+			}
+			
+			if (ejected == null){
+				return backends;
+			}
+			
+			//只要允许摘除，至少可以摘除一个节点
+			int maxEjected = maxEjection <= 0 ? 0 : Math.max(1, backends.size() * maxEjection / 100);
+			if (ejected.size() > maxEjected){
+				//超过最大摘除比例，按照恢复时间由近到远重新加入
+				Collections.sort(ejected, new Comparator<Backend>(){
+					@Override
+					public int compare(Backend o1, Backend o2) {
+						long t1 = getCircuitBreaker(o1).getOpenUntil();
+						long t2 = getCircuitBreaker(o2).getOpenUntil();
+						return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+					}
+				});
+				Iterator<Backend> iter = ejected.iterator();
+				for (int i = ejected.size() - maxEjected ; i > 0 && iter.hasNext() ; i --){
+					available.add(iter.next());
+				}
+				readmitted.incrementAndGet();
+			}
+			return available;
+		}
+		
 		@Override
 		public void configure(Element e, Properties p) {
 			Properties props = new XmlElementProperties(e,p);
@@ -80,6 +303,11 @@ public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 			}
 		}
 		
+		@Override
+		public Backend autoRetry(Route route,LoadBalance<Backend> lb,String app,String key,Properties p){
+			return selectBackend(route,lb,app,key,p,false);
+		}
+		
 		protected Backend selectBackend(Route route,LoadBalance<Backend> lb,String app,String key,Properties p,boolean excludeNotValid){	
 			List<Backend> backends = route.select(app, p);
 			if (backends == null){
@@ -99,12 +327,35 @@ public interface Attempt extends Reportable,Configurable,XMLConfigurable{
 				}
 			}
 			
-			Backend backend = lb.select(key, p, list);
-			if (backend == null){
-				throw new CallException("core.e1600","Can not find valid backends,Not all backends is valid");
+			long now = System.currentTimeMillis();
+			if (cbEnable){
+				prune(now);
+				list = eject(list, now);
 			}
 			
-			return backend;
+			while (true){
+				if (list.isEmpty()){
+					rejected.incrementAndGet();
+					throw new CallException("core.e1600","Can not find valid backends,All backends are ejected by circuit breaker");
+				}
+				
+				Backend backend = lb.select(key, p, list);
+				if (backend == null){
+					throw new CallException("core.e1600","Can not find valid backends,Not all backends is valid");
+				}
+				
+				if (!cbEnable || getCircuitBreaker(backend).onSelected(now)){
+					return backend;
+				}
+				
+				//半开状态的探测名额已经被其他调用占用，归还负载均衡登记的在途数，在其余节点中重新选择
+				LoadCounter counter = backend.getCounter(false);
+				if (counter instanceof LatencyCounter){
+					((LatencyCounter)counter).exit();
+				}
+				list = new ArrayList<Backend>(list);
+				list.remove(backend);
+			}
 		}
 		
 		public abstract Backend retry(Route route,LoadBalance<Backend> lb,String app, String key, Properties p, long tryTimes);
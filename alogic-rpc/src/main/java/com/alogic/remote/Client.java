@@ -11,6 +11,10 @@ import com.anysoft.util.XMLConfigurable;
  *
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 增加{@link #count(Backend, long, boolean)}，反馈后端节点的调用结果 <br>
+ * - 增加{@link #autoRetry(String, Properties)}，自动重试也需要消耗重试预算 <br>
  */
 public interface Client extends Reportable,Configurable,XMLConfigurable{
 	
@@ -29,4 +33,22 @@ public interface Client extends Reportable,Configurable,XMLConfigurable{
 	 * @return 可用的后端节点
 	 */
 	public Backend getBackend(String key,Properties p,long tryTimes);
+	
+	/**
+	 * 为连接类错误的自动重试获取后端节点，自动重试不计入重试次数，但需要消耗重试预算
+	 * @param key 服务调用的关键字
+	 * @param p 环境变量
+	 * @return 可用的后端节点，不允许重试时返回null
+	 * 
+	 * @since 1.6.11.87
+	 */
+	public Backend autoRetry(String key,Properties p);
+	
+	/**
+	 * 反馈后端节点的调用结果，用于负载均衡和熔断
+	 * @param backend 后端节点
+	 * @param duration 调用时长(ns)
+	 * @param error 是否错误
+	 */
+	public void count(Backend backend,long duration,boolean error);
 }
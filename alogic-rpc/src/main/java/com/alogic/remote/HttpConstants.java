@@ -25,6 +25,8 @@ public final class HttpConstants {
     public static final String SERVER_HEADER = "Server";
     
     public static final int E404 = 404;
+    public static final int E503 = 503;
+    public static final int E504 = 504;
     
     private HttpConstants() {
     }
@@ -13,6 +13,9 @@ import com.anysoft.util.Properties;
  * 
  * @version 1.6.8.15 [20170511 duanyy] <br>
  * - 增加绝对路径调用功能 <br>
+ * 
+ * @version 1.6.11.84 [20181029 duanyy] <br>
+ * - 增加{@link #abort()}，用于中止超时的调用 <br>
  */
 public interface Request extends AutoCloseable{
 	/**
@@ -60,6 +63,16 @@ public interface Request extends AutoCloseable{
 	 * 执行调用，获取响应
 	 */
 	public Response execute(String fullPath);
+	
+	/**
+	 * 中止调用
+	 * 
+	 * <p>
+	 * 可以在其他线程中调用，正在执行和尚未开始的调用都将失败，并且不再重试.
+	 * 
+	 * @since 1.6.11.84
+	 */
+	public void abort();
 		
 	/**
 	 * 输出流直接输出
@@ -0,0 +1,317 @@
+package com.alogic.remote.attempt;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 后端节点的熔断器
+ * 
+ * <p>
+ * 熔断器有三种状态：<br>
+ * - closed:正常状态，在最近window次调用的滑动窗口中统计错误率和慢调用比例，当调用次数达到minCalls且错误率或慢调用比例
+ * 超过阈值，或者连续错误次数达到consecutive时，转为open; <br>
+ * - open:节点被摘除(ejection)，在openTime之后转为halfOpen.同一节点连续被摘除时，摘除时间按指数递增，最长为maxOpenTime; <br>
+ * - halfOpen:最多允许halfOpen个探测调用，全部成功则转为closed，任何一个失败或者慢调用则重新转为open. <br>
+ * 
+ * <p>
+ * 参数：<br>
+ * - rpc.ketty.cb.window:滑动窗口的大小，缺省为20 <br>
+ * - rpc.ketty.cb.minCalls:开始计算比例的最少调用次数，缺省为10 <br>
+ * - rpc.ketty.cb.errorRate:错误率阈值，缺省为0.5 <br>
+ * - rpc.ketty.cb.slowCall:慢调用的时长阈值(ms)，缺省为5000 <br>
+ * - rpc.ketty.cb.slowRate:慢调用比例阈值，缺省为0.8 <br>
+ * - rpc.ketty.cb.consecutive:连续错误次数阈值，缺省为5 <br>
+ * - rpc.ketty.cb.openTime:摘除时间(ms)，缺省为10000 <br>
+ * - rpc.ketty.cb.maxOpenTime:最长摘除时间(ms)，缺省为300000 <br>
+ * - rpc.ketty.cb.halfOpen:半开状态下的探测调用次数，缺省为3 <br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.87
+ */
+public class CircuitBreaker implements Reportable{
+
+	/**
+	 * 熔断器状态
+	 */
+	public static enum State {
+		closed,open,halfOpen
+	}
+
+	/**
+	 * 后端节点id
+	 */
+	protected String id;
+
+	protected int window = 20;
+	protected int minCalls = 10;
+	protected double errorRate = 0.5;
+	protected long slowCall = 5000;
+	protected double slowRate = 0.8;
+	protected int consecutive = 5;
+	protected long openTime = 10000;
+	protected long maxOpenTime = 300000;
+	protected int halfOpen = 3;
+
+	/**
+	 * 当前状态
+	 */
+	protected volatile State state = State.closed;
+
+	/**
+	 * 当前状态的开始时间
+	 */
+	protected volatile long stateTime = System.currentTimeMillis();
+
+	/**
+	 * open状态的结束时间
+	 */
+	protected volatile long openUntil = 0;
+
+	/**
+	 * 滑动窗口,0-成功,1-错误,2-慢调用
+	 */
+	protected byte[] outcomes = null;
+	protected int pos = 0;
+	protected int calls = 0;
+	protected int errors = 0;
+	protected int slows = 0;
+	protected int consecutiveErrors = 0;
+
+	/**
+	 * 连续被摘除的次数
+	 */
+	protected int ejections = 0;
+
+	/**
+	 * 半开状态下已经放行的探测调用
+	 */
+	protected AtomicInteger probes = new AtomicInteger(0);
+
+	/**
+	 * 半开状态下成功的探测调用
+	 */
+	protected int probeSuccesses = 0;
+
+	/**
+	 * 累计被摘除的次数
+	 */
+	protected AtomicLong totalEjections = new AtomicLong(0);
+
+	/**
+	 * 最近一次被访问的时间
+	 */
+	protected volatile long lastAccess = System.currentTimeMillis();
+
+	public CircuitBreaker(String id,Properties p){
+		this.id = id;
+		window = PropertiesConstants.getInt(p,"rpc.ketty.cb.window",window);
+		minCalls = PropertiesConstants.getInt(p,"rpc.ketty.cb.minCalls",minCalls);
+		errorRate = PropertiesConstants.getDouble(p,"rpc.ketty.cb.errorRate",errorRate);
+		slowCall = PropertiesConstants.getLong(p,"rpc.ketty.cb.slowCall",slowCall);
+		slowRate = PropertiesConstants.getDouble(p,"rpc.ketty.cb.slowRate",slowRate);
+		consecutive = PropertiesConstants.getInt(p,"rpc.ketty.cb.consecutive",consecutive);
+		openTime = PropertiesConstants.getLong(p,"rpc.ketty.cb.openTime",openTime);
+		maxOpenTime = PropertiesConstants.getLong(p,"rpc.ketty.cb.maxOpenTime",maxOpenTime);
+		halfOpen = PropertiesConstants.getInt(p,"rpc.ketty.cb.halfOpen",halfOpen);
+
+		window = window <= 0 ? 20 : window;
+		minCalls = Math.min(Math.max(1, minCalls), window);
+		halfOpen = halfOpen <= 0 ? 1 : halfOpen;
+		outcomes = new byte[window];
+	}
+
+	public String getId(){
+		return id;
+	}
+
+	public State getState(){
+		return state;
+	}
+
+	public long getOpenUntil(){
+		return openUntil;
+	}
+
+	public long getLastAccess(){
+		return lastAccess;
+	}
+
+	/**
+	 * 记录访问时间
+	 * @param now 当前时间
+	 */
+	public void touch(long now){
+		lastAccess = now;
+	}
+
+	/**
+	 * 当前是否可用(未被摘除)
+	 * @param now 当前时间
+	 * @return 是否可用
+	 */
+	public boolean isAvailable(long now){
+		switch (state){
+			case open:
+				return now >= openUntil;
+			case halfOpen:
+				return probes.get() < halfOpen || isProbeExpired(now);
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * 节点被选中
+	 * 
+	 * <p>
+	 * 在open状态到期之后转为halfOpen，并在halfOpen状态下原子地申请探测名额，
+	 * 保证同时放行的探测调用不超过halfOpen个.未到期的open状态的节点只有在超过最大摘除比例而重新加入时
+	 * 才会被选中，此时放行.
+	 * 
+	 * @param now 当前时间
+	 * @return 是否放行本次调用
+	 */
+	public boolean onSelected(long now){
+		if (state == State.closed){
+			return true;
+		}
+		synchronized (this){
+			if (state == State.open && now >= openUntil){
+				toState(State.halfOpen,now);
+			}else if (state == State.halfOpen && isProbeExpired(now)){
+				//探测调用迟迟没有结果，重新开始探测
+				toState(State.halfOpen,now);
+			}
+			switch (state){
+				case halfOpen:
+					if (probes.get() >= halfOpen){
+						return false;
+					}
+					probes.incrementAndGet();
+					return true;
+				default:
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * 记录调用结果
+	 * @param duration 调用时长(ms)
+	 * @param error 是否错误
+	 * @param now 当前时间
+	 */
+	public synchronized void record(long duration,boolean error,long now){
+		boolean slow = duration >= slowCall;
+		switch (state){
+			case halfOpen:
+				if (error || slow){
+					trip(now);
+				}else{
+					probeSuccesses ++;
+					if (probeSuccesses >= halfOpen){
+						ejections = 0;
+						toState(State.closed,now);
+					}
+				}
+				break;
+			case open:
+				//摘除之前发出的调用，忽略
+				break;
+			default:
+				if (calls >= window){
+					byte old = outcomes[pos];
+					errors -= old == 1 ? 1 : 0;
+					slows -= old == 2 ? 1 : 0;
+				}else{
+					calls ++;
+				}
+				byte outcome = (byte)(error ? 1 : (slow ? 2 : 0));
+				outcomes[pos] = outcome;
+				pos = (pos + 1) % window;
+				errors += outcome == 1 ? 1 : 0;
+				slows += outcome == 2 ? 1 : 0;
+				consecutiveErrors = error ? consecutiveErrors + 1 : 0;
+
+				if (consecutiveErrors >= consecutive
+						|| (calls >= minCalls && (errors >= errorRate * calls || slows >= slowRate * calls))){
+					trip(now);
+				}
+		}
+	}
+
+	/**
+	 * 转为open状态，摘除时间按连续被摘除的次数指数递增
+	 * @param now 当前时间
+	 */
+	protected void trip(long now){
+		ejections ++;
+		long duration = openTime << Math.min(ejections - 1, 20);
+		openUntil = now + Math.min(duration, maxOpenTime);
+		totalEjections.incrementAndGet();
+		toState(State.open,now);
+	}
+
+	protected void toState(State newState,long now){
+		calls = 0;
+		pos = 0;
+		errors = 0;
+		slows = 0;
+		consecutiveErrors = 0;
+		probes.set(0);
+		probeSuccesses = 0;
+		stateTime = now;
+		state = newState;
+	}
+
+	protected boolean isProbeExpired(long now){
+		return now - stateTime > openTime;
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			long now = System.currentTimeMillis();
+			XmlTools.setString(xml, "id", id);
+			XmlTools.setString(xml, "state", state.name());
+			XmlTools.setBoolean(xml, "available", isAvailable(now));
+			synchronized (this){
+				XmlTools.setInt(xml, "calls", calls);
+				XmlTools.setInt(xml, "errors", errors);
+				XmlTools.setInt(xml, "slows", slows);
+				XmlTools.setInt(xml, "consecutiveErrors", consecutiveErrors);
+				XmlTools.setInt(xml, "ejections", ejections);
+			}
+			XmlTools.setLong(xml, "totalEjections", totalEjections.get());
+			XmlTools.setLong(xml, "openRemain", state == State.open ? Math.max(0, openUntil - now) : 0);
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			long now = System.currentTimeMillis();
+			JsonTools.setString(json, "id", id);
+			JsonTools.setString(json, "state", state.name());
+			JsonTools.setBoolean(json, "available", isAvailable(now));
+			synchronized (this){
+				JsonTools.setInt(json, "calls", calls);
+				JsonTools.setInt(json, "errors", errors);
+				JsonTools.setInt(json, "slows", slows);
+				JsonTools.setInt(json, "consecutiveErrors", consecutiveErrors);
+				JsonTools.setInt(json, "ejections", ejections);
+			}
+			JsonTools.setLong(json, "totalEjections", totalEjections.get());
+			JsonTools.setLong(json, "openRemain", state == State.open ? Math.max(0, openUntil - now) : 0);
+		}
+	}
+}
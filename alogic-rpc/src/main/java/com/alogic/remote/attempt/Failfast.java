@@ -10,6 +10,9 @@ import com.anysoft.util.Properties;
  * Failfast
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 支持熔断和节点摘除 <br>
  */
 public class Failfast extends Attempt.Abstract{
 	
@@ -21,6 +24,6 @@ public class Failfast extends Attempt.Abstract{
 
 	@Override
 	public void configure(Properties p) {
-
+		super.configure(p);
 	}
 }
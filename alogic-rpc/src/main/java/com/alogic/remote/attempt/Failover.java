@@ -1,35 +1,102 @@
 package com.alogic.remote.attempt;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
 import com.alogic.remote.Attempt;
 import com.alogic.remote.backend.Backend;
 import com.alogic.remote.route.Route;
 import com.anysoft.loadbalance.LoadBalance;
+import com.anysoft.util.JsonTools;
 import com.anysoft.util.Properties;
 import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.XmlTools;
 
 /**
  * Failover
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 支持熔断和节点摘除 <br>
+ * - 增加重试预算{@link RetryBudget}，防止后端故障时重试放大流量 <br>
  */
 public class Failover extends Attempt.Abstract{
 	/**
 	 * 最大重试次数
 	 */
 	protected long maxTryTimes = 3;
+	
+	/**
+	 * 重试预算
+	 */
+	protected RetryBudget budget = null;
 
 	@Override
 	public void configure(Properties p) {
+		super.configure(p);
 		maxTryTimes = PropertiesConstants.getLong(p,"rpc.ketty.maxTryTimes", maxTryTimes);
+		budget = PropertiesConstants.getBoolean(p, "rpc.ketty.retry.budget", true) ? new RetryBudget(p) : null;
 	}	
 	
+	@Override
+	public Backend getBackend(Route route,LoadBalance<Backend> lb,String app,String key,Properties p,long tryTimes) {
+		if (tryTimes <= 0 && budget != null){
+			budget.deposit();
+		}
+		return super.getBackend(route, lb, app, key, p, tryTimes);
+	}
+	
+	@Override
+	public Backend autoRetry(Route route,LoadBalance<Backend> lb,String app,String key,Properties p){
+		if (budget != null && !budget.tryRetry()){
+			LOG.warn("Retry budget is exhausted,auto retry is rejected.");
+			return null;
+		}
+		return super.autoRetry(route, lb, app, key, p);
+	}
+	
 	@Override
 	public Backend retry(Route route,LoadBalance<Backend> lb,String app, String key, Properties p, long tryTimes) {
 		if (tryTimes < maxTryTimes){
+			if (budget != null && !budget.tryRetry()){
+				LOG.warn("Retry budget is exhausted,Cnt=" + tryTimes);
+				return null;
+			}
 			LOG.warn("Retry to call a remote service,Cnt=" + tryTimes);
 			return selectBackend(route,lb,app, key, p,true);
 		}else{
 			return null;
 		}
 	}
+	
+	@Override
+	public void report(Element xml) {
+		super.report(xml);
+		if (xml != null){
+			XmlTools.setLong(xml, "maxTryTimes", maxTryTimes);
+			if (budget != null){
+				Document doc = xml.getOwnerDocument();
+				Element e = doc.createElement("budget");
+				budget.report(e);
+				xml.appendChild(e);
+			}
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		super.report(json);
+		if (json != null){
+			JsonTools.setLong(json, "maxTryTimes", maxTryTimes);
+			if (budget != null){
+				Map<String,Object> map = new HashMap<String,Object>();
+				budget.report(map);
+				json.put("budget", map);
+			}
+		}
+	}
 }
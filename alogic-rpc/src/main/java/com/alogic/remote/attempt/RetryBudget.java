@@ -0,0 +1,131 @@
+package com.alogic.remote.attempt;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Element;
+
+import com.anysoft.util.JsonTools;
+import com.anysoft.util.Properties;
+import com.anysoft.util.PropertiesConstants;
+import com.anysoft.util.Reportable;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 重试预算
+ * 
+ * <p>
+ * 用于限制重试在全部调用中的比例，防止后端故障时重试放大流量(retry storm).每次首次调用存入ratio个令牌，
+ * 每次重试消耗1个令牌；另外每秒补充minPerSecond个令牌，保证低流量时也可以重试.令牌最多累积max个.
+ * 
+ * <p>
+ * 参数：<br>
+ * - rpc.ketty.retry.ratio:重试占首次调用的比例，缺省为0.2 <br>
+ * - rpc.ketty.retry.minPerSecond:每秒保底的重试次数，缺省为10 <br>
+ * - rpc.ketty.retry.max:最多累积的令牌数，缺省为100 <br>
+ * 
+ * @author duanyy
+ * @since 1.6.11.87
+ */
+public class RetryBudget implements Reportable{
+
+	/**
+	 * 令牌的精度，以千分之一个令牌为单位计数
+	 */
+	protected static final long UNIT = 1000;
+
+	protected double ratio = 0.2;
+	protected int minPerSecond = 10;
+	protected int max = 100;
+
+	/**
+	 * 当前令牌数(千分之一)
+	 */
+	protected AtomicLong balance = new AtomicLong(0);
+
+	/**
+	 * 上次补充的时间
+	 */
+	protected AtomicLong lastRefill = new AtomicLong(System.currentTimeMillis());
+
+	protected AtomicLong deposits = new AtomicLong(0);
+	protected AtomicLong retries = new AtomicLong(0);
+	protected AtomicLong rejected = new AtomicLong(0);
+
+	public RetryBudget(Properties p){
+		ratio = PropertiesConstants.getDouble(p, "rpc.ketty.retry.ratio", ratio);
+		minPerSecond = PropertiesConstants.getInt(p, "rpc.ketty.retry.minPerSecond", minPerSecond);
+		max = PropertiesConstants.getInt(p, "rpc.ketty.retry.max", max);
+		max = Math.max(1, max);
+		balance.set(Math.min((long)max, (long)minPerSecond) * UNIT);
+	}
+
+	/**
+	 * 首次调用，存入令牌
+	 */
+	public void deposit(){
+		deposits.incrementAndGet();
+		add((long)(ratio * UNIT));
+	}
+
+	/**
+	 * 尝试为一次重试消耗令牌
+	 * @return 是否允许重试
+	 */
+	public boolean tryRetry(){
+		refill(System.currentTimeMillis());
+		long current;
+		do {
+			current = balance.get();
+			if (current < UNIT){
+				rejected.incrementAndGet();
+				return false;
+			}
+		}while (!balance.compareAndSet(current, current - UNIT));
+		retries.incrementAndGet();
+		return true;
+	}
+
+	protected void refill(long now){
+		long last = lastRefill.get();
+		long elapsed = now - last;
+		if (elapsed >= 1000 && lastRefill.compareAndSet(last, now)){
+			add(minPerSecond * UNIT * elapsed / 1000);
+		}
+	}
+
+	protected void add(long amount){
+		long limit = max * UNIT;
+		long current,value;
+		do {
+			current = balance.get();
+			value = Math.min(limit, current + amount);
+		}while (value != current && !balance.compareAndSet(current, value));
+	}
+
+	@Override
+	public void report(Element xml) {
+		if (xml != null){
+			XmlTools.setDouble(xml, "ratio", ratio);
+			XmlTools.setInt(xml, "minPerSecond", minPerSecond);
+			XmlTools.setInt(xml, "max", max);
+			XmlTools.setDouble(xml, "balance", (double)balance.get() / UNIT);
+			XmlTools.setLong(xml, "deposits", deposits.get());
+			XmlTools.setLong(xml, "retries", retries.get());
+			XmlTools.setLong(xml, "rejected", rejected.get());
+		}
+	}
+
+	@Override
+	public void report(Map<String, Object> json) {
+		if (json != null){
+			JsonTools.setDouble(json, "ratio", ratio);
+			JsonTools.setInt(json, "minPerSecond", minPerSecond);
+			JsonTools.setInt(json, "max", max);
+			JsonTools.setDouble(json, "balance", (double)balance.get() / UNIT);
+			JsonTools.setLong(json, "deposits", deposits.get());
+			JsonTools.setLong(json, "retries", retries.get());
+			JsonTools.setLong(json, "rejected", rejected.get());
+		}
+	}
+}
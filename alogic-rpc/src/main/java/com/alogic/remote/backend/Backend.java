@@ -5,7 +5,7 @@ import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Element;
 
-import com.anysoft.loadbalance.DefaultCounter;
+import com.anysoft.loadbalance.LatencyCounter;
 import com.anysoft.loadbalance.Load;
 import com.anysoft.loadbalance.LoadCounter;
 import com.anysoft.util.Configurable;
@@ -22,6 +22,9 @@ import com.anysoft.util.XmlTools;
  * 
  * @author yyduan
  * @since 1.6.8.12
+ * 
+ * @version 1.6.11.86 [20181031 duanyy] <br>
+ * - 采用LatencyCounter进行计数，以支持感知时延的负载均衡 <br>
  */
 public interface Backend extends Load {
 	
@@ -104,7 +107,7 @@ public interface Backend extends Load {
 			if (counter == null && create){
 				synchronized (this){
 					if (counter == null){
-						counter = new DefaultCounter(Settings.get());
+						counter = new LatencyCounter(Settings.get());
 					}
 				}
 			}
@@ -182,7 +185,7 @@ public interface Backend extends Load {
 			priority = PropertiesConstants.getInt(p,"priority",1);
 			contextPath = PropertiesConstants.getString(p,"contextPath","");
 			
-			counter = new DefaultCounter(p);
+			counter = new LatencyCounter(p);
 		}
 
 		@Override
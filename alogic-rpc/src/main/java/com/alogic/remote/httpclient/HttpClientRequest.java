@@ -49,6 +49,12 @@ import com.anysoft.util.Properties;
  * 
  * @version 1.6.11.14 [duanyy 20180129] <br>
  * - 修正QueryInfo和服务器取法不一致的问题 <br>
+ * 
+ * @version 1.6.11.84 [20181029 duanyy] <br>
+ * - 增加{@link #abort()}，中止之后不再重试 <br>
+ * 
+ * @version 1.6.11.87 [20181101 duanyy] <br>
+ * - 调用结果通过Client进行反馈，以便熔断 <br>
  */
 public class HttpClientRequest implements Request{
 	protected static final Logger LOG = LoggerFactory.getLogger(HttpClientRequest.class);
@@ -58,6 +64,11 @@ public class HttpClientRequest implements Request{
 	protected String encoding = "utf-8";
 	protected int autoRetryCnt = 3;
 	
+	/**
+	 * 是否已经被中止
+	 */
+	protected volatile boolean aborted = false;
+	
 	public HttpClientRequest(CloseableHttpClient httpClient,HttpRequestBase request,HttpClient client,String encoding,int autoRetryCnt){
 		this.httpClient = httpClient;
 		this.httpRequest = request;
@@ -152,16 +163,28 @@ public class HttpClientRequest implements Request{
 		String lastErrorMsg = "";
 		
 		while (true){
+			if (aborted){
+				throw new CallException("core.e1004","The request is aborted:" + path);
+			}
 			Backend backend = null;
 			long start = System.nanoTime();
 			boolean error = false;
 			try {
-				backend = client.getBackend(key,ctx, autoRetry > 0 ? 0 : retryCount ++ );				
+				//自动重试不计入重试次数，但需要消耗重试预算
+				backend = autoRetry > 0 ? client.autoRetry(key, ctx) : client.getBackend(key,ctx,retryCount ++);				
 				if (backend != null){
 					result = execute(path,backend);
 				}
 				break;
 			}catch (CallException ex){
+				if (aborted){
+					//被调用者中止，不是后端的错误，也不再重试
+					throw ex;
+				}
+				if (ex.getCode().equals("core.e1600")){
+					//没有可用的后端(包括全部被熔断剔除)，并未调用后端，重试只会白白消耗重试预算
+					throw ex;
+				}
 				error = true;
 				lastErrorCode = ex.getCode();
 				lastErrorMsg = ex.getMessage();
@@ -177,10 +200,11 @@ public class HttpClientRequest implements Request{
 					if (!lastErrorCode.startsWith("core")){
 						throw ex;
 					}
+					autoRetry = 0;
 				}
 			}finally{
 				if (backend != null){
-					backend.count(System.nanoTime() - start, error);
+					client.count(backend, System.nanoTime() - start, error);
 				}
 			}
 		}
@@ -240,6 +264,22 @@ public class HttpClientRequest implements Request{
 		}
 	}
 
+	@Override
+	public void abort() {
+		aborted = true;
+		if (httpRequest != null){
+			httpRequest.abort();
+		}
+	}
+	
+	/**
+	 * 是否已经被中止
+	 * @return true|false
+	 */
+	public boolean isAborted(){
+		return aborted;
+	}
+
 	@Override
 	public void close() {
 		if (httpRequest != null){
@@ -0,0 +1,200 @@
+package com.alogic.gw;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alogic.remote.Request;
+import com.alogic.remote.httpclient.HttpClient;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.IOTools;
+import com.anysoft.util.Settings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 网关响应缓存的测试
+ * 
+ * <p>
+ * 启动一个本地的慢后端(每次调用耗时latency ms)，多个线程随机访问若干个key，分别在不使用缓存和使用
+ * {@link ResponseCache}的情况下统计后端调用次数、平均耗时、命中率和节省的流量.缓存的ttl较短，
+ * 并配置了stale时间，用于观察后台刷新和并发未命中的合并.正文超过512字节时保存在池化的堆外内存块中.
+ * 
+ * <p>
+ * 最后模拟后端失败的情况，同一key并发的未命中只有领头的请求访问后端，其余请求直接得到失败.
+ * 
+ * <p>
+ * 参数：线程数 每个线程的请求数 key的个数 后端耗时(ms)
+ * 
+ * @author duanyy
+ * 
+ */
+public class CacheDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int keys = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		final long latency = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+		final AtomicLong backendCalls = new AtomicLong(0);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.setExecutor(Executors.newFixedThreadPool(threadCnt * 2));
+		server.createContext("/api", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				backendCalls.incrementAndGet();
+				try {
+					Thread.sleep(latency);
+				}catch (InterruptedException e) {
+					return;
+				}
+				StringBuilder body = new StringBuilder("{\"query\":\"");
+				body.append(exchange.getRequestURI().getQuery()).append("\",\"data\":\"");
+				for (int i = 0 ; i < 100 ; i ++){
+					body.append("0123456789");
+				}
+				body.append("\"}");
+				byte[] data = body.toString().getBytes("utf-8");
+				exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+				exchange.sendResponseHeaders(200, data.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(data);
+				}finally{
+					out.close();
+				}
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+
+		HttpClient client = new HttpClient();
+		client.configure(Settings.get());
+
+		DefaultProperties p = new DefaultProperties();
+		p.SetValue("cache.enable", "true");
+		p.SetValue("cache.ttl", "50");
+		p.SetValue("cache.stale", "2000");
+		CachePolicy policy = new CachePolicy();
+		policy.configure(p);
+
+		DefaultProperties cacheProps = new DefaultProperties("default",Settings.get());
+		cacheProps.SetValue("gateway.cache.offHeap", "512");
+		cacheProps.SetValue("gateway.cache.chunk", "256");
+		ResponseCache cache = new ResponseCache();
+		cache.configure(cacheProps);
+
+		backendCalls.set(0);
+		run("direct",client,url,null,policy,threadCnt,requests,keys,backendCalls);
+		backendCalls.set(0);
+		run("cached",client,url,cache,policy,threadCnt,requests,keys,backendCalls);
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		cache.report(report);
+		System.out.println(report);
+
+		failover(cache,threadCnt,latency);
+		report.clear();
+		cache.report(report);
+		System.out.println(report);
+
+		cache.close();
+		server.stop(0);
+		System.exit(0);
+	}
+
+	protected static void run(String name,final HttpClient client,final String url,final ResponseCache cache,
+			final CachePolicy policy,int threadCnt,final int requests,final int keys,AtomicLong backendCalls) throws Exception{
+		final AtomicLong cost = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			final Random random = new Random(i);
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < requests ; j ++){
+							final String path = url + "?id=" + random.nextInt(keys);
+							long begin = System.nanoTime();
+							ResponseCache.Fetcher fetcher = new ResponseCache.Fetcher(){
+								@Override
+								public ResponseCache.Entry fetch() throws IOException {
+									Request req = client.build("get");
+									try {
+										return cache == null ? null : cache.newEntry(req.execute(path), policy);
+									}finally{
+										IOTools.close(req);
+									}
+								}
+							};
+							if (cache == null){
+								Request req = client.build("get");
+								try {
+									req.execute(path).asBytes();
+								}finally{
+									IOTools.close(req);
+								}
+							}else{
+								cache.get(path, false, fetcher, fetcher).release();
+							}
+							cost.addAndGet(System.nanoTime() - begin);
+						}
+					}catch (Exception ex){
+						ex.printStackTrace();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+		long duration = Math.max(1, System.currentTimeMillis() - start);
+		long total = (long)threadCnt * requests;
+		System.out.println(String.format("%s:%d requests,%d ms,%d backend calls,avg %.3f ms,%d requests/s",
+				name,total,duration,backendCalls.get(),cost.get() / 1000000.0 / total,total * 1000 / duration));
+	}
+
+	protected static void failover(final ResponseCache cache,int threadCnt,final long latency) throws Exception{
+		final AtomicLong fetches = new AtomicLong(0);
+		final AtomicLong failed = new AtomicLong(0);
+		final ResponseCache.Fetcher fetcher = new ResponseCache.Fetcher(){
+			@Override
+			public ResponseCache.Entry fetch() throws IOException {
+				fetches.incrementAndGet();
+				try {
+					Thread.sleep(latency);
+				}catch (InterruptedException e) {
+					// ignore
+				}
+				throw new IOException("backend is down");
+			}
+		};
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						cache.get("down", false, fetcher, fetcher).release();
+					}catch (IOException ex){
+						failed.incrementAndGet();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+		System.out.println(String.format("backend down:%d requests,%d failed,%d backend calls",
+				threadCnt,failed.get(),fetches.get()));
+	}
+}
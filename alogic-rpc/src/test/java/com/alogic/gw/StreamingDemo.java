@@ -0,0 +1,180 @@
+package com.alogic.gw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alogic.remote.Request;
+import com.alogic.remote.Response;
+import com.alogic.remote.httpclient.HttpClient;
+import com.anysoft.util.IOTools;
+import com.anysoft.util.Settings;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 网关流式转发的测试
+ * 
+ * <p>
+ * 启动一个本地的后端，每个请求返回指定大小的正文，并发地通过HttpClient调用，分别以缓存整个正文(asBytes)和
+ * 通过{@link BufferPool}流式转发两种方式输出，比较耗时和堆内存的峰值；最后在限制在途调用数的情况下
+ * 输出{@link RouteMetrics}的统计.
+ * 
+ * <p>
+ * 参数：并发数 正文大小(MB)
+ * 
+ * @author duanyy
+ * 
+ */
+public class StreamingDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		final int size = (args.length > 1 ? Integer.parseInt(args[1]) : 8) * 1024 * 1024;
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.setExecutor(Executors.newFixedThreadPool(threadCnt * 2));
+		server.createContext("/data", new HttpHandler(){
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] chunk = new byte[64 * 1024];
+				exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+				exchange.sendResponseHeaders(200, size);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					for (int written = 0 ; written < size ; written += chunk.length){
+						out.write(chunk, 0, Math.min(chunk.length, size - written));
+					}
+				}finally{
+					out.close();
+				}
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/data";
+
+		HttpClient client = new HttpClient();
+		client.configure(Settings.get());
+		BufferPool pool = new BufferPool(8192, threadCnt);
+
+		for (int round = 0 ; round < 2 ; round ++){
+			run("buffered",client,url,threadCnt,null,new RouteMetrics(0,0));
+			run("streaming",client,url,threadCnt,pool,new RouteMetrics(0,0));
+		}
+
+		RouteMetrics limited = new RouteMetrics(threadCnt / 2,0);
+		run("limited",client,url,threadCnt,pool,limited);
+		Map<String,Object> report = new HashMap<String,Object>();
+		limited.report(report);
+		System.out.println(report);
+
+		report = new HashMap<String,Object>();
+		pool.report(report);
+		System.out.println(report);
+		server.stop(0);
+		System.exit(0);
+	}
+
+	protected static void run(String name,final HttpClient client,final String url,int threadCnt,
+			final BufferPool pool,final RouteMetrics metrics) throws Exception{
+		final AtomicLong bytes = new AtomicLong(0);
+		final AtomicLong peak = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		final CountDownLatch ready = new CountDownLatch(1);
+		System.gc();
+		final long base = usedMemory();
+
+		Thread monitor = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				while (latch.getCount() > 0){
+					long used = usedMemory() - base;
+					if (used > peak.get()){
+						peak.set(used);
+					}
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+		monitor.start();
+
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						ready.await();
+						RouteMetrics.Route route = metrics.enter("data");
+						if (route == null){
+							return;
+						}
+						long size = 0;
+						long begin = System.currentTimeMillis();
+						Request req = client.build("get");
+						try {
+							Response resp = req.execute(url);
+							OutputStream out = new NullOutputStream();
+							if (pool == null){
+								byte[] data = resp.asBytes();
+								out.write(data);
+								size = data.length;
+							}else{
+								InputStream in = resp.asStream();
+								try {
+									size = pool.copy(in, out);
+								}finally{
+									IOTools.close(in);
+								}
+							}
+							bytes.addAndGet(size);
+						}finally{
+							IOTools.close(req);
+							metrics.leave(route, size, System.currentTimeMillis() - begin, true);
+						}
+					}catch (Exception ex){
+						ex.printStackTrace();
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		ready.countDown();
+		latch.await();
+		monitor.join();
+
+		long duration = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(String.format("%s:%d threads,%d MB,%d ms,%d MB/s,peak heap %d MB",
+				name,threadCnt,bytes.get() / 1024 / 1024,duration,
+				bytes.get() / 1024 / 1024 * 1000 / duration,peak.get() / 1024 / 1024));
+	}
+
+	protected static long usedMemory(){
+		Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static class NullOutputStream extends OutputStream{
+		@Override
+		public void write(int b) throws IOException {
+			// nothing to do
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			// nothing to do
+		}
+	}
+}
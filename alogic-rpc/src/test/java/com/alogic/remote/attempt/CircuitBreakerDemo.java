@@ -0,0 +1,175 @@
+package com.alogic.remote.attempt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alogic.remote.backend.AppBackends;
+import com.alogic.remote.backend.Backend;
+import com.alogic.remote.route.Route;
+import com.alogic.rpc.CallException;
+import com.anysoft.loadbalance.LoadBalance;
+import com.anysoft.loadbalance.impl.RoundRobin;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.Properties;
+
+/**
+ * 熔断、节点摘除和重试预算的模拟测试
+ * 
+ * <p>
+ * 模拟若干个后端节点，其中一个节点已经宕机(每次调用在超时之后失败).多个线程并发调用，失败之后通过{@link Failover}重试，
+ * 分别在关闭和开启熔断及重试预算的情况下，比较时延的分位数、失败率和调用放大倍数(实际发出的调用次数/请求数).
+ * 最后模拟所有节点都故障的情况，观察重试预算对重试风暴的抑制.
+ * 
+ * <p>
+ * 参数：线程数 每个线程的请求数 节点数 基础时延(ms) 超时(ms)
+ * 
+ * @author duanyy
+ * 
+ */
+public class CircuitBreakerDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int nodeCnt = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long latency = args.length > 3 ? Long.parseLong(args[3]) : 2;
+		long timeout = args.length > 4 ? Long.parseLong(args[4]) : 50;
+
+		DefaultProperties off = new DefaultProperties();
+		off.SetValue("rpc.ketty.maxTryTimes", "3");
+		off.SetValue("rpc.ketty.cb.enable", "false");
+		off.SetValue("rpc.ketty.retry.budget", "false");
+
+		DefaultProperties on = new DefaultProperties();
+		on.SetValue("rpc.ketty.maxTryTimes", "3");
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		for (int i = 0 ; i < 2 ; i ++){
+			boolean allDown = i > 0;
+			String scene = allDown ? "all down" : "one down";
+			run(scene + ",off",off,threadCnt,requests,nodeCnt,latency,timeout,allDown,null);
+			report.clear();
+			run(scene + ",on ",on,threadCnt,requests,nodeCnt,latency,timeout,allDown,report);
+		}
+		System.out.println(report);
+		System.exit(0);
+	}
+
+	protected static void run(String name,Properties p,int threadCnt,final int requests,int nodeCnt,
+			final long latency,final long timeout,boolean allDown,Map<String,Object> report) throws Exception{
+		final Failover attempt = new Failover();
+		attempt.configure(p);
+		final LoadBalance<Backend> lb = new RoundRobin<Backend>(p);
+
+		final List<Backend> backends = new ArrayList<Backend>();
+		final Map<String,Boolean> down = new HashMap<String,Boolean>();
+		for (int i = 0 ; i < nodeCnt ; i ++){
+			DefaultProperties props = new DefaultProperties();
+			props.SetValue("ip", "127.0.0.1");
+			props.SetValue("port", String.valueOf(8000 + i));
+			props.SetValue("loadbalance.maxtimes", "1000000");
+			Backend.Default backend = new Backend.Default();
+			backend.configure(props);
+			backends.add(backend);
+			down.put(backend.getId(), allDown || i == 0);
+		}
+		final Route route = new SimRoute(backends);
+
+		final long[] durations = new long[threadCnt * requests];
+		final AtomicInteger index = new AtomicInteger(0);
+		final AtomicLong calls = new AtomicLong(0);
+		final AtomicLong failed = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					for (int j = 0 ; j < requests ; j ++){
+						long begin = System.nanoTime();
+						boolean ok = false;
+						for (long tryTimes = 0 ; !ok ; tryTimes ++){
+							Backend backend = null;
+							try {
+								backend = attempt.getBackend(route, lb, "default", null, null, tryTimes);
+							}catch (CallException ex){
+								break;
+							}
+							if (backend == null){
+								break;
+							}
+							calls.incrementAndGet();
+							long callStart = System.nanoTime();
+							ok = call(down.get(backend.getId()),latency,timeout);
+							long duration = System.nanoTime() - callStart;
+							backend.count(duration, !ok);
+							attempt.count(backend, duration, !ok);
+						}
+						if (!ok){
+							failed.incrementAndGet();
+						}
+						durations[index.getAndIncrement()] = System.nanoTime() - begin;
+					}
+					latch.countDown();
+				}
+			}).start();
+		}
+		latch.await();
+		long total = System.currentTimeMillis() - start;
+
+		Arrays.sort(durations);
+		System.out.println(String.format("%s:%d ms,p50 %.2f ms,p99 %.2f ms,failed %.2f%%,amplification %.2f",
+				name,total,percentile(durations,0.5),percentile(durations,0.99),
+				failed.get() * 100.0 / durations.length,(double)calls.get() / durations.length));
+
+		if (report != null){
+			attempt.report(report);
+		}
+	}
+
+	protected static boolean call(boolean down,long latency,long timeout){
+		try {
+			Thread.sleep(down ? timeout : latency);
+		}catch (InterruptedException ex){
+			return false;
+		}
+		return !down;
+	}
+
+	protected static double percentile(long[] sorted,double p){
+		int idx = (int)Math.min(sorted.length - 1, Math.round(sorted.length * p));
+		return sorted[idx] / 1000000.0;
+	}
+
+	/**
+	 * 固定节点列表的路由
+	 */
+	public static class SimRoute extends Route.Abstract{
+		protected List<Backend> backends;
+
+		public SimRoute(List<Backend> backends){
+			this.backends = backends;
+		}
+
+		@Override
+		public List<Backend> select(String app, String route) {
+			return backends;
+		}
+
+		@Override
+		public List<Backend> select(String app, Properties p) {
+			return backends;
+		}
+
+		@Override
+		public void rebuild(AppBackends app) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.alogic.remote.httpclient;
+
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Document;
+
+import com.alogic.remote.Request;
+import com.alogic.remote.backend.Backend;
+import com.alogic.rpc.CallException;
+import com.anysoft.util.DefaultProperties;
+import com.anysoft.util.IOTools;
+import com.anysoft.util.Settings;
+import com.anysoft.util.XmlTools;
+
+/**
+ * 自动重试和重试预算的测试
+ * 
+ * <p>
+ * 所有后端节点都指向没有监听的端口，每次调用都因为连接错误(core.e1603)而失败，
+ * 通过{@link HttpClientRequest#execute(String, String, com.anysoft.util.Properties)}发起调用，
+ * 分别在关闭和开启重试预算的情况下，比较调用放大倍数(实际发出的调用次数/请求数).
+ * 开启重试预算时，连接错误的自动重试也需要消耗令牌.
+ * 
+ * <p>
+ * 参数：线程数 每个线程的请求数 节点数
+ * 
+ * @author duanyy
+ * 
+ */
+public class AutoRetryDemo {
+
+	public static void main(String[] args) throws Exception{
+		int threadCnt = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int nodeCnt = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		StringBuilder backends = new StringBuilder();
+		for (int i = 0 ; i < nodeCnt ; i ++){
+			ServerSocket socket = new ServerSocket(0);
+			int port = socket.getLocalPort();
+			socket.close();
+			backends.append("<backend ip=\"127.0.0.1\" port=\"").append(port)
+				.append("\" loadbalance.maxtimes=\"1000000\"/>");
+		}
+
+		run("budget off",false,backends.toString(),threadCnt,requests);
+		run("budget on ",true,backends.toString(),threadCnt,requests);
+		System.exit(0);
+	}
+
+	protected static void run(String name,boolean budget,String backends,int threadCnt,final int requests) throws Exception{
+		String xml = "<client rpc.ketty.attempt=\"com.alogic.remote.attempt.Failover\" rpc.ketty.maxTryTimes=\"3\""
+				+ " rpc.ketty.autoRetryTimes=\"2\" rpc.ketty.cb.enable=\"false\" rpc.ketty.retry.budget=\"" + budget + "\""
+				+ " rpc.ketty.retry.minPerSecond=\"1\" rpc.http.timeout=\"1000\">"
+				+ "<cluster module=\"com.alogic.remote.cluster.StaticCluster\">" + backends + "</cluster></client>";
+		Document doc = XmlTools.loadFromContent(xml);
+		final CountingClient client = new CountingClient();
+		client.configure(doc.getDocumentElement(), Settings.get());
+
+		final AtomicLong failed = new AtomicLong(0);
+		final CountDownLatch latch = new CountDownLatch(threadCnt);
+		long start = System.currentTimeMillis();
+		for (int i = 0 ; i < threadCnt ; i ++){
+			new Thread(new Runnable(){
+				@Override
+				public void run() {
+					try {
+						for (int j = 0 ; j < requests ; j ++){
+							Request req = client.build("get");
+							try {
+								req.execute("/demo", null, new DefaultProperties());
+							}catch (CallException ex){
+								failed.incrementAndGet();
+							}finally{
+								IOTools.close(req);
+							}
+						}
+					}finally{
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		latch.await();
+		long total = (long)threadCnt * requests;
+		System.out.println(String.format("%s:%d requests,%d ms,failed %d,amplification %.2f",
+				name,total,System.currentTimeMillis() - start,failed.get(),(double)client.calls.get() / total));
+
+		Map<String,Object> report = new HashMap<String,Object>();
+		client.report(report);
+		System.out.println(report.get("attempt"));
+	}
+
+	/**
+	 * 统计实际发出调用次数的HttpClient
+	 */
+	public static class CountingClient extends HttpClient{
+		protected AtomicLong calls = new AtomicLong(0);
+
+		@Override
+		public void count(Backend backend,long duration,boolean error){
+			calls.incrementAndGet();
+			super.count(backend, duration, error);
+		}
+	}
+}